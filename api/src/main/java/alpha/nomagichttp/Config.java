@@ -8,17 +8,21 @@ import alpha.nomagichttp.message.HttpVersionTooOldException;
 import alpha.nomagichttp.message.MaxRequestBodyBufferSizeException;
 import alpha.nomagichttp.message.MaxRequestHeadSizeException;
 import alpha.nomagichttp.message.MaxRequestTrailersSizeException;
+import alpha.nomagichttp.message.MediaType;
+import alpha.nomagichttp.message.MediaTypeCache;
 import alpha.nomagichttp.message.Request;
 import alpha.nomagichttp.message.Response;
 import alpha.nomagichttp.message.Responses;
 import alpha.nomagichttp.route.MethodNotAllowedException;
 import alpha.nomagichttp.util.ByteBufferIterables;
+import alpha.nomagichttp.util.ByteBufferPool;
 import alpha.nomagichttp.util.Throwing;
 
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileAttribute;
 import java.time.Duration;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -60,9 +64,19 @@ public interface Config
     /// Max request body buffer size = 20 971 520 bytes (20 MB)  
     /// Max request trailers' size = 8 000 bytes  
     /// Max error responses = 3  
+    /// Max coalesced body size = 8 192 bytes (8 kB)  
+    /// Chunk size = 8 192 bytes (8 kB)  
+    /// Compression level = 0 (disabled)  
+    /// Min compression size = 1 024 bytes (1 kB)  
+    /// Compressible media types = `text/*`, `application/json`, ...  
+    /// Max compression CPU load = 80%  
+    /// Buffer pool capacity = 16 777 216 bytes (16 MB)  
+    /// Max read buffer size = 65 536 bytes (64 kB)  
+    /// Media type cache size = 256  
     /// Min HTTP version = 1.0  
     /// Discard rejected informational = true  
     /// Immediately continue Expect 100 = false  
+    /// Pipeline requests = false  
     /// Timeout file lock = 3 seconds  
     /// Timeout idle connection = 3 minutes  
     /// Implement missing options = true
@@ -109,6 +123,11 @@ public interface Config
     /// and
     /// [`Request.Body.toFile(...)`][Request.Body#toFile(Path, long, TimeUnit, Set, FileAttribute\[\])]
     /// 
+    /// The exception is a compressed body ("Content-Encoding: gzip" or
+    /// "deflate"), which the server decompresses. The decompressed size is
+    /// always limited, however the body is consumed. A small compressed body
+    /// can otherwise expand into a huge one (a "zip bomb").
+    /// 
     /// @apiNote
     /// Without a limit, it would have been too easy for a bad actor to crash
     /// the server (by streaming a body straight into memory until memory runs
@@ -138,6 +157,161 @@ public interface Config
     /// security.
     int maxErrorResponses();
     
+    /// {@return the max number of response body bytes to coalesce with the
+    /// response head}
+    /// 
+    /// The server writes the response head, a small response body, and the
+    /// trailers (or the final chunk delimiter) using one gathering write
+    /// operation, which saves system calls and network packets. If the body
+    /// consists of many bytebuffers, the server copies them into one buffer
+    /// for this purpose, but only if the body has a known length that does
+    /// not exceed this value.
+    /// 
+    /// A body of one bytebuffer only is never copied, and so will always be
+    /// written together with the head, regardless of its size. A body of
+    /// unknown length, such as a stream, is never held back; the head is
+    /// written together with its first bytebuffer. A body backed by a file is
+    /// always transferred separately.
+    /// 
+    /// The [#DEFAULT] implementation returns 8 192 bytes (8 kB). The value 0
+    /// disables copying, but one bytebuffer bodies are still coalesced.
+    int maxCoalescedBodySize();
+    
+    /// {@return the target number of payload bytes in a response body chunk}
+    /// 
+    /// When the server applies chunked encoding to a response body, it copies
+    /// small bytebuffers from the body into one chunk, until the chunk would
+    /// grow larger than this value. The chunk is then written using one write
+    /// operation, which saves system calls and network packets, compared to
+    /// writing one tiny chunk for each bytebuffer.
+    /// 
+    /// A bytebuffer at least this large is never copied; it is written as a
+    /// chunk of its own. A streaming body can force the chunk coalesced so far
+    /// to be written, by yielding [ByteBufferIterables#FLUSH].
+    /// 
+    /// The [#DEFAULT] implementation returns 8 192 bytes (8 kB). The value 0
+    /// disables coalescing; each bytebuffer is then written as a chunk.
+    int chunkSize();
+    
+    /// {@return the compression level of response bodies, or 0 if disabled}
+    /// 
+    /// If enabled, the server compresses a response body using gzip or
+    /// deflate, whichever coding the client prefers according to the
+    /// "Accept-Encoding" request header. The response gets a
+    /// "Content-Encoding" header, and, since the compressed length is not
+    /// known in advance, the body is sent using chunked encoding.
+    /// 
+    /// A response body is not compressed, if any one of these is true:
+    /// 
+    /// - The client does not accept gzip nor deflate
+    /// - The request version is older than HTTP/1.1
+    /// - The body is empty (e.g. a response to a HEAD request)
+    /// - The response status code is 206 (Partial Content)
+    /// - The response has a "Content-Encoding" or "Transfer-Encoding"
+    ///   header, or "Cache-Control: no-transform"
+    /// - The response's content-type is not one of
+    ///   [#compressibleMediaTypes()]
+    /// - The body length is known, and smaller than [#minCompressionSize()]
+    /// - The system CPU load is above [#maxCompressionCpuLoad()]
+    /// 
+    /// Any compressible response gets the header "Vary: Accept-Encoding",
+    /// whether compressed or not. A strong "ETag" of a compressed response is
+    /// made weak.
+    /// 
+    /// The compressors hold a substantial amount of native memory, and are
+    /// therefore pooled, and reused across responses.
+    /// 
+    /// The [#DEFAULT] implementation returns 0. A level ranges from 1 (fastest)
+    /// to 9 (best compression). Level 6 is what the gzip tool uses by default,
+    /// and is a good trade-off between speed and size.
+    int compressionLevel();
+    
+    /// {@return the min length of a response body to compress}
+    /// 
+    /// Compressing a small body costs more CPU time than what is saved on the
+    /// network; the output may even be larger than the input. A body of
+    /// unknown length is always considered large enough.
+    /// 
+    /// The [#DEFAULT] implementation returns 1 024 bytes (1 kB).
+    /// 
+    /// @see #compressionLevel()
+    int minCompressionSize();
+    
+    /// {@return the media types of response bodies to compress}
+    /// 
+    /// A response body is compressed only if the response's content-type is
+    /// compatible with one of these media types (see
+    /// [MediaType#compatibility(MediaType)], called on the listed type). For
+    /// example, `text/*` matches `text/html; charset=utf-8`.
+    /// 
+    /// The [#DEFAULT] implementation returns `text/*`,
+    /// `application/json`, `application/javascript`, `application/xml` and
+    /// `image/svg+xml`. Most other formats, such as images and archives, are
+    /// already compressed.
+    /// 
+    /// @see #compressionLevel()
+    List<MediaType> compressibleMediaTypes();
+    
+    /// {@return the max system CPU load (percent) at which responses are compressed}
+    /// 
+    /// Compression trades CPU time for network bandwidth, which is a bad trade
+    /// when the CPU is saturated. When the CPU load of the system is above
+    /// this value, response bodies are sent uncompressed.
+    /// 
+    /// The load is sampled from the operating system at most once per second.
+    /// If the load is not available, it is assumed to be 0.
+    /// 
+    /// The [#DEFAULT] implementation returns 80. The value 100 disables the
+    /// guard.
+    /// 
+    /// @see #compressionLevel()
+    int maxCompressionCpuLoad();
+    
+    /// {@return the max number of bytes retained by idle, pooled buffers}
+    /// 
+    /// The server acquires the buffers it reads from a client channel with,
+    /// and the buffers [ByteBufferIterables#ofFile(Path)] reads a file into,
+    /// from a [ByteBufferPool]. When a buffer is released, it is kept for reuse
+    /// only if its size class has not yet retained its share of this capacity.
+    /// The capacity is split evenly across the pool's size classes.
+    /// 
+    /// Buffers held by active connections and active file bodies are not
+    /// counted; they are in use, not idle.
+    /// 
+    /// The [#DEFAULT] implementation returns 16 777 216 bytes (16 MB). The
+    /// value 0 disables pooling; each buffer is then allocated anew.
+    int bufferPoolCapacity();
+    
+    /// {@return the max size of the buffer used to read from a client channel}
+    /// 
+    /// Each connection starts with a buffer of 512 bytes, which suffices for
+    /// most request heads. When the request body is larger than the buffer, or
+    /// when reads keep filling the buffer completely (e.g. a chunked body), the
+    /// buffer grows towards this size, so that a large upload is read using
+    /// fewer, larger read operations. Between exchanges, the buffer shrinks
+    /// back to 512 bytes, so that an idle keep-alive connection does not hold
+    /// on to a large buffer.
+    /// 
+    /// The buffer is acquired from the server's [ByteBufferPool], and so the
+    /// size of a grown buffer is rounded up to the nearest size class of the
+    /// pool (if within the largest size class).
+    /// 
+    /// The [#DEFAULT] implementation returns 65 536 bytes (64 kB). A value
+    /// of 512 or less disables growing.
+    int maxReadBufferSize();
+    
+    /// {@return the max number of entries of each kind in the media type cache}
+    /// 
+    /// The server parses the "Content-Type" and "Accept" request headers
+    /// using a [MediaTypeCache], keyed by the header value. The cache holds
+    /// two kinds of entries; single media types, and lists of media types
+    /// parsed from a comma-separated header value. This value is the capacity
+    /// of each kind.
+    /// 
+    /// The [#DEFAULT] implementation returns 256. The value 0 disables the
+    /// cache; each header value is then parsed anew.
+    int mediaTypeCacheSize();
+    
     /// {@return the minimum supported HTTP version}
     /// 
     /// When a client sends a request with an older HTTP version than what is
@@ -222,6 +396,32 @@ public interface Config
      */
     boolean immediatelyContinueExpect100();
     
+    /// {@return whether to parse a pipelined request head ahead of time}
+    /// 
+    /// An HTTP/1.1 client may send many requests without waiting for each
+    /// response ("pipelining"). By default, the server processes one exchange
+    /// at a time: the next request head is parsed only after the previous
+    /// response has been written.
+    /// 
+    /// If this configuration is `true`, then as soon as a request has been
+    /// received in full, the server starts parsing the next request head on
+    /// another virtual thread, while the current request is being handled and
+    /// its response is being written. The next exchange then begins with its
+    /// request head already parsed. Request handlers are still executed one at
+    /// a time, and so, responses are always written in the order the requests
+    /// were received.
+    /// 
+    /// The server parses ahead only if the current request has no body, is an
+    /// HTTP/1.1 request, and does not have the header "Connection: close".
+    /// 
+    /// The [#DEFAULT] implementation returns `false`.
+    /// 
+    /// @apiNote
+    /// Few clients pipeline requests, but some load generators do. For other
+    /// clients, the benefit is nil, and there is a cost of one virtual thread
+    /// per exchange.
+    boolean pipelineRequests();
+    
     /**
      * {@return max duration the library awaits a file lock}<p>
      * 
@@ -258,6 +458,10 @@ public interface Config
      * has yielded control), well then the request thread was no longer
      * stalling, so from the server's point of view, not a problem.<p>
      * 
+     * This is true also if {@link #pipelineRequests()} is enabled. The read
+     * operation parsing the next request head ahead of time does not start
+     * the timer until the current response has been written.<p>
+     * 
      * The timer is never reset <i>during</i> the channel operation. The
      * application should therefore not allocate and use unimaginably large
      * bytebuffers for response bodies, as this could theoretically cause a
@@ -276,8 +480,15 @@ public interface Config
      * networks even older than 2G (10-15% of Cellular Digital Packet Data
      * rate).<p>
      * 
-     * The server's read-buffer is 512 bytes large, so will accept an even
-     * slower inbound transfer rate.<p>
+     * A response body backed by a file ({@link ByteBufferIterables#ofFile(Path)
+     * ofFile}) is transferred by the server directly from the file into the
+     * channel, at most 65 536 bytes at a time; which puts the minimum rate at
+     * 0.36409 kB/s.<p>
+     * 
+     * The server's read-buffer starts at 512 bytes, and grows no larger than
+     * {@link #maxReadBufferSize()}. A read operation completes as soon as any
+     * bytes have been received, regardless of the buffer size, so the server
+     * will accept an even slower inbound transfer rate.<p>
      * 
      * There is currently no configuration to explicitly set minimum transfer
      * rates.
@@ -380,6 +591,133 @@ public interface Config
          */
         Builder maxErrorResponses(int newVal);
         
+        /**
+         * Sets a new value.
+         * 
+         * @param newVal new value
+         * 
+         * @return a new builder representing the new state
+         * 
+         * @throws IllegalArgumentException
+         *             if {@code newVal} is negative
+         * 
+         * @see Config#maxCoalescedBodySize()
+         */
+        Builder maxCoalescedBodySize(int newVal);
+        
+        /**
+         * Sets a new value.
+         * 
+         * @param newVal new value
+         * 
+         * @return a new builder representing the new state
+         * 
+         * @throws IllegalArgumentException
+         *             if {@code newVal} is negative
+         * 
+         * @see Config#chunkSize()
+         */
+        Builder chunkSize(int newVal);
+        
+        /**
+         * Sets a new value.
+         * 
+         * @param newVal new value
+         * 
+         * @return a new builder representing the new state
+         * 
+         * @throws IllegalArgumentException
+         *             if {@code newVal} is not within the range 0 to 9
+         * 
+         * @see Config#compressionLevel()
+         */
+        Builder compressionLevel(int newVal);
+        
+        /**
+         * Sets a new value.
+         * 
+         * @param newVal new value
+         * 
+         * @return a new builder representing the new state
+         * 
+         * @throws IllegalArgumentException
+         *             if {@code newVal} is negative
+         * 
+         * @see Config#minCompressionSize()
+         */
+        Builder minCompressionSize(int newVal);
+        
+        /**
+         * Sets a new value.
+         * 
+         * @param newVal new value
+         * 
+         * @return a new builder representing the new state
+         * 
+         * @throws NullPointerException
+         *             if {@code newVal} is {@code null}, or contains
+         *             {@code null}
+         * 
+         * @see Config#compressibleMediaTypes()
+         */
+        Builder compressibleMediaTypes(List<MediaType> newVal);
+        
+        /**
+         * Sets a new value.
+         * 
+         * @param newVal new value
+         * 
+         * @return a new builder representing the new state
+         * 
+         * @throws IllegalArgumentException
+         *             if {@code newVal} is not within the range 0 to 100
+         * 
+         * @see Config#maxCompressionCpuLoad()
+         */
+        Builder maxCompressionCpuLoad(int newVal);
+        
+        /**
+         * Sets a new value.
+         * 
+         * @param newVal new value
+         * 
+         * @return a new builder representing the new state
+         * 
+         * @throws IllegalArgumentException
+         *             if {@code newVal} is negative
+         * 
+         * @see Config#bufferPoolCapacity()
+         */
+        Builder bufferPoolCapacity(int newVal);
+        
+        /**
+         * Sets a new value.
+         * 
+         * @param newVal new value
+         * 
+         * @return a new builder representing the new state
+         * 
+         * @throws IllegalArgumentException
+         *             if {@code newVal} is negative
+         * 
+         * @see Config#maxReadBufferSize()
+         */
+        Builder maxReadBufferSize(int newVal);
+        
+        /**
+         * Sets a new value.
+         * 
+         * @param newVal new value
+         * 
+         * @return a new builder representing the new state
+         * 
+         * @throws IllegalArgumentException
+         *             if {@code newVal} is negative
+         * 
+         * @see Config#mediaTypeCacheSize()
+         */
+        Builder mediaTypeCacheSize(int newVal);
+        
         /**
          * Sets a new value.
          * 
@@ -416,6 +754,15 @@ public interface Config
          */
         Builder immediatelyContinueExpect100(boolean newVal);
         
+        /**
+         * Sets a new value.
+         * 
+         * @param newVal new value
+         * @return a new builder representing the new state
+         * @see Config#pipelineRequests()
+         */
+        Builder pipelineRequests(boolean newVal);
+        
         /**
          * Sets a new value.<p>
          * 
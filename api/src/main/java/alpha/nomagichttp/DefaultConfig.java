@@ -1,13 +1,18 @@
 package alpha.nomagichttp;
 
 import alpha.nomagichttp.HttpConstants.Version;
+import alpha.nomagichttp.message.MediaType;
 import alpha.nomagichttp.util.AbstractImmutableBuilder;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
 
 import static alpha.nomagichttp.HttpConstants.Version.HTTP_1_0;
 import static alpha.nomagichttp.HttpConstants.Version.HTTP_1_1;
+import static alpha.nomagichttp.message.MediaType.APPLICATION_JSON;
+import static alpha.nomagichttp.message.MediaType.IMAGE_SVG_XML;
+import static alpha.nomagichttp.message.MediaType.parse;
 import static java.time.Duration.ofMinutes;
 import static java.time.Duration.ofSeconds;
 import static java.util.Objects.requireNonNull;
@@ -22,10 +27,20 @@ final class DefaultConfig implements Config {
     private final int      maxRequestHeadSize,
                            maxRequestBodyBufferSize,
                            maxRequestTrailersSize,
-                           maxErrorResponses;
+                           maxErrorResponses,
+                           maxCoalescedBodySize,
+                           chunkSize,
+                           compressionLevel,
+                           minCompressionSize,
+                           maxCompressionCpuLoad,
+                           bufferPoolCapacity,
+                           maxReadBufferSize,
+                           mediaTypeCacheSize;
+    private final List<MediaType> compressibleMediaTypes;
     private final Version  minHttpVersion;
     private final boolean  discardRejectedInformational,
-                           immediatelyContinueExpect100;
+                           immediatelyContinueExpect100,
+                           pipelineRequests;
     private final Duration timeoutFileLock,
                            timeoutIdleConnection;
     private final boolean  implementMissingOptions;
@@ -36,9 +51,19 @@ final class DefaultConfig implements Config {
         maxRequestBodyBufferSize     = s.maxRequestBodyBufferSize;
         maxRequestTrailersSize       = s.maxRequestTrailersSize;
         maxErrorResponses            = s.maxErrorResponses;
+        maxCoalescedBodySize         = s.maxCoalescedBodySize;
+        chunkSize                    = s.chunkSize;
+        compressionLevel             = s.compressionLevel;
+        minCompressionSize           = s.minCompressionSize;
+        compressibleMediaTypes       = s.compressibleMediaTypes;
+        maxCompressionCpuLoad        = s.maxCompressionCpuLoad;
+        bufferPoolCapacity           = s.bufferPoolCapacity;
+        maxReadBufferSize            = s.maxReadBufferSize;
+        mediaTypeCacheSize           = s.mediaTypeCacheSize;
         minHttpVersion               = s.minHttpVersion;
         discardRejectedInformational = s.discardRejectedInformational;
         immediatelyContinueExpect100 = s.immediatelyContinueExpect100;
+        pipelineRequests             = s.pipelineRequests;
         timeoutFileLock              = s.timeoutFileLock;
         timeoutIdleConnection        = s.timeoutIdleConnection;
         implementMissingOptions      = s.implementMissingOptions;
@@ -64,6 +89,51 @@ final class DefaultConfig implements Config {
         return maxErrorResponses;
     }
     
+    @Override
+    public int maxCoalescedBodySize() {
+        return maxCoalescedBodySize;
+    }
+    
+    @Override
+    public int chunkSize() {
+        return chunkSize;
+    }
+    
+    @Override
+    public int compressionLevel() {
+        return compressionLevel;
+    }
+    
+    @Override
+    public int minCompressionSize() {
+        return minCompressionSize;
+    }
+    
+    @Override
+    public List<MediaType> compressibleMediaTypes() {
+        return compressibleMediaTypes;
+    }
+    
+    @Override
+    public int maxCompressionCpuLoad() {
+        return maxCompressionCpuLoad;
+    }
+    
+    @Override
+    public int bufferPoolCapacity() {
+        return bufferPoolCapacity;
+    }
+    
+    @Override
+    public int maxReadBufferSize() {
+        return maxReadBufferSize;
+    }
+    
+    @Override
+    public int mediaTypeCacheSize() {
+        return mediaTypeCacheSize;
+    }
+    
     @Override
     public HttpConstants.Version minHttpVersion() {
         return minHttpVersion;
@@ -79,6 +149,11 @@ final class DefaultConfig implements Config {
         return immediatelyContinueExpect100;
     }
     
+    @Override
+    public boolean pipelineRequests() {
+        return pipelineRequests;
+    }
+    
     @Override
     public Duration timeoutFileLock() {
         return timeoutFileLock;
@@ -109,10 +184,25 @@ final class DefaultConfig implements Config {
             int      maxRequestHeadSize           = 401_216,
                      maxRequestBodyBufferSize     = 20_971_520,
                      maxRequestTrailersSize       = 8_000,
-                     maxErrorResponses            = 3;
+                     maxErrorResponses            = 3,
+                     maxCoalescedBodySize         = 8_192,
+                     chunkSize                    = 8_192,
+                     compressionLevel             = 0,
+                     minCompressionSize           = 1_024,
+                     maxCompressionCpuLoad        = 80,
+                     bufferPoolCapacity           = 16_777_216,
+                     maxReadBufferSize            = 65_536,
+                     mediaTypeCacheSize           = 256;
+            List<MediaType> compressibleMediaTypes = List.of(
+                     parse("text/*"),
+                     APPLICATION_JSON,
+                     parse("application/javascript"),
+                     parse("application/xml"),
+                     IMAGE_SVG_XML);
             Version  minHttpVersion               = HTTP_1_0;
             boolean  discardRejectedInformational = true,
-                     immediatelyContinueExpect100 = false;
+                     immediatelyContinueExpect100 = false,
+                     pipelineRequests             = false;
             Duration timeoutFileLock              = ofSeconds(3),
                      timeoutIdleConnection        = ofMinutes(3);
             boolean  implementMissingOptions      = true;
@@ -141,6 +231,76 @@ final class DefaultConfig implements Config {
             return new DefaultBuilder(this, s -> s.maxErrorResponses = newVal);
         }
         
+        @Override
+        public Builder maxCoalescedBodySize(int newVal) {
+            if (newVal < 0) {
+                throw new IllegalArgumentException();
+            }
+            return new DefaultBuilder(this, s -> s.maxCoalescedBodySize = newVal);
+        }
+        
+        @Override
+        public Builder chunkSize(int newVal) {
+            if (newVal < 0) {
+                throw new IllegalArgumentException();
+            }
+            return new DefaultBuilder(this, s -> s.chunkSize = newVal);
+        }
+        
+        @Override
+        public Builder compressionLevel(int newVal) {
+            if (newVal < 0 || newVal > 9) {
+                throw new IllegalArgumentException();
+            }
+            return new DefaultBuilder(this, s -> s.compressionLevel = newVal);
+        }
+        
+        @Override
+        public Builder minCompressionSize(int newVal) {
+            if (newVal < 0) {
+                throw new IllegalArgumentException();
+            }
+            return new DefaultBuilder(this, s -> s.minCompressionSize = newVal);
+        }
+        
+        @Override
+        public Builder compressibleMediaTypes(List<MediaType> newVal) {
+            final var copy = List.copyOf(newVal);
+            return new DefaultBuilder(this, s -> s.compressibleMediaTypes = copy);
+        }
+        
+        @Override
+        public Builder maxCompressionCpuLoad(int newVal) {
+            if (newVal < 0 || newVal > 100) {
+                throw new IllegalArgumentException();
+            }
+            return new DefaultBuilder(this, s -> s.maxCompressionCpuLoad = newVal);
+        }
+        
+        @Override
+        public Builder bufferPoolCapacity(int newVal) {
+            if (newVal < 0) {
+                throw new IllegalArgumentException();
+            }
+            return new DefaultBuilder(this, s -> s.bufferPoolCapacity = newVal);
+        }
+        
+        @Override
+        public Builder maxReadBufferSize(int newVal) {
+            if (newVal < 0) {
+                throw new IllegalArgumentException();
+            }
+            return new DefaultBuilder(this, s -> s.maxReadBufferSize = newVal);
+        }
+        
+        @Override
+        public Builder mediaTypeCacheSize(int newVal) {
+            if (newVal < 0) {
+                throw new IllegalArgumentException();
+            }
+            return new DefaultBuilder(this, s -> s.mediaTypeCacheSize = newVal);
+        }
+        
         @Override
         public Builder minHttpVersion(Version newVal) {
             if (newVal.isLessThan(HTTP_1_0) || newVal.isGreaterThan(HTTP_1_1)) {
@@ -159,6 +319,11 @@ final class DefaultConfig implements Config {
             return new DefaultBuilder(this, s -> s.immediatelyContinueExpect100 = newVal);
         }
         
+        @Override
+        public Builder pipelineRequests(boolean newVal) {
+            return new DefaultBuilder(this, s -> s.pipelineRequests = newVal);
+        }
+        
         @Override
         public Builder timeoutFileLock(Duration newVal) {
             requireNonNull(newVal);
@@ -13,11 +13,15 @@ import alpha.nomagichttp.handler.ExceptionHandler;
 import alpha.nomagichttp.handler.RequestHandler;
 import alpha.nomagichttp.message.IllegalRequestBodyException;
 import alpha.nomagichttp.message.IllegalResponseBodyException;
+import alpha.nomagichttp.message.MediaTypeCache;
 import alpha.nomagichttp.message.RawRequest;
 import alpha.nomagichttp.message.Response;
 import alpha.nomagichttp.route.Route;
 import alpha.nomagichttp.route.RouteRegistry;
+import alpha.nomagichttp.util.ByteBufferIterables;
+import alpha.nomagichttp.util.ByteBufferPool;
 import alpha.nomagichttp.util.ScopedValues;
+import alpha.nomagichttp.util.ServerMetrics;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -605,6 +609,47 @@ public interface HttpServer extends RouteRegistry, ActionRegistry
     /// {@return the server's configuration}
     Config getConfig();
     
+    /// {@return the server's buffer pool}
+    /// 
+    /// The pool is created using the server's
+    /// [configured capacity][Config#bufferPoolCapacity()], and is used for
+    /// reading from client channels and for reading files into memory (e.g.
+    /// [ByteBufferIterables#ofFile(java.nio.file.Path)]).
+    /// 
+    /// The statistics of the pool may be of interest to monitor:
+    /// 
+    /// {@snippet :
+    ///    // @link substring="stats" target="ByteBufferPool#stats()" :
+    ///    var stats = httpServer().bufferPool().stats();
+    ///  }
+    ByteBufferPool bufferPool();
+    
+    /// {@return the server's media type cache}
+    /// 
+    /// The cache is created using the server's
+    /// [configured size][Config#mediaTypeCacheSize()], and is used for parsing
+    /// the "Content-Type" and "Accept" headers of requests.
+    /// 
+    /// The statistics of the cache may be of interest to monitor:
+    /// 
+    /// {@snippet :
+    ///    // @link substring="stats" target="MediaTypeCache#stats()" :
+    ///    var stats = httpServer().mediaTypeCache().stats();
+    ///  }
+    MediaTypeCache mediaTypeCache();
+    
+    /// {@return the server's metrics}
+    /// 
+    /// The metrics are always collected, and the overhead is low enough for
+    /// production use. A snapshot can be read, or exported in the Prometheus
+    /// text format:
+    /// 
+    /// {@snippet :
+    ///    // @link substring="toPrometheus" target="ServerMetrics.Snapshot#toPrometheus()" :
+    ///    var text = httpServer().metrics().snapshot().toPrometheus();
+    ///  }
+    ServerMetrics metrics();
+    
     /// {@return the socket address this server's channel's socket is bound to}
     /// 
     /// @throws IllegalStateException
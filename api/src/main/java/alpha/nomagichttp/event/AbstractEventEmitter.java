@@ -3,6 +3,7 @@ package alpha.nomagichttp.event;
 import alpha.nomagichttp.util.TriConsumer;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -19,7 +20,10 @@ import static java.util.Objects.requireNonNull;
  * {@link #emit(Object, Object, Object)} method.<p>
  * 
  * The implementation is backed by a {@code Map} of event types to a {@code Set}
- * of listeners.<p>
+ * of listeners. Emitting an event does not read the map. Each subscription
+ * change publishes a new, immutable snapshot of the listeners; one array per
+ * event type. Emitting an event that has no listeners costs a map lookup and
+ * no allocation. Otherwise, the array is iterated.<p>
  * 
  * Implementations that know in advance what events will be emitted ought to
  * override {@link #supports(Class)}.<p>
@@ -57,6 +61,8 @@ import static java.util.Objects.requireNonNull;
 public abstract class AbstractEventEmitter implements EventEmitter
 {
     private final Map<Class<?>, Set<Object>> listeners;
+    // Copy of listeners, used by emit(); written only by publish()
+    private volatile Map<Class<?>, Object[]> snapshot = Map.of();
     private final Supplier<? extends Set<Object>> setImpl;
     private final BooleanSupplier when;
     private final Consumer<Runnable> decorator;
@@ -136,8 +142,8 @@ public abstract class AbstractEventEmitter implements EventEmitter
      * @throws NullPointerException if {@code ev} is {@code null}
      */
     protected int emit(Object ev, Object att1, Object att2) {
-        var s = listeners.getOrDefault(ev.getClass(), Set.of());
-        return emit(s, ev, att1, att2);
+        var arr = snapshot.get(ev.getClass());
+        return arr == null ? 0 : emit(arr, ev, att1, att2);
     }
     
     /**
@@ -153,8 +159,23 @@ public abstract class AbstractEventEmitter implements EventEmitter
      *             listeners for the event (lazy, implicit validation)
      */
     protected int emitLazy(Object ev, Supplier<?> att1, Supplier<?> att2) {
-        var s = listeners.getOrDefault(ev.getClass(), Set.of());
-        return emitLazy(s, ev, att1, att2);
+        var arr = snapshot.get(ev.getClass());
+        return arr == null ? 0 : emit(arr, ev, att1.get(), att2.get());
+    }
+    
+    /**
+     * Returns {@code true} if there are listeners subscribed to the given
+     * event type, otherwise {@code false}.<p>
+     * 
+     * This method can be used to skip creating an event, or its attachments,
+     * when no one is listening.
+     * 
+     * @param eventType event type
+     * @return see JavaDoc
+     * @throws NullPointerException if {@code eventType} is {@code null}
+     */
+    protected boolean hasListeners(Class<?> eventType) {
+        return snapshot.containsKey(eventType);
     }
     
     /**
@@ -175,6 +196,28 @@ public abstract class AbstractEventEmitter implements EventEmitter
         return emit0(listeners, ev, att1, att2);
     }
     
+    /**
+     * Synchronously invokes all listeners with the given event and attachments.
+     * 
+     * @param listeners to invoke
+     * @param ev to emit
+     * @param att1 optional attachment (may be {@code null})
+     * @param att2 optional attachment (may be {@code null})
+     * @return a count of listeners invoked (capped at {@code Integer.MAX_VALUE})
+     * @throws NullPointerException if {@code ev} is {@code null}
+     */
+    protected int emit(Object[] listeners, Object ev, Object att1, Object att2) {
+        requireNonNull(ev);
+        int n = 0;
+        for (Object l : listeners) {
+            call(l, ev, att1, att2);
+            if (n < Integer.MAX_VALUE) {
+                ++n;
+            }
+        }
+        return n;
+    }
+    
     /**
      * Synchronously invokes all listeners with the given event and lazy
      * attachment.
@@ -199,40 +242,7 @@ public abstract class AbstractEventEmitter implements EventEmitter
     private int emit0(Collection<?> listeners, Object ev, Object att1, Object att2) {
         int n = 0;
         for (Object l : listeners) {
-            // An early implementation used a "ListenerProxy" so that the type
-            // check and casting was only performed once in the operations on/off.
-            // The idea was not bad: many emitters likely emit vastly more events
-            // over time than subscription operations, so we'd rather take that
-            // cost early on and let the emissions be fast[er].
-            //     Albeit this is not always the case of course. Some emitters
-            // used internally by the server are very short-lived and has only
-            // one listener. So they would instead suffer and pay an extra cost
-            // of creating the proxy object for no gain. Then, early
-            // implementation drafts exposed "profiles" that could be used to
-            // tailor these details, but complexity only grew until reason took
-            // over and decided that "early optimization is the root of all evil".
-            if (l instanceof Consumer) {
-                Consumer<Object> uni = retype(l);
-                if (when != null && when.getAsBoolean()) {
-                    decorator.accept(() -> uni.accept(ev));
-                } else {
-                    uni.accept(ev);
-                }
-            } else if (l instanceof BiConsumer) {
-                BiConsumer<Object, Object> bi = retype(l);
-                if (when != null && when.getAsBoolean()) {
-                    decorator.accept(() -> bi.accept(ev, att1));
-                } else {
-                    bi.accept(ev, att1);
-                }
-            } else {
-                TriConsumer<Object, Object, Object> tri = retype(l);
-                if (when != null && when.getAsBoolean()) {
-                    decorator.accept(() -> tri.accept(ev, att1, att2));
-                } else {
-                    tri.accept(ev, att1, att2);
-                }
-            }
+            call(l, ev, att1, att2);
             if (n < Integer.MAX_VALUE) {
                 ++n;
             }
@@ -240,6 +250,43 @@ public abstract class AbstractEventEmitter implements EventEmitter
         return n;
     }
     
+    private void call(Object l, Object ev, Object att1, Object att2) {
+        // An early implementation used a "ListenerProxy" so that the type
+        // check and casting was only performed once in the operations on/off.
+        // The idea was not bad: many emitters likely emit vastly more events
+        // over time than subscription operations, so we'd rather take that
+        // cost early on and let the emissions be fast[er].
+        //     Albeit this is not always the case of course. Some emitters
+        // used internally by the server are very short-lived and has only
+        // one listener. So they would instead suffer and pay an extra cost
+        // of creating the proxy object for no gain. Then, early
+        // implementation drafts exposed "profiles" that could be used to
+        // tailor these details, but complexity only grew until reason took
+        // over and decided that "early optimization is the root of all evil".
+        if (l instanceof Consumer) {
+            Consumer<Object> uni = retype(l);
+            if (when != null && when.getAsBoolean()) {
+                decorator.accept(() -> uni.accept(ev));
+            } else {
+                uni.accept(ev);
+            }
+        } else if (l instanceof BiConsumer) {
+            BiConsumer<Object, Object> bi = retype(l);
+            if (when != null && when.getAsBoolean()) {
+                decorator.accept(() -> bi.accept(ev, att1));
+            } else {
+                bi.accept(ev, att1);
+            }
+        } else {
+            TriConsumer<Object, Object, Object> tri = retype(l);
+            if (when != null && when.getAsBoolean()) {
+                decorator.accept(() -> tri.accept(ev, att1, att2));
+            } else {
+                tri.accept(ev, att1, att2);
+            }
+        }
+    }
+    
     @SuppressWarnings("unchecked")
     private static <T> T retype(Object thing) {
         return (T) thing;
@@ -297,8 +344,12 @@ public abstract class AbstractEventEmitter implements EventEmitter
             throw new IllegalArgumentException(
                     "Event type not supported: " + eventType);
         }
-        return listeners.computeIfAbsent(eventType, k -> setImpl.get())
+        boolean s = listeners.computeIfAbsent(eventType, k -> setImpl.get())
                 .add(listener);
+        if (s) {
+            publish(eventType);
+        }
+        return s;
     }
     
     private boolean removeListener(Class<?> eventType, Object listener) {
@@ -310,9 +361,29 @@ public abstract class AbstractEventEmitter implements EventEmitter
             listeners.computeIfPresent(eventType,
                     (k, v) -> v.isEmpty() ? null : v);
         }
+        if (s) {
+            publish(eventType);
+        }
         return s;
     }
     
+    /**
+     * Replaces the snapshot's listeners of the given event type.<p>
+     * 
+     * Serialized, so that the snapshot published last reflects all
+     * subscription changes made before it.
+     */
+    private synchronized void publish(Class<?> eventType) {
+        var set = listeners.get(eventType);
+        var copy = new HashMap<>(snapshot);
+        if (set == null || set.isEmpty()) {
+            copy.remove(eventType);
+        } else {
+            copy.put(eventType, set.toArray());
+        }
+        snapshot = Map.copyOf(copy);
+    }
+    
     private static void requireNotInterface(Class<?> eventType) {
         // Annotation is an interface
         if (eventType.isInterface()) {
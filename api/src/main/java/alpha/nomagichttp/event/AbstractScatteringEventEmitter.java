@@ -6,6 +6,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
 
@@ -24,6 +25,8 @@ public abstract class AbstractScatteringEventEmitter
                 implements ScatteringEventEmitter
 {
     private final Set<TriConsumer<?, ?, ?>> catchAll = ConcurrentHashMap.newKeySet(1);
+    // Copy of catchAll, used by emit(); written only by publish()
+    private volatile Object[] snapshot = {};
     
     /**
      * Constructs this object.
@@ -46,21 +49,63 @@ public abstract class AbstractScatteringEventEmitter
     
     @Override
     protected int emit(Object ev, Object att1, Object att2) {
+        final Object[] all = snapshot;
         int a = super.emit(ev, att1, att2),
-            b = emit(catchAll, ev, att1, att2);
+            b = all.length == 0 ? 0 : emit(all, ev, att1, att2);
         return addExactCapped(a, b);
     }
     
+    /**
+     * {@inheritDoc}<p>
+     * 
+     * The implementation in this class also invokes catch-all listeners. The
+     * attachments are produced at most once.
+     */
+    @Override
+    protected int emitLazy(Object ev, Supplier<?> att1, Supplier<?> att2) {
+        final Object[] all = snapshot;
+        if (all.length == 0) {
+            return super.emitLazy(ev, att1, att2);
+        }
+        if (!super.hasListeners(ev.getClass())) {
+            return emit(all, ev, att1.get(), att2.get());
+        }
+        return emit(ev, att1.get(), att2.get());
+    }
+    
+    /**
+     * {@inheritDoc}<p>
+     * 
+     * The implementation in this class also returns {@code true} if there are
+     * catch-all listeners.
+     */
+    @Override
+    protected boolean hasListeners(Class<?> eventType) {
+        return super.hasListeners(eventType) || snapshot.length > 0;
+    }
+    
     @Override
     public <T, U, V> boolean onAll(TriConsumer<? super T, ? super U, ? super V> l) {
         requireNonNull(l);
-        return catchAll.add(l);
+        if (catchAll.add(l)) {
+            publish();
+            return true;
+        }
+        return false;
     }
     
     @Override
     public boolean offAll(TriConsumer<?, ?, ?> l) {
         requireNonNull(l);
-        return catchAll.remove(l);
+        if (catchAll.remove(l)) {
+            publish();
+            return true;
+        }
+        return false;
+    }
+    
+    private synchronized void publish() {
+        snapshot = catchAll.toArray();
     }
     
     private static int addExactCapped(int x, int y) {
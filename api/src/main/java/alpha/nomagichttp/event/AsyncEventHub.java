@@ -0,0 +1,328 @@
+package alpha.nomagichttp.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static java.lang.System.Logger.Level.WARNING;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link EventHub} that delivers events asynchronously.<p>
+ * 
+ * A dispatched event is put in a bounded, lock-free ring buffer, and the
+ * dispatching thread returns immediately. A dedicated virtual thread takes the
+ * events from the buffer, in batches, and delivers them to the listeners, in
+ * the order they were dispatched. Lazy attachments are produced by the
+ * dispatching thread, if there are listeners of the event.<p>
+ * 
+ * All events from the server's hub are dispatched synchronously, by the thread
+ * running the exchange; a slow listener of {@link ResponseSent} adds latency
+ * to every response. Such a listener can instead subscribe to an
+ * asynchronous hub, which redistributes the server's events:
+ * 
+ * {@snippet :
+ *   var async = new AsyncEventHub(1_024, AsyncEventHub.Overflow.DROP);
+ *   async.redistribute(server.events());
+ *   async.on(ResponseSent.class, metrics::collect);
+ * }
+ * 
+ * What happens when the buffer is full is determined by the
+ * {@link Overflow} policy. A dropped event is not delivered, and counted in
+ * the {@link #stats() statistics}.<p>
+ * 
+ * A listener that throws an exception does not stop the delivery to other
+ * listeners, nor of subsequent events. The exception is logged.<p>
+ * 
+ * The hub should be closed when no longer used, which stops the delivering
+ * thread. Events dispatched after the hub has been closed are dropped.<p>
+ * 
+ * Because an event is delivered at a later point in time, the dispatch methods
+ * of this class always return 0.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+public final class AsyncEventHub extends DefaultEventHub implements AutoCloseable
+{
+    private static final System.Logger
+            LOG = System.getLogger(AsyncEventHub.class.getPackageName());
+    
+    /** Max number of events delivered per batch. */
+    private static final int BATCH_SIZE = 64;
+    
+    /** When sampling, one in this many overflowing events are kept. */
+    private static final int SAMPLE_RATE = 16;
+    
+    /** Enqueued by close(); marks the end of the buffer. */
+    private static final Queued END = new Queued(new Object(), null, null);
+    
+    /**
+     * What to do with an event dispatched when the buffer is full.
+     */
+    public enum Overflow {
+        /**
+         * Drop the event.
+         */
+        DROP,
+        /**
+         * Block the dispatching thread until there is room for the event.<p>
+         * 
+         * If the dispatching thread is interrupted while waiting, the event is
+         * dropped, and the thread's interrupt flag is set.
+         */
+        BLOCK,
+        /**
+         * Drop the event, except one in every 16 overflowing events, which
+         * takes the place of the oldest buffered event (which is dropped).<p>
+         * 
+         * The listeners will then keep receiving a sample of recent events,
+         * albeit late, even if the buffer never drains.
+         */
+        SAMPLE
+    }
+    
+    private final RingBuffer<Queued> buffer;
+    private final Overflow overflow;
+    private final LongAdder delivered, dropped, overflowed;
+    private final Thread consumer;
+    private final AtomicBoolean closed;
+    // Set by the delivering thread before it drops the remaining events
+    private volatile boolean terminated;
+    
+    /**
+     * Constructs an {@code AsyncEventHub}.
+     * 
+     * @param capacity of the buffer (number of events)
+     * @param overflow policy
+     * 
+     * @throws NullPointerException
+     *             if {@code overflow} is {@code null}
+     * @throws IllegalArgumentException
+     *             if {@code capacity} is less than 1
+     */
+    public AsyncEventHub(int capacity, Overflow overflow) {
+        this(capacity, overflow, () -> false, Runnable::run);
+    }
+    
+    /**
+     * Constructs an {@code AsyncEventHub}.<p>
+     * 
+     * The decorator is called by the delivering thread.
+     * 
+     * @param capacity of the buffer (number of events)
+     * @param overflow policy
+     * @param when see {@link AbstractEventEmitter}
+     * @param decorator see {@link AbstractEventEmitter}
+     * 
+     * @throws NullPointerException
+     *             if any reference argument is {@code null}
+     * @throws IllegalArgumentException
+     *             if {@code capacity} is less than 1
+     */
+    public AsyncEventHub(
+            int capacity, Overflow overflow,
+            BooleanSupplier when, Consumer<Runnable> decorator) {
+        super(when, decorator);
+        this.buffer = new RingBuffer<>(capacity);
+        this.overflow = requireNonNull(overflow);
+        this.delivered = new LongAdder();
+        this.dropped = new LongAdder();
+        this.overflowed = new LongAdder();
+        this.closed = new AtomicBoolean();
+        this.consumer = start();
+    }
+    
+    private Thread start() {
+        return Thread.ofVirtual()
+                     .name(AsyncEventHub.class.getSimpleName())
+                     .start(this::drain);
+    }
+    
+    @Override
+    protected int emit(Object ev, Object att1, Object att2) {
+        if (hasListeners(ev.getClass())) {
+            enqueue(new Queued(ev, att1, att2));
+        }
+        return 0;
+    }
+    
+    @Override
+    protected int emitLazy(Object ev, Supplier<?> att1, Supplier<?> att2) {
+        if (hasListeners(ev.getClass())) {
+            enqueue(new Queued(ev, att1.get(), att2.get()));
+        }
+        return 0;
+    }
+    
+    private void enqueue(Queued q) {
+        if (closed.get()) {
+            dropped.increment();
+            return;
+        }
+        // The hub may have been closed after the check; the event may then
+        // have landed after END, when the delivering thread has already
+        // dropped the remaining events. Either the delivering thread sees the
+        // event, or this thread sees the flag, and drops what is left.
+        if (offer(q) && terminated) {
+            dropRemaining(new ArrayList<>());
+        }
+    }
+    
+    private boolean offer(Queued q) {
+        if (buffer.offer(q)) {
+            return true;
+        }
+        overflowed.increment();
+        switch (overflow) {
+            case DROP -> dropped.increment();
+            case BLOCK -> {
+                try {
+                    buffer.put(q);
+                    return true;
+                } catch (InterruptedException e) {
+                    dropped.increment();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            case SAMPLE -> {
+                final Queued old = overflowed.sum() % SAMPLE_RATE == 0 ?
+                        buffer.poll() : null;
+                if (old == END) {
+                    // Closed, and the delivering thread awaits END
+                    while (!buffer.offer(END)) {
+                        Thread.onSpinWait();
+                    }
+                    dropped.increment();
+                    return false;
+                }
+                if (old != null) {
+                    dropped.increment();
+                }
+                if (buffer.offer(q)) {
+                    return true;
+                }
+                dropped.increment();
+            }
+        }
+        return false;
+    }
+    
+    private void drain() {
+        final List<Queued> batch = new ArrayList<>(BATCH_SIZE);
+        for (;;) {
+            try {
+                batch.add(buffer.take());
+            } catch (InterruptedException e) {
+                // Only close() interrupts, if it is interrupted while waiting
+                terminated = true;
+                dropRemaining(batch);
+                return;
+            }
+            buffer.drainTo(batch, BATCH_SIZE - 1);
+            for (int i = 0; i < batch.size(); ++i) {
+                final Queued q = batch.get(i);
+                if (q == END) {
+                    terminated = true;
+                    dropRemaining(new ArrayList<>(
+                            batch.subList(i + 1, batch.size())));
+                    return;
+                }
+                deliver(q);
+            }
+            batch.clear();
+        }
+    }
+    
+    /**
+     * Counts the specified and all buffered events as dropped.<p>
+     * 
+     * These are events enqueued concurrently with {@link #close()}, or after
+     * an interrupt.
+     * 
+     * @param rest of the taken events
+     */
+    private void dropRemaining(List<Queued> rest) {
+        buffer.drainTo(rest, Integer.MAX_VALUE);
+        for (Queued q : rest) {
+            if (q != END) {
+                dropped.increment();
+            }
+        }
+    }
+    
+    private void deliver(Queued q) {
+        try {
+            super.emit(q.ev, q.att1, q.att2);
+        } catch (RuntimeException e) {
+            LOG.log(WARNING, "Event listener failed.", e);
+        }
+        delivered.increment();
+    }
+    
+    /**
+     * Returns a snapshot of the hub's statistics.<p>
+     * 
+     * The counters are not read atomically with regards to each other.
+     * 
+     * @return a snapshot of the hub's statistics (never {@code null})
+     */
+    public Stats stats() {
+        return new Stats(
+                delivered.sum(), dropped.sum(), overflowed.sum(), buffer.size());
+    }
+    
+    /**
+     * Statistics of an asynchronous hub.
+     * 
+     * @param delivered number of events delivered
+     * @param dropped number of events dropped
+     * @param overflowed number of events dispatched when the buffer was full
+     * @param buffered number of events waiting to be delivered
+     */
+    public record Stats(
+            long delivered, long dropped, long overflowed, int buffered) {
+        // Empty
+    }
+    
+    /**
+     * Closes this hub.<p>
+     * 
+     * Events buffered before this method was called are delivered, and this
+     * method returns when the delivering thread has stopped. If the calling
+     * thread is interrupted while waiting, the delivering thread is
+     * interrupted too, and remaining events are not delivered.<p>
+     * 
+     * An event dispatched concurrently with this method is either delivered or
+     * counted as dropped.<p>
+     * 
+     * This method is idempotent.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            buffer.put(END);
+            consumer.join();
+        } catch (InterruptedException e) {
+            consumer.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Not a record; events are compared by identity (see END)
+    private static final class Queued {
+        final Object ev, att1, att2;
+        
+        Queued(Object ev, Object att1, Object att2) {
+            this.ev = ev;
+            this.att1 = att1;
+            this.att2 = att2;
+        }
+    }
+}
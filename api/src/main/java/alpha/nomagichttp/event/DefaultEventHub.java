@@ -58,6 +58,18 @@ public class DefaultEventHub extends AbstractScatteringEventEmitter implements E
         return emitLazy(event, attachment1, attachment2);
     }
     
+    /**
+     * {@inheritDoc}<p>
+     * 
+     * This implementation returns {@code true} if there are listeners
+     * subscribed to the event type, or catch-all listeners. The answer does
+     * not cost more than a map lookup.
+     */
+    @Override
+    public boolean hasListeners(Class<?> eventType) {
+        return super.hasListeners(eventType);
+    }
+    
     @Override
     public void redistribute(ScatteringEventEmitter emitter) {
         if (this == emitter) {
@@ -148,6 +148,31 @@ public interface EventHub extends ScatteringEventEmitter, EventEmitter
      */
     int dispatchLazy(Object event, Supplier<?> attachment1, Supplier<?> attachment2);
     
+    /**
+     * Returns {@code true} if there may be listeners of the given event type,
+     * otherwise {@code false}.<p>
+     * 
+     * A dispatch of an event is pointless if this method returns
+     * {@code false}. The intended use is for a hot path to skip creating the
+     * event, or the attachments (or the suppliers thereof), when no one is
+     * listening:
+     * 
+     * {@snippet :
+     *   if (hub.hasListeners(ThingCreated.class)) {
+     *       hub.dispatchLazy(ThingCreated.INSTANCE, () -> expensive(thing));
+     *   }
+     * }
+     * 
+     * The default implementation always returns {@code true}.
+     * 
+     * @param eventType event type
+     * @return see JavaDoc
+     * @throws NullPointerException if {@code eventType} is {@code null}
+     */
+    default boolean hasListeners(Class<?> eventType) {
+        return true;
+    }
+    
     /**
      * Assigns this hub to redistribute all events from the given emitter.<p>
      * 
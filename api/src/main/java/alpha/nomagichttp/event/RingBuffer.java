@@ -0,0 +1,228 @@
+package alpha.nomagichttp.event;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded ring buffer for multiple producers and a single consumer.<p>
+ * 
+ * The non-blocking methods are lock-free. The implementation is based on
+ * Dmitry Vyukov's bounded queue; each slot has a sequence number which tells
+ * whether the slot is empty and ready to be written at a given position, or
+ * full and ready to be read at that position. A producer claims a position
+ * using a CAS of the tail, and the consumer using a CAS of the head. The CAS
+ * of the head makes it safe also for a producer to {@link #poll()}, as done
+ * by {@link AsyncEventHub.Overflow#SAMPLE}.<p>
+ * 
+ * A producer blocked in {@link #put(Object)} waits on a lock, which the
+ * consumer only acquires if there is a blocked producer. The consumer blocked
+ * in {@link #take()} is parked, and unparked by the next producer.<p>
+ * 
+ * Only one thread at a time may call {@code take}.
+ * 
+ * @param <E> the type of elements
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class RingBuffer<E>
+{
+    private final Object[] items;
+    // For position p, the slot is empty if 2p, and full if 2p + 1
+    private final AtomicLongArray seqs;
+    private final AtomicLong head, tail;
+    private final AtomicInteger blocked;
+    private final ReentrantLock lock;
+    private final Condition notFull;
+    private volatile Thread taker;
+    
+    /**
+     * Constructs a {@code RingBuffer}.
+     * 
+     * @param capacity max number of elements
+     * 
+     * @throws IllegalArgumentException
+     *             if {@code capacity} is less than 1
+     */
+    RingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        this.items = new Object[capacity];
+        this.seqs = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; ++i) {
+            seqs.set(i, 2L * i);
+        }
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.blocked = new AtomicInteger();
+        this.lock = new ReentrantLock();
+        this.notFull = lock.newCondition();
+    }
+    
+    /**
+     * Inserts the given element, if there is room.
+     * 
+     * @param e element
+     * 
+     * @return {@code true} if inserted, otherwise {@code false} (full)
+     * 
+     * @throws NullPointerException
+     *             if {@code e} is {@code null}
+     */
+    boolean offer(E e) {
+        requireNonNull(e);
+        long p = tail.get();
+        for (;;) {
+            final int i = (int) (p % items.length);
+            final long d = seqs.get(i) - 2 * p;
+            if (d == 0) {
+                if (tail.compareAndSet(p, p + 1)) {
+                    items[i] = e;
+                    seqs.set(i, 2 * p + 1);
+                    final Thread t = taker;
+                    if (t != null) {
+                        LockSupport.unpark(t);
+                    }
+                    return true;
+                }
+                p = tail.get();
+            } else if (d < 0) {
+                // Not yet read at the previous lap
+                return false;
+            } else {
+                // Another producer claimed the position
+                p = tail.get();
+            }
+        }
+    }
+    
+    /**
+     * Inserts the given element, waiting if necessary for room.
+     * 
+     * @param e element
+     * 
+     * @throws NullPointerException
+     *             if {@code e} is {@code null}
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    void put(E e) throws InterruptedException {
+        if (offer(e)) {
+            return;
+        }
+        lock.lockInterruptibly();
+        try {
+            // Must be visible before the next attempt (see signalNotFull)
+            blocked.incrementAndGet();
+            try {
+                while (!offer(e)) {
+                    notFull.await();
+                }
+            } finally {
+                blocked.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Removes the oldest element.
+     * 
+     * @return the oldest element, or {@code null} if empty
+     */
+    E poll() {
+        long p = head.get();
+        for (;;) {
+            final int i = (int) (p % items.length);
+            final long d = seqs.get(i) - (2 * p + 1);
+            if (d == 0) {
+                if (head.compareAndSet(p, p + 1)) {
+                    @SuppressWarnings("unchecked")
+                    final E e = (E) items[i];
+                    items[i] = null;
+                    seqs.set(i, 2 * (p + items.length));
+                    signalNotFull();
+                    return e;
+                }
+                p = head.get();
+            } else if (d < 0) {
+                // Not yet written
+                return null;
+            } else {
+                // Another thread took the position
+                p = head.get();
+            }
+        }
+    }
+    
+    /**
+     * Removes the oldest element, waiting if necessary for one.
+     * 
+     * @return the oldest element (never {@code null})
+     * 
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    E take() throws InterruptedException {
+        E e = poll();
+        if (e != null) {
+            return e;
+        }
+        // Must be visible before the next attempt (see offer)
+        taker = Thread.currentThread();
+        try {
+            while ((e = poll()) == null) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return e;
+        } finally {
+            taker = null;
+        }
+    }
+    
+    /**
+     * Removes at most the given number of elements, and adds them to the given
+     * collection.
+     * 
+     * @param c collection to add to
+     * @param max number of elements to remove
+     */
+    void drainTo(Collection<? super E> c, int max) {
+        E e;
+        for (int n = 0; n < max && (e = poll()) != null; ++n) {
+            c.add(e);
+        }
+    }
+    
+    /**
+     * {@return an estimate of the current number of elements}
+     */
+    int size() {
+        final long h = head.get();
+        final long n = tail.get() - h;
+        return (int) Math.max(0, Math.min(n, items.length));
+    }
+    
+    private void signalNotFull() {
+        if (blocked.get() == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
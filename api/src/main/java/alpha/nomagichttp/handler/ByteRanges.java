@@ -0,0 +1,553 @@
+package alpha.nomagichttp.handler;
+
+import alpha.nomagichttp.message.ByteBufferIterator;
+import alpha.nomagichttp.message.MediaType;
+import alpha.nomagichttp.message.Request;
+import alpha.nomagichttp.message.ResourceByteBufferIterable;
+import alpha.nomagichttp.message.Response;
+import alpha.nomagichttp.message.TransferableByteBufferIterator;
+import alpha.nomagichttp.util.ByteBufferIterables;
+import alpha.nomagichttp.util.FileLockTimeoutException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCEPT_RANGES;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_RANGE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_TYPE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.ETAG;
+import static alpha.nomagichttp.HttpConstants.HeaderName.IF_RANGE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.LAST_MODIFIED;
+import static alpha.nomagichttp.HttpConstants.HeaderName.RANGE;
+import static alpha.nomagichttp.HttpConstants.Method.GET;
+import static alpha.nomagichttp.HttpConstants.ReasonPhrase.PARTIAL_CONTENT;
+import static alpha.nomagichttp.HttpConstants.ReasonPhrase.RANGE_NOT_SATISFIABLE;
+import static alpha.nomagichttp.HttpConstants.StatusCode.FOUR_HUNDRED_SIXTEEN;
+import static alpha.nomagichttp.HttpConstants.StatusCode.TWO_HUNDRED_SIX;
+import static alpha.nomagichttp.message.Responses.ok;
+import static alpha.nomagichttp.message.Responses.status;
+import static alpha.nomagichttp.util.Blah.addExactOrCap;
+import static alpha.nomagichttp.util.ByteBufferIterables.just;
+import static alpha.nomagichttp.util.ByteBufferIterables.ofFileRegion;
+import static alpha.nomagichttp.util.ByteBuffers.asciiBytes;
+import static java.lang.Long.toHexString;
+import static java.nio.ByteBuffer.wrap;
+import static java.nio.file.Files.readAttributes;
+import static java.time.ZoneOffset.UTC;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Serves a file or a byte array, honoring a range request.<p>
+ * 
+ * A client that resumes a download, or seeks in a video, asks for one or more
+ * ranges of the representation, using the request header "Range". The
+ * response is then 206 (Partial Content), instead of 200 (OK) with the whole
+ * representation.<p>
+ * 
+ * {@snippet :
+ *   // @link substring="GET" target="RequestHandler#GET()" :
+ *   server.add("/video", GET().apply(req ->
+ *       ByteRanges.ofFile(req, Path.of("video.mp4"), MediaType.parse("video/mp4"))));
+ * }
+ * 
+ * A single range is served with the header "Content-Range", and the body is a
+ * region of the file ({@link ByteBufferIterables#ofFileRegion(Path, long,
+ * long)}), which the server transfers directly into the client channel.<p>
+ * 
+ * Many ranges are served as the media type "multipart/byteranges". The parts
+ * are streamed; each region is read (or transferred) only when it is its turn
+ * to be written, and the content-length is known in advance. Ranges that
+ * overlap or are adjacent are coalesced into one, and the ranges are served in
+ * ascending order. If there are more than 32 ranges after coalescing, the
+ * header is ignored, as a protection against a client asking for lots of tiny
+ * ranges.<p>
+ * 
+ * If none of the ranges is satisfiable (e.g., they all start beyond the end of
+ * the representation), the response is 416 (Range Not Satisfiable), with the
+ * header "Content-Range: bytes &#42;/{length}".<p>
+ * 
+ * The "Range" header is ignored — and the whole representation served — if
+ * the request method is not GET, the range unit is not "bytes", the header is
+ * malformed, or the condition of a request header "If-Range" fails. All
+ * responses have the header "Accept-Ranges: bytes".<p>
+ * 
+ * A file response also has the headers "Last-Modified", and "ETag" derived
+ * from the file's size and last-modified time. The last-modified time has a
+ * precision of one second, and so, the entity-tag is weak. "If-Range" is
+ * evaluated against the last-modified date (a weak entity-tag never matches),
+ * and so, the client resumes only if the file has not changed. A byte array
+ * has no validators, and so, if "If-Range" is present, the whole byte array is
+ * served.<p>
+ * 
+ * If a file is truncated while a multipart body is written, the body's
+ * iterator throws an {@link IOException} when it reaches the end of the file.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ * 
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc9110#section-14">RFC 9110 §14</a>
+ */
+public final class ByteRanges
+{
+    private static final int MAX_RANGES = 32;
+    
+    private static final DateTimeFormatter
+            HTTP_DATE = RFC_1123_DATE_TIME.withZone(UTC);
+    
+    private ByteRanges() {
+        // Empty
+    }
+    
+    /**
+     * Serves the requested ranges of a file.
+     * 
+     * @param req the request
+     * @param file to serve
+     * @param type of file
+     * 
+     * @return a 200 (OK), 206 (Partial Content) or 416 (Range Not Satisfiable)
+     *         response
+     * 
+     * @throws NullPointerException
+     *             if any argument is {@code null}
+     * @throws IOException
+     *             if reading the file's attributes fails
+     */
+    public static Response ofFile(Request req, Path file, MediaType type)
+            throws IOException {
+        return ofFile(range(req), ifRange(req), file, type);
+    }
+    
+    /**
+     * Serves the requested ranges of a byte array.<p>
+     * 
+     * The byte array is not copied, and should not be modified after having
+     * called this method.
+     * 
+     * @param req the request
+     * @param bytes to serve
+     * @param type of bytes
+     * 
+     * @return a 200 (OK), 206 (Partial Content) or 416 (Range Not Satisfiable)
+     *         response
+     * 
+     * @throws NullPointerException
+     *             if any argument is {@code null}
+     */
+    public static Response ofBytes(Request req, byte[] bytes, MediaType type) {
+        return ofBytes(range(req), ifRange(req), bytes, type);
+    }
+    
+    static Response ofFile(
+            String range, String ifRange, Path file, MediaType type)
+            throws IOException {
+        requireNonNull(type);
+        final var attr = readAttributes(file, BasicFileAttributes.class);
+        final long size = attr.size();
+        final Instant mtime = attr.lastModifiedTime().toInstant()
+                                  .truncatedTo(SECONDS);
+        final String etag = "W/\"" + toHexString(mtime.getEpochSecond()) +
+                            '-' + toHexString(size) + '"';
+        return respond(range, ifRange, size, etag, mtime, type, file,
+                (pos, count) -> ofFileRegion(file, pos, count));
+    }
+    
+    static Response ofBytes(
+            String range, String ifRange, byte[] bytes, MediaType type) {
+        requireNonNull(bytes);
+        requireNonNull(type);
+        return respond(range, ifRange, bytes.length, null, null, type, null,
+                (pos, count) -> just(wrap(bytes, (int) pos, (int) count)));
+    }
+    
+    /**
+     * {@return the request header "Range", or {@code null} if the request
+     * method is not GET}
+     * 
+     * @param req the request
+     */
+    static String range(Request req) {
+        return req.method().equals(GET) ?
+                req.headers().firstValue(RANGE).orElse(null) :
+                null;
+    }
+    
+    /**
+     * {@return the request header "If-Range", or {@code null}}
+     * 
+     * @param req the request
+     */
+    static String ifRange(Request req) {
+        return req.headers().firstValue(IF_RANGE).orElse(null);
+    }
+    
+    /**
+     * A range of bytes, both positions inclusive.
+     * 
+     * @param first position of the first byte
+     * @param last position of the last byte
+     */
+    record Range(long first, long last) {
+        long length() {
+            return last - first + 1;
+        }
+    }
+    
+    /**
+     * Parses a "Range" header value, resolved against the given length.<p>
+     * 
+     * Ranges that are not satisfiable are dropped. The satisfiable ranges are
+     * sorted, and those that overlap or are adjacent are coalesced.
+     * 
+     * @param range header value
+     * @param size length of the representation
+     * 
+     * @return satisfiable ranges (possibly empty), or {@code null} if the
+     *         header must be ignored
+     */
+    static List<Range> parse(String range, long size) {
+        final String v = range.strip();
+        if (v.length() < 6 || !v.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        final var ranges = new ArrayList<Range>();
+        boolean any = false;
+        for (var spec : v.substring(6).split(",")) {
+            final String s = spec.strip();
+            if (s.isEmpty()) {
+                continue;
+            }
+            any = true;
+            final int dash = s.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            final long first, last;
+            if (dash == 0) {
+                final long suffix = digits(s.substring(1));
+                if (suffix < 0) {
+                    return null;
+                }
+                if (suffix == 0 || size == 0) {
+                    continue;
+                }
+                first = Math.max(0, size - suffix);
+                last = size - 1;
+            } else {
+                first = digits(s.substring(0, dash));
+                final String l = s.substring(dash + 1);
+                final long x = l.isEmpty() ? Long.MAX_VALUE : digits(l);
+                if (first < 0 || x < 0 || x < first) {
+                    return null;
+                }
+                if (first >= size) {
+                    continue;
+                }
+                last = Math.min(x, size - 1);
+            }
+            ranges.add(new Range(first, last));
+        }
+        if (!any) {
+            return null;
+        }
+        final var merged = coalesce(ranges);
+        return merged.size() > MAX_RANGES ? null : merged;
+    }
+    
+    private static long digits(String s) {
+        if (s.isEmpty()) {
+            return -1;
+        }
+        for (int i = 0; i < s.length(); ++i) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException _) {
+            // Overflow
+            return Long.MAX_VALUE;
+        }
+    }
+    
+    private static List<Range> coalesce(List<Range> ranges) {
+        ranges.sort(Comparator.comparingLong(Range::first));
+        final var merged = new ArrayList<Range>(ranges.size());
+        for (var r : ranges) {
+            final int end = merged.size() - 1;
+            if (end >= 0 && r.first() <= merged.get(end).last() + 1) {
+                var prev = merged.get(end);
+                merged.set(end, new Range(
+                        prev.first(), Math.max(prev.last(), r.last())));
+            } else {
+                merged.add(r);
+            }
+        }
+        return merged;
+    }
+    
+    private interface Slicer {
+        ResourceByteBufferIterable slice(long position, long count);
+    }
+    
+    private static Response respond(
+            String range, String ifRange, long size,
+            String etag, Instant mtime, MediaType type,
+            Path file, Slicer slicer) {
+        final List<Range> ranges = range == null ? null : parse(range, size);
+        if (ranges == null ||
+            (ifRange != null && !matches(ifRange, etag, mtime))) {
+            return validators(ok(slicer.slice(0, size), type).toBuilder(),
+                    etag, mtime).build();
+        }
+        if (ranges.isEmpty()) {
+            return status(FOUR_HUNDRED_SIXTEEN, RANGE_NOT_SATISFIABLE).toBuilder()
+                    .setHeader(ACCEPT_RANGES, "bytes")
+                    .setHeader(CONTENT_RANGE, "bytes */" + size)
+                    .build();
+        }
+        final var b = validators(
+                status(TWO_HUNDRED_SIX, PARTIAL_CONTENT).toBuilder(), etag, mtime);
+        if (ranges.size() == 1) {
+            final var r = ranges.getFirst();
+            return b.setHeader(CONTENT_TYPE, type.toString())
+                    .setHeader(CONTENT_RANGE, contentRange(r, size))
+                    .body(slicer.slice(r.first(), r.length()))
+                    .build();
+        }
+        final String boundary = toHexString(
+                ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+        return b.setHeader(CONTENT_TYPE,
+                        "multipart/byteranges; boundary=" + boundary)
+                .body(multipart(ranges, size, type, boundary, file, slicer))
+                .build();
+    }
+    
+    private static Response.Builder validators(
+            Response.Builder b, String etag, Instant mtime) {
+        b = b.setHeader(ACCEPT_RANGES, "bytes");
+        if (etag != null) {
+            b = b.setHeader(ETAG, etag);
+        }
+        if (mtime != null) {
+            b = b.setHeader(LAST_MODIFIED, HTTP_DATE.format(mtime));
+        }
+        return b;
+    }
+    
+    /**
+     * Evaluates the condition of an "If-Range" header.<p>
+     * 
+     * An entity-tag must match the representation's entity-tag using the
+     * strong comparison (a weak entity-tag never matches), and a date must
+     * be equal to the last-modified date.
+     * 
+     * @return {@code true} if the ranges should be served
+     */
+    private static boolean matches(String ifRange, String etag, Instant mtime) {
+        final String v = ifRange.strip();
+        if (v.startsWith("\"") || v.startsWith("W/")) {
+            return etag != null && !etag.startsWith("W/") && v.equals(etag);
+        }
+        if (mtime == null) {
+            return false;
+        }
+        try {
+            return Instant.from(HTTP_DATE.parse(v)).equals(mtime);
+        } catch (DateTimeException _) {
+            return false;
+        }
+    }
+    
+    private static String contentRange(Range r, long size) {
+        return "bytes " + r.first() + "-" + r.last() + "/" + size;
+    }
+    
+    private static ResourceByteBufferIterable multipart(
+            List<Range> ranges, long size, MediaType type,
+            String boundary, Path file, Slicer slicer) {
+        final var parts = new ArrayList<ResourceByteBufferIterable>();
+        final var lens = new long[2 * ranges.size() + 1];
+        long len = 0;
+        for (var r : ranges) {
+            final var head = asciiBytes(
+                    (parts.isEmpty() ? "" : "\r\n") +
+                    "--" + boundary + "\r\n" +
+                    CONTENT_TYPE + ": " + type + "\r\n" +
+                    CONTENT_RANGE + ": " + contentRange(r, size) + "\r\n\r\n");
+            lens[parts.size()] = head.remaining();
+            len = addExactOrCap(len, head.remaining());
+            parts.add(just(head));
+            lens[parts.size()] = r.length();
+            len = addExactOrCap(len, r.length());
+            parts.add(slicer.slice(r.first(), r.length()));
+        }
+        final var tail = asciiBytes("\r\n--" + boundary + "--\r\n");
+        lens[parts.size()] = tail.remaining();
+        len = addExactOrCap(len, tail.remaining());
+        parts.add(just(tail));
+        return new Multipart(List.copyOf(parts), lens, len, file);
+    }
+    
+    /**
+     * Is the concatenation of the parts of a multipart body.<p>
+     * 
+     * The iterator opens a part only when the previous part has been
+     * exhausted, and it transfers the parts that are transferable.<p>
+     * 
+     * No part is empty. A part that ends before all of its bytes have been
+     * iterated (the file was truncated) causes an {@link IOException}; the
+     * body would otherwise be shorter than its content-length.
+     */
+    private static final class Multipart implements ResourceByteBufferIterable {
+        private final List<ResourceByteBufferIterable> parts;
+        // Length of each part
+        private final long[] lens;
+        private final long len;
+        // For the exception message (may be null)
+        private final Path file;
+        
+        Multipart(
+                List<ResourceByteBufferIterable> parts,
+                long[] lens, long len, Path file) {
+            this.parts = parts;
+            this.lens = lens;
+            this.len = len;
+            this.file = file;
+        }
+        
+        @Override
+        public ByteBufferIterator iterator() {
+            return new Iterator();
+        }
+        
+        @Override
+        public long length() {
+            return len;
+        }
+        
+        private final class Iterator implements TransferableByteBufferIterator {
+            // Index of the current part
+            private int idx = -1;
+            private ByteBufferIterator curr = ByteBufferIterator.Empty.INSTANCE;
+            // Number of bytes of the current part not yet taken from it
+            private long rem;
+            // Last bytebuffer returned, possibly not fully consumed
+            private ByteBuffer buf;
+            
+            @Override
+            public boolean hasNext() {
+                // No part is empty, and a truncated part fails next()
+                return bufHasRemaining() ||
+                       curr.hasNext() || idx < parts.size() - 1;
+            }
+            
+            @Override
+            public ByteBuffer next() throws IOException {
+                if (bufHasRemaining()) {
+                    return buf;
+                }
+                if (!advance()) {
+                    throw new NoSuchElementException();
+                }
+                buf = curr.next();
+                rem -= buf.remaining();
+                return buf;
+            }
+            
+            @Override
+            public long transferTo(WritableByteChannel target, long maxBytes)
+                    throws IOException {
+                requireNonNull(target);
+                if (maxBytes <= 0) {
+                    throw new IllegalArgumentException("maxBytes <= 0");
+                }
+                if (!bufHasRemaining()) {
+                    if (!advance()) {
+                        return 0;
+                    }
+                    if (curr instanceof TransferableByteBufferIterator t) {
+                        final long n = t.transferTo(target, maxBytes);
+                        rem -= n;
+                        return n;
+                    }
+                    buf = curr.next();
+                    rem -= buf.remaining();
+                }
+                final int lim = buf.limit();
+                if (buf.remaining() > maxBytes) {
+                    buf.limit(buf.position() + (int) maxBytes);
+                }
+                try {
+                    return target.write(buf);
+                } finally {
+                    buf.limit(lim);
+                }
+            }
+            
+            private boolean bufHasRemaining() {
+                return buf != null && buf.hasRemaining();
+            }
+            
+            /**
+             * Moves to the next part, unless the current part has bytes.
+             * 
+             * @return {@code false} if there are no more bytes
+             */
+            private boolean advance() throws IOException {
+                while (!curr.hasNext()) {
+                    curr.close();
+                    curr = ByteBufferIterator.Empty.INSTANCE;
+                    buf = null;
+                    if (rem > 0) {
+                        throw new IOException(
+                                "File truncated, " + rem +
+                                " bytes missing: " + file);
+                    }
+                    if (++idx >= parts.size()) {
+                        idx = parts.size();
+                        return false;
+                    }
+                    rem = lens[idx];
+                    try {
+                        curr = parts.get(idx).iterator();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        var io = new InterruptedIOException();
+                        io.initCause(e);
+                        throw io;
+                    } catch (FileLockTimeoutException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return true;
+            }
+            
+            @Override
+            public void close() throws IOException {
+                idx = parts.size();
+                buf = null;
+                try {
+                    curr.close();
+                } finally {
+                    curr = ByteBufferIterator.Empty.INSTANCE;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package alpha.nomagichttp.handler;
+
+import alpha.nomagichttp.Config;
+import alpha.nomagichttp.message.MediaType;
+import alpha.nomagichttp.message.Request;
+import alpha.nomagichttp.message.ResourceByteBufferIterable;
+import alpha.nomagichttp.message.Response;
+import alpha.nomagichttp.util.ByteBufferIterables;
+import alpha.nomagichttp.util.ExposedByteArrayOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCEPT_ENCODING;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_ENCODING;
+import static alpha.nomagichttp.HttpConstants.HeaderName.VARY;
+import static alpha.nomagichttp.message.MediaType.APPLICATION_JSON_UTF8;
+import static alpha.nomagichttp.message.MediaType.APPLICATION_OCTET_STREAM;
+import static alpha.nomagichttp.message.MediaType.APPLICATION_PDF;
+import static alpha.nomagichttp.message.MediaType.APPLICATION_ZIP;
+import static alpha.nomagichttp.message.MediaType.IMAGE_GIF;
+import static alpha.nomagichttp.message.MediaType.IMAGE_JPEG;
+import static alpha.nomagichttp.message.MediaType.IMAGE_PNG;
+import static alpha.nomagichttp.message.MediaType.IMAGE_SVG_XML;
+import static alpha.nomagichttp.message.MediaType.TEXT_CSS_UTF8;
+import static alpha.nomagichttp.message.MediaType.TEXT_CSV_UTF8;
+import static alpha.nomagichttp.message.MediaType.TEXT_HTML_UTF8;
+import static alpha.nomagichttp.message.MediaType.TEXT_JAVASCRIPT_UTF8;
+import static alpha.nomagichttp.message.MediaType.TEXT_PLAIN_UTF8;
+import static alpha.nomagichttp.message.MediaType.parse;
+import static alpha.nomagichttp.message.Responses.notFound;
+import static alpha.nomagichttp.message.Responses.ok;
+import static alpha.nomagichttp.util.ByteBufferIterables.ofFile;
+import static alpha.nomagichttp.util.ContentCodings.isCompressible;
+import static alpha.nomagichttp.util.ContentCodings.qualities;
+import static alpha.nomagichttp.util.ScopedValues.HTTP_SERVER;
+import static alpha.nomagichttp.util.ScopedValues.httpServer;
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.file.Files.readAttributes;
+import static java.util.Locale.ROOT;
+import static java.util.Map.entry;
+import static java.util.Objects.requireNonNull;
+import static java.util.zip.Deflater.BEST_COMPRESSION;
+
+/**
+ * Serves files from a directory, preferably compressed.<p>
+ * 
+ * The file is resolved from the value of a catch-all path parameter of the
+ * route, against the root directory given to the constructor. A path that
+ * resolves outside of the root directory, or to something that is not a
+ * regular file, yields 404 (Not Found). Symbolic links are followed, but only
+ * if the target is also inside the root directory.<p>
+ * 
+ * {@snippet :
+ *   // @link substring="GET" target="RequestHandler#GET()" :
+ *   var files = new StaticFiles(Path.of("/var/www"), "path", 64 * 1_024 * 1_024);
+ *   server.add("/static/*path", GET().apply(files::serve));
+ * }
+ * 
+ * If the client accepts a compressed representation ("Accept-Encoding"), this
+ * class first looks for a precompressed sidecar file next to the requested
+ * file, e.g. "app.js.br" (brotli) and "app.js.gz" (gzip). A sidecar is used
+ * only if it has not been modified before the requested file (otherwise, it is
+ * assumed to be stale).<p>
+ * 
+ * If no sidecar is found, the client accepts gzip, and the file is eligible
+ * for compression according to {@link Config#compressibleMediaTypes()} and
+ * {@link Config#minCompressionSize()}, then the file is compressed once, using
+ * the best compression level, and the compressed bytes are cached off-heap
+ * (in a direct bytebuffer). The cache is keyed by the file's path,
+ * last-modified time and size; a file modified is compressed anew. When the
+ * cache would grow beyond the capacity given to the constructor, the least
+ * recently used files are evicted. Each cached file also costs a fixed
+ * overhead of 128 bytes. A file larger than a quarter of the capacity, or
+ * larger than 32 MiB, is never compressed but streamed as-is. A file that does
+ * not shrink when compressed is remembered (at the cost of the overhead only),
+ * and served uncompressed.<p>
+ * 
+ * A compressed response has the header "Content-Encoding", and all responses
+ * with a file have the header "Vary: Accept-Encoding". Because the response
+ * already has a content-coding, the server will not compress it again (see
+ * {@link Config#compressionLevel()}).<p>
+ * 
+ * A request with the header "Range" is served using {@link ByteRanges}. The
+ * ranges apply to the uncompressed file, which is then never compressed. An
+ * uncompressed file is also served with the headers "Accept-Ranges",
+ * "ETag" and "Last-Modified", so that a client can resume a download.<p>
+ * 
+ * The content-type is derived from the file extension. An unknown extension
+ * yields "application/octet-stream".<p>
+ * 
+ * This class is thread-safe. Two threads may race to compress the same file,
+ * which is harmless.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ * 
+ * @see ByteBufferIterables#ofFile(Path)
+ */
+public final class StaticFiles
+{
+    private static final Map<String, MediaType> TYPES = Map.ofEntries(
+            entry("html", TEXT_HTML_UTF8),
+            entry("htm",  TEXT_HTML_UTF8),
+            entry("css",  TEXT_CSS_UTF8),
+            entry("csv",  TEXT_CSV_UTF8),
+            entry("js",   TEXT_JAVASCRIPT_UTF8),
+            entry("mjs",  TEXT_JAVASCRIPT_UTF8),
+            entry("txt",  TEXT_PLAIN_UTF8),
+            entry("json", APPLICATION_JSON_UTF8),
+            entry("map",  APPLICATION_JSON_UTF8),
+            entry("xml",  parse("application/xml")),
+            entry("wasm", parse("application/wasm")),
+            entry("svg",  IMAGE_SVG_XML),
+            entry("png",  IMAGE_PNG),
+            entry("gif",  IMAGE_GIF),
+            entry("jpg",  IMAGE_JPEG),
+            entry("jpeg", IMAGE_JPEG),
+            entry("pdf",  APPLICATION_PDF),
+            entry("zip",  APPLICATION_ZIP));
+    
+    private static final String BR = "br", GZIP = "gzip";
+    
+    // Max size of a file compressed (which is buffered on-heap meanwhile)
+    private static final long MAX_ENTRY_SIZE = 32 * 1_024 * 1_024;
+    
+    // Charged for every entry, so that the entry count is bounded too
+    private static final long ENTRY_OVERHEAD = 128;
+    
+    private final Path root;
+    private final String param;
+    private final long capacity;
+    // Guarded by lock; access-ordered
+    private final LinkedHashMap<Path, Cached> cache;
+    private final ReentrantLock lock;
+    private long size;
+    private final LongAdder hits, misses;
+    
+    /**
+     * Constructs this object.
+     * 
+     * @param root directory to serve files from
+     * @param param name of the route's catch-all path parameter
+     * @param capacity max number of compressed bytes to cache (0 disables)
+     * 
+     * @throws NullPointerException
+     *             if {@code root} or {@code param} is {@code null}
+     * @throws IllegalArgumentException
+     *             if {@code capacity} is negative
+     */
+    public StaticFiles(Path root, String param, long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+        this.root = root.toAbsolutePath().normalize();
+        this.param = requireNonNull(param);
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        this.lock = new ReentrantLock();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+    
+    /**
+     * Serves the requested file.<p>
+     * 
+     * This method is meant to be used as a request handler's logic; {@code
+     * GET().apply(files::serve)}.
+     * 
+     * @param req the request
+     * 
+     * @return a 200 (OK) or 206 (Partial Content) response with the file,
+     *         416 (Range Not Satisfiable), or 404 (Not Found)
+     * 
+     * @throws IllegalStateException
+     *             if the route has no path parameter of the given name
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public Response serve(Request req) throws IOException {
+        final String path = req.target().pathParam(param);
+        if (path == null) {
+            throw new IllegalStateException(
+                    "Route has no path parameter: " + param);
+        }
+        return serve(path, req.headers().allTokens(ACCEPT_ENCODING),
+                ByteRanges.range(req), ByteRanges.ifRange(req));
+    }
+    
+    Response serve(String path, Stream<String> acceptEncoding)
+            throws IOException {
+        return serve(path, acceptEncoding, null, null);
+    }
+    
+    Response serve(
+            String path, Stream<String> acceptEncoding,
+            String range, String ifRange) throws IOException {
+        final Path file, realRoot;
+        final BasicFileAttributes attr;
+        try {
+            file = root.resolve(path.replaceFirst("^/+", "")).normalize();
+            if (!file.startsWith(root)) {
+                return notFound();
+            }
+            // A symbolic link must not lead out of the root
+            realRoot = root.toRealPath();
+            if (!file.toRealPath().startsWith(realRoot)) {
+                return notFound();
+            }
+            attr = readAttributes(file, BasicFileAttributes.class);
+        } catch (InvalidPathException | IOException _) {
+            return notFound();
+        }
+        if (!attr.isRegularFile()) {
+            return notFound();
+        }
+        final MediaType type = typeOf(file.getFileName().toString());
+        if (range != null) {
+            return vary(ByteRanges.ofFile(range, ifRange, file, type));
+        }
+        final double[] q = qualities(acceptEncoding, BR, GZIP);
+        final double br = q[0], gzip = q[1];
+        // Sidecars in order of preference (brotli on a tie)
+        if (br > 0 && br >= gzip && exists(file, ".br", attr, realRoot)) {
+            return encoded(ofFile(sibling(file, ".br")), type, BR);
+        }
+        if (gzip > 0 && exists(file, ".gz", attr, realRoot)) {
+            return encoded(ofFile(sibling(file, ".gz")), type, GZIP);
+        }
+        if (br > 0 && exists(file, ".br", attr, realRoot)) {
+            return encoded(ofFile(sibling(file, ".br")), type, BR);
+        }
+        if (gzip > 0 && shouldCompress(type, attr.size())) {
+            final ByteBuffer gz = compressed(file, attr);
+            if (gz != null) {
+                return encoded(ByteBufferIterables.just(gz), type, GZIP);
+            }
+        }
+        return vary(ByteRanges.ofFile(null, null, file, type));
+    }
+    
+    /**
+     * Returns a snapshot of the cache's statistics.<p>
+     * 
+     * The counters are not read atomically with regards to each other.
+     * 
+     * @return a snapshot of the cache's statistics (never {@code null})
+     */
+    public Stats stats() {
+        lock.lock();
+        final long s;
+        try {
+            s = size;
+        } finally {
+            lock.unlock();
+        }
+        return new Stats(hits.sum(), misses.sum(), s);
+    }
+    
+    /**
+     * Statistics of the cache of compressed files.
+     * 
+     * @param hits number of compressed files served from the cache
+     * @param misses number of files that had to be compressed
+     * @param size number of compressed bytes cached, plus the overhead per
+     *             cached file
+     */
+    public record Stats(long hits, long misses, long size) {
+        // Empty
+    }
+    
+    private static Response encoded(
+            ResourceByteBufferIterable body,
+            MediaType type, String coding) {
+        return ok(body, type).toBuilder()
+                .setHeader(CONTENT_ENCODING, coding)
+                .setHeader(VARY, ACCEPT_ENCODING)
+                .build();
+    }
+    
+    private static Response vary(Response rsp) {
+        return rsp.toBuilder().setHeader(VARY, ACCEPT_ENCODING).build();
+    }
+    
+    private static MediaType typeOf(String name) {
+        final int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return APPLICATION_OCTET_STREAM;
+        }
+        return TYPES.getOrDefault(
+                name.substring(dot + 1).toLowerCase(ROOT),
+                APPLICATION_OCTET_STREAM);
+    }
+    
+    private static Path sibling(Path file, String ext) {
+        return file.resolveSibling(file.getFileName() + ext);
+    }
+    
+    private static boolean exists(
+            Path file, String ext, BasicFileAttributes orig, Path realRoot) {
+        final Path s = sibling(file, ext);
+        try {
+            var attr = readAttributes(s, BasicFileAttributes.class);
+            return s.toRealPath().startsWith(realRoot) &&
+                   attr.isRegularFile() &&
+                   attr.lastModifiedTime().compareTo(orig.lastModifiedTime()) >= 0;
+        } catch (IOException _) {
+            return false;
+        }
+    }
+    
+    private static boolean shouldCompress(MediaType type, long size) {
+        final Config c = HTTP_SERVER.isBound() ?
+                httpServer().getConfig() : Config.DEFAULT;
+        return size >= c.minCompressionSize() && isCompressible(type, c);
+    }
+    
+    /**
+     * Returns the compressed file, from the cache or compressed now.
+     * 
+     * @return a read-only view, or {@code null} if the file does not shrink,
+     *         is too large to be cached, or the cache is disabled
+     */
+    private ByteBuffer compressed(Path file, BasicFileAttributes attr)
+            throws IOException {
+        final long len = attr.size();
+        // Checked before compressing; the compressed size is not known yet
+        if (len > capacity / 4 || len > MAX_ENTRY_SIZE) {
+            return null;
+        }
+        final FileTime mtime = attr.lastModifiedTime();
+        lock.lock();
+        try {
+            var c = cache.get(file);
+            if (c != null && c.mtime.equals(mtime) && c.size == len) {
+                hits.increment();
+                return c.gzip;
+            }
+        } finally {
+            lock.unlock();
+        }
+        misses.increment();
+        final ByteBuffer gz = compress(file, (int) len);
+        final var c = new Cached(mtime, len, gz);
+        lock.lock();
+        try {
+            var old = cache.put(file, c);
+            size += c.cost() - (old == null ? 0 : old.cost());
+            for (Iterator<Cached> it = cache.values().iterator();
+                 size > capacity && it.hasNext(); ) {
+                size -= it.next().cost();
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return gz;
+    }
+    
+    private static ByteBuffer compress(Path file, int len) throws IOException {
+        final var bytes = new ExposedByteArrayOutputStream(len / 4 + 64);
+        try (var in = Files.newInputStream(file);
+             var out = new GZIPOutputStream(bytes) {{
+                 def.setLevel(BEST_COMPRESSION); }}) {
+            in.transferTo(out);
+        }
+        final int n = bytes.count();
+        if (n >= len) {
+            // Not worth it
+            return null;
+        }
+        return allocateDirect(n).put(bytes.buffer(), 0, n).flip().asReadOnlyBuffer();
+    }
+    
+    /**
+     * A cached file.
+     * 
+     * @param mtime last-modified time of the file compressed
+     * @param size size of the file compressed
+     * @param gzip compressed bytes ({@code null} if the file did not shrink)
+     */
+    private record Cached(FileTime mtime, long size, ByteBuffer gzip) {
+        long cost() {
+            return ENTRY_OVERHEAD + (gzip == null ? 0 : gzip.capacity());
+        }
+    }
+}
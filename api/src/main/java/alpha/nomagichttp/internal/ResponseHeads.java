@@ -0,0 +1,115 @@
+package alpha.nomagichttp.internal;
+
+import alpha.nomagichttp.HttpConstants;
+import alpha.nomagichttp.message.Response;
+
+import java.nio.ByteBuffer;
+
+import static alpha.nomagichttp.util.ByteBuffers.asciiBytes;
+import static java.util.Objects.requireNonNull;
+import static java.util.Objects.requireNonNullElse;
+
+/**
+ * Encoder of response heads.<p>
+ * 
+ * This class is not part of the public API. The package is exported only to
+ * the server implementation, which calls {@link #encode(Response,
+ * HttpConstants.Version) encode} after the response has been finalized.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+public final class ResponseHeads
+{
+    private ResponseHeads() {
+        // Empty
+    }
+    
+    /**
+     * A response that memoizes its encoded head.<p>
+     * 
+     * Only an immutable response should implement this interface.
+     */
+    public interface Memoizing {
+        /**
+         * {@return the memoized head}<p>
+         * 
+         * The implementation should delegate to {@link #encodeNew(Response,
+         * HttpConstants.Version) encodeNew} once, and return duplicates of the
+         * result.
+         * 
+         * @param version of the status-line
+         */
+        ByteBuffer encodeHead(HttpConstants.Version version);
+        
+        /**
+         * {@return {@code true} if the header Content-Length was set by the
+         * response builder, and not by the application}
+         */
+        boolean hasImplicitLength();
+    }
+    
+    /**
+     * {@return the response head encoded using US-ASCII}<p>
+     * 
+     * The head is the status-line followed by all header fields, each
+     * terminated by CRLF, followed by the final CRLF that ends the header
+     * section.<p>
+     * 
+     * The returned bytebuffer is read-only, and its position is 0. Each
+     * invocation returns a new bytebuffer instance, although the content is
+     * shared if the response is {@link Memoizing}.
+     * 
+     * @param rsp response
+     * @param version of the status-line
+     * 
+     * @throws NullPointerException
+     *             if any argument is {@code null}
+     */
+    public static ByteBuffer encode(
+            Response rsp, HttpConstants.Version version) {
+        requireNonNull(version);
+        return rsp instanceof Memoizing m ?
+                m.encodeHead(version) :
+                encodeNew(rsp, version);
+    }
+    
+    /**
+     * {@return {@code true} if the header Content-Length of the given response
+     * was set implicitly}<p>
+     * 
+     * The server removes an implicit Content-Length if it does not apply, for
+     * example in a response to a HEAD request.
+     * 
+     * @param rsp response
+     * 
+     * @throws NullPointerException
+     *             if {@code rsp} is {@code null}
+     */
+    public static boolean hasImplicitLength(Response rsp) {
+        requireNonNull(rsp);
+        return rsp instanceof Memoizing m && m.hasImplicitLength();
+    }
+    
+    /**
+     * {@return a newly encoded response head}
+     * 
+     * @param rsp response
+     * @param version of the status-line
+     * 
+     * @throws NullPointerException
+     *             if any argument is {@code null}
+     */
+    public static ByteBuffer encodeNew(
+            Response rsp, HttpConstants.Version version) {
+        requireNonNull(version);
+        final var sb = new StringBuilder()
+                .append(version).append(' ')
+                .append(rsp.statusCode()).append(' ')
+                .append(requireNonNullElse(rsp.reasonPhrase(), ""))
+                .append("\r\n");
+        rsp.headers().forEach((k, vals) -> vals.forEach(v ->
+                sb.append(k).append(": ").append(v).append("\r\n")));
+        return asciiBytes(sb.append("\r\n").toString())
+                .asReadOnlyBuffer();
+    }
+}
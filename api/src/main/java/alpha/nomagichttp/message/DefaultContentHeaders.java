@@ -1,6 +1,9 @@
 package alpha.nomagichttp.message;
 
+import java.util.AbstractList;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.Iterator;
@@ -8,10 +11,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.RandomAccess;
-import java.util.TreeMap;
+import java.util.StringJoiner;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
@@ -20,11 +24,12 @@ import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_LENGTH;
 import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_TYPE;
 import static alpha.nomagichttp.HttpConstants.HeaderName.TRANSFER_ENCODING;
 import static alpha.nomagichttp.message.MediaType.parse;
+import static alpha.nomagichttp.util.ScopedValues.HTTP_SERVER;
+import static alpha.nomagichttp.util.ScopedValues.httpServer;
 import static alpha.nomagichttp.util.Strings.containsIgnoreCase;
 import static alpha.nomagichttp.util.Strings.requireNoSurroundingWS;
 import static alpha.nomagichttp.util.Strings.splitToSink;
 import static java.lang.Long.parseLong;
-import static java.lang.String.CASE_INSENSITIVE_ORDER;
 import static java.text.MessageFormat.format;
 import static java.util.Objects.requireNonNull;
 import static java.util.function.Predicate.not;
@@ -47,10 +52,18 @@ public class DefaultContentHeaders implements ContentHeaders
         return EMPTY;
     }
     
-    /** Saved iteration order. */
-    private final String[] keys;
-    /** Case-insensitive. Modifiable; don't leak. */
-    private final Map<String, List<String>> lookup;
+    // The headers are stored in flat arrays, and looked up using an
+    // open-addressed table keyed by the case-folded hash of the name. The
+    // values of names[i] are values[starts[i]] until values[starts[i + 1]].
+    
+    /** Distinct names, in iteration order. */
+    private final String[] names;
+    /** Case-folded hash of each name. */
+    private final int[] hashes;
+    private final int[] starts;
+    private final String[] values;
+    /** Index + 1 of a name, or 0 if the slot is empty. */
+    private final int[] table;
     
     /**
      * Constructs this object.
@@ -67,34 +80,172 @@ public class DefaultContentHeaders implements ContentHeaders
             LinkedHashMap<String, ? extends Collection<String>> entries,
             boolean stripTrailing)
     {
-        var len = entries.size();
-        var keys = new String[len];
-        var idx  = new int[1];
-        var lookup = new TreeMap<String, List<String>>(CASE_INSENSITIVE_ORDER);
+        this(flatten(entries), stripTrailing, true);
+    }
+    
+    /**
+     * Constructs this object.<p>
+     * 
+     * The given list contains header names and values, alternately, in the
+     * order received. A name may be repeated, in which case the values are
+     * grouped under the name's first occurrence, just as if the headers had
+     * been put in a multivalued {@code LinkedHashMap}.<p>
+     * 
+     * This constructor does not allocate a collection per header, and is the
+     * preferred one when headers are received or built one at a time.
+     * 
+     * @param namesAndValues header names and values, alternately
+     * @param stripTrailing whether to strip trailing whitespace from values
+     * 
+     * @throws NullPointerException
+     *             if {@code namesAndValues}, or an element, is {@code null}
+     * @throws IllegalArgumentException
+     *             if the list size is not even, or
+     *             if a header name is repeated using different casing
+     */
+    public DefaultContentHeaders(
+            List<String> namesAndValues, boolean stripTrailing)
+    {
+        this(namesAndValues.toArray(String[]::new), stripTrailing, false);
+    }
+    
+    private static String[] flatten(
+            LinkedHashMap<String, ? extends Collection<String>> entries)
+    {
+        var pairs = new ArrayList<String>(entries.size() * 2);
         entries.forEach((k, v) -> {
-            if (lookup.put(k, copyOf(v, stripTrailing)) != null) {
+            if (v.isEmpty()) {
+                // A name without values
+                pairs.add(k);
+                pairs.add(null);
+                return;
+            }
+            for (var s : v) {
+                pairs.add(k);
+                pairs.add(requireNonNull(s));
+            }
+        });
+        return pairs.toArray(String[]::new);
+    }
+    
+    private DefaultContentHeaders(
+            String[] pairs, boolean stripTrailing, boolean nullValueIsNone)
+    {
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException(
+                    "Expected pairs of names and values, got " +
+                    pairs.length + " elements.");
+        }
+        final int max = pairs.length / 2;
+        final int[] table = new int[tableSize(max)],
+                    hashes = new int[max],
+                    // Name index of each pair
+                    which = new int[max],
+                    // Value count of each name
+                    counts = new int[max];
+        final String[] names = new String[max];
+        int n = 0;
+        for (int p = 0; p < max; ++p) {
+            final String k = pairs[2 * p], v = pairs[2 * p + 1];
+            if (v == null && !nullValueIsNone) {
+                throw new NullPointerException();
+            }
+            final int h = foldedHash(k);
+            final int i = slot(table, names, hashes, k, h);
+            int idx = table[i] - 1;
+            if (idx == -1) {
+                idx = n++;
+                names[idx] = k;
+                hashes[idx] = h;
+                table[i] = idx + 1;
+            } else if (!names[idx].equals(k)) {
                 throw new IllegalArgumentException(
                         "Header name repeated with different casing: " + k);
             }
-            keys[idx[0]++] = k;
-        });
-        this.keys = keys;
-        this.lookup = lookup;
+            which[p] = idx;
+            if (v != null) {
+                ++counts[idx];
+            }
+        }
+        final int[] starts = new int[n + 1];
+        for (int i = 0; i < n; ++i) {
+            starts[i + 1] = starts[i] + counts[i];
+            // From here on, the next position to fill
+            counts[i] = starts[i];
+        }
+        final String[] values = new String[starts[n]];
+        for (int p = 0; p < max; ++p) {
+            final String v = pairs[2 * p + 1];
+            if (v != null) {
+                values[counts[which[p]]++] = stripTrailing ? strip(v) : v;
+            }
+        }
+        this.names  = n == max ? names : Arrays.copyOf(names, n);
+        this.hashes = hashes;
+        this.starts = starts;
+        this.values = values;
+        this.table  = table;
     }
     
-    private static List<String> copyOf(
-            Collection<String> values, boolean stripTrailing)
+    private static String strip(String v) {
+        assert v.isEmpty() || !Character.isWhitespace(v.charAt(0)) :
+                "Parser shouldn't have accepted leading whitespace";
+        return v.stripTrailing();
+    }
+    
+    private static int tableSize(int nNames) {
+        // Power of two, at most half full
+        return Integer.highestOneBit(Math.max(nNames, 1) * 2 - 1) << 1;
+    }
+    
+    /**
+     * {@return the slot of the given name, or the empty slot to put it in}
+     */
+    private static int slot(
+            int[] table, String[] names, int[] hashes, String name, int hash)
     {
-        if (stripTrailing) {
-            var l = values.stream().map(v -> {
-                assert v.isEmpty() || !Character.isWhitespace(v.charAt(0)) :
-                        "Parser shouldn't have accepted leading whitespace";
-                return v.stripTrailing();
-            }).toList();
-            assert l instanceof RandomAccess;
-            return l;
+        final int mask = table.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            final int idx = table[i] - 1;
+            if (idx == -1) {
+                return i;
+            }
+            final String n = names[idx];
+            // Interned constants, e.g. HttpConstants.HeaderName, match by identity
+            if (n == name || (hashes[idx] == hash && n.equalsIgnoreCase(name))) {
+                return i;
+            }
         }
-        return List.copyOf(values);
+    }
+    
+    /**
+     * {@return the index of the given name, or -1 if not present}
+     */
+    private int indexOf(String name) {
+        return table[slot(table, names, hashes, name, foldedHash(name))] - 1;
+    }
+    
+    /**
+     * Computes a hash code which is the same for two strings equal ignoring
+     * case.<p>
+     * 
+     * The case folding is the same as that of
+     * {@link String#equalsIgnoreCase(String)}, with a fast path for ASCII.
+     */
+    private static int foldedHash(String s) {
+        int h = 0;
+        for (int i = 0, len = s.length(); i < len; ++i) {
+            char c = s.charAt(i);
+            if (c < 128) {
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+            } else {
+                c = Character.toLowerCase(Character.toUpperCase(c));
+            }
+            h = 31 * h + c;
+        }
+        return h ^ (h >>> 16);
     }
     
     
@@ -104,17 +255,22 @@ public class DefaultContentHeaders implements ContentHeaders
     
     @Override
     public final boolean contains(String headerName) {
-        requireNoSurroundingWS(headerName);
-        return lookup.containsKey(headerName);
+        return indexOf(requireNoSurroundingWS(headerName)) != -1;
     }
     
     @Override
     public final boolean contains(String headerName, String valueSubstring) {
         requireNonNull(valueSubstring);
-        return allValues(requireNoSurroundingWS(headerName))
-              .stream()
-              .anyMatch(v -> containsIgnoreCase(v, valueSubstring));
-        
+        final int i = indexOf(requireNoSurroundingWS(headerName));
+        if (i == -1) {
+            return false;
+        }
+        for (int v = starts[i]; v < starts[i + 1]; ++v) {
+            if (containsIgnoreCase(values[v], valueSubstring)) {
+                return true;
+            }
+        }
+        return false;
     }
     
     private byte hcc = -1;
@@ -149,28 +305,40 @@ public class DefaultContentHeaders implements ContentHeaders
     
     @Override
     public final boolean isMissingOrEmpty(String headerName) {
-        // allMatch returns true if the stream is empty
-        return allValues(headerName).stream().allMatch(String::isEmpty);
+        final int i = indexOf(requireNoSurroundingWS(headerName));
+        if (i == -1) {
+            return true;
+        }
+        for (int v = starts[i]; v < starts[i + 1]; ++v) {
+            if (!values[v].isEmpty()) {
+                return false;
+            }
+        }
+        return true;
     }
     
     @Override
     public final Optional<String> firstValue(String headerName) {
-        var values = allValues(headerName);
-        return values.isEmpty() ? Optional.empty() :
-                Optional.of(values.get(0));
+        final int v = firstValueIndex(headerName);
+        return v == -1 ? Optional.empty() : Optional.of(values[v]);
     }
     
     @Override
     public OptionalLong firstValueAsLong(String headerName) {
-        var values = allValues(headerName);
-        return values.isEmpty() ? OptionalLong.empty() :
-                OptionalLong.of(parseLong(values.get(0)));
+        final int v = firstValueIndex(headerName);
+        return v == -1 ? OptionalLong.empty() :
+                OptionalLong.of(parseLong(values[v]));
+    }
+    
+    private int firstValueIndex(String headerName) {
+        final int i = indexOf(requireNoSurroundingWS(headerName));
+        return i == -1 || starts[i] == starts[i + 1] ? -1 : starts[i];
     }
     
     @Override
     public final List<String> allValues(String headerName) {
-        requireNoSurroundingWS(headerName);
-        return lookup.getOrDefault(headerName, List.of());
+        final int i = indexOf(requireNoSurroundingWS(headerName));
+        return i == -1 ? List.of() : new Values(i);
     }
     
     @Override
@@ -196,11 +364,11 @@ public class DefaultContentHeaders implements ContentHeaders
     
     @Override
     public final void forEach(BiConsumer<String, List<String>> action) {
-        if (keys.length == 0) {
+        if (names.length == 0) {
             requireNonNull(action);
         }
-        for (String k : keys) {
-            action.accept(k, lookup.get(k));
+        for (int i = 0; i < names.length; ++i) {
+            action.accept(names[i], new Values(i));
         }
     }
     
@@ -211,7 +379,11 @@ public class DefaultContentHeaders implements ContentHeaders
     
     @Override
     public final String toString() {
-        return lookup.toString();
+        var str = new StringJoiner(", ", "{", "}");
+        for (int i = 0; i < names.length; ++i) {
+            str.add(names[i] + "=" + new Values(i));
+        }
+        return str.toString();
     }
     
     class IteratorImpl implements Iterator<Map.Entry<String, List<String>>> {
@@ -219,7 +391,7 @@ public class DefaultContentHeaders implements ContentHeaders
         
         @Override
         public boolean hasNext() {
-            return idx < keys.length;
+            return idx < names.length;
         }
         
         @Override
@@ -227,9 +399,33 @@ public class DefaultContentHeaders implements ContentHeaders
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-            var k = keys[idx++];
-            var v = lookup.get(k);
-            return Map.entry(k, v);
+            var i = idx++;
+            return Map.entry(names[i], new Values(i));
+        }
+    }
+    
+    /**
+     * An unmodifiable view of the values of a header.
+     */
+    private final class Values extends AbstractList<String>
+            implements RandomAccess
+    {
+        private final int from, size;
+        
+        Values(int nameIdx) {
+            from = starts[nameIdx];
+            size = starts[nameIdx + 1] - from;
+        }
+        
+        @Override
+        public String get(int index) {
+            Objects.checkIndex(index, size);
+            return values[from + index];
+        }
+        
+        @Override
+        public int size() {
+            return size;
         }
     }
     
@@ -256,7 +452,9 @@ public class DefaultContentHeaders implements ContentHeaders
                 "Multiple " + CONTENT_TYPE + " values in request.");
         }
         try {
-            return Optional.of(parse(tkns[0]));
+            return Optional.of(HTTP_SERVER.isBound() ?
+                    httpServer().mediaTypeCache().parse(tkns[0]) :
+                    parse(tkns[0]));
         } catch (MediaTypeParseException e) {
             throw new BadHeaderException(
                 "Failed to parse " + CONTENT_TYPE + " header.", e);
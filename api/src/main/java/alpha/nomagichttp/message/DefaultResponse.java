@@ -1,19 +1,23 @@
 package alpha.nomagichttp.message;
 
 import alpha.nomagichttp.HttpConstants;
+import alpha.nomagichttp.internal.ResponseHeads;
 import alpha.nomagichttp.util.AbstractImmutableBuilder;
 import alpha.nomagichttp.util.ByteBufferIterables;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_LENGTH;
 import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_TYPE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.TRANSFER_ENCODING;
 import static alpha.nomagichttp.HttpConstants.StatusCode.THREE_HUNDRED_FOUR;
+import static alpha.nomagichttp.HttpConstants.StatusCode.TWO_HUNDRED;
 import static alpha.nomagichttp.HttpConstants.StatusCode.TWO_HUNDRED_FOUR;
 import static alpha.nomagichttp.util.Strings.requireNoSurroundingWS;
 import static java.util.Objects.requireNonNull;
@@ -23,17 +27,17 @@ import static java.util.Objects.requireNonNull;
  * 
  * @author Martin Andersson (webmaster at martinandersson.com)
  */
-final class DefaultResponse implements Response
+final class DefaultResponse implements Response, ResponseHeads.Memoizing
 {
-    /** Initial capacity of the list of a header map value. */
-    private static final int INITIAL_CAPACITY = 1;
-    
     private final int statusCode;
     private final String reasonPhrase;
     private final ContentHeaders headers;
     private final ResourceByteBufferIterable body;
     private final Supplier<Map<String, List<String>>> trailers;
     private final DefaultBuilder origin;
+    private final boolean implicitLength;
+    // Memoized encodeHead(); racy single-check, the record is immutable
+    private Head head;
     
     private DefaultResponse(
             int statusCode,
@@ -42,7 +46,8 @@ final class DefaultResponse implements Response
             // Is unmodifiable
             ResourceByteBufferIterable body,
             Supplier<Map<String, List<String>>> trailers,
-            DefaultBuilder origin)
+            DefaultBuilder origin,
+            boolean implicitLength)
     {
         this.statusCode = statusCode;
         this.reasonPhrase = reasonPhrase;
@@ -50,6 +55,7 @@ final class DefaultResponse implements Response
         this.body = body;
         this.trailers = trailers;
         this.origin = origin;
+        this.implicitLength = implicitLength;
     }
     
     @Override
@@ -77,6 +83,24 @@ final class DefaultResponse implements Response
         return trailers == null ? null : trailers.get();
     }
     
+    @Override
+    public ByteBuffer encodeHead(HttpConstants.Version version) {
+        var h = head;
+        if (h == null || h.version() != version) {
+            head = h = new Head(version, ResponseHeads.encodeNew(this, version));
+        }
+        return h.bytes().duplicate();
+    }
+    
+    private record Head(HttpConstants.Version version, ByteBuffer bytes) {
+        // Empty
+    }
+    
+    @Override
+    public boolean hasImplicitLength() {
+        return implicitLength;
+    }
+    
     @Override
     public Response.Builder toBuilder() {
         return origin;
@@ -104,68 +128,91 @@ final class DefaultResponse implements Response
         private static class MutableState {
             Integer statusCode;
             String reasonPhrase;
-            LinkedHashMap<String, List<String>> headers;
+            // Names and values, alternately (see DefaultContentHeaders)
+            ArrayList<String> headers;
             ResourceByteBufferIterable body;
             Supplier<Map<String, List<String>>> trailers;
+            // Content-Length was removed by the application
+            boolean noImplicitLength;
+            
+            boolean hasHeader(String name) {
+                if (headers == null) {
+                    return false;
+                }
+                for (int i = 0; i < headers.size(); i += 2) {
+                    if (headers.get(i).equalsIgnoreCase(name)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
             
             void removeHeader(String name) {
                 if (headers == null) {
                     return;
                 }
-                headers.entrySet().removeIf(e ->
-                    e.getKey().equalsIgnoreCase(name));
+                for (int i = headers.size() - 2; i >= 0; i -= 2) {
+                    if (headers.get(i).equalsIgnoreCase(name)) {
+                        headers.subList(i, i + 2).clear();
+                    }
+                }
             }
             
             void removeHeaderValue(String name, String value) {
                 if (headers == null) {
                     return;
                 }
-                var it = headers.entrySet().iterator();
-                while (it.hasNext()) {
-                    var e = it.next();
-                    if (!e.getKey().equalsIgnoreCase(name)) {
-                        continue;
-                    }
-                    e.getValue().removeIf(v ->
-                        v.equalsIgnoreCase(value));
-                    if (e.getValue().isEmpty()) {
-                        it.remove();
+                for (int i = headers.size() - 2; i >= 0; i -= 2) {
+                    if (headers.get(i).equalsIgnoreCase(name) &&
+                        headers.get(i + 1).equalsIgnoreCase(value)) {
+                        headers.subList(i, i + 2).clear();
                     }
                 }
             }
             
             void addHeader(boolean clearFirst, String name, String value) {
-                var vals = getOrCreateEntry(name);
+                var h = getOrCreateHeaders();
                 if (clearFirst) {
-                    vals.clear();
+                    // Keep the first occurrence (its position), remove the rest
+                    int first = -1;
+                    for (int i = h.size() - 2; i >= 0; i -= 2) {
+                        if (h.get(i).equals(name)) {
+                            if (first != -1) {
+                                h.subList(first, first + 2).clear();
+                            }
+                            first = i;
+                        }
+                    }
+                    if (first != -1) {
+                        h.set(first + 1, value);
+                        return;
+                    }
                 }
-                vals.add(value);
+                h.add(name);
+                h.add(value);
             }
             
             void appendHeaderToken(String name, String token) {
-                var vals = getOrCreateEntry(name);
+                var h = getOrCreateHeaders();
                 // In reverse
-                for (int i = vals.size() - 1; i >= 0; --i) {
-                    var v = vals.get(i);
+                for (int i = h.size() - 2; i >= 0; i -= 2) {
+                    if (!h.get(i).equals(name)) {
+                        continue;
+                    }
+                    var v = h.get(i + 1);
                     if (v.isEmpty()) {
                         continue;
                     }
-                    vals.remove(i);
-                    vals.add(i, v + ", " + token);
+                    h.set(i + 1, v + ", " + token);
                     return; // Job done
                 }
-                vals.add(token);
-            }
-            
-            // The call-site must add to the returned list 
-            private List<String> getOrCreateEntry(String name) {
-                return getOrCreateHeaders().computeIfAbsent(
-                        name, k -> new ArrayList<>(INITIAL_CAPACITY));
+                h.add(name);
+                h.add(token);
             }
             
-            private Map<String, List<String>> getOrCreateHeaders() {
+            private ArrayList<String> getOrCreateHeaders() {
                 var h = headers;
-                return h == null ? (headers = new LinkedHashMap<>()) : h;
+                return h == null ? (headers = new ArrayList<>()) : h;
             }
         }
         
@@ -200,7 +247,12 @@ final class DefaultResponse implements Response
         @Override
         public Response.Builder removeHeader(String name) {
             final String key = requireNotEmpty(requireNoSurroundingWS(name));
-            return new DefaultBuilder(this, s -> s.removeHeader(key));
+            return new DefaultBuilder(this, s -> {
+                s.removeHeader(key);
+                if (key.equalsIgnoreCase(CONTENT_LENGTH)) {
+                    s.noImplicitLength = true;
+                }
+            });
         }
         
         @Override
@@ -277,7 +329,7 @@ final class DefaultResponse implements Response
         public Response build() {
             MutableState s = super.constructState(MutableState::new);
             setDefaults(s);
-            final Response r = build0(s, this);
+            final Response r = build0(s, this, trySetLength(s));
             if (r.isInformational()) {
                 if (r.headers().hasConnectionClose()) {
                     // RFC 7230 "6.1. Connection"
@@ -301,7 +353,28 @@ final class DefaultResponse implements Response
                 s.body = ByteBufferIterables.empty(); }
         }
         
-        private static Response build0(MutableState s, DefaultBuilder self) {
+        // Sets Content-Length eagerly, so that the server can write the
+        // response as-is, and a cached response keeps its memoized head. Is
+        // limited to a body whose length is known without I/O.
+        private static boolean trySetLength(MutableState s) {
+            final int c = s.statusCode;
+            if (s.noImplicitLength || s.trailers != null ||
+                c < TWO_HUNDRED || c > 599 ||
+                c == TWO_HUNDRED_FOUR || c == THREE_HUNDRED_FOUR ||
+                !(s.body instanceof ByteBufferIterable b) ||
+                s.hasHeader(CONTENT_LENGTH) || s.hasHeader(TRANSFER_ENCODING)) {
+                return false;
+            }
+            final long len = b.length();
+            if (len < 0) {
+                return false;
+            }
+            s.addHeader(false, CONTENT_LENGTH, Long.toString(len));
+            return true;
+        }
+        
+        private static Response build0(
+                MutableState s, DefaultBuilder self, boolean implicitLength) {
             final ContentHeaders headers;
             try {
                 headers = s.headers == null ?
@@ -316,7 +389,8 @@ final class DefaultResponse implements Response
                     headers,
                     s.body,
                     s.trailers,
-                    self);
+                    self,
+                    implicitLength);
         }
         
         private static String requireNotEmpty(String name) {
@@ -116,11 +116,10 @@ public final class MediaRange extends MediaType {
     }
     
     private static NumberFormat nf() {
-        // TODO: Used to use ThreadLocalCache before virtual threads.
-        //       We should implement and provide a replacement, something like
-        //         "var result = PooledObject.use(numberFormatFactory, nf -> ...)
-        //       which will essentially wrap a ThreadLocalCache (strong refs) and
-        //       run the code on ForkJoinPool or whatever.
+        // Not thread-safe, so a new instance is created for each call; which
+        // is fine, the server never normalizes a media range when processing
+        // a request. ThreadLocalCache is not used, as a virtual thread's
+        // thread-local dies with the connection.
         NumberFormat nf = NumberFormat.getInstance();
         nf.setMaximumFractionDigits(3);
         return nf;
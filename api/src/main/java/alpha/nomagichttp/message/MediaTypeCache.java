@@ -0,0 +1,227 @@
+package alpha.nomagichttp.message;
+
+import alpha.nomagichttp.Config;
+import alpha.nomagichttp.HttpServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import static alpha.nomagichttp.util.Strings.splitToSink;
+
+/**
+ * A bounded cache of parsed media types, keyed by the text parsed.<p>
+ * 
+ * Most clients send the same "Content-Type" and "Accept" header values over
+ * and over again; browsers send long, identical Accept headers on every
+ * request. This cache saves the server from tokenizing and parsing them each
+ * time.<p>
+ * 
+ * Two kinds of entries are cached; a media type parsed from a single text
+ * (e.g. a Content-Type header value), and the list of media types parsed from
+ * a comma-separated header value (e.g. an Accept header value). Each kind has
+ * the capacity given to the constructor. When full, an entry is evicted using
+ * the CLOCK algorithm, which approximates LRU; an entry is given a second
+ * chance if it has been used since the clock hand last passed it.<p>
+ * 
+ * A text that fails to parse is not cached.<p>
+ * 
+ * Lookups are lock-free. Adding an entry (on a cache miss) is serialized by a
+ * lock.<p>
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ * 
+ * @see HttpServer#mediaTypeCache()
+ * @see Config#mediaTypeCacheSize()
+ */
+public final class MediaTypeCache
+{
+    private final Clock<MediaType> types;
+    private final Clock<List<MediaType>> lists;
+    private final LongAdder hits, misses;
+    
+    /**
+     * Constructs this object.
+     * 
+     * @param capacity max number of entries, of each kind
+     * 
+     * @throws IllegalArgumentException if {@code capacity} is negative
+     */
+    public MediaTypeCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+        this.types = new Clock<>(capacity);
+        this.lists = new Clock<>(capacity);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+    
+    /**
+     * Parses a media type.<p>
+     * 
+     * The result is the same as {@link MediaType#parse(String)}, but may be
+     * retrieved from this cache.
+     * 
+     * @param text to parse
+     * 
+     * @return a parsed media type (never {@code null})
+     * 
+     * @throws NullPointerException
+     *             if {@code text} is {@code null}
+     * @throws MediaTypeParseException
+     *             if parsing fails
+     */
+    public MediaType parse(String text) {
+        return get(types, text, MediaType::parse);
+    }
+    
+    /**
+     * Parses a comma-separated list of media types.<p>
+     * 
+     * The text is split on commas (quoted commas excluded), and each non-empty
+     * token is stripped and parsed. This is the same as
+     * {@code Request.Headers.accept()} does with each header line.
+     * 
+     * @param text to parse
+     * 
+     * @return an unmodifiable list of parsed media types (never {@code null})
+     * 
+     * @throws NullPointerException
+     *             if {@code text} is {@code null}
+     * @throws MediaTypeParseException
+     *             if parsing fails
+     */
+    public List<MediaType> parseAll(String text) {
+        return get(lists, text, t -> {
+            var l = new ArrayList<MediaType>();
+            splitToSink(t, ',', '"', tkn -> {
+                var s = tkn.strip();
+                if (!s.isEmpty()) {
+                    l.add(parse(s));
+                }
+            });
+            return List.copyOf(l);
+        });
+    }
+    
+    /**
+     * Returns a snapshot of the cache's statistics.<p>
+     * 
+     * The counters are not read atomically with regards to each other.
+     * 
+     * @return a snapshot of the cache's statistics (never {@code null})
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), types.size() + lists.size());
+    }
+    
+    /**
+     * Statistics of a cache.<p>
+     * 
+     * A list lookup that misses counts as one miss, and the parsing of each
+     * of its media types counts as a hit or a miss, too.
+     * 
+     * @param hits number of lookups served from the cache
+     * @param misses number of lookups that had to parse
+     * @param size number of cached entries
+     */
+    public record Stats(long hits, long misses, int size) {
+        // Empty
+    }
+    
+    private <V> V get(Clock<V> c, String text, Function<String, V> parser) {
+        V v = c.get(text);
+        if (v != null) {
+            hits.increment();
+            return v;
+        }
+        misses.increment();
+        v = parser.apply(text);
+        c.put(text, v);
+        return v;
+    }
+    
+    /**
+     * A CLOCK-evicting map.
+     * 
+     * @param <V> value type
+     */
+    private static final class Clock<V> {
+        private final ConcurrentHashMap<String, Entry<V>> map;
+        private final Entry<V>[] ring;
+        private final ReentrantLock lock;
+        private int hand;
+        
+        Clock(int capacity) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Entry<V>[] r = new Entry[capacity];
+            this.map = new ConcurrentHashMap<>();
+            this.ring = r;
+            this.lock = new ReentrantLock();
+        }
+        
+        V get(String key) {
+            var e = map.get(key);
+            if (e == null) {
+                return null;
+            }
+            if (!e.used) {
+                e.used = true;
+            }
+            return e.value;
+        }
+        
+        void put(String key, V value) {
+            if (ring.length == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                if (map.containsKey(key)) {
+                    // Put by another thread
+                    return;
+                }
+                for (;;) {
+                    var victim = ring[hand];
+                    if (victim == null) {
+                        break;
+                    }
+                    if (victim.used) {
+                        victim.used = false;
+                        hand = (hand + 1) % ring.length;
+                    } else {
+                        map.remove(victim.key);
+                        break;
+                    }
+                }
+                var e = new Entry<>(key, value);
+                ring[hand] = e;
+                map.put(key, e);
+                hand = (hand + 1) % ring.length;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        int size() {
+            return map.size();
+        }
+    }
+    
+    private static final class Entry<V> {
+        final String key;
+        final V value;
+        volatile boolean used;
+        
+        Entry(String key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -734,7 +734,20 @@ public interface Request extends HasHeaders, HasAttributes
      * "zero-copy" transfers. That is to say, the Java virtual machines makes
      * a best effort to not move data into heap space. Whenever possible, pass
      * forward the bytebuffer to the next destination without reading the bytes
-     * in application code.
+     * in application code.<p>
+     * 
+     * <h2>Content coding</h2>
+     * 
+     * A body with the header "Content-Encoding: gzip" (or "x-gzip", or
+     * "deflate") is decompressed as it is consumed, by all methods of this
+     * interface. The header itself is left as-is. The decompressed bytes are
+     * returned in a heap buffer, and the length is unknown ({@code -1}) until
+     * the body has been consumed.<p>
+     * 
+     * The number of decompressed bytes is limited to
+     * {@link Config#maxRequestBodyBufferSize()}, regardless of how the body is
+     * consumed. A body with an unsupported content coding is not decoded at
+     * all.
      * 
      * @author Martin Andersson (webmaster at martinandersson.com)
      */
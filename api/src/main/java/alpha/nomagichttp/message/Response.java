@@ -460,7 +460,8 @@ public interface Response extends HasHeaders
          * header Content-Length, and so, the application should only set this
          * header for exceptional cases (
          * <a href="https://datatracker.ietf.org/doc/html/rfc7230#section-3.3.2">RFC 7230 §3.3.2</a>
-         * ).<p>
+         * ). If the length is known in advance, {@link #build()} sets the
+         * header already.<p>
          * 
          * If the response is used only once, then the body does not need to be
          * regenerative (see JavaDoc of {@link ResourceByteBufferIterable}). If
@@ -539,7 +540,17 @@ public interface Response extends HasHeaders
         
         /**
          * Creates a new {@code Response} from the state represented by this
-         * builder.
+         * builder.<p>
+         * 
+         * If the body is a {@link ByteBufferIterable} of a known length, the
+         * response has a status code between 200 and 599 (except 204 and
+         * 304), no trailers, and neither one of the headers Content-Length and
+         * Transfer-Encoding has been set, then the header Content-Length is
+         * set to the body's length. The server would otherwise have to do so
+         * for each transmission of the response. The header is not set if the
+         * application removed it using {@link #removeHeader(String)}, and it
+         * is not part of the state of the builder returned from
+         * {@link Response#toBuilder()}.
          * 
          * @return a new {@code Response}
          * 
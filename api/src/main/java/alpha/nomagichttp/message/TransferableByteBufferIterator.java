@@ -0,0 +1,52 @@
+package alpha.nomagichttp.message;
+
+import alpha.nomagichttp.util.ByteBufferIterables;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A bytebuffer iterator that is also able to transfer its remaining bytes
+ * directly into a channel.<p>
+ * 
+ * The iterators of a file-backed body ({@link ByteBufferIterables#ofFile(
+ * java.nio.file.Path) ofFile}) implement this interface, which enables the
+ * server to write the body using {@link FileChannel#transferTo(long, long,
+ * WritableByteChannel)}. Depending on the operating system, the bytes may then
+ * never be copied into the Java heap, or even into user space.<p>
+ * 
+ * Both styles of iteration may be mixed. Any bytes of a bytebuffer previously
+ * returned by {@link #next()} that were not consumed, will be written before
+ * the transfer proceeds with the underlying resource.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+public interface TransferableByteBufferIterator extends ByteBufferIterator
+{
+    /**
+     * Transfers remaining bytes into the given channel.<p>
+     * 
+     * The number of bytes transferred is at most {@code maxBytes}, and may be
+     * less. The iteration is advanced with the number of bytes transferred.
+     * When {@link #hasNext()} returns {@code false}, there are no more bytes to
+     * transfer.<p>
+     * 
+     * The target channel should be a blocking channel. For a non-blocking
+     * channel, this method may return 0.
+     * 
+     * @param target channel
+     * @param maxBytes maximum number of bytes to transfer
+     * 
+     * @return the number of bytes transferred
+     * 
+     * @throws NullPointerException
+     *             if {@code target} is {@code null}
+     * @throws IllegalArgumentException
+     *             if {@code maxBytes} is not positive
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    long transferTo(WritableByteChannel target, long maxBytes)
+            throws IOException;
+}
@@ -7,12 +7,13 @@ import alpha.nomagichttp.message.MediaType;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableSet;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Stream;
 
 import static alpha.nomagichttp.message.MediaType.Score.NOPE;
@@ -24,23 +25,39 @@ import static java.lang.String.join;
 import static java.text.MessageFormat.format;
 import static java.util.Arrays.stream;
 import static java.util.Comparator.comparingDouble;
-import static java.util.Comparator.comparingInt;
 import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 /**
- * Default implementation of {@link Route}.
+ * Default implementation of {@link Route}.<p>
+ * 
+ * The handlers are grouped by method when the route is built, and each
+ * handler's media types and their specificity are computed once, ahead of
+ * time.<p>
+ * 
+ * The result of a successful lookup is cached. Most clients send one of a
+ * handful of exact "Content-Type" and "Accept" header values, and so, content
+ * negotiation need only run the first time a combination is observed. The
+ * cache is keyed by the method and the text of the media types as they were
+ * parsed (media range equality does not take quality into account, but the
+ * text does). The cache is a direct-mapped table, which holds the most recent
+ * result for each slot.
  * 
  * @author Martin Andersson (webmaster at martinandersson.com)
  */
 public final class DefaultRoute implements Route
 {
+    /** Number of slots in the lookup cache; power of two. */
+    private static final int CACHE_SIZE = 64;
+    
     // TODO: Consider replacing with array[]
     private final Iterable<String> segments;
-    // TODO: Consider replacing value type with array[]
-    private final Map<String, List<RequestHandler>> handlers;
+    private final Map<String, Candidate[]> handlers;
+    private final AtomicReferenceArray<Resolved> cache;
     
     /**
      * Constructs a {@code DefaultRoute}.<p>
@@ -58,7 +75,11 @@ public final class DefaultRoute implements Route
             throw new IllegalStateException("No handlers.");
         }
         this.segments = segments;
-        this.handlers = handlers.stream().collect(groupingBy(RequestHandler::method));
+        this.handlers = Map.copyOf(handlers.stream()
+                .map(Candidate::new)
+                .collect(groupingBy(c -> c.handler().method(),
+                         collectingAndThen(toList(), l -> l.toArray(Candidate[]::new)))));
+        this.cache = new AtomicReferenceArray<>(CACHE_SIZE);
     }
     
     @Override
@@ -67,19 +88,35 @@ public final class DefaultRoute implements Route
             MediaType contentType,
             Collection<MediaType> accepts)
     {
-        List<RequestHandler> forMethod = filterByMethod(method, contentType, accepts);
+        final int hash = hash(method, contentType, accepts);
+        final int slot = hash & (CACHE_SIZE - 1);
+        final Resolved r = cache.get(slot);
+        if (r != null && r.matches(hash, method, contentType, accepts)) {
+            return r.handler();
+        }
+        final RequestHandler h = negotiate(method, contentType, accepts);
+        cache.set(slot, Resolved.of(hash, method, contentType, accepts, h));
+        return h;
+    }
+    
+    private RequestHandler negotiate(
+            String method,
+            MediaType contentType,
+            Collection<MediaType> accepts)
+    {
+        Candidate[] forMethod = filterByMethod(method, contentType, accepts);
         
         NavigableSet<RankedHandler> candidates = null;
         Set<RankedHandler> ambiguous = null;
         
         boolean consumedContentType = false;
-        for (RequestHandler h : forMethod) {
-            if (!filterByContentType(h, contentType)) {
+        for (Candidate c : forMethod) {
+            if (!filterByContentType(c, contentType)) {
                 continue;
             }
             consumedContentType = true;
             
-            RankedHandler r = filterByAccept(h, accepts);
+            RankedHandler r = filterByAccept(c, accepts);
             if (r == null) {
                 continue;
             }
@@ -124,16 +161,16 @@ public final class DefaultRoute implements Route
      * Return all handlers of the specified method, or throws
      * {@code NoHandlerFoundException}.
      */
-    private List<RequestHandler> filterByMethod(
+    private Candidate[] filterByMethod(
             String method,
             MediaType contentType,
             Collection<MediaType> accepts)
     {
-        final List<RequestHandler> rh = handlers.get(method);
+        final Candidate[] rh = handlers.get(method);
         if (rh == null) {
             throw new MethodNotAllowedException(this, method, contentType, accepts);
         }
-        assert !rh.isEmpty();
+        assert rh.length > 0;
         return rh;
     }
     
@@ -142,7 +179,7 @@ public final class DefaultRoute implements Route
      * content-type, otherwise {@code false}.
      */
     private static boolean filterByContentType(
-            RequestHandler handler,
+            Candidate handler,
             MediaType contentType)
     {
         final MediaType consumes = handler.consumes();
@@ -173,31 +210,133 @@ public final class DefaultRoute implements Route
      */
     // TODO: Should probably instead of using Q of the most specific type use
     //       the greatest Q of any compatible type discovered?
-    private static RankedHandler filterByAccept(RequestHandler handler, Collection<MediaType> accepts) {
-        final MediaType produces = handler.produces();
-        
+    private static RankedHandler filterByAccept(Candidate handler, Collection<MediaType> accepts) {
         if (accepts == null || accepts.isEmpty()) {
             // If accept is not provided, the default is "*/*; q=1".
-            return produces.parameters().isEmpty() ?
+            return handler.producesNoParams() ?
                     new RankedHandler(1., handler) : null;
         }
         
-        Optional<MediaType> opt = accepts.stream()
-                    .filter(a -> produces.compatibility(a) != NOPE)
-                    .min(comparingInt(MediaType::specificity));
+        final MediaType produces = handler.produces();
+        MediaType specific = null;
+        for (MediaType a : accepts) {
+            if (produces.compatibility(a) != NOPE &&
+                (specific == null || a.specificity() < specific.specificity())) {
+                specific = a;
+            }
+        }
         
-        if (opt.isEmpty()) {
+        if (specific == null) {
             return null;
         }
         
-        MediaType specific = opt.get();
-        
         double q = specific instanceof MediaRange ?
                 ((MediaRange) specific).quality() : 1.;
         
         return new RankedHandler(q, handler);
     }
     
+    private static int hash(
+            String method, MediaType contentType, Collection<MediaType> accepts) {
+        int h = method.hashCode();
+        h = 31 * h + (contentType == null ? 0 : contentType.toString().hashCode());
+        if (accepts != null) {
+            for (MediaType a : accepts) {
+                h = 31 * h + a.toString().hashCode();
+            }
+        }
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * A handler, and its media types computed ahead of time.
+     * 
+     * @param handler the handler
+     * @param consumes {@code handler.consumes()}
+     * @param produces {@code handler.produces()}
+     * @param producesNoParams {@code produces.parameters().isEmpty()}
+     * @param specificityOfProduces {@code produces.specificity()}
+     * @param specificityOfConsumes {@code consumes.specificity()}
+     */
+    private record Candidate(
+            RequestHandler handler,
+            MediaType consumes,
+            MediaType produces,
+            boolean producesNoParams,
+            int specificityOfProduces,
+            int specificityOfConsumes)
+    {
+        Candidate(RequestHandler handler) {
+            this(handler,
+                 handler.consumes(),
+                 handler.produces(),
+                 handler.produces().parameters().isEmpty(),
+                 handler.produces().specificity(),
+                 handler.consumes().specificity());
+        }
+    }
+    
+    /**
+     * A cached lookup result.
+     * 
+     * @param hash of the key
+     * @param method of the key
+     * @param contentType text of the key's content-type (may be {@code null})
+     * @param accepts text of the key's accepted media types
+     * @param handler the result
+     */
+    private record Resolved(
+            int hash,
+            String method,
+            String contentType,
+            String[] accepts,
+            RequestHandler handler)
+    {
+        static Resolved of(
+                int hash,
+                String method,
+                MediaType contentType,
+                Collection<MediaType> accepts,
+                RequestHandler handler)
+        {
+            return new Resolved(
+                    hash,
+                    method,
+                    contentType == null ? null : contentType.toString(),
+                    accepts == null ? new String[0] :
+                        accepts.stream().map(MediaType::toString).toArray(String[]::new),
+                    handler);
+        }
+        
+        boolean matches(
+                int hash,
+                String method,
+                MediaType contentType,
+                Collection<MediaType> accepts)
+        {
+            if (this.hash != hash || !this.method.equals(method)) {
+                return false;
+            }
+            if (!Objects.equals(this.contentType,
+                    contentType == null ? null : contentType.toString())) {
+                return false;
+            }
+            final int n = accepts == null ? 0 : accepts.size();
+            if (this.accepts.length != n) {
+                return false;
+            }
+            if (n > 0) {
+                Iterator<MediaType> it = accepts.iterator();
+                for (String a : this.accepts) {
+                    if (!a.equals(it.next().toString())) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+    
     @Override
     public Iterable<String> segments() {
         return segments;
@@ -232,11 +371,11 @@ public final class DefaultRoute implements Route
                           specificityOfConsumes,
                           hash;
         
-        RankedHandler(double /* quality: */ rank, RequestHandler handler) {
+        RankedHandler(double /* quality: */ rank, Candidate c) {
             this.rank = rank;
-            this.handler = handler;
-            this.specificityOfProduces = handler.produces().specificity();
-            this.specificityOfConsumes = handler.consumes().specificity();
+            this.handler = c.handler();
+            this.specificityOfProduces = c.specificityOfProduces();
+            this.specificityOfConsumes = c.specificityOfConsumes();
             this.hash = Double.hashCode(rank) + handler.hashCode();
         }
         
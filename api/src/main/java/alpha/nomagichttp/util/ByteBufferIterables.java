@@ -8,11 +8,13 @@ import alpha.nomagichttp.message.ByteBufferIterator;
 import alpha.nomagichttp.message.Request;
 import alpha.nomagichttp.message.ResourceByteBufferIterable;
 import alpha.nomagichttp.message.Response;
+import alpha.nomagichttp.message.TransferableByteBufferIterator;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
@@ -33,6 +35,7 @@ import static alpha.nomagichttp.util.Blah.getOrClose;
 import static alpha.nomagichttp.util.Blah.throwsNoChecked;
 import static alpha.nomagichttp.util.Blah.toNanosOrMaxValue;
 import static alpha.nomagichttp.util.ByteBuffers.asArray;
+import static alpha.nomagichttp.util.ScopedValues.HTTP_SERVER;
 import static alpha.nomagichttp.util.ScopedValues.httpServer;
 import static alpha.nomagichttp.util.Streams.stream;
 import static java.nio.ByteBuffer.allocateDirect;
@@ -70,7 +73,15 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
  * one underlying bytebuffer for file read operations, and so same requirements
  * apply; the bytebuffer should be partially or fully consumed at once using
  * relative get or relative bulk get methods (which is what the
- * {@link ChannelWriter#write(Response) ChannelWriter} do; no sweat!).
+ * {@link ChannelWriter#write(Response) ChannelWriter} do; no sweat!).<p>
+ * 
+ * The {@code ofFile} iterator is also a {@link TransferableByteBufferIterator},
+ * which the server uses to transfer the file contents directly into the client
+ * channel. The bytebuffer used for file read operations is only acquired if
+ * {@code next} is called. If the iterator is created by code running within a
+ * server, the buffer is acquired from the server's
+ * {@link HttpServer#bufferPool() pool}, and released when the iterator
+ * closes.
  * 
  * @author Martin Andersson (webmaster at martinandersson.com)
  * 
@@ -78,6 +89,22 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
  */
 public final class ByteBufferIterables
 {
+    /**
+     * A sentinel bytebuffer which a streaming response body can yield to have
+     * the data yielded so far written to the client, without delay.<p>
+     * 
+     * The server may coalesce the bytebuffers of a response body before
+     * writing them, for example into chunks of {@link Config#chunkSize()}. For
+     * a latency-sensitive stream, such as server-sent events, the supplier
+     * given to {@link #ofSupplier(Throwing.Supplier)} should yield this
+     * bytebuffer after each message.<p>
+     * 
+     * The sentinel is compared by identity. It has no remaining bytes, but
+     * unlike an empty bytebuffer, it does not end the stream. It is ignored by
+     * a consumer not coalescing bytebuffers.
+     */
+    public static final ByteBuffer FLUSH = ByteBuffer.allocate(0).asReadOnlyBuffer();
+    
     private ByteBufferIterables() {
         // Empty
     }
@@ -316,11 +343,42 @@ public final class ByteBufferIterables
         return new OfFile(file, false);
     }
     
+    /**
+     * {@return an iterable of a region of a file}<p>
+     * 
+     * The iterable behaves in exactly the same way as the iterable returned
+     * from {@link #ofFile(Path)}, except only the bytes of the given region are
+     * iterated (and transferred). The region is clamped to the size of the
+     * file, when the iterator is created. For example, a region that starts at
+     * or beyond the end of the file has no bytes.<p>
+     * 
+     * This method is used to serve a range request (see {@link
+     * alpha.nomagichttp.handler.ByteRanges}).
+     * 
+     * @param file to read bytes from
+     * @param position of the first byte
+     * @param count max number of bytes
+     * 
+     * @throws NullPointerException
+     *             if {@code file} is {@code null}
+     * @throws IllegalArgumentException
+     *             if {@code position} or {@code count} is negative
+     */
+    public static ResourceByteBufferIterable ofFileRegion(
+            Path file, long position, long count) {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException(
+                "Negative position or count: " + position + ", " + count);
+        }
+        return new OfFile(file, position, count);
+    }
+    
     /**
      * {@return an iterable generating bytebuffers from the given supplier}<p>
      * 
      * Each new iterator will pull the supplier at least once, until an empty
-     * bytebuffer is returned.<p>
+     * bytebuffer is returned. The iterator yields {@link #FLUSH} as-is, and it
+     * does not end the stream.<p>
      * 
      * This method is intended to be used for streaming response bodies.<p>
      * 
@@ -419,12 +477,16 @@ public final class ByteBufferIterables
         private final boolean useLock;
         private final Long timeout;
         private final TimeUnit unit;
+        // The region; by default, the whole file
+        private final long offset, maxLength;
         
         OfFile(Path file, boolean useLock) {
             this.file = requireNonNull(file);
             this.useLock = useLock;
             this.timeout = null;
             this.unit = null;
+            this.offset = 0;
+            this.maxLength = Long.MAX_VALUE;
         }
         
         OfFile(Path file, long timeout, TimeUnit unit) {
@@ -432,6 +494,17 @@ public final class ByteBufferIterables
             this.useLock = true;
             this.timeout = timeout;
             this.unit = requireNonNull(unit);
+            this.offset = 0;
+            this.maxLength = Long.MAX_VALUE;
+        }
+        
+        OfFile(Path file, long offset, long maxLength) {
+            this.file = requireNonNull(file);
+            this.useLock = true;
+            this.timeout = null;
+            this.unit = null;
+            this.offset = offset;
+            this.maxLength = maxLength;
         }
         
         @Override
@@ -442,26 +515,33 @@ public final class ByteBufferIterables
         
         @Override
         public long length() throws IOException {
-            return Files.size(file);
+            return regionEnd(Files.size(file)) - offset;
         }
         
-        private class Iterator implements ByteBufferIterator {
-            private final ByteBuffer buf, view;
+        // File position after the last byte of the region
+        private long regionEnd(long size) {
+            return Math.max(offset,
+                    Math.min(size, addExactOrCap(offset, maxLength)));
+        }
+        
+        private class Iterator implements TransferableByteBufferIterator {
             private final JvmPathLock lck;
             private final FileChannel ch;
+            // File position after the last byte to read or transfer
             private final long len;
+            // Lazily acquired; a transferred file never needs them
+            private ByteBuffer buf, view;
+            // Where buf came from, if anywhere; null after release
+            private ByteBufferPool pool;
+            // File position of the next byte to read or transfer
             private long count;
             
             Iterator()
                   throws InterruptedException, FileLockTimeoutException, IOException {
-                this.buf = allocateDirect(BUF_SIZE);
-                // The view is created with no remaining to force-read on first
-                // call to next()
-                this.view = buf.asReadOnlyBuffer().position(BUF_SIZE);
                 this.lck = useLock ? readLock() : null;
                 this.ch = getOrClose(() -> open(file, READ), this);
-                this.len = getOrClose(ch::size, this);
-                this.count = 0;
+                this.len = regionEnd(getOrClose(ch::size, this));
+                this.count = offset;
             }
             
             private JvmPathLock readLock()
@@ -475,23 +555,27 @@ public final class ByteBufferIterables
             
             @Override
             public boolean hasNext() {
-                return view.hasRemaining() || desireInt() > 0;
+                return viewHasRemaining() || desireInt() > 0;
             }
             
             @Override
             public ByteBuffer next() throws IOException {
-                if (view.hasRemaining()) {
+                if (viewHasRemaining()) {
                     return view;
                 }
                 final int d = desireInt();
                 if (d == 0) {
                     throw new NoSuchElementException();
                 }
+                if (buf == null) {
+                    acquireBuffer();
+                }
                 // Not public:
                 //     requireVirtualThread()
                 // But does not matter; is called by the ChannelReader
                 clearAndLimitBuffers(d);
-                int v = ch.read(buf);
+                // Positional read; count is our one and only file cursor
+                int v = ch.read(buf, count);
                 assert v != -1 : "End-Of-Stream not expected";
                 assert v > 0 : "Should have read something";
                 count = addExactOrCap(count, v);
@@ -500,6 +584,50 @@ public final class ByteBufferIterables
                 return view;
             }
             
+            @Override
+            public long transferTo(WritableByteChannel target, long maxBytes)
+                    throws IOException {
+                requireNonNull(target);
+                if (maxBytes <= 0) {
+                    throw new IllegalArgumentException("maxBytes <= 0");
+                }
+                if (viewHasRemaining()) {
+                    // Bytes already read must go first
+                    final int lim = view.limit();
+                    if (view.remaining() > maxBytes) {
+                        view.limit(view.position() + (int) maxBytes);
+                    }
+                    try {
+                        return target.write(view);
+                    } finally {
+                        view.limit(lim);
+                    }
+                }
+                final long n = ch.transferTo(
+                        count, Math.min(len - count, maxBytes), target);
+                count = addExactOrCap(count, n);
+                return n;
+            }
+            
+            private void acquireBuffer() {
+                pool = HTTP_SERVER.isBound() ? httpServer().bufferPool() : null;
+                buf = pool == null ?
+                        allocateDirect(BUF_SIZE) :
+                        pool.acquire(BUF_SIZE).limit(BUF_SIZE);
+                view = buf.asReadOnlyBuffer();
+            }
+            
+            private void releaseBuffer() {
+                if (pool != null) {
+                    pool.release(buf);
+                    pool = null;
+                }
+            }
+            
+            private boolean viewHasRemaining() {
+                return view != null && view.hasRemaining();
+            }
+            
             private int desireInt() {
                 final long d = len - count;
                 assert d >= 0L : "Weird to have negative cravings";
@@ -525,6 +653,7 @@ public final class ByteBufferIterables
                     // Can be null; see iterator()
                     if (ch != null) ch.close();
                 } finally {
+                    releaseBuffer();
                     if (lck != null) lck.close();
                 }
             }
@@ -562,6 +691,9 @@ public final class ByteBufferIterables
                     throw new NoSuchElementException();
                 }
                 var buf = s.get();
+                if (buf == FLUSH) {
+                    return buf;
+                }
                 if (!buf.hasRemaining()) {
                     eos = true;
                 }
@@ -0,0 +1,324 @@
+package alpha.nomagichttp.util;
+
+import alpha.nomagichttp.Config;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.System.Logger.Level.WARNING;
+import static java.lang.System.identityHashCode;
+import static java.nio.ByteBuffer.allocateDirect;
+
+/**
+ * A pool of direct bytebuffers.<p>
+ * 
+ * Buffers are pooled in four size classes; 512 bytes, 4 KiB, 16 KiB and 64
+ * KiB. A buffer request is served by the smallest size class that fits. A
+ * request larger than the largest size class is served by a new buffer, which
+ * will not be retained when released.<p>
+ * 
+ * Each size class has a number of free lists ("stripes"), each guarded by its
+ * own lock. A thread starts looking for a free buffer in the stripe derived
+ * from its thread id, and moves on to other stripes only if its own stripe is
+ * empty. Virtual threads are spread out evenly across the stripes, and so
+ * contention is low even when there are many more threads than stripes.<p>
+ * 
+ * The pool retains idle buffers up until the capacity given to the
+ * constructor, split evenly across the size classes. A released buffer that
+ * does not fit is left for the garbage collector.<p>
+ * 
+ * A buffer acquired must be released exactly once, and must not be used after
+ * having been released. Failure to release a buffer does not leak memory, but
+ * defeats the purpose of the pool.<p>
+ * 
+ * If assertions are enabled, this class detects leaks. A warning is logged if
+ * a buffer is garbage collected without having been released, together with
+ * the stack trace of where the buffer was acquired. Releasing a buffer that is
+ * not acquired from the pool (or already released) throws an
+ * {@link IllegalStateException}.<p>
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ * 
+ * @see Config#bufferPoolCapacity()
+ */
+public final class ByteBufferPool
+{
+    private static final System.Logger
+            LOG = System.getLogger(ByteBufferPool.class.getPackageName());
+    
+    private static final int[] SIZES = {512, 4_096, 16_384, 65_536};
+    
+    private static final int N_STRIPES = stripes();
+    
+    private static int stripes() {
+        // Power of two; for masking the thread id
+        int n = Integer.highestOneBit(Runtime.getRuntime().availableProcessors());
+        return Math.min(n, 16);
+    }
+    
+    private final SizeClass[] classes;
+    private final LongAdder hits, misses, outstanding;
+    private final Leaks leaks;
+    
+    /**
+     * Constructs this object.
+     * 
+     * @param capacity max number of bytes retained by idle buffers
+     * 
+     * @throws IllegalArgumentException if {@code capacity} is negative
+     */
+    public ByteBufferPool(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+        var c = new SizeClass[SIZES.length];
+        for (int i = 0; i < c.length; ++i) {
+            int share = capacity / SIZES.length / SIZES[i];
+            c[i] = new SizeClass(SIZES[i], share / N_STRIPES);
+        }
+        this.classes = c;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.outstanding = new LongAdder();
+        this.leaks = ByteBufferPool.class.desiredAssertionStatus() ?
+                new Leaks() : null;
+    }
+    
+    /**
+     * Acquires a direct bytebuffer.<p>
+     * 
+     * The returned buffer has position 0 and its limit set to its capacity,
+     * which is at least the given size.
+     * 
+     * @param size minimum capacity of the buffer
+     * 
+     * @return a buffer (never {@code null})
+     * 
+     * @throws IllegalArgumentException if {@code size} is negative
+     */
+    public ByteBuffer acquire(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size: " + size);
+        }
+        final SizeClass c = sizeClass(size);
+        if (c == null) {
+            misses.increment();
+            return allocateDirect(size);
+        }
+        ByteBuffer buf = c.poll();
+        if (buf == null) {
+            misses.increment();
+            buf = allocateDirect(c.size);
+        } else {
+            hits.increment();
+            buf.clear();
+        }
+        outstanding.increment();
+        if (leaks != null) {
+            leaks.track(buf);
+        }
+        return buf;
+    }
+    
+    /**
+     * Releases a bytebuffer back to the pool.<p>
+     * 
+     * A buffer larger than the largest size class is ignored.
+     * 
+     * @param buf to release
+     * 
+     * @throws NullPointerException
+     *             if {@code buf} is {@code null}
+     * @throws IllegalStateException
+     *             if assertions are enabled, and the buffer is not acquired
+     *             from this pool or already released
+     */
+    public void release(ByteBuffer buf) {
+        final SizeClass c = sizeClass(buf.capacity());
+        if (c == null || c.size != buf.capacity() || !buf.isDirect()) {
+            return;
+        }
+        if (leaks != null) {
+            leaks.untrack(buf);
+        }
+        outstanding.decrement();
+        c.offer(buf);
+    }
+    
+    /**
+     * Returns a snapshot of the pool's statistics.<p>
+     * 
+     * The counters are not read atomically with regards to each other.
+     * 
+     * @return a snapshot of the pool's statistics (never {@code null})
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), outstanding.sum());
+    }
+    
+    /**
+     * Statistics of a pool.
+     * 
+     * @param hits number of buffers acquired from a free list
+     * @param misses number of buffers that had to be allocated
+     * @param outstanding number of pooled buffers acquired but not released
+     */
+    public record Stats(long hits, long misses, long outstanding) {
+        // Empty
+    }
+    
+    private SizeClass sizeClass(int size) {
+        for (var c : classes) {
+            if (size <= c.size) {
+                return c;
+            }
+        }
+        return null;
+    }
+    
+    private static int stripe() {
+        return (int) Thread.currentThread().threadId() & (N_STRIPES - 1);
+    }
+    
+    private static final class SizeClass {
+        final int size;
+        private final int max;
+        private final ArrayDeque<ByteBuffer>[] free;
+        private final ReentrantLock[] locks;
+        
+        SizeClass(int size, int maxPerStripe) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            ArrayDeque<ByteBuffer>[] f = new ArrayDeque[N_STRIPES];
+            var l = new ReentrantLock[N_STRIPES];
+            for (int i = 0; i < N_STRIPES; ++i) {
+                f[i] = new ArrayDeque<>();
+                l[i] = new ReentrantLock();
+            }
+            this.size = size;
+            this.max = maxPerStripe;
+            this.free = f;
+            this.locks = l;
+        }
+        
+        ByteBuffer poll() {
+            if (max == 0) {
+                return null;
+            }
+            final int home = stripe();
+            for (int i = 0; i < N_STRIPES; ++i) {
+                final int s = (home + i) & (N_STRIPES - 1);
+                final var l = locks[s];
+                l.lock();
+                try {
+                    var buf = free[s].pollLast();
+                    if (buf != null) {
+                        return buf;
+                    }
+                } finally {
+                    l.unlock();
+                }
+            }
+            return null;
+        }
+        
+        void offer(ByteBuffer buf) {
+            if (max == 0) {
+                return;
+            }
+            final int s = stripe();
+            final var l = locks[s];
+            l.lock();
+            try {
+                if (free[s].size() < max) {
+                    free[s].addLast(buf);
+                }
+            } finally {
+                l.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Tracks acquired buffers; only used if assertions are enabled.<p>
+     * 
+     * A bytebuffer's {@code hashCode} and {@code equals} are content-based, so
+     * the buffers are keyed by their identity hash code.
+     */
+    private static final class Leaks {
+        private final ReferenceQueue<ByteBuffer> collected;
+        private final Map<Integer, List<Ref>> acquired;
+        
+        Leaks() {
+            this.collected = new ReferenceQueue<>();
+            this.acquired = new ConcurrentHashMap<>();
+        }
+        
+        void track(ByteBuffer buf) {
+            expunge();
+            var ref = new Ref(buf, collected);
+            acquired.compute(ref.id, (k, v) -> {
+                var list = v == null ? new ArrayList<Ref>(1) : v;
+                list.add(ref);
+                return list;
+            });
+        }
+        
+        void untrack(ByteBuffer buf) {
+            expunge();
+            var found = new Ref[1];
+            acquired.computeIfPresent(identityHashCode(buf), (k, v) -> {
+                for (var it = v.iterator(); it.hasNext(); ) {
+                    var r = it.next();
+                    if (r.get() == buf) {
+                        it.remove();
+                        found[0] = r;
+                        break;
+                    }
+                }
+                return v.isEmpty() ? null : v;
+            });
+            if (found[0] == null) {
+                throw new IllegalStateException(
+                    "Buffer is not acquired from this pool, or already released.");
+            }
+            // Will not be enqueued
+            found[0].clear();
+        }
+        
+        private void expunge() {
+            for (Ref r; (r = (Ref) collected.poll()) != null; ) {
+                final var ref = r;
+                var leaked = new boolean[1];
+                acquired.computeIfPresent(ref.id, (k, v) -> {
+                    leaked[0] = v.remove(ref);
+                    return v.isEmpty() ? null : v;
+                });
+                if (leaked[0]) {
+                    LOG.log(WARNING,
+                        "Pooled bytebuffer was never released.", ref.origin);
+                }
+            }
+        }
+        
+        private static final class Ref extends WeakReference<ByteBuffer> {
+            final int id;
+            final Throwable origin;
+            
+            Ref(ByteBuffer buf, ReferenceQueue<ByteBuffer> q) {
+                super(buf, q);
+                this.id = identityHashCode(buf);
+                this.origin = new Throwable("Acquired here");
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package alpha.nomagichttp.util;
+
+import alpha.nomagichttp.Config;
+import alpha.nomagichttp.message.MediaType;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static alpha.nomagichttp.message.MediaType.Score.NOPE;
+import static java.lang.Double.parseDouble;
+import static java.util.Locale.ROOT;
+
+/**
+ * Content-coding utilities.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ * 
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc9110#section-8.4.1">RFC 9110 §8.4.1</a>
+ */
+public final class ContentCodings
+{
+    private ContentCodings() {
+        // Empty
+    }
+    
+    /**
+     * Returns the quality values of the given content-codings.<p>
+     * 
+     * A wildcard ("*") applies to the codings not listed. A coding not listed,
+     * and not covered by a wildcard, has the quality value 0 (not
+     * acceptable). A malformed quality value is also 0. "x-gzip" is an alias
+     * of "gzip".<p>
+     * 
+     * For example, given the tokens "br;q=0.5" and "*", and the codings "gzip"
+     * and "br", this method returns {@code [1, 0.5]}.
+     * 
+     * @param acceptEncoding tokens of the request's "Accept-Encoding" header
+     * @param codings lower-cased names of the codings to look up
+     * 
+     * @return the quality values, in the same order as {@code codings}
+     * 
+     * @throws NullPointerException
+     *             if any argument is {@code null}
+     * 
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc9110#section-12.5.3">RFC 9110 §12.5.3</a>
+     */
+    public static double[] qualities(
+            Stream<String> acceptEncoding, String... codings) {
+        final double[] q = new double[codings.length];
+        Arrays.fill(q, -1);
+        double any = -1;
+        for (var t : (Iterable<String>) acceptEncoding::iterator) {
+            final int semi = t.indexOf(';');
+            String name = (semi < 0 ? t : t.substring(0, semi))
+                    .strip().toLowerCase(ROOT);
+            if (name.equals("x-gzip")) {
+                name = "gzip";
+            }
+            final double v = semi < 0 ? 1 : quality(t.substring(semi + 1));
+            if (name.equals("*")) {
+                any = v;
+                continue;
+            }
+            for (int i = 0; i < codings.length; ++i) {
+                if (codings[i].equals(name)) {
+                    q[i] = v;
+                }
+            }
+        }
+        for (int i = 0; i < q.length; ++i) {
+            if (q[i] < 0) {
+                q[i] = Math.max(any, 0);
+            }
+        }
+        return q;
+    }
+    
+    /**
+     * Returns {@code true} if the given media type is compressible.<p>
+     * 
+     * The type is compressible if it is compatible with any one of {@link
+     * Config#compressibleMediaTypes()}.
+     * 
+     * @param type media type of a body (may be {@code null})
+     * @param config the server's configuration
+     * 
+     * @return {@code true} if the given media type is compressible
+     * 
+     * @throws NullPointerException
+     *             if {@code config} is {@code null}
+     */
+    public static boolean isCompressible(MediaType type, Config config) {
+        final var types = config.compressibleMediaTypes();
+        if (type == null) {
+            return false;
+        }
+        for (var t : types) {
+            if (t.compatibility(type) != NOPE) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static double quality(String params) {
+        for (var p : params.split(";")) {
+            final var kv = p.strip();
+            if (kv.length() > 2 && (kv.charAt(0) == 'q' || kv.charAt(0) == 'Q')
+                                && kv.charAt(1) == '=') {
+                try {
+                    return parseDouble(kv.substring(2));
+                } catch (NumberFormatException _) {
+                    // Malformed; not acceptable
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,204 @@
+package alpha.nomagichttp.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.Long.numberOfLeadingZeros;
+
+/**
+ * A lock-free histogram of non-negative long values.<p>
+ * 
+ * The values are counted in log-linear buckets, similar to an HdrHistogram
+ * with one significant digit; each power of two is split into 8 buckets of
+ * equal width. Values below 8 are counted exactly, and the relative error of
+ * any other value is at most 12.5%. The histogram covers the entire range of
+ * a long in a fixed number of buckets (4 KiB of counters).<p>
+ * 
+ * Recording a value does not allocate and does not lock; it is one atomic
+ * increment of a bucket counter, plus updates of the sum and the maximum.
+ * Contention is low as long as concurrent values do not fall in the same
+ * bucket.<p>
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+public final class Histogram
+{
+    // Number of bits used to split a power of two into sub-buckets
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // Values below 8, then 8 buckets for each power of two from 2^3 to 2^62
+    private static final int N_BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+    
+    private final AtomicLongArray counts;
+    private final LongAdder sum;
+    private final AtomicLong max;
+    
+    /**
+     * Constructs this object.
+     */
+    public Histogram() {
+        this.counts = new AtomicLongArray(N_BUCKETS);
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+    
+    /**
+     * Records a value.<p>
+     * 
+     * A negative value is recorded as 0.
+     * 
+     * @param value to record
+     */
+    public void record(long value) {
+        final long v = Math.max(value, 0);
+        counts.incrementAndGet(index(v));
+        sum.add(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+    
+    /**
+     * Returns a snapshot of this histogram.<p>
+     * 
+     * The buckets are not read atomically with regards to each other, nor with
+     * regards to the sum and maximum. A value recorded concurrently may or may
+     * not be reflected in the snapshot.
+     * 
+     * @return a snapshot of this histogram (never {@code null})
+     */
+    public Snapshot snapshot() {
+        final var c = new long[N_BUCKETS];
+        long n = 0;
+        for (int i = 0; i < c.length; ++i) {
+            n += c[i] = counts.get(i);
+        }
+        return new Snapshot(c, n, sum.sum(), max.get());
+    }
+    
+    static int index(long v) {
+        if (v < SUB_COUNT) {
+            return (int) v;
+        }
+        final int exp = 63 - numberOfLeadingZeros(v);
+        final int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+    
+    static long highestValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        final int exp = index / SUB_COUNT + SUB_BITS - 1,
+                  sub = index % SUB_COUNT,
+                  shift = exp - SUB_BITS;
+        final long lowest = (long) (SUB_COUNT + sub) << shift;
+        return lowest + ((1L << shift) - 1);
+    }
+    
+    /**
+     * An immutable snapshot of a histogram.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count, sum, max;
+        
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+        
+        /**
+         * {@return the number of values recorded}
+         */
+        public long count() {
+            return count;
+        }
+        
+        /**
+         * {@return the sum of all values recorded}<p>
+         * 
+         * The sum overflows silently.
+         */
+        public long sum() {
+            return sum;
+        }
+        
+        /**
+         * {@return the largest value recorded, or 0 if none}
+         */
+        public long max() {
+            return max;
+        }
+        
+        /**
+         * {@return the arithmetic mean of all values recorded, or 0 if none}
+         */
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+        
+        /**
+         * Returns the value at the given quantile.<p>
+         * 
+         * The returned value is the highest value of the bucket in which the
+         * quantile falls, capped at the maximum recorded value. For example,
+         * {@code valueAt(0.99)} returns a value that is larger than or equal
+         * to at least 99% of all values recorded.
+         * 
+         * @param quantile between 0 and 1 (inclusive)
+         * 
+         * @return the value at the given quantile, or 0 if no values have been
+         *         recorded
+         * 
+         * @throws IllegalArgumentException
+         *             if {@code quantile} is not between 0 and 1
+         */
+        public long valueAt(double quantile) {
+            if (!(quantile >= 0 && quantile <= 1)) {
+                throw new IllegalArgumentException(
+                        "Quantile out of range: " + quantile);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; ++i) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+        
+        /**
+         * Appends this snapshot in the Prometheus text format, as a summary.
+         * 
+         * @param sb to append to
+         * @param name of the metric
+         * @param labels the labels, comma-separated (may be empty)
+         * @param unit divisor of the values (e.g. 1e9 for nanos to seconds)
+         */
+        void appendPrometheus(
+                StringBuilder sb, String name, String labels, double unit) {
+            final String sep = labels.isEmpty() ? "" : ",";
+            for (double q : new double[]{0.5, 0.9, 0.99, 0.999}) {
+                sb.append(name).append("{").append(labels).append(sep)
+                  .append("quantile=\"").append(q).append("\"} ")
+                  .append(valueAt(q) / unit).append('\n');
+            }
+            final String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+            sb.append(name).append("_sum").append(braces).append(' ')
+              .append(sum / unit).append('\n');
+            sb.append(name).append("_count").append(braces).append(' ')
+              .append(count).append('\n');
+        }
+    }
+}
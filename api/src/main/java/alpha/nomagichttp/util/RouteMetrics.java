@@ -0,0 +1,55 @@
+package alpha.nomagichttp.util;
+
+import alpha.nomagichttp.route.Route;
+
+import java.util.List;
+
+/**
+ * Latency and response size histograms of a route.<p>
+ * 
+ * One instance is created for a route when the route is added to the server,
+ * and discarded when the route is removed. The instance has two
+ * {@link Histogram}s for each HTTP method supported by the route; and so, the
+ * memory footprint is fixed (about 8 KiB per method).<p>
+ * 
+ * The latency is measured from when the request head started to be received,
+ * until the final response was written. The number of requests is the count
+ * of the latency histogram.<p>
+ * 
+ * This interface is read-only; the metrics are recorded by the server
+ * implementation.<p>
+ * 
+ * The implementation is thread-safe.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ * 
+ * @see ServerMetrics#routes()
+ */
+public interface RouteMetrics
+{
+    /**
+     * {@return the route}
+     */
+    Route route();
+    
+    /**
+     * Returns a snapshot for each HTTP method supported by the route.
+     * 
+     * @return snapshots (never {@code null})
+     */
+    List<Snapshot> snapshot();
+    
+    /**
+     * Metrics of a route's request handler.
+     * 
+     * @param route the route pattern
+     * @param method the HTTP method of the request handler
+     * @param latency nanoseconds from request head to final response written
+     * @param size number of bytes of the responses written
+     */
+    record Snapshot(
+            String route, String method,
+            Histogram.Snapshot latency, Histogram.Snapshot size) {
+        // Empty
+    }
+}
@@ -0,0 +1,164 @@
+package alpha.nomagichttp.util;
+
+import alpha.nomagichttp.HttpServer;
+import alpha.nomagichttp.route.Route;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of an {@link HttpServer}.<p>
+ * 
+ * The metrics are always collected. The counters are {@link LongAdder}s and
+ * the histograms are lock-free {@link Histogram}s, and so the overhead of
+ * recording is a few atomic increments per exchange; no allocation, and no
+ * locking.<p>
+ * 
+ * The server records:
+ * <ul>
+ *   <li>The time it took to parse a request head</li>
+ *   <li>The time it took to execute the request processing chain</li>
+ *   <li>The time it took to write a response</li>
+ *   <li>Bytes received and sent</li>
+ *   <li>Connections that timed out due to being idle</li>
+ *   <li>Error responses (4XX and 5XX)</li>
+ *   <li>Latency and response size, per route and HTTP method
+ *       ({@link RouteMetrics})</li>
+ * </ul>
+ * 
+ * The number of active connections is queried from the server when a snapshot
+ * is taken.<p>
+ * 
+ * This interface is read-only; the metrics are recorded by the server
+ * implementation.<p>
+ * 
+ * The metrics can be read as a {@link Snapshot}, or be exported in the
+ * Prometheus text format:
+ * 
+ * {@snippet :
+ *   // @link substring="toPrometheus" target="Snapshot#toPrometheus()" :
+ *   String text = httpServer().metrics().snapshot().toPrometheus();
+ * }
+ * 
+ * The implementation is thread-safe.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ * 
+ * @see HttpServer#metrics()
+ */
+public interface ServerMetrics
+{
+    /**
+     * Returns the metrics of a route.
+     * 
+     * @param route the route
+     * 
+     * @return the metrics of the route,
+     *         or {@code null} if the route is not added to the server
+     */
+    RouteMetrics route(Route route);
+    
+    /**
+     * {@return the metrics of all routes added to the server}
+     */
+    Collection<RouteMetrics> routes();
+    
+    /**
+     * Returns a snapshot of the metrics.<p>
+     * 
+     * The metrics are not read atomically with regards to each other.
+     * 
+     * @return a snapshot of the metrics (never {@code null})
+     */
+    Snapshot snapshot();
+    
+    /**
+     * Metrics of a server.<p>
+     * 
+     * All durations are in nanoseconds. The number of requests is the count of
+     * {@code headParse}.
+     * 
+     * @param headParse time it took to parse request heads
+     * @param handler time it took to execute request processing chains
+     * @param write time it took to write responses
+     * @param bytesIn number of bytes received
+     * @param bytesOut number of bytes sent
+     * @param activeConnections number of open client connections
+     * @param idleTimeouts number of connections that timed out
+     * @param errorResponses number of 4XX and 5XX responses
+     * @param routes metrics per route and HTTP method
+     */
+    record Snapshot(
+            Histogram.Snapshot headParse,
+            Histogram.Snapshot handler,
+            Histogram.Snapshot write,
+            long bytesIn, long bytesOut,
+            int activeConnections,
+            long idleTimeouts, long errorResponses,
+            List<RouteMetrics.Snapshot> routes)
+    {
+        /**
+         * Returns the metrics in the Prometheus text format.<p>
+         * 
+         * All metric names are prefixed "nomagichttp_". The histograms are
+         * exported as summaries, with durations in seconds. Route metrics
+         * have the labels "route" and "method".
+         * 
+         * @return the metrics in the Prometheus text format
+         */
+        public String toPrometheus() {
+            var sb = new StringBuilder(2_048);
+            summary(sb, "head_parse_seconds", headParse);
+            summary(sb, "handler_seconds", handler);
+            summary(sb, "write_seconds", write);
+            metric(sb, "received_bytes_total", "counter", bytesIn);
+            metric(sb, "sent_bytes_total", "counter", bytesOut);
+            metric(sb, "active_connections", "gauge", activeConnections);
+            metric(sb, "idle_timeouts_total", "counter", idleTimeouts);
+            metric(sb, "error_responses_total", "counter", errorResponses);
+            if (!routes.isEmpty()) {
+                routeSummaries(sb);
+            }
+            return sb.toString();
+        }
+        
+        private void routeSummaries(StringBuilder sb) {
+            final String lat = "nomagichttp_route_latency_seconds",
+                         size = "nomagichttp_route_response_bytes";
+            sb.append("# TYPE ").append(lat).append(" summary\n");
+            for (var r : routes) {
+                r.latency().appendPrometheus(sb, lat, labels(r), 1e9);
+            }
+            sb.append("# TYPE ").append(size).append(" summary\n");
+            for (var r : routes) {
+                r.size().appendPrometheus(sb, size, labels(r), 1);
+            }
+        }
+        
+        private static String labels(RouteMetrics.Snapshot r) {
+            return "route=\"" + escape(r.route()) +
+                   "\",method=\"" + escape(r.method()) + "\"";
+        }
+        
+        private static String escape(String label) {
+            return label.replace("\\", "\\\\")
+                        .replace("\"", "\\\"")
+                        .replace("\n", "\\n");
+        }
+        
+        private static void summary(
+                StringBuilder sb, String name, Histogram.Snapshot h) {
+            final String n = "nomagichttp_" + name;
+            sb.append("# TYPE ").append(n).append(" summary\n");
+            h.appendPrometheus(sb, n, "", 1e9);
+        }
+        
+        private static void metric(
+                StringBuilder sb, String name, String type, long value) {
+            final String n = "nomagichttp_" + name;
+            sb.append("# TYPE ").append(n).append(' ').append(type).append('\n')
+              .append(n).append(' ').append(value).append('\n');
+        }
+    }
+}
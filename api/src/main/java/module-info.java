@@ -13,4 +13,6 @@ module alpha.nomagichttp {
     exports alpha.nomagichttp.message;
     exports alpha.nomagichttp.route;
     exports alpha.nomagichttp.util;
+    
+    exports alpha.nomagichttp.internal to alpha.nomagichttp.core;
 }
@@ -0,0 +1,117 @@
+package alpha.nomagichttp.event;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import static alpha.nomagichttp.event.AsyncEventHub.Overflow.DROP;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Small tests of {@link AsyncEventHub}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class AsyncEventHubTest
+{
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final BiConsumer<String, ?> collector
+            = (ev, att) -> events.add(ev + ":" + att);
+    
+    @Test
+    void deliveredInOrder() {
+        var source = new DefaultEventHub();
+        try (var testee = new AsyncEventHub(16, DROP)) {
+            testee.redistribute(source);
+            testee.on(String.class, collector);
+            assertThat(source.dispatch("a", 1)).isOne();
+            assertThat(source.dispatchLazy("b", () -> 2)).isOne();
+            assertThat(source.dispatch(123)).isOne();
+        }
+        // close() awaits the delivery
+        assertThat(events).containsExactly("a:1", "b:2");
+    }
+    
+    @Test
+    void overflow_drop() throws InterruptedException {
+        var blocked = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var testee = new AsyncEventHub(1, DROP);
+        testee.on(String.class, (String ev) -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            events.add(ev);
+        });
+        testee.dispatch("first");
+        blocked.await();
+        testee.dispatch("second");
+        testee.dispatch("dropped");
+        release.countDown();
+        testee.close();
+        assertThat(events).containsExactly("first", "second");
+        assertThat(testee.stats()).isEqualTo(
+                new AsyncEventHub.Stats(2, 1, 1, 0));
+    }
+    
+    @Test
+    void sameEventTwice() {
+        var ev = "ev";
+        try (var testee = new AsyncEventHub(4, DROP)) {
+            testee.on(String.class, collector);
+            testee.dispatch(ev, 1);
+            testee.dispatch(ev, 1);
+        }
+        assertThat(events).containsExactly("ev:1", "ev:1");
+    }
+    
+    @Test
+    void closed_drop() {
+        var testee = new AsyncEventHub(1, DROP);
+        testee.on(String.class, collector);
+        testee.close();
+        assertThat(testee.dispatch("late")).isZero();
+        assertThat(events).isEmpty();
+        assertThat(testee.stats().dropped()).isOne();
+    }
+    
+    @Test
+    void closedConcurrently_everyEventCounted() throws InterruptedException {
+        var testee = new AsyncEventHub(4, DROP);
+        testee.on(String.class, (String ev) -> {});
+        var dispatched = new LongAdder();
+        var start = new CountDownLatch(1);
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; ++i) {
+            var t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int j = 0; j < 10_000; ++j) {
+                    testee.dispatch("ev");
+                    dispatched.increment();
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        testee.close();
+        for (var t : threads) {
+            t.join();
+        }
+        var s = testee.stats();
+        assertThat(s.delivered() + s.dropped()).isEqualTo(dispatched.sum());
+        assertThat(s.buffered()).isZero();
+    }
+}
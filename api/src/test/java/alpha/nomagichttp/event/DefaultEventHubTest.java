@@ -32,6 +32,20 @@ final class DefaultEventHubTest {
         assertThat(events).isEmpty();
     }
     
+    @Test
+    void hasListeners() {
+        DefaultEventHub eh = new DefaultEventHub();
+        assertThat(eh.hasListeners(String.class)).isFalse();
+        eh.on(String.class, collector);
+        assertThat(eh.hasListeners(String.class)).isTrue();
+        assertThat(eh.hasListeners(Integer.class)).isFalse();
+        eh.off(String.class, collector);
+        assertThat(eh.hasListeners(String.class)).isFalse();
+        // Catch-all
+        new DefaultEventHub().redistribute(eh);
+        assertThat(eh.hasListeners(Integer.class)).isTrue();
+    }
+    
     @Test
     void bridged() {
         EventHub first  = new DefaultEventHub(),
@@ -42,6 +56,16 @@ final class DefaultEventHubTest {
         assertThat(events).containsExactly("Hello:null");
     }
     
+    @Test
+    void bridged_lazy() {
+        EventHub first  = new DefaultEventHub(),
+                 second = new DefaultEventHub();
+        second.redistribute(first);
+        second.on(String.class, collector);
+        assertThat(first.dispatchLazy("Hello", () -> 123)).isOne();
+        assertThat(events).containsExactly("Hello:123");
+    }
+    
     @Test
     void eventHub_javadoc_redistribute_bad() {
         AtomicInteger n = new AtomicInteger();
@@ -0,0 +1,66 @@
+package alpha.nomagichttp.event;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Small tests of {@link RingBuffer}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class RingBufferTest
+{
+    @Test
+    void capacityOne() {
+        var testee = new RingBuffer<String>(1);
+        assertThat(testee.poll()).isNull();
+        for (var s : new String[]{"a", "b", "c"}) {
+            assertThat(testee.offer(s)).isTrue();
+            assertThat(testee.offer("full")).isFalse();
+            assertThat(testee.size()).isOne();
+            assertThat(testee.poll()).isEqualTo(s);
+            assertThat(testee.size()).isZero();
+        }
+    }
+    
+    @Test
+    void wrapsAround() throws InterruptedException {
+        var testee = new RingBuffer<Integer>(3);
+        var taken = new ArrayList<Integer>();
+        for (int i = 0; i < 10; ++i) {
+            testee.put(i);
+            if (i >= 2) {
+                taken.add(testee.take());
+            }
+        }
+        testee.drainTo(taken, Integer.MAX_VALUE);
+        assertThat(taken).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    }
+    
+    @Test
+    void put_blocksUntilTaken() throws InterruptedException {
+        var testee = new RingBuffer<String>(1);
+        testee.put("a");
+        var t = Thread.ofVirtual().start(() -> {
+            try {
+                testee.put("b");
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        assertThat(testee.take()).isEqualTo("a");
+        assertThat(testee.take()).isEqualTo("b");
+        t.join();
+    }
+    
+    @Test
+    void capacityZero() {
+        assertThatThrownBy(() -> new RingBuffer<>(0))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("capacity < 1");
+    }
+}
@@ -0,0 +1,204 @@
+package alpha.nomagichttp.handler;
+
+import alpha.nomagichttp.handler.ByteRanges.Range;
+import alpha.nomagichttp.message.Response;
+import alpha.nomagichttp.message.TransferableByteBufferIterator;
+import alpha.nomagichttp.util.FileLockTimeoutException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCEPT_RANGES;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_RANGE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_TYPE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.ETAG;
+import static alpha.nomagichttp.HttpConstants.HeaderName.LAST_MODIFIED;
+import static alpha.nomagichttp.handler.ByteRanges.parse;
+import static alpha.nomagichttp.message.MediaType.TEXT_PLAIN;
+import static alpha.nomagichttp.testutil.ScopedValues.whereServerIsBound;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Small tests of {@link ByteRanges}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class ByteRangesTest
+{
+    private static final byte[] DIGITS = "0123456789".getBytes(US_ASCII);
+    
+    @TempDir
+    Path root;
+    
+    @Test
+    void parse_happyPath() {
+        assertThat(parse("bytes=0-0", 10)).containsExactly(new Range(0, 0));
+        assertThat(parse("Bytes = 5-", 10)).isNull();
+        assertThat(parse("BYTES=5-", 10)).containsExactly(new Range(5, 9));
+        // Suffix, and clamped
+        assertThat(parse("bytes=-3", 10)).containsExactly(new Range(7, 9));
+        assertThat(parse("bytes=-99", 10)).containsExactly(new Range(0, 9));
+        assertThat(parse("bytes=8-99999999999999999999", 10))
+            .containsExactly(new Range(8, 9));
+    }
+    
+    @Test
+    void parse_coalesce() {
+        assertThat(parse("bytes=6-7, 0-1,,2-3, 1-2", 10)).containsExactly(
+            new Range(0, 3), new Range(6, 7));
+    }
+    
+    @Test
+    void parse_unsatisfiable() {
+        assertThat(parse("bytes=10-, -0", 10)).isEmpty();
+        assertThat(parse("bytes=-5", 0)).isEmpty();
+        // One is enough
+        assertThat(parse("bytes=10-, 9-", 10)).containsExactly(new Range(9, 9));
+    }
+    
+    @Test
+    void parse_ignored() {
+        assertThat(parse("items=0-1", 10)).isNull();
+        assertThat(parse("bytes=", 10)).isNull();
+        assertThat(parse("bytes=5", 10)).isNull();
+        assertThat(parse("bytes=5-4", 10)).isNull();
+        assertThat(parse("bytes=a-b", 10)).isNull();
+        var many = new StringBuilder("bytes=0-0");
+        for (int i = 2; i < 100; i += 2) {
+            many.append(',').append(i).append('-').append(i);
+        }
+        assertThat(parse(many.toString(), 100)).isNull();
+    }
+    
+    @Test
+    void ofBytes_noRange() throws IOException {
+        var rsp = ByteRanges.ofBytes(null, null, DIGITS, TEXT_PLAIN);
+        assertThat(rsp.statusCode()).isEqualTo(200);
+        assertThat(rsp.headers().firstValue(ACCEPT_RANGES)).hasValue("bytes");
+        assertThat(rsp.headers().contains(ETAG)).isFalse();
+        assertThat(body(rsp)).isEqualTo("0123456789");
+    }
+    
+    @Test
+    void ofBytes_singleRange() throws IOException {
+        var rsp = ByteRanges.ofBytes("bytes=2-4", null, DIGITS, TEXT_PLAIN);
+        assertThat(rsp.statusCode()).isEqualTo(206);
+        assertThat(rsp.headers().firstValue(CONTENT_RANGE))
+            .hasValue("bytes 2-4/10");
+        assertThat(rsp.headers().firstValue(CONTENT_TYPE)).hasValue("text/plain");
+        assertThat(rsp.body().length()).isEqualTo(3);
+        assertThat(body(rsp)).isEqualTo("234");
+    }
+    
+    @Test
+    void ofBytes_multipleRanges() throws IOException {
+        var rsp = ByteRanges.ofBytes("bytes=-2,0-1", null, DIGITS, TEXT_PLAIN);
+        assertThat(rsp.statusCode()).isEqualTo(206);
+        var type = rsp.headers().firstValue(CONTENT_TYPE).orElseThrow();
+        assertThat(type).startsWith("multipart/byteranges; boundary=");
+        var b = type.substring(type.indexOf('=') + 1);
+        var body = body(rsp);
+        assertThat(body).isEqualTo(
+            "--" + b + "\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "Content-Range: bytes 0-1/10\r\n\r\n" +
+            "01\r\n" +
+            "--" + b + "\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "Content-Range: bytes 8-9/10\r\n\r\n" +
+            "89\r\n" +
+            "--" + b + "--\r\n");
+        assertThat(rsp.body().length()).isEqualTo(body.length());
+    }
+    
+    @Test
+    void ofBytes_unsatisfiable() throws IOException {
+        var rsp = ByteRanges.ofBytes("bytes=10-", null, DIGITS, TEXT_PLAIN);
+        assertThat(rsp.statusCode()).isEqualTo(416);
+        assertThat(rsp.headers().firstValue(CONTENT_RANGE)).hasValue("bytes */10");
+        assertThat(rsp.body().isEmpty()).isTrue();
+    }
+    
+    @Test
+    void ofBytes_ifRange_noValidator() throws IOException {
+        var rsp = ByteRanges.ofBytes("bytes=0-1", "\"x\"", DIGITS, TEXT_PLAIN);
+        assertThat(rsp.statusCode()).isEqualTo(200);
+        assertThat(body(rsp)).isEqualTo("0123456789");
+    }
+    
+    @Test
+    void ofFile_ifRange() throws IOException {
+        var file = Files.write(root.resolve("digits.txt"), DIGITS);
+        var full = ByteRanges.ofFile(null, null, file, TEXT_PLAIN);
+        var etag = full.headers().firstValue(ETAG).orElseThrow();
+        var date = full.headers().firstValue(LAST_MODIFIED).orElseThrow();
+        // Second-granular mtime
+        assertThat(etag).startsWith("W/\"");
+        var rsp = ByteRanges.ofFile("bytes=1-2", date, file, TEXT_PLAIN);
+        assertThat(rsp.statusCode()).isEqualTo(206);
+        assertThat(rsp.headers().firstValue(ETAG)).hasValue(etag);
+        assertThat(body(rsp)).isEqualTo("12");
+        // A weak entity-tag never matches
+        for (var v : List.of(etag, etag.substring(2), "\"other\"",
+                             "Thu, 01 Jan 1970 00:00:00 GMT", "garbage")) {
+            var rsp = ByteRanges.ofFile("bytes=1-2", v, file, TEXT_PLAIN);
+            assertThat(rsp.statusCode()).isEqualTo(200);
+            assertThat(body(rsp)).isEqualTo("0123456789");
+        }
+    }
+    
+    @Test
+    void ofFile_multipleRanges_transferTo() throws Exception {
+        var file = Files.write(root.resolve("digits.txt"), DIGITS);
+        var rsp = ByteRanges.ofFile("bytes=1-1,3-3", null, file, TEXT_PLAIN);
+        var sink = new ByteArrayOutputStream();
+        whereServerIsBound(() -> {
+            var ch = Channels.newChannel(sink);
+            try (var it = (TransferableByteBufferIterator) rsp.body().iterator()) {
+                while (it.hasNext()) {
+                    assertThat(it.transferTo(ch, 7)).isPositive();
+                }
+            }
+            return null;
+        });
+        var str = sink.toString(US_ASCII);
+        assertThat(str).hasSize((int) rsp.body().length());
+        assertThat(str).contains("bytes 1-1/10\r\n\r\n1\r\n", "bytes 3-3/10\r\n\r\n3\r\n");
+    }
+    
+    @Test
+    void ofFile_multipleRanges_truncated() throws Exception {
+        var file = Files.write(root.resolve("digits.txt"), DIGITS);
+        var rsp = ByteRanges.ofFile("bytes=1-1,8-8", null, file, TEXT_PLAIN);
+        Files.write(file, "01234".getBytes(US_ASCII));
+        assertThatThrownBy(() -> body(rsp))
+                .isExactlyInstanceOf(IOException.class)
+                .hasMessage("File truncated, 1 bytes missing: " + file);
+    }
+    
+    private static String body(Response rsp) throws IOException {
+        // A file body reads the lock timeout from the server's config
+        return whereServerIsBound(() -> {
+            var out = new ByteArrayOutputStream();
+            try (var it = rsp.body().iterator()) {
+                while (it.hasNext()) {
+                    var buf = it.next();
+                    var bytes = new byte[buf.remaining()];
+                    buf.get(bytes);
+                    out.write(bytes);
+                }
+            } catch (InterruptedException | FileLockTimeoutException e) {
+                throw new AssertionError(e);
+            }
+            return out.toString(US_ASCII);
+        });
+    }
+}
@@ -0,0 +1,195 @@
+package alpha.nomagichttp.handler;
+
+import alpha.nomagichttp.message.Response;
+import alpha.nomagichttp.util.FileLockTimeoutException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_ENCODING;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_TYPE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.VARY;
+import static alpha.nomagichttp.testutil.ScopedValues.whereServerIsBound;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Small tests of {@link StaticFiles}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class StaticFilesTest
+{
+    private static final String JS = "console.log('hello');\n".repeat(100);
+    
+    @TempDir
+    Path root;
+    
+    @Test
+    void sidecar_preferBrotli() throws IOException {
+        write("app.js", JS);
+        write("app.js.gz", "gz");
+        write("app.js.br", "br");
+        var testee = new StaticFiles(root, "path", 0);
+        var rsp = testee.serve("/app.js", Stream.of("gzip", "br"));
+        assertThat(rsp.headers().firstValue(CONTENT_ENCODING)).hasValue("br");
+        assertThat(rsp.headers().firstValue(CONTENT_TYPE))
+                .hasValue("text/javascript; charset=utf-8");
+        assertThat(rsp.headers().firstValue(VARY)).hasValue("Accept-Encoding");
+        assertThat(body(rsp)).isEqualTo("br".getBytes(US_ASCII));
+        
+        rsp = testee.serve("/app.js", Stream.of("gzip", "br;q=0.5"));
+        assertThat(rsp.headers().firstValue(CONTENT_ENCODING)).hasValue("gzip");
+        assertThat(body(rsp)).isEqualTo("gz".getBytes(US_ASCII));
+    }
+    
+    @Test
+    void sidecar_stale() throws IOException {
+        write("app.js.br", "br");
+        write("app.js", JS);
+        var br = root.resolve("app.js.br");
+        Files.setLastModifiedTime(br, FileTime.fromMillis(
+                Files.getLastModifiedTime(br).toMillis() - 60_000));
+        var rsp = new StaticFiles(root, "path", 0)
+                .serve("/app.js", Stream.of("br"));
+        assertThat(rsp.headers().contains(CONTENT_ENCODING)).isFalse();
+        assertThat(body(rsp)).isEqualTo(JS.getBytes(US_ASCII));
+    }
+    
+    @Test
+    void compressedOnce() throws IOException {
+        write("app.js", JS);
+        var testee = new StaticFiles(root, "path", 1_024 * 1_024);
+        for (int i = 0; i < 2; ++i) {
+            var rsp = testee.serve("/app.js", Stream.of("gzip"));
+            assertThat(rsp.headers().firstValue(CONTENT_ENCODING)).hasValue("gzip");
+            assertThat(gunzip(body(rsp))).isEqualTo(JS);
+        }
+        var stats = testee.stats();
+        assertThat(stats.hits()).isEqualTo(1);
+        assertThat(stats.misses()).isEqualTo(1);
+        assertThat(stats.size()).isBetween(1L, (long) JS.length());
+    }
+    
+    @Test
+    void notCompressible() throws IOException {
+        // Too small, and not a compressible type
+        write("small.js", "x");
+        write("big.png", JS);
+        var testee = new StaticFiles(root, "path", 1_024 * 1_024);
+        for (var f : new String[]{"/small.js", "/big.png"}) {
+            var rsp = testee.serve(f, Stream.of("gzip"));
+            assertThat(rsp.headers().contains(CONTENT_ENCODING)).isFalse();
+        }
+        assertThat(testee.stats().misses()).isZero();
+    }
+    
+    @Test
+    void tooLarge_notCompressed() throws IOException {
+        write("app.js", JS);
+        // A quarter of the capacity is the max
+        var testee = new StaticFiles(root, "path", 4L * JS.length() - 1);
+        var rsp = testee.serve("/app.js", Stream.of("gzip"));
+        assertThat(rsp.headers().contains(CONTENT_ENCODING)).isFalse();
+        assertThat(body(rsp)).isEqualTo(JS.getBytes(US_ASCII));
+        assertThat(testee.stats().misses()).isZero();
+    }
+    
+    @Test
+    void notShrinking_entriesBounded() throws IOException {
+        var rnd = new Random(1);
+        var bytes = new byte[1_024];
+        for (int i = 0; i < 100; ++i) {
+            rnd.nextBytes(bytes);
+            Files.write(root.resolve("f" + i + ".js"), bytes);
+        }
+        var testee = new StaticFiles(root, "path", 4 * 1_024);
+        for (int i = 0; i < 100; ++i) {
+            var rsp = testee.serve("/f" + i + ".js", Stream.of("gzip"));
+            assertThat(rsp.headers().contains(CONTENT_ENCODING)).isFalse();
+        }
+        // Remembered files cost a fixed overhead, and are evicted
+        assertThat(testee.stats().size()).isBetween(1L, 4L * 1_024);
+        testee.serve("/f0.js", Stream.of("gzip"));
+        assertThat(testee.stats().misses()).isEqualTo(101);
+    }
+    
+    @Test
+    void range_notCompressed() throws IOException {
+        write("app.js", JS);
+        var testee = new StaticFiles(root, "path", 1_024 * 1_024);
+        var rsp = testee.serve("/app.js", Stream.of("gzip"), "bytes=0-6", null);
+        assertThat(rsp.statusCode()).isEqualTo(206);
+        assertThat(rsp.headers().contains(CONTENT_ENCODING)).isFalse();
+        assertThat(rsp.headers().firstValue(VARY)).hasValue("Accept-Encoding");
+        assertThat(body(rsp)).isEqualTo("console".getBytes(US_ASCII));
+        assertThat(testee.stats().misses()).isZero();
+    }
+    
+    @Test
+    void notFound() throws IOException {
+        write("app.js", JS);
+        var testee = new StaticFiles(root.resolve("sub"), "path", 0);
+        Files.createDirectory(root.resolve("sub"));
+        assertThat(testee.serve("/../app.js", Stream.of()).statusCode())
+                .isEqualTo(404);
+        assertThat(testee.serve("/", Stream.of()).statusCode())
+                .isEqualTo(404);
+        assertThat(testee.serve("/nope.js", Stream.of()).statusCode())
+                .isEqualTo(404);
+    }
+    
+    @Test
+    void symbolicLink() throws IOException {
+        write("secret.txt", "secret");
+        var www = Files.createDirectory(root.resolve("www"));
+        Files.writeString(www.resolve("public.txt"), "public", US_ASCII);
+        Files.createSymbolicLink(
+                www.resolve("out.txt"), Path.of("../secret.txt"));
+        Files.createSymbolicLink(
+                www.resolve("in.txt"), Path.of("public.txt"));
+        var testee = new StaticFiles(www, "path", 0);
+        assertThat(testee.serve("/out.txt", Stream.of()).statusCode())
+                .isEqualTo(404);
+        var rsp = testee.serve("/in.txt", Stream.of());
+        assertThat(rsp.statusCode()).isEqualTo(200);
+        assertThat(body(rsp)).isEqualTo("public".getBytes(US_ASCII));
+    }
+    
+    private void write(String name, String content) throws IOException {
+        Files.writeString(root.resolve(name), content, US_ASCII);
+    }
+    
+    private static byte[] body(Response rsp) throws IOException {
+        // A file body reads the lock timeout from the server's config
+        return whereServerIsBound(() -> {
+            var out = new ByteArrayOutputStream();
+            try (var it = rsp.body().iterator()) {
+                while (it.hasNext()) {
+                    var buf = it.next();
+                    var bytes = new byte[buf.remaining()];
+                    buf.get(bytes);
+                    out.write(bytes);
+                }
+            } catch (InterruptedException | FileLockTimeoutException e) {
+                throw new AssertionError(e);
+            }
+            return out.toByteArray();
+        });
+    }
+    
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), US_ASCII);
+        }
+    }
+}
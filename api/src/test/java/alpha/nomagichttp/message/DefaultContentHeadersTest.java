@@ -2,6 +2,7 @@ package alpha.nomagichttp.message;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static alpha.nomagichttp.testutil.Headers.contentHeaders;
@@ -94,4 +95,39 @@ final class DefaultContentHeadersTest
         assertThat(testee.toString())
             .isEqualTo("{K1=[a, b], K2=[c]}");
     }
+    
+    @Test
+    void namesAndValues_groupedByFirstOccurrence() {
+        var testee = new DefaultContentHeaders(
+            List.of("A", "1", "B", "2", "A", "3"), false);
+        assertThat(linkedHashMap(testee)).containsExactly(
+            entry("A", List.of("1", "3")),
+            entry("B", List.of("2")));
+        assertThat(testee.firstValue("a")).hasValue("1");
+        assertThat(testee.contains("b", "2")).isTrue();
+        assertThat(testee.contains("C")).isFalse();
+        assertThat(testee.allValues("C")).isEmpty();
+        assertThat(testee.isMissingOrEmpty("C")).isTrue();
+    }
+    
+    @Test
+    void namesAndValues_differentCasing() {
+        assertThatThrownBy(() -> new DefaultContentHeaders(
+                List.of("Host", "a", "HOST", "b"), false))
+            .isExactlyInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Header name repeated with different casing: HOST");
+    }
+    
+    @Test
+    void manyNames() {
+        var pairs = new ArrayList<String>();
+        for (int i = 0; i < 100; ++i) {
+            pairs.add("Name-" + i);
+            pairs.add("v" + i);
+        }
+        var testee = new DefaultContentHeaders(pairs, false);
+        for (int i = 0; i < 100; ++i) {
+            assertThat(testee.allValues("NAME-" + i)).containsExactly("v" + i);
+        }
+    }
 }
\ No newline at end of file
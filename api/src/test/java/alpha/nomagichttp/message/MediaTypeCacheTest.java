@@ -0,0 +1,61 @@
+package alpha.nomagichttp.message;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Small tests of {@link MediaTypeCache}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class MediaTypeCacheTest
+{
+    @Test
+    void reuse() {
+        var testee = new MediaTypeCache(2);
+        var mt = testee.parse("text/plain; charset=ascii");
+        assertThat(testee.parse("text/plain; charset=ascii")).isSameAs(mt);
+        assertThat(testee.stats()).isEqualTo(new MediaTypeCache.Stats(1, 1, 1));
+    }
+    
+    @Test
+    void parseAll() {
+        var testee = new MediaTypeCache(2);
+        var list = testee.parseAll("text/html, application/xml;q=0.9, , */*;q=0.8");
+        assertThat(list).extracting(MediaType::toString).containsExactly(
+            "text/html", "application/xml;q=0.9", "*/*;q=0.8");
+        assertThat(list.get(2)).isInstanceOf(MediaRange.class);
+        assertThat(testee.parseAll("text/html, application/xml;q=0.9, , */*;q=0.8"))
+            .isSameAs(list);
+    }
+    
+    @Test
+    void eviction_secondChance() {
+        var testee = new MediaTypeCache(2);
+        var a = testee.parse("a/a");
+        var b = testee.parse("b/b");
+        // Used since the hand passed; survives
+        testee.parse("a/a");
+        testee.parse("c/c");
+        assertThat(testee.parse("a/a")).isSameAs(a);
+        assertThat(testee.parse("b/b")).isNotSameAs(b);
+    }
+    
+    @Test
+    void capacityZero_noReuse() {
+        var testee = new MediaTypeCache(0);
+        var mt = testee.parse("text/plain; charset=ascii");
+        assertThat(testee.parse("text/plain; charset=ascii")).isNotSameAs(mt);
+        assertThat(testee.stats()).isEqualTo(new MediaTypeCache.Stats(0, 2, 0));
+    }
+    
+    @Test
+    void parseFailure_notCached() {
+        var testee = new MediaTypeCache(2);
+        assertThatThrownBy(() -> testee.parse("text"))
+            .isExactlyInstanceOf(MediaTypeParseException.class);
+        assertThat(testee.stats().size()).isZero();
+    }
+}
@@ -3,11 +3,21 @@ package alpha.nomagichttp.message;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.Map;
+
 import static alpha.nomagichttp.HttpConstants.HeaderName.CONNECTION;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_LENGTH;
 import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_TYPE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.TRANSFER_ENCODING;
+import static alpha.nomagichttp.HttpConstants.Version.HTTP_1_0;
+import static alpha.nomagichttp.HttpConstants.Version.HTTP_1_1;
+import static alpha.nomagichttp.internal.ResponseHeads.encode;
+import static alpha.nomagichttp.internal.ResponseHeads.hasImplicitLength;
 import static alpha.nomagichttp.testutil.Assertions.assertHeaders;
 import static alpha.nomagichttp.util.ByteBufferIterables.empty;
 import static alpha.nomagichttp.util.ByteBufferIterables.ofStringUnsafe;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.util.List.of;
 import static java.util.Map.entry;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -28,7 +38,7 @@ final class ResponseBuilderTest
             Response r = builder(200, "OK").build();
             assertThat(r.statusCode()).isEqualTo(200);
             assertThat(r.reasonPhrase()).isEqualTo("OK");
-            assertHeaders(r).isEmpty();
+            assertHeaders(r).containsExactly(entry(CONTENT_LENGTH, of("0")));
             assertSame(r.body(), empty());
         }
         
@@ -211,6 +221,78 @@ final class ResponseBuilderTest
             // Header removed!
             assertThat(rsp.headers().contentType()).isEmpty();
         }
+        
+        @Test
+        void contentLength_implicit() {
+            var rsp = builder(200).body(ofStringUnsafe("Blah")).build();
+            assertHeaders(rsp).containsExactly(entry(CONTENT_LENGTH, of("4")));
+            assertThat(hasImplicitLength(rsp)).isTrue();
+            // Not carried over
+            var other = rsp.toBuilder().body(ofStringUnsafe("Hi")).build();
+            assertHeaders(other).containsExactly(entry(CONTENT_LENGTH, of("2")));
+        }
+        
+        @Test
+        void contentLength_notImplicit() {
+            var explicit = builder(200)
+                .setHeader(CONTENT_LENGTH, "4")
+                .body(ofStringUnsafe("Blah"))
+                .build();
+            assertThat(hasImplicitLength(explicit)).isFalse();
+            for (var b : List.of(
+                    // Removed by the application
+                    builder(200).removeHeader("content-length"),
+                    builder(204),
+                    builder(304),
+                    builder(200).addTrailers(Map::of),
+                    builder(200).setHeader(TRANSFER_ENCODING, "chunked"))) {
+                var rsp = b.build();
+                assertThat(rsp.headers().contains(CONTENT_LENGTH)).isFalse();
+                assertThat(hasImplicitLength(rsp)).isFalse();
+            }
+        }
+        
+        @Test
+        void contentLength_cachedResponse() {
+            var rsp = Responses.notFound();
+            assertThat(rsp.headers().contentLength()).hasValue(0);
+            // Encoded once, then the same bytes are shared
+            assertThat(encode(rsp, HTTP_1_1)).isEqualTo(encode(rsp, HTTP_1_1));
+        }
+    }
+    
+    @Nested
+    class EncodeHead {
+        @Test
+        void happyPath() {
+            var rsp = builder(200, "OK")
+                .addHeaders("A", "1", "B", "2", "A", "3")
+                .build();
+            var head = encode(rsp, HTTP_1_1);
+            assertThat(head.isReadOnly()).isTrue();
+            assertThat(US_ASCII.decode(head).toString()).isEqualTo(
+                "HTTP/1.1 200 OK\r\nA: 1\r\nA: 3\r\nB: 2\r\n" +
+                "Content-Length: 0\r\n\r\n");
+        }
+        
+        @Test
+        void noHeaders() {
+            var head = encode(builder(204, "No Content").build(), HTTP_1_0);
+            assertThat(US_ASCII.decode(head).toString()).isEqualTo(
+                "HTTP/1.0 204 No Content\r\n\r\n");
+        }
+        
+        @Test
+        void memoizedButIndependentPosition() {
+            var rsp = builder(200, "OK").build();
+            var first = encode(rsp, HTTP_1_1);
+            // Consume
+            first.position(first.limit());
+            var second = encode(rsp, HTTP_1_1);
+            assertThat(second).isNotSameAs(first);
+            assertThat(second.position()).isZero();
+            assertThat(second.remaining()).isEqualTo(first.limit());
+        }
     }
     
     // Response.builder() uses a cache, as this is a test we prefer to bypass it
@@ -75,6 +75,18 @@ final class RouteHandlerLookupTest
                 .hasMessage("No handler found matching \"Accept: text/plain; q=0\" header in request.");
     }
     
+    @Test
+    void cached_by_text() {
+        RequestHandler target = create("text/plain", "text/plain");
+        Route r = Route.builder("/blabla").handler(target).build();
+        var ct = parse("text/plain");
+        assertThat(r.lookup("GET", ct, List.of(parse("text/plain")))).isSameAs(target);
+        assertThat(r.lookup("GET", ct, List.of(parse("text/plain")))).isSameAs(target);
+        // Media range equality does not take quality into account
+        assertThatThrownBy(() -> r.lookup("GET", ct, List.of(parse("text/plain; q=0"))))
+                .isExactlyInstanceOf(MediaTypeNotAcceptedException.class);
+    }
+    
     @Test
     void ambiguous_by_consumes() {
         Set<RequestHandler> ambiguous = Set.of(
@@ -1,9 +1,12 @@
 package alpha.nomagichttp.util;
 
+import alpha.nomagichttp.message.TransferableByteBufferIterator;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.MalformedInputException;
 import java.util.List;
 
@@ -69,6 +72,52 @@ final class ByteBufferIterablesTest
         });
     }
     
+    @Test
+    void ofFile_transferTo() throws Exception {
+        var file = writeTempFile(asciiBytes("Hello, World!"));
+        var testee = ByteBufferIterables.ofFile(file);
+        var sink = new ByteArrayOutputStream();
+        whereServerIsBound(() -> {
+            try (var it = (TransferableByteBufferIterator) testee.iterator()) {
+                var ch = Channels.newChannel(sink);
+                assertThat(it.transferTo(ch, 5)).isEqualTo(5);
+                assertThat(it.hasNext()).isTrue();
+                // Reading continues where the transfer stopped
+                var buf = it.next();
+                assertThat(buf.remaining()).isEqualTo(8);
+                // Consume the comma, the rest is yielded back
+                assertThat(buf.get()).isEqualTo((byte) ',');
+                assertThat(it.transferTo(ch, 100)).isEqualTo(7);
+                assertThat(it.hasNext()).isFalse();
+            }
+            return null;
+        });
+        assertThat(sink.toString(UTF_8)).isEqualTo("Hello World!");
+    }
+    
+    @Test
+    void ofFileRegion() throws Exception {
+        var file = writeTempFile(asciiBytes("Hello, World!"));
+        var sink = new ByteArrayOutputStream();
+        whereServerIsBound(() -> {
+            var testee = ByteBufferIterables.ofFileRegion(file, 7, 5);
+            assertThat(testee.length()).isEqualTo(5);
+            assertIterable(testee, asciiBytes("World"));
+            try (var it = (TransferableByteBufferIterator) testee.iterator()) {
+                assertThat(it.transferTo(Channels.newChannel(sink), 100))
+                    .isEqualTo(5);
+                assertThat(it.hasNext()).isFalse();
+            }
+            // Clamped to the file size
+            assertThat(ByteBufferIterables.ofFileRegion(file, 12, 9).length())
+                .isEqualTo(1);
+            assertThat(ByteBufferIterables.ofFileRegion(file, 99, 9).isEmpty())
+                .isTrue();
+            return null;
+        });
+        assertThat(sink.toString(UTF_8)).isEqualTo("World");
+    }
+    
     // TODO: Test ofFile file not found
     
     @Test
@@ -0,0 +1,55 @@
+package alpha.nomagichttp.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Small tests of {@link ByteBufferPool}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class ByteBufferPoolTest
+{
+    private final ByteBufferPool testee = new ByteBufferPool(1_024 * 1_024);
+    
+    @Test
+    void sizeClasses() {
+        assertThat(testee.acquire(0).capacity()).isEqualTo(512);
+        assertThat(testee.acquire(513).capacity()).isEqualTo(4_096);
+        assertThat(testee.acquire(16_384).capacity()).isEqualTo(16_384);
+        assertThat(testee.acquire(65_537).capacity()).isEqualTo(65_537);
+        assertThat(testee.acquire(1).isDirect()).isTrue();
+    }
+    
+    @Test
+    void reuse() {
+        var buf = testee.acquire(100).position(3).limit(5);
+        testee.release(buf);
+        var again = testee.acquire(200);
+        assertThat(again).isSameAs(buf);
+        assertThat(again.position()).isZero();
+        assertThat(again.limit()).isEqualTo(512);
+        assertThat(testee.stats()).isEqualTo(new ByteBufferPool.Stats(1, 1, 1));
+    }
+    
+    @Test
+    void capacityZero_noReuse() {
+        var pool = new ByteBufferPool(0);
+        var buf = pool.acquire(100);
+        pool.release(buf);
+        assertThat(pool.acquire(100)).isNotSameAs(buf);
+        assertThat(pool.stats()).isEqualTo(new ByteBufferPool.Stats(0, 2, 1));
+    }
+    
+    @Test
+    void releaseTwice() {
+        // Leak detection is enabled with assertions
+        var buf = testee.acquire(100);
+        testee.release(buf);
+        assertThatThrownBy(() -> testee.release(buf))
+            .isExactlyInstanceOf(IllegalStateException.class)
+            .hasMessage("Buffer is not acquired from this pool, or already released.");
+    }
+}
@@ -0,0 +1,50 @@
+package alpha.nomagichttp.util;
+
+import alpha.nomagichttp.Config;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Stream;
+
+import static alpha.nomagichttp.message.MediaType.IMAGE_PNG;
+import static alpha.nomagichttp.message.MediaType.TEXT_PLAIN_UTF8;
+import static alpha.nomagichttp.util.ContentCodings.isCompressible;
+import static alpha.nomagichttp.util.ContentCodings.qualities;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Small tests of {@link ContentCodings}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class ContentCodingsTest
+{
+    @Test
+    void qualities_happyPath() {
+        assertThat(qualities(Stream.of("GZIP", "br;q=0.5"), "gzip", "br"))
+            .containsExactly(1, 0.5);
+        assertThat(qualities(Stream.of("x-gzip; Q=0.2"), "gzip"))
+            .containsExactly(0.2);
+    }
+    
+    @Test
+    void qualities_wildcard() {
+        assertThat(qualities(Stream.of("br;q=0", "*;q=0.3"), "gzip", "br"))
+            .containsExactly(0.3, 0);
+        assertThat(qualities(Stream.of("*;q=0"), "gzip"))
+            .containsExactly(0);
+    }
+    
+    @Test
+    void qualities_notAcceptable() {
+        assertThat(qualities(Stream.of(), "gzip")).containsExactly(0);
+        assertThat(qualities(Stream.of("identity"), "gzip")).containsExactly(0);
+        assertThat(qualities(Stream.of("gzip;q=oops"), "gzip")).containsExactly(0);
+    }
+    
+    @Test
+    void isCompressible_defaultConfig() {
+        assertThat(isCompressible(TEXT_PLAIN_UTF8, Config.DEFAULT)).isTrue();
+        assertThat(isCompressible(IMAGE_PNG, Config.DEFAULT)).isFalse();
+        assertThat(isCompressible(null, Config.DEFAULT)).isFalse();
+    }
+}
@@ -0,0 +1,59 @@
+package alpha.nomagichttp.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Small tests of {@link Histogram}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class HistogramTest
+{
+    @Test
+    void buckets() {
+        // Exact below 8, then 8 buckets per power of two
+        assertThat(Histogram.index(7)).isEqualTo(7);
+        assertThat(Histogram.index(8)).isEqualTo(8);
+        assertThat(Histogram.index(16)).isEqualTo(16);
+        assertThat(Histogram.index(17)).isEqualTo(16);
+        assertThat(Histogram.highestValue(16)).isEqualTo(17);
+        assertThat(Histogram.highestValue(Histogram.index(Long.MAX_VALUE)))
+            .isEqualTo(Long.MAX_VALUE);
+    }
+    
+    @Test
+    void snapshot() {
+        var testee = new Histogram();
+        for (int v = 1; v <= 1_000; ++v) {
+            testee.record(v);
+        }
+        testee.record(-1);
+        var s = testee.snapshot();
+        assertThat(s.count()).isEqualTo(1_001);
+        assertThat(s.sum()).isEqualTo(500_500);
+        assertThat(s.max()).isEqualTo(1_000);
+        assertThat(s.valueAt(0)).isZero();
+        // Within 12.5%
+        assertThat(s.valueAt(0.5)).isBetween(500L, 563L);
+        assertThat(s.valueAt(1)).isEqualTo(1_000);
+    }
+    
+    @Test
+    void empty() {
+        var s = new Histogram().snapshot();
+        assertThat(s.count()).isZero();
+        assertThat(s.valueAt(0.99)).isZero();
+        assertThat(s.mean()).isZero();
+    }
+    
+    @Test
+    void quantileOutOfRange() {
+        var s = new Histogram().snapshot();
+        assertThatThrownBy(() -> s.valueAt(1.5))
+            .isExactlyInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Quantile out of range: 1.5");
+    }
+}
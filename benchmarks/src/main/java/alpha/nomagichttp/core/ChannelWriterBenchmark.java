@@ -0,0 +1,132 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.Config;
+import alpha.nomagichttp.message.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+
+import static alpha.nomagichttp.message.Responses.noContent;
+import static alpha.nomagichttp.message.Responses.text;
+import static alpha.nomagichttp.util.ScopedValues.CHANNEL;
+import static alpha.nomagichttp.util.ScopedValues.HTTP_SERVER;
+import static java.lang.ScopedValue.where;
+
+/**
+ * Benchmarks of {@link DefaultChannelWriter#write(Response)}.<p>
+ * 
+ * The writer writes to an in-memory channel which discards all bytes. No
+ * request is bound, so after-actions are not invoked, and the response gets
+ * the header "Connection: close".<p>
+ * 
+ * A writer can only write one final response, so each operation creates a new
+ * writer, as is done by the server for each HTTP exchange.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChannelWriterBenchmark
+{
+    /** Size of the response body. */
+    @Param({"0", "128", "65536"})
+    public int bodySize;
+    
+    private DefaultServer server;
+    private DefaultClientChannel api;
+    private DefaultActionRegistry actions;
+    private IdleConnTimeout timeout;
+    private Sink sink;
+    private Response rsp;
+    
+    /**
+     * Creates the server (not started), and the response.
+     * 
+     * @throws IOException if opening an unbound socket channel fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        server  = new DefaultServer(Config.DEFAULT);
+        // Unconnected; only the channel's attributes are used
+        api     = new DefaultClientChannel(SocketChannel.open());
+        actions = new DefaultActionRegistry(server);
+        timeout = new IdleConnTimeout(Config.DEFAULT, server.metrics(), api);
+        sink    = new Sink();
+        rsp     = bodySize == 0 ? noContent() : text("X".repeat(bodySize));
+    }
+    
+    /**
+     * Closes the socket channel.
+     */
+    @TearDown
+    public void tearDown() {
+        api.close();
+    }
+    
+    /**
+     * Writes the response.
+     * 
+     * @return number of bytes written
+     * 
+     * @throws Exception never
+     */
+    @Benchmark
+    public long write() throws Exception {
+        var w = new DefaultChannelWriter(sink, actions, timeout);
+        return where(HTTP_SERVER, server)
+               .where(CHANNEL, api)
+               .call(() -> w.write(rsp));
+    }
+    
+    /**
+     * Discards all bytes written.
+     */
+    private static final class Sink implements GatheringByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+        
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long n = 0;
+            for (int i = offset; i < offset + length; ++i) {
+                n += write(srcs[i]);
+            }
+            return n;
+        }
+        
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+        
+        @Override
+        public void close() {
+            // Empty
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.message.ByteBufferIterable;
+import alpha.nomagichttp.message.ByteBufferIterator;
+import alpha.nomagichttp.util.FileLockTimeoutException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static alpha.nomagichttp.util.ByteBufferIterables.just;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Benchmarks of {@link ChunkedDecoder} and {@link ChunkedEncoder}.<p>
+ * 
+ * The message body is split into a number of equally sized chunks. For the
+ * decoder, each encoded chunk is a separate bytebuffer, as if received by
+ * separate channel reads.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChunkedCodecBenchmark
+{
+    /** Number of chunks. */
+    @Param({"1", "16"})
+    public int chunks;
+    
+    /** Size of each chunk. */
+    @Param({"64", "8192"})
+    public int chunkSize;
+    
+    /** Target size of a coalesced chunk, when encoding (0 disables). */
+    @Param({"0", "8192"})
+    public int target;
+    
+    private ByteBufferIterable decoded, encoded;
+    
+    /**
+     * Creates the message body; decoded and encoded.
+     */
+    @Setup
+    public void setup() {
+        var data = new byte[chunkSize];
+        Arrays.fill(data, (byte) 'X');
+        var dec = new ArrayList<ByteBuffer>();
+        var enc = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < chunks; ++i) {
+            dec.add(ByteBuffer.wrap(data));
+            var size = (Integer.toHexString(chunkSize) + "\r\n").getBytes(US_ASCII);
+            enc.add(ByteBuffer.allocate(size.length + chunkSize + 2)
+                    .put(size).put(data).put((byte) '\r').put((byte) '\n')
+                    .flip());
+        }
+        enc.add(ByteBuffer.wrap("0\r\n\r\n".getBytes(US_ASCII)));
+        decoded = just(List.copyOf(dec));
+        encoded = just(List.copyOf(enc));
+    }
+    
+    /**
+     * Decodes the message body.
+     * 
+     * @param bh blackhole
+     * 
+     * @throws IOException never
+     */
+    @Benchmark
+    public void decode(Blackhole bh) throws IOException {
+        drain(new ChunkedDecoder(encoded).iterator(), bh);
+    }
+    
+    /**
+     * Encodes the message body.
+     * 
+     * @param bh blackhole
+     * 
+     * @throws InterruptedException never
+     * @throws FileLockTimeoutException never
+     * @throws IOException never
+     */
+    @Benchmark
+    public void encode(Blackhole bh)
+            throws InterruptedException, FileLockTimeoutException, IOException {
+        drain(new ChunkedEncoder(decoded.iterator(), target).iterator(), bh);
+    }
+    
+    private static void drain(ByteBufferIterator it, Blackhole bh)
+            throws IOException {
+        try (it) {
+            while (it.hasNext()) {
+                var buf = it.next();
+                bh.consume(buf.remaining());
+                // Consumed
+                buf.position(buf.limit());
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.message.ByteBufferIterable;
+import alpha.nomagichttp.message.RawRequest;
+import alpha.nomagichttp.message.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+import static alpha.nomagichttp.util.ByteBufferIterables.just;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Benchmarks of parsing a request head.<p>
+ * 
+ * {@link HeadParser} is the parser used by the server. The legacy parsers,
+ * {@link ParserOfRequestLine} and {@link ParserOf#headers(ByteBufferIterable, int, int)},
+ * are what the head parser falls back to for irregular input.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HeadParserBenchmark
+{
+    private static final String LINE = "GET /api/v1/users/123?expand=orders HTTP/1.1\r\n";
+    
+    private static final String HEADERS = """
+            Host: www.example.com\r
+            User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r
+            Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r
+            Accept-Language: en-US,en;q=0.5\r
+            Accept-Encoding: gzip, deflate, br\r
+            Connection: keep-alive\r
+            Cookie: session=4f2a9c1e7b; theme=dark\r
+            Cache-Control: no-cache\r
+            \r
+            """;
+    
+    private static final int MAX = 8_000;
+    
+    private ByteBufferIterable head, line, headers;
+    
+    /**
+     * Encodes the request head.
+     */
+    @Setup
+    public void setup() {
+        // Yields a read-only duplicate on each iteration
+        head    = just((LINE + HEADERS).getBytes(US_ASCII));
+        line    = just(LINE.getBytes(US_ASCII));
+        headers = just(HEADERS.getBytes(US_ASCII));
+    }
+    
+    /**
+     * Parses the head using {@code HeadParser}.
+     * 
+     * @return the head
+     * 
+     * @throws IOException never
+     */
+    @Benchmark
+    public RawRequest.Head headParser() throws IOException {
+        return new HeadParser(head, MAX).parse();
+    }
+    
+    /**
+     * Parses the request line using {@code ParserOfRequestLine}.
+     * 
+     * @return the line
+     * 
+     * @throws IOException never
+     */
+    @Benchmark
+    public RawRequest.Line parserOfRequestLine() throws IOException {
+        return new ParserOfRequestLine(line, MAX).parse();
+    }
+    
+    /**
+     * Parses the headers using {@code ParserOf.headers}.
+     * 
+     * @return the headers
+     * 
+     * @throws IOException never
+     */
+    @Benchmark
+    public Request.Headers parserOfHeaders() throws IOException {
+        return ParserOf.headers(headers, LINE.length(), MAX).parse();
+    }
+}
@@ -0,0 +1,148 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+
+import static alpha.nomagichttp.handler.RequestHandler.GET;
+import static alpha.nomagichttp.message.Responses.text;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Benchmark of a full HTTP exchange over the loopback interface.<p>
+ * 
+ * The client sends a request using a persistent connection, and reads the
+ * response in full. The response is the same for each exchange, and so its
+ * length is learned once, during setup. The client does not allocate after
+ * setup, so {@code gc.alloc.rate.norm} is what the server allocates.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LoopbackBenchmark
+{
+    private static final ByteBuffer REQUEST = ByteBuffer.wrap("""
+            GET /hello HTTP/1.1\r
+            Host: localhost\r
+            Accept: text/plain\r
+            User-Agent: LoopbackBenchmark\r
+            \r
+            """.getBytes(US_ASCII)).asReadOnlyBuffer();
+    
+    private HttpServer server;
+    private SocketChannel client;
+    private ByteBuffer req, buf;
+    private int rspLength;
+    
+    /**
+     * Starts the server and connects the client.
+     * 
+     * @throws IOException on I/O error
+     */
+    @Setup
+    public void setup() throws IOException {
+        server = HttpServer.create()
+                .add("/hello", GET().apply(_ -> text("Hello, World!")));
+        server.startAsync();
+        client = SocketChannel.open(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), server.getPort()));
+        req = REQUEST.duplicate();
+        buf = ByteBuffer.allocate(8_192);
+        rspLength = learnResponseLength();
+    }
+    
+    /**
+     * Closes the client and stops the server.
+     * 
+     * @throws IOException on I/O error
+     * @throws InterruptedException if interrupted while stopping the server
+     */
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        client.close();
+        server.stop();
+    }
+    
+    /**
+     * Runs one HTTP exchange.
+     * 
+     * @return number of response bytes read
+     * 
+     * @throws IOException on I/O error
+     */
+    @Benchmark
+    public int exchange() throws IOException {
+        send();
+        buf.clear();
+        while (buf.position() < rspLength) {
+            receive();
+        }
+        return buf.position();
+    }
+    
+    private int learnResponseLength() throws IOException {
+        send();
+        buf.clear();
+        int headEnd;
+        while ((headEnd = headEnd()) == -1) {
+            receive();
+        }
+        final String head = new String(
+                buf.array(), 0, headEnd, US_ASCII).toLowerCase(Locale.ROOT);
+        final String name = "\r\ncontent-length:";
+        final int start = head.indexOf(name);
+        if (start == -1) {
+            throw new IllegalStateException("No Content-Length in response:\n" + head);
+        }
+        final int end = head.indexOf('\r', start + name.length());
+        final int length = headEnd +
+                Integer.parseInt(head.substring(start + name.length(), end).strip());
+        while (buf.position() < length) {
+            receive();
+        }
+        return length;
+    }
+    
+    private int headEnd() {
+        final byte[] b = buf.array();
+        for (int i = 3; i < buf.position(); ++i) {
+            if (b[i - 3] == '\r' && b[i - 2] == '\n' && b[i - 1] == '\r' && b[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+    
+    private void send() throws IOException {
+        req.rewind();
+        while (req.hasRemaining()) {
+            client.write(req);
+        }
+    }
+    
+    private void receive() throws IOException {
+        if (client.read(buf) == -1) {
+            throw new EOFException("Server closed the connection");
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.message.MediaType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of {@link MediaType#parse(String)}.<p>
+ * 
+ * Media types with the same text as a constant in {@code MediaType} are
+ * returned from a cache; "text/plain; charset=utf-8" is one of them.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MediaTypeBenchmark
+{
+    /** The text to parse. */
+    @Param({
+        "text/plain; charset=utf-8",
+        "application/json",
+        "text/html; level=1; q=0.7",
+        "application/vnd.example+json; version=\"2.1\"; charset=UTF-8" })
+    public String text;
+    
+    /**
+     * Parses the media type.
+     * 
+     * @return the media type
+     */
+    @Benchmark
+    public MediaType parse() {
+        return MediaType.parse(text);
+    }
+}
@@ -0,0 +1,112 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.action.AfterAction;
+import alpha.nomagichttp.action.BeforeAction;
+import alpha.nomagichttp.core.DefaultActionRegistry.Match;
+import alpha.nomagichttp.route.Route;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+import static alpha.nomagichttp.core.SkeletonRequestTarget.parse;
+import static alpha.nomagichttp.handler.RequestHandler.GET;
+import static alpha.nomagichttp.message.Responses.noContent;
+
+/**
+ * Benchmarks of {@link DefaultRouteRegistry#lookup(SkeletonRequestTarget)},
+ * {@link DefaultActionRegistry#lookupBefore(SkeletonRequestTarget)} and
+ * {@link DefaultActionRegistry#lookupAfter(SkeletonRequestTarget)}.<p>
+ * 
+ * The request target is parsed by each operation, as is done for each request
+ * received by the server.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RegistryBenchmark
+{
+    private static final String[] ROUTES = {
+        "/",
+        "/health",
+        "/api/v1/items",
+        "/api/v1/items/:id",
+        "/api/v1/users/:id",
+        "/api/v1/users/:id/orders",
+        "/api/v1/users/:id/orders/:order",
+        "/static/*path" };
+    
+    /** The request target. */
+    @Param({
+        "/health",
+        "/api/v1/users/123/orders/456?expand=true",
+        "/static/css/site.css" })
+    public String target;
+    
+    private DefaultRouteRegistry routes;
+    private DefaultActionRegistry actions;
+    
+    /**
+     * Populates the registries.
+     */
+    @Setup
+    public void setup() {
+        routes = new DefaultRouteRegistry(null, new DefaultServerMetrics(() -> 0));
+        for (var p : ROUTES) {
+            routes.add(Route.builder(p)
+                    .handler(GET().apply(_ -> noContent()))
+                    .build());
+        }
+        actions = new DefaultActionRegistry(null);
+        BeforeAction b = (_, chain) -> chain.proceed();
+        AfterAction a = (_, rsp) -> rsp;
+        actions.before("/", b);
+        actions.before("/api/*", b);
+        actions.before("/api/v1/users/:id", b);
+        actions.after("/", a);
+        actions.after("/static/*", a);
+        actions.after("/api/v1/users/:id/orders/:order", a);
+    }
+    
+    /**
+     * Looks up the route.
+     * 
+     * @return the route
+     */
+    @Benchmark
+    public Route lookupRoute() {
+        return routes.lookup(parse(target));
+    }
+    
+    /**
+     * Looks up before-actions.
+     * 
+     * @return the matches
+     */
+    @Benchmark
+    public List<Match<BeforeAction>> lookupBefore() {
+        return actions.lookupBefore(parse(target));
+    }
+    
+    /**
+     * Looks up after-actions.
+     * 
+     * @return the matches
+     */
+    @Benchmark
+    public List<Match<AfterAction>> lookupAfter() {
+        return actions.lookupAfter(parse(target));
+    }
+}
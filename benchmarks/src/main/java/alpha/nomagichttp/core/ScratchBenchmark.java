@@ -0,0 +1,111 @@
+package alpha.nomagichttp.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Benchmarks of scratch objects used by short-lived virtual threads.<p>
+ * 
+ * Each operation starts a new virtual thread, which obtains a scratch deque,
+ * uses it, and gives it back; the way a request thread writing to a
+ * {@link Tree} does. A {@code ThreadLocal} never hits, as the thread dies
+ * after one use. Run with "-prof gc" (the default) to compare the allocation
+ * rate.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ScratchBenchmark
+{
+    private static final int CAPACITY = 5;
+    
+    private final ThreadLocal<Deque<Object>> local
+            = ThreadLocal.withInitial(() -> new ArrayDeque<>(CAPACITY));
+    
+    private final ObjectPool<Deque<Object>> pool
+            = new ObjectPool<>(() -> new ArrayDeque<>(CAPACITY), Deque::clear, 4);
+    
+    private final Tree<String> tree = new Tree<>();
+    
+    /**
+     * Uses a thread-local deque.
+     * 
+     * @param bh blackhole
+     * 
+     * @throws InterruptedException if interrupted
+     */
+    @Benchmark
+    public void threadLocal(Blackhole bh) throws InterruptedException {
+        onVirtualThread(() -> {
+            var d = local.get();
+            use(d, bh);
+            d.clear();
+        });
+    }
+    
+    /**
+     * Uses a pooled deque.
+     * 
+     * @param bh blackhole
+     * 
+     * @throws InterruptedException if interrupted
+     */
+    @Benchmark
+    public void objectPool(Blackhole bh) throws InterruptedException {
+        onVirtualThread(() -> {
+            var d = pool.acquire();
+            use(d, bh);
+            pool.release(d);
+        });
+    }
+    
+    /**
+     * Uses a new deque.
+     * 
+     * @param bh blackhole
+     * 
+     * @throws InterruptedException if interrupted
+     */
+    @Benchmark
+    public void allocate(Blackhole bh) throws InterruptedException {
+        onVirtualThread(() -> use(new ArrayDeque<>(CAPACITY), bh));
+    }
+    
+    /**
+     * Writes to a tree (which uses a pooled deque).
+     * 
+     * @throws InterruptedException if interrupted
+     */
+    @Benchmark
+    public void treeWrite() throws InterruptedException {
+        onVirtualThread(() ->
+            tree.setIfAbsent(List.of("a", "b", "c"), "v"));
+    }
+    
+    private static void use(Deque<Object> d, Blackhole bh) {
+        d.add(d);
+        d.add(bh);
+        bh.consume(d.pollLast());
+        bh.consume(d.pollLast());
+    }
+    
+    private static void onVirtualThread(Runnable code)
+            throws InterruptedException {
+        Thread.ofVirtual().start(code).join();
+    }
+}
@@ -55,6 +55,8 @@ abstract class AbstractResultParser<R>
      * @throws IOException from upstream's {@code next} method
      */
     final R parse() throws IOException {
+        // Checked once; the lambda would otherwise be allocated for each byte
+        final boolean debug = LOG.isLoggable(DEBUG);
         // ChannelReader has no close impl, this we do out of principle
         try (var src = bytes.iterator()) {
             while (src.hasNext()) {
@@ -62,9 +64,10 @@ abstract class AbstractResultParser<R>
                 while (buf.hasRemaining()) {
                     final byte b = buf.get();
                     ++count;
-                    LOG.log(DEBUG, () ->
-                            "[Parsing] pos=%s, \"byte=%s\"".formatted(
-                            position(), Char.toDebugString((char) b)));
+                    if (debug) {
+                        LOG.log(DEBUG, "[Parsing] pos=%s, \"byte=%s\"".formatted(
+                                position(), Char.toDebugString((char) b)));
+                    }
                     final R r = tryParse(b);
                     if (r != null) {
                         return r;
@@ -168,7 +168,9 @@ abstract class AbstractTokenParser
                 "Token has leading whitespace";
         // There may be trailing whitespace, temporarily, for folded header values
         assert v.isEmpty() || !v.isBlank() : "Non-empty blank token";
-        LOG.log(DEBUG, () -> "Parsed token \"" + escapeCRLF(v) + "\"");
+        if (LOG.isLoggable(DEBUG)) {
+            LOG.log(DEBUG, "Parsed token \"" + escapeCRLF(v) + "\"");
+        }
         return v;
     }
     
@@ -1,9 +1,11 @@
 package alpha.nomagichttp.core;
 
+import alpha.nomagichttp.Config;
 import alpha.nomagichttp.handler.EndOfStreamException;
 import alpha.nomagichttp.message.ByteBufferIterable;
 import alpha.nomagichttp.message.ByteBufferIterator;
 import alpha.nomagichttp.message.Request;
+import alpha.nomagichttp.util.ByteBufferPool;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -14,12 +16,13 @@ import static alpha.nomagichttp.core.VThreads.CHANNEL_BLOCKING;
 import static alpha.nomagichttp.core.VThreads.requireVirtualThread;
 import static alpha.nomagichttp.util.Blah.addExactOrCap;
 import static alpha.nomagichttp.util.Blah.toIntOrMaxValue;
+import static alpha.nomagichttp.util.ScopedValues.HTTP_SERVER;
 import static alpha.nomagichttp.util.ScopedValues.channel;
+import static alpha.nomagichttp.util.ScopedValues.httpServer;
 import static java.lang.Math.min;
 import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.getLogger;
 import static java.nio.ByteBuffer.allocate;
-import static java.nio.ByteBuffer.allocateDirect;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -37,7 +40,18 @@ import static java.util.Objects.requireNonNull;
  * 
  * The reader must be invalidated at the end of the HTTP exchange by calling the
  * method {@link #dismiss() dismiss}. This class self-dismisses on channel
- * failure and on an unexpected end-of-stream.
+ * failure and on an unexpected end-of-stream.<p>
+ * 
+ * The reader's buffer is acquired from a {@link ByteBufferPool}, and handed
+ * over from one reader to the next throughout the channel's life. The buffer
+ * must be {@link #release() released} by the server when the channel's last
+ * exchange is done.<p>
+ * 
+ * The buffer starts small (512 bytes), and grows towards
+ * {@link Config#maxReadBufferSize()} when the limit is larger than the buffer,
+ * or when read operations keep filling the buffer completely. The buffer is
+ * shrunk back between exchanges, if all unconsumed bytes fit (see
+ * {@link #tryShrink()}).
  * 
  * @author Martin Andersson (webmaster at martinandersson.com)
  */
@@ -60,16 +74,22 @@ public final class ChannelReader implements ByteBufferIterable
     private static final ByteBuffer EOS = allocate(0);
     
     private final ReadableByteChannel src;
-    private final ByteBuffer dst;
+    // Not final because can be switched to a buffer of a different size
+    private       ByteBuffer dst;
     // Not final because can be switched to EOS
     private       ByteBuffer view;
+    // Whether the last read operation filled the buffer
+    private boolean filled;
     private boolean started;
     private volatile boolean startedVol;
+    private boolean released;
     private IOException thr;
     private final ByteBufferIterator it;
     // Number of bytes remaining to be read from the upstream
     private long desire;
     private final IdleConnTimeout timeout;
+    private final ByteBufferPool pool;
+    private final int maxSize;
     
     /**
      * Constructs this object.<p>
@@ -80,28 +100,29 @@ public final class ChannelReader implements ByteBufferIterable
      * 
      * @param upstream to read bytes from
      * @param timeout for querying the timeout duration of an idle connection
+     * @param pool to acquire the buffer from
+     * @param maxSize max size of the buffer
      */
-    ChannelReader(ReadableByteChannel upstream, IdleConnTimeout timeout) {
+    ChannelReader(
+            ReadableByteChannel upstream,
+            IdleConnTimeout timeout, ByteBufferPool pool, int maxSize)
+    {
         // The buffers are created with no remaining to force a channel read
         
         // A direct buffer "typically" has higher allocation and de-allocation
-        // cost [than heap] according to JDK JavaDoc. Out buffer is reused
-        // throughout the channel's life, and hopefully will be used to serve
-        // many exchanges. So this author is not necessarily concerned with the
-        // [de-]allocation cost. However:
-        // TODO: Need to throw some braincells at this, and profile.
-        //       Maybe it would be wise to start on heap and switch to direct
-        //       only when there's a large body - or, something? Content type
-        //       could also be an indicator (most requests are likely to be
-        //       text, and so, heap?).
-        this(requireNonNull(upstream), allocateDirect(BUFFER_SIZE).position(BUFFER_SIZE),
-             null, requireNonNull(timeout));
+        // cost [than heap] according to JDK JavaDoc. Our buffer is reused
+        // throughout the channel's life, and is returned to the pool when the
+        // channel is done, so the [de-]allocation cost is amortized over many
+        // channels.
+        this(requireNonNull(upstream),
+             pool.acquire(BUFFER_SIZE).limit(BUFFER_SIZE).position(BUFFER_SIZE),
+             null, requireNonNull(timeout), pool, maxSize);
     }
     
     private ChannelReader(
             ReadableByteChannel src,
             ByteBuffer dst, ByteBuffer view,
-            IdleConnTimeout timeout)
+            IdleConnTimeout timeout, ByteBufferPool pool, int maxSize)
     {
         this.src    = src;
         this.dst    = dst;
@@ -109,6 +130,8 @@ public final class ChannelReader implements ByteBufferIterable
         this.it     = new IteratorImpl();
         this.desire = UNLIMITED;
         this.timeout = timeout;
+        this.pool   = pool;
+        this.maxSize = maxSize;
     }
     
     /**
@@ -239,7 +262,11 @@ public final class ChannelReader implements ByteBufferIterable
      * This method fixes the problem by handing over its buffer to the new
      * reader which will start yielding bytes right from where this reader
      * stopped. Plus, recycling the buffer reduces memory pressure (kind of
-     * significantly much, this author anticipates).
+     * significantly much, this author anticipates).<p>
+     * 
+     * The buffer is handed over as-is, even if it has grown. Bytebuffers
+     * returned by this reader may still be in use, for example if the next
+     * request head is parsed ahead of time (see {@link Pipeline}).
      * 
      * @return a new reader of the same channel as this one
      *         (never {@code null)}
@@ -255,7 +282,66 @@ public final class ChannelReader implements ByteBufferIterable
     ChannelReader newReader() {
         requireDismissed();
         requireNotEOS();
-        return new ChannelReader(src, dst, view, timeout);
+        return new ChannelReader(src, dst, view, timeout, pool, maxSize);
+    }
+    
+    /**
+     * Shrinks the buffer, if it has grown, and the bytes not yet consumed fit
+     * in a buffer of the initial size.<p>
+     * 
+     * The large buffer is returned to the pool. All bytebuffers ever returned
+     * by this reader and its predecessors are views of the buffer, and so, this
+     * method must only be called when none of them can be in use; after the
+     * request head has been parsed, and the previous exchange is over.
+     * 
+     * @throws IllegalStateException
+     *             if this reader is dismissed
+     * @throws UnsupportedOperationException
+     *             if there is a limit set
+     */
+    void tryShrink() {
+        requireNotDismissed();
+        requireLimitNotSet();
+        final int unread = dst.position() - view.position();
+        if (view == EOS || dst.capacity() <= BUFFER_SIZE ||
+            unread > BUFFER_SIZE) {
+            return;
+        }
+        var small = pool.acquire(BUFFER_SIZE).limit(BUFFER_SIZE);
+        // Unconsumed bytes are moved to the front, and exposed on demand
+        small.put(0, dst, view.position(), unread).position(unread);
+        replaceBuffer(small);
+        view.limit(0);
+    }
+    
+    /**
+     * Replaces the buffer, and returns the old one to the pool.<p>
+     * 
+     * The new view has the same position and limit as the new buffer.
+     */
+    private void replaceBuffer(ByteBuffer newDst) {
+        final var old = dst;
+        dst = newDst;
+        view = newDst.asReadOnlyBuffer();
+        pool.release(old);
+    }
+    
+    /**
+     * Returns the buffer to the pool.<p>
+     * 
+     * This method must be called for the channel on the last reader, and after
+     * the last exchange has ended. This method dismisses the reader. Any
+     * bytebuffer previously returned by it must not be used again.<p>
+     * 
+     * Consecutive calls to this method are NOP.
+     */
+    void release() {
+        forceDismiss();
+        if (released) {
+            return;
+        }
+        released = true;
+        pool.release(dst);
     }
     
     @Override
@@ -301,9 +387,11 @@ public final class ChannelReader implements ByteBufferIterable
             }
             // Read from upstream
             requireVirtualThread();
+            tryGrow();
             clearBuffers();
             final int r = read();
             if (r > 0) {
+                filled = !dst.hasRemaining();
                 limitView();
                 assert view.hasRemaining();
                 return view;
@@ -313,6 +401,18 @@ public final class ChannelReader implements ByteBufferIterable
             throw new AssertionError(CHANNEL_BLOCKING);
         }
         
+        private void tryGrow() {
+            final int cap = dst.capacity();
+            if (cap >= maxSize) {
+                return;
+            }
+            final long want = isLimitSet() ? desire : filled ? 2L * cap : 0;
+            if (want > cap) {
+                // All buffered bytes have been consumed; nothing to copy
+                replaceBuffer(pool.acquire((int) min(want, maxSize)));
+            }
+        }
+        
         private void clearBuffers() {
             dst.clear();
             view.clear();
@@ -322,7 +422,12 @@ public final class ChannelReader implements ByteBufferIterable
             boolean calledAbort = false;
             timeout.scheduleRead();
             try {
-                return src.read(dst);
+                final int n = src.read(dst);
+                if (n > 0 && HTTP_SERVER.isBound() &&
+                    httpServer().metrics() instanceof DefaultServerMetrics m) {
+                    m.received(n);
+                }
+                return n;
             } catch (Throwable t) {
                 forceDismiss();
                 assert t instanceof IOException;
@@ -1,29 +1,53 @@
 package alpha.nomagichttp.core;
 
+import alpha.nomagichttp.Config;
 import alpha.nomagichttp.message.ByteBufferIterator;
 import alpha.nomagichttp.message.ResourceByteBufferIterable;
+import alpha.nomagichttp.util.ByteBufferPool;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
-import java.util.HexFormat;
 import java.util.NoSuchElementException;
 
+import static alpha.nomagichttp.util.ByteBufferIterables.FLUSH;
+import static alpha.nomagichttp.util.ScopedValues.HTTP_SERVER;
+import static alpha.nomagichttp.util.ScopedValues.httpServer;
 import static java.nio.ByteBuffer.allocate;
-import static java.nio.ByteBuffer.wrap;
 import static java.nio.charset.StandardCharsets.US_ASCII;
-import static java.util.Collections.addAll;
 import static java.util.Objects.requireNonNull;
 
 /**
- * Encodes each upstream bytebuffer into a {@code chunk} sent downstream.<p>
+ * Encodes upstream bytebuffers into {@code chunk}s sent downstream.<p>
  * 
  * Is used by {@link ResponseProcessor} to decorate the response body if the
  * body has an unknown length and/or the response has trailers (which in
  * HTTP/1.1 requires chunked encoding; will likely not be necessary for
  * HTTP/2?).<p>
  * 
+ * Small upstream bytebuffers are copied into one chunk, until the next
+ * bytebuffer would make the chunk's payload larger than the target size given
+ * to the constructor ({@link Config#chunkSize()}). A coalesced chunk is one
+ * bytebuffer; size, payload and CRLF, and so it is written using one write
+ * operation. The bytebuffer is acquired from the server's {@link
+ * ByteBufferPool} when first needed, and released when this class is closed.
+ * The upstream may yield {@link
+ * alpha.nomagichttp.util.ByteBufferIterables#FLUSH FLUSH} to have the chunk
+ * sent downstream without waiting for more data, followed by {@code FLUSH}.<p>
+ * 
+ * An upstream bytebuffer at least as large as the target size is not copied;
+ * it is sent downstream as the payload of a chunk of its own, between the
+ * size and CRLF. {@link DefaultChannelWriter} writes the three bytebuffers
+ * using one gathering write operation (see {@link Impl#nextChunk()}).<p>
+ * 
+ * The size is encoded using as few hexadecimal digits as possible.<p>
+ * 
+ * The bytebuffers sent downstream are reused, and so a bytebuffer must be
+ * consumed before the next one is pulled (which is what the
+ * {@link DefaultChannelWriter} does).<p>
+ * 
  * When the upstream turns empty, one {@code last-chunk} is sent downstream
  * before this class turns empty.<p>
  * 
@@ -46,8 +70,14 @@ final class ChunkedEncoder implements ResourceByteBufferIterable
     
     private final ByteBufferIterator it;
     
-    ChunkedEncoder(ByteBufferIterator upstream) {
-        it = new Impl(upstream);
+    /**
+     * Constructs this object.
+     * 
+     * @param upstream the body to encode
+     * @param target max payload size of a coalesced chunk (0 disables)
+     */
+    ChunkedEncoder(ByteBufferIterator upstream, int target) {
+        it = new Impl(upstream, target);
     }
     
     @Override
@@ -60,14 +90,39 @@ final class ChunkedEncoder implements ResourceByteBufferIterable
         return it;
     }
     
-    private static final class Impl implements ByteBufferIterator {
+    static final class Impl implements ByteBufferIterator {
+        private static final byte[]
+                HEX = "0123456789abcdef".getBytes(US_ASCII),
+                CRLF = {13, 10},
+                // "0"
+                LAST_CHUNK = {48, 13, 10};
+        
+        // Max size in hex (8 digits) + CRLF
+        private static final int SIZE_LINE = 10;
+        
+        private static final ByteBuffer NOTHING = allocate(0);
         
         private ByteBufferIterator inputChunks;
+        private final int target;
         private final Deque<ByteBuffer> pipe;
+        // Reused for the chunks not coalesced
+        private final ByteBuffer sizeLine, crlf;
+        // Reused by nextChunk()
+        private final ByteBuffer[] chunk;
+        private final ByteBufferPool bufs;
+        // Size-line + coalesced payload + CRLF; acquired when first needed
+        private ByteBuffer scratch;
+        // An upstream bytebuffer that did not fit in the coalesced chunk
+        private ByteBuffer carry;
         
-        Impl(ByteBufferIterator upstream) {
+        Impl(ByteBufferIterator upstream, int target) {
             inputChunks = requireNonNull(upstream);
+            this.target = target;
             pipe = new ArrayDeque<>();
+            sizeLine = allocate(SIZE_LINE);
+            crlf = allocate(2).put(CRLF).flip();
+            chunk = new ByteBuffer[3];
+            bufs = HTTP_SERVER.isBound() ? httpServer().bufferPool() : null;
         }
         
         @Override
@@ -84,6 +139,10 @@ final class ChunkedEncoder implements ResourceByteBufferIterable
                 inputChunks.close();
             } finally {
                 inputChunks = null;
+                if (scratch != null && bufs != null) {
+                    bufs.release(scratch);
+                }
+                scratch = null;
             }
         }
         
@@ -96,34 +155,53 @@ final class ChunkedEncoder implements ResourceByteBufferIterable
             
             // Try from pipe
             var buf = take();
-            if (buf != null) {
-                if (buf == DONE) {
-                    throw new NoSuchElementException();
-                }
-                return buf;
+            if (buf == null) {
+                encode();
+                buf = take();
+                assert buf != null;
             }
-            
-            // Attempt encoding
-            ByteBuffer chunk;
-            try {
-                chunk = inputChunks.next();
-                if (!chunk.hasRemaining()) {
-                    assert !inputChunks.hasNext();
-                    throw new NoSuchElementException();
-                }
-            } catch (NoSuchElementException _) {
-                // If upstream is done we're done
-                return fill(lastChunk(), DONE).take();
+            if (buf == DONE) {
+                throw new NoSuchElementException();
             }
-            
-            // CRLF must follow despite size being specified, weird
-            return fill(size(chunk), chunk, wrap(CRLF)).take();
+            return buf;
         }
         
-        private Impl fill(ByteBuffer one, ByteBuffer... more) {
-            pipe.add(one);
-            addAll(pipe, more);
-            return this;
+        /**
+         * Returns the bytebuffers of the next chunk.<p>
+         * 
+         * The bytebuffers should be written using one gathering write
+         * operation. An array element that is not used, has no bytes
+         * remaining. {@code FLUSH} is not included, as the bytebuffers are
+         * written right away.<p>
+         * 
+         * The array is reused, and so must be consumed before the next
+         * invocation of {@code next} or {@code nextChunk}.
+         * 
+         * @return the bytebuffers of the next chunk
+         * 
+         * @throws NoSuchElementException
+         *             if there are no more chunks
+         * @throws IOException
+         *             from upstream
+         */
+        ByteBuffer[] nextChunk() throws IOException {
+            if (inputChunks == null || !hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // Possibly a remnant of a chunk partially taken by next()
+            if (pipe.isEmpty()) {
+                encode();
+            }
+            int i = 0;
+            for (ByteBuffer buf; i < chunk.length &&
+                         (buf = pipe.peek()) != null && buf != DONE; ) {
+                pipe.poll();
+                if (buf != FLUSH) {
+                    chunk[i++] = buf;
+                }
+            }
+            Arrays.fill(chunk, i, chunk.length, NOTHING);
+            return chunk;
         }
         
         private ByteBuffer take() {
@@ -132,35 +210,126 @@ final class ChunkedEncoder implements ResourceByteBufferIterable
                 pipe.add(DONE);
                 return DONE;
             }
-            if (buf == null || buf.hasRemaining()) {
+            if (buf == null || buf == FLUSH || buf.hasRemaining()) {
                 // Pipe empty: nothing to take
-                // Buffer with contents: take it
+                // Flush or buffer with contents: take it
                 return buf;
             }
             // Buf has no remaining; discard and try next
             return take();
         }
         
-        // Is cached already, but this way we're guaranteed
-        private static final HexFormat HF = HexFormat.of();
-        private static final byte[] CRLF = {13, 10};
-        
-        private ByteBuffer size(ByteBuffer buf) {
-            final int n = buf.remaining();
-            // We could strip leading zeroes, but probably not worth the cost
-            var bytes = HF.toHexDigits(n).getBytes(US_ASCII);
-            return allocate(bytes.length + 2)
-                    .put(bytes)
-                    .put(CRLF)
-                    .flip();
+        /**
+         * Fills the pipe with at least one chunk.
+         * 
+         * @throws IOException from upstream
+         */
+        private void encode() throws IOException {
+            if (scratch != null) {
+                // Previous chunk was consumed
+                resetScratch();
+            }
+            for (;;) {
+                final ByteBuffer buf = carry != null ? carry : pull();
+                carry = null;
+                if (buf == null) {
+                    // If upstream is done we're done
+                    tryFlush();
+                    pipe.add(ByteBuffer.wrap(LAST_CHUNK));
+                    pipe.add(DONE);
+                    return;
+                }
+                if (buf == FLUSH) {
+                    tryFlush();
+                    pipe.add(FLUSH);
+                    return;
+                }
+                final int n = buf.remaining();
+                if (n >= target) {
+                    if (tryFlush()) {
+                        carry = buf;
+                    } else {
+                        // CRLF must follow despite size being specified, weird
+                        pipe.add(size(n));
+                        pipe.add(buf);
+                        pipe.add(crlf.clear());
+                    }
+                    return;
+                }
+                if (scratch == null) {
+                    final int cap = SIZE_LINE + target + 2;
+                    scratch = bufs == null ? allocate(cap) : bufs.acquire(cap);
+                    resetScratch();
+                }
+                if (n > payloadRemaining()) {
+                    tryFlush();
+                    carry = buf;
+                    return;
+                }
+                scratch.put(buf);
+                if (payloadRemaining() == 0) {
+                    tryFlush();
+                    return;
+                }
+            }
+        }
+        
+        private ByteBuffer pull() throws IOException {
+            try {
+                var buf = inputChunks.next();
+                if (buf != FLUSH && !buf.hasRemaining()) {
+                    assert !inputChunks.hasNext();
+                    return null;
+                }
+                return buf;
+            } catch (NoSuchElementException _) {
+                return null;
+            }
+        }
+        
+        private void resetScratch() {
+            // A pooled bytebuffer may have a larger capacity
+            scratch.limit(SIZE_LINE + target + 2).position(SIZE_LINE);
+        }
+        
+        private int payloadRemaining() {
+            return SIZE_LINE + target - scratch.position();
+        }
+        
+        private boolean tryFlush() {
+            if (scratch == null || scratch.position() == SIZE_LINE) {
+                return false;
+            }
+            final int n = scratch.position() - SIZE_LINE;
+            scratch.put(CRLF).flip();
+            scratch.position(putSize(scratch, n));
+            pipe.add(scratch);
+            return true;
+        }
+        
+        private ByteBuffer size(int n) {
+            sizeLine.clear();
+            sizeLine.position(putSize(sizeLine, n));
+            return sizeLine;
         }
         
-        private ByteBuffer lastChunk() {
-            return allocate(5)
-                    // "0"
-                    .put((byte) 48)
-                    .put(CRLF)
-                    .flip();
+        /**
+         * Puts the size in hex, followed by CRLF, right-aligned in the first
+         * {@value SIZE_LINE} bytes of the given buffer.
+         * 
+         * @param dst destination
+         * @param n size
+         * 
+         * @return the index of the first byte of the size-line
+         */
+        private static int putSize(ByteBuffer dst, int n) {
+            int i = SIZE_LINE - 2;
+            dst.put(i, CRLF[0]).put(i + 1, CRLF[1]);
+            do {
+                dst.put(--i, HEX[n & 0xF]);
+                n >>>= 4;
+            } while (n != 0);
+            return i;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.Config;
+import com.sun.management.OperatingSystemMXBean;
+
+import java.lang.management.ManagementFactory;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Samples the CPU load of the system.<p>
+ * 
+ * Reading the load from the operating system is relatively expensive (on
+ * Linux, it reads and parses a file in /proc), and so, the load is sampled at
+ * most once per second, and cached in between.<p>
+ * 
+ * This class is thread-safe. Two threads may race to sample the load, which is
+ * harmless.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ * 
+ * @see Config#maxCompressionCpuLoad()
+ */
+final class CpuLoad
+{
+    private static final long INTERVAL = SECONDS.toNanos(1);
+    
+    private static final OperatingSystemMXBean OS =
+            ManagementFactory.getOperatingSystemMXBean()
+                    instanceof OperatingSystemMXBean os ? os : null;
+    
+    private static volatile long sampledAt = nanoTime() - INTERVAL;
+    private static volatile int percent;
+    
+    private CpuLoad() {
+        // Empty
+    }
+    
+    /**
+     * {@return {@code true} if the load is above the given percent}<p>
+     * 
+     * The value 100 (or larger) always returns {@code false}, without sampling
+     * the load.
+     * 
+     * @param max percent
+     */
+    static boolean isAbove(int max) {
+        return max < 100 && get() > max;
+    }
+    
+    /**
+     * {@return the CPU load of the system, in percent}<p>
+     * 
+     * If the load is not available, 0 is returned.
+     */
+    static int get() {
+        final long now = nanoTime();
+        if (now - sampledAt >= INTERVAL) {
+            sampledAt = now;
+            final double l = OS == null ? -1 : OS.getCpuLoad();
+            percent = l < 0 ? 0 : (int) Math.round(l * 100);
+        }
+        return percent;
+    }
+}
@@ -8,17 +8,17 @@ import alpha.nomagichttp.action.AfterAction;
 import alpha.nomagichttp.action.BeforeAction;
 import alpha.nomagichttp.route.SegmentsBuilder;
 
-import java.util.ArrayDeque;
+import java.io.Serial;
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.RandomAccess;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.BiFunction;
-import java.util.stream.Stream;
 
 import static alpha.nomagichttp.core.Segments.ASTERISK_CH;
 import static alpha.nomagichttp.core.Segments.ASTERISK_STR;
@@ -27,7 +27,7 @@ import static alpha.nomagichttp.core.Segments.COLON_STR;
 import static alpha.nomagichttp.core.Segments.noParamNames;
 import static alpha.nomagichttp.util.Streams.stream;
 import static java.lang.Integer.compare;
-import static java.lang.ThreadLocal.withInitial;
+import static java.util.Collections.unmodifiableList;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -37,27 +37,55 @@ import static java.util.Objects.requireNonNull;
  */
 final class DefaultActionRegistry implements ActionRegistry
 {
-    private static final int INITIAL_CAPACITY = 3;
+    /*
+     * Implementation note:
+     * 
+     * Actions are stored in trees, keyed the same way as routes are (see
+     * DefaultRouteRegistry). The trees are only used for adding actions. After
+     * each modification, a frozen copy of the tree is published, where each
+     * node's set of actions has been sorted into an unmodifiable list. It is
+     * the frozen copy which is used for lookups.
+     * 
+     * The result of a lookup is memoized by the snapshot (see Snapshot). A
+     * modification replaces the snapshot, and so also the memo.
+     */
     
     private final Tree<Set<WrappedBeforeAction>> before;
     private final Tree<Set<WrappedAfterAction>> after;
+    private volatile Snapshot<WrappedBeforeAction> beforeSnapshot;
+    private volatile Snapshot<WrappedAfterAction> afterSnapshot;
     private final HttpServer server;
     
     DefaultActionRegistry(HttpServer server) {
         this.before = new Tree<>();
         this.after  = new Tree<>();
+        this.beforeSnapshot = new Snapshot<>(before);
+        this.afterSnapshot  = new Snapshot<>(after);
         this.server = server;
     }
     
     @Override
     public HttpServer before(String pattern, BeforeAction first, BeforeAction... more) {
-        addAll(pattern, before, WrappedBeforeAction::new, first, more);
+        try {
+            addAll(pattern, before, WrappedBeforeAction::new, first, more);
+        } finally {
+            // Synchronized, so that the last copy made is also the last one published
+            synchronized (before) {
+                beforeSnapshot = new Snapshot<>(before);
+            }
+        }
         return server;
     }
     
     @Override
     public HttpServer after(String pattern, AfterAction first, AfterAction... more) {
-        addAll(pattern, after, WrappedAfterAction::new, first, more);
+        try {
+            addAll(pattern, after, WrappedAfterAction::new, first, more);
+        } finally {
+            synchronized (after) {
+                afterSnapshot = new Snapshot<>(after);
+            }
+        }
         return server;
     }
     
@@ -135,117 +163,216 @@ final class DefaultActionRegistry implements ActionRegistry
     /**
      * Lookup before-actions.<p>
      * 
-     * If the returned list is not empty, then it also implements {@link
-     * RandomAccess} and is mutable.
+     * The returned list implements {@link RandomAccess} and is unmodifiable.
      * 
      * @param rt request target
      * @return matches (never {@code null})
      */
     List<Match<BeforeAction>> lookupBefore(SkeletonRequestTarget rt) {
-        return lookup(before, rt);
+        return lookup(beforeSnapshot, rt);
     }
     
     /**
      * Lookup after-actions.<p>
      * 
-     * If the returned list is not empty, then it also implements {@link
-     * RandomAccess} and is mutable.
+     * The returned list implements {@link RandomAccess} and is unmodifiable.
      * 
      * @param rt request target
      * @return matches (never {@code null})
      */
     List<Match<AfterAction>> lookupAfter(SkeletonRequestTarget rt) {
-        return lookup(after, rt);
+        return lookup(afterSnapshot, rt);
     }
     
-    private static <W extends AbstractWrapper<A>, A> List<Match<A>> lookup(
-            Tree<Set<W>> tree, SkeletonRequestTarget rt)
+    private static <W extends AbstractWrapper<A> & Comparable<? super W>, A>
+            List<Match<A>> lookup(Snapshot<W> snapshot, SkeletonRequestTarget rt)
     {
-        List<W>                      buf1 = get(BUF1);
-        Deque<Tree.ReadNode<Set<W>>> buf2 = get(BUF2);
-        List<Tree.ReadNode<Set<W>>>  buf3 = get(BUF3);
-        try {
-            return lookup(tree, rt, buf1, buf2, buf3);
-        } finally {
-            buf1.clear();
-            buf2.clear();
-            buf3.clear();
-        }
-    }
-    
-    // We're reusing buffers only to minimize garbage. This also assumes that a
-    // thread will never run through the lookup operation recursively. Lookups
-    // are only performed once during HTTP exchange initialization.
-    // TODO: This is premature optimization. Need proof it is better.
-    //       Also see https://stackoverflow.com/a/18371813
-    private static final ThreadLocal<List<?>>  BUF1 = withInitial(() -> new ArrayList<>(INITIAL_CAPACITY));
-    private static final ThreadLocal<Deque<?>> BUF2 = withInitial(() -> new ArrayDeque<>(INITIAL_CAPACITY));
-    private static final ThreadLocal<List<?>>  BUF3 = withInitial(() -> new ArrayList<>(INITIAL_CAPACITY));
-    
-    private static <T> T get(ThreadLocal<?> buff) {
         @SuppressWarnings("unchecked")
-        T t = (T) buff.get();
-        return t;
+        final List<Match<A>> matches =
+                (List<Match<A>>) snapshot.lookup(rt.segments());
+        return matches;
     }
     
-    private static <W extends AbstractWrapper<A>, A> List<Match<A>> lookup(
-            Tree<Set<W>> tree, SkeletonRequestTarget rt,
-            List<W> matches,
-            Deque<Tree.ReadNode<Set<W>>> trails,
-            List<Tree.ReadNode<Set<W>>> batch)
-    {
-        // DefaultRouteRegistry has a pretty simple job; poll one segment at a
-        // time while walking the tree one level at a time. Only one route can
-        // match, after all. Here, me must investigate any number of active
-        // branches.
-        //    For each segment, we iterate <trails> (current leaf nodes) and
-        // immediately record <catchAll> matches and save discovered children
-        // (single + static) into <batch>, which will become the new <trails> to
-        // check against the next segment. After all segments have been
-        // iterated, the residue in <trails> are the furthermost leaves which
-        // represents matched nodes.
+    /**
+     * A frozen tree of actions, and a memo of lookups.<p>
+     * 
+     * The result of a lookup is determined by the "shape" of the request path;
+     * the number of segments, and each segment that is also a key of a node at
+     * the same depth of the tree. Any other segment can only be matched by a
+     * path parameter, and so, which one it is does not matter. For example,
+     * "/user/123" and "/user/456" have the same shape, unless an action was
+     * registered using a static segment "123" or "456".<p>
+     * 
+     * The memo is a direct-mapped table, indexed by the hash of the shape. A
+     * slot holds the most recent lookup result for a shape that maps to the
+     * slot. The memo is bounded, and it is thrown away together with the
+     * snapshot on registry modification.
+     * 
+     * @param <W> type of action wrapper
+     */
+    private static final class Snapshot<W extends Comparable<? super W>> {
+        // Must be a power of two
+        private static final int MEMO_SIZE = 256;
+        // Hash of a segment that only a path parameter matches
+        private static final int PARAM = 0x9E3779B9;
+        
+        private final Tree.Frozen<List<W>> root;
+        // Segment keys by depth
+        private final List<Set<String>> keys;
+        private final AtomicReferenceArray<Memo> memo;
+        
+        Snapshot(Tree<Set<W>> tree) {
+            this.root = tree.freeze(set ->
+                    set.isEmpty() ? null : set.stream().sorted().toList());
+            this.keys = new ArrayList<>();
+            collectKeys(root, 0, keys);
+            this.memo = new AtomicReferenceArray<>(MEMO_SIZE);
+        }
         
-        trails.add(tree.read());
+        private static void collectKeys(
+                Tree.Frozen<?> n, int depth, List<Set<String>> keys) {
+            n.forEach((k, c) -> {
+                if (keys.size() == depth) {
+                    keys.add(new HashSet<>());
+                }
+                keys.get(depth).add(k);
+                collectKeys(c, depth + 1, keys);
+            });
+        }
         
-        List<String> segments = rt.segments();
-        assert segments instanceof RandomAccess;
-        for (int i = 0; i < segments.size(); ++i) {
-            var seg = segments.get(i);
-            if (trails.isEmpty()) {
-                // All segments must match
-                break;
+        List<?> lookup(List<String> segments) {
+            final int h = hash(segments);
+            final int i = h & (MEMO_SIZE - 1);
+            final Memo m = memo.get(i);
+            if (m != null && m.hash() == h && sameShape(m.shape(), segments)) {
+                return m.matches();
             }
-            
-            Tree.ReadNode<Set<W>> n;
-            while ((n = trails.poll()) != null) {
-                // Catch-all child node is always a match
-                n.nextValueIfPresent(ASTERISK_STR, matches::addAll);
-                // Keep digging the trails
-                n.nextIfPresent(COLON_STR, batch::add);
-                n.nextIfPresent(seg, batch::add);
+            final Object acc = collect(root, segments, 0, null);
+            final List<?> matches =
+                    acc == null ? List.of() :
+                    acc instanceof SortedMatches s ? s.sorted() :
+                    (List<?>) acc;
+            memo.set(i, new Memo(h, shape(segments), matches));
+            return matches;
+        }
+        
+        private boolean isKey(int depth, String segment) {
+            return depth < keys.size() && keys.get(depth).contains(segment);
+        }
+        
+        private int hash(List<String> segments) {
+            int h = segments.size();
+            for (int i = 0; i < segments.size(); ++i) {
+                final String s = segments.get(i);
+                h = 31 * h + (isKey(i, s) ? s.hashCode() : PARAM);
             }
-            
-            if (trails.addAll(batch)) {
-                // clear batch because we'll go again, otherwise call site clears
-                // (and so wrapping this in an if-clause is premature optimization)
-                // (could optimize even more lol, e.g. not clear if we're on the last segment)
-                batch.clear();
+            return h;
+        }
+        
+        private String[] shape(List<String> segments) {
+            final var shape = new String[segments.size()];
+            for (int i = 0; i < shape.length; ++i) {
+                final String s = segments.get(i);
+                // null means any segment which is not a key
+                shape[i] = isKey(i, s) ? s : null;
             }
+            return shape;
         }
         
-        // anything left is a match
-        trails.forEach(n -> {
-            // but first, add leaves' catch-all
-            n.nextValueIfPresent(ASTERISK_STR, matches::addAll);
-            n.ifPresent(matches::addAll);
-        });
+        private boolean sameShape(String[] shape, List<String> segments) {
+            if (shape.length != segments.size()) {
+                return false;
+            }
+            for (int i = 0; i < shape.length; ++i) {
+                final String s = segments.get(i);
+                if (shape[i] == null ? isKey(i, s) : !shape[i].equals(s)) {
+                    return false;
+                }
+            }
+            return true;
+        }
         
-        return matches.isEmpty() ? List.of() : toList(matches.stream().sorted());
+        private record Memo(int hash, String[] shape, List<?> matches) {
+            // Empty
+        }
+    }
+    
+    /**
+     * Collects matches, depth-first.<p>
+     * 
+     * DefaultRouteRegistry has a pretty simple job; poll one segment at a time
+     * while walking the tree one level at a time. Only one route can match,
+     * after all. Here, we must investigate any number of active branches.<p>
+     * 
+     * For each segment, a catch-all child of the node is always a match. Then
+     * we keep digging through both the single path parameter child and the
+     * static child. A node reached when all segments have been consumed is a
+     * match.<p>
+     * 
+     * The matches are threaded through the recursion, to not allocate anything
+     * unless necessary. The accumulator is {@code null} if nothing has been
+     * matched, a node's sorted list if only one node matched, or a
+     * {@code SortedMatches} if more than one node matched.
+     * 
+     * @param n node
+     * @param segments of the request path
+     * @param i index of the segment to match against the children of {@code n}
+     * @param acc accumulator
+     * 
+     * @return the accumulator
+     */
+    private static Object collect(
+            Tree.Frozen<? extends List<?>> n, List<String> segments, int i, Object acc)
+    {
+        final var catchAll = n.next(ASTERISK_STR);
+        if (catchAll != null) {
+            acc = plus(acc, catchAll.get());
+        }
+        if (i == segments.size()) {
+            return plus(acc, n.get());
+        }
+        final var single = n.next(COLON_STR);
+        if (single != null) {
+            acc = collect(single, segments, i + 1, acc);
+        }
+        final var stat = n.next(segments.get(i));
+        if (stat != null) {
+            acc = collect(stat, segments, i + 1, acc);
+        }
+        return acc;
+    }
+    
+    private static Object plus(Object acc, List<?> matches) {
+        if (matches == null) {
+            return acc;
+        }
+        if (acc == null) {
+            return matches;
+        }
+        if (acc instanceof SortedMatches s) {
+            s.addAll(matches);
+            return s;
+        }
+        var s = new SortedMatches((List<?>) acc);
+        s.addAll(matches);
+        return s;
     }
     
-    @SuppressWarnings("unchecked")
-    private static <T> List<T> toList(Stream<? extends T> stream) {
-        return (List<T>) stream.toList();
+    /**
+     * Matches from more than one node, which must be sorted.
+     */
+    private static final class SortedMatches extends ArrayList<Object> {
+        @Serial private static final long serialVersionUID = 1L;
+        
+        SortedMatches(List<?> first) {
+            super(first);
+        }
+        
+        List<?> sorted() {
+            // Natural order; wrappers are Comparable
+            sort(null);
+            return unmodifiableList(this);
+        }
     }
     
     private static final class WrappedBeforeAction
@@ -1,20 +1,23 @@
 package alpha.nomagichttp.core;
 
 import alpha.nomagichttp.ChannelWriter;
+import alpha.nomagichttp.Config;
 import alpha.nomagichttp.HttpConstants.Version;
 import alpha.nomagichttp.action.AfterAction;
 import alpha.nomagichttp.core.DefaultActionRegistry.Match;
 import alpha.nomagichttp.core.ResponseProcessor.Result;
 import alpha.nomagichttp.event.ResponseSent;
 import alpha.nomagichttp.handler.ResponseRejectedException;
+import alpha.nomagichttp.internal.ResponseHeads;
 import alpha.nomagichttp.message.ByteBufferIterator;
 import alpha.nomagichttp.message.Request;
 import alpha.nomagichttp.message.Response;
+import alpha.nomagichttp.message.TransferableByteBufferIterator;
 import alpha.nomagichttp.util.FileLockTimeoutException;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.WritableByteChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.time.Duration;
 import java.util.List;
 import java.util.StringJoiner;
@@ -31,14 +34,15 @@ import static alpha.nomagichttp.core.VThreads.CHANNEL_BLOCKING;
 import static alpha.nomagichttp.handler.ResponseRejectedException.Reason.CLIENT_PROTOCOL_DOES_NOT_SUPPORT;
 import static alpha.nomagichttp.handler.ResponseRejectedException.Reason.CLIENT_PROTOCOL_UNKNOWN_BUT_NEEDED;
 import static alpha.nomagichttp.util.Blah.addExactOrCap;
+import static alpha.nomagichttp.util.ByteBufferIterables.FLUSH;
 import static alpha.nomagichttp.util.ByteBuffers.asciiBytes;
 import static alpha.nomagichttp.util.ScopedValues.channel;
 import static alpha.nomagichttp.util.ScopedValues.httpServer;
 import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.WARNING;
 import static java.lang.System.nanoTime;
+import static java.nio.ByteBuffer.allocate;
 import static java.util.Objects.requireNonNull;
-import static java.util.Objects.requireNonNullElse;
 
 /**
  * Default implementation of {@code ChannelWriter}.<p>
@@ -50,6 +54,9 @@ import static java.util.Objects.requireNonNullElse;
  *   <li>Write the response</li>
  * </ul>
  * 
+ * The response head, a small body, and the trailers are written using one
+ * gathering write operation (see {@link Config#maxCoalescedBodySize()}).<p>
+ * 
  * This class closes a non-persistent HTTP connection, but it should be noted
  * that it is {@code ResponseProcessor} who makes the decision.<p>
  * 
@@ -69,9 +76,14 @@ final class DefaultChannelWriter implements ChannelWriter
     private static final System.Logger LOG
             = System.getLogger(DefaultChannelWriter.class.getPackageName());
     
-    private static final String SP = " ", CRLF_STR = "\r\n";
+    private static final String CRLF_STR = "\r\n";
+    private static final ByteBuffer NOTHING = allocate(0);
+    
+    // Max bytes per file transfer; same reasoning as for bytebuffer sizes (see
+    // Config.timeoutIdleConnection), but without a buffer in user space
+    private static final long TRANSFER_SIZE = 64 * 1_024;
     
-    private final WritableByteChannel out;
+    private final GatheringByteChannel out;
     private final DefaultActionRegistry appActions;
     private final IdleConnTimeout timeout;
     private List<Match<AfterAction>> matches;
@@ -85,7 +97,7 @@ final class DefaultChannelWriter implements ChannelWriter
     private int n100continue;
     
     DefaultChannelWriter(
-            WritableByteChannel out, DefaultActionRegistry actions, IdleConnTimeout timeout) {
+            GatheringByteChannel out, DefaultActionRegistry actions, IdleConnTimeout timeout) {
         this.out = out;
         this.appActions = actions;
         this.timeout = timeout;
@@ -245,54 +257,161 @@ final class DefaultChannelWriter implements ChannelWriter
         wroteFinal = r.isFinal();
         inflight = true;
         started = nanoTime();
-        long n = addExactOrCap(writeHead(r, ver), tryWriteBody(body));
-        // Request.trailers() documented that close() must be called first
-        body.close();
-        n = addExactOrCap(n, tryWriteTrailers(r));
+        final long before = byteCount;
+        // Memoized by immutable responses; reused ones are encoded only once
+        final ByteBuffer head = ResponseHeads.encode(r, ver),
+                         body1 = tryCoalesceBody(head, body, r);
+        // Request.trailers() documented that close() must be called first,
+        // but body1 may be backed by the iterator, and so must be written first
+        if (body1 == null) {
+            // Head was written, and possibly a part of the body
+            tryWriteBody(body);
+            body.close();
+            doWrite(trailers(r));
+        } else if (r.headers().contains(TRAILER)) {
+            doGather(head, body1);
+            body.close();
+            doWrite(trailers(r));
+        } else {
+            // Does not call Response.trailers()
+            doGather(head, body1, trailers(r));
+            body.close();
+        }
         final long finished = nanoTime();
+        final long n = byteCount - before;
         // Revert only on success; otherwise channel is corrupt
         inflight = false;
-        final var finalN = n;
         LOG.log(DEBUG, () ->
             "Sent %s (%s) {bytes: %s, duration: %s}".formatted(
                 r.statusCode(), r.reasonPhrase(),
-                finalN, Duration.ofNanos(finished - started)));
-        httpServer().events().dispatchLazy(ResponseSent.INSTANCE,
-                () -> r,
-                () -> new ResponseSent.Stats(started, finished, finalN));
+                n, Duration.ofNanos(finished - started)));
+        final var server = httpServer();
+        if (server.metrics() instanceof DefaultServerMetrics m) {
+            m.written(finished - started, n);
+        }
+        final var events = server.events();
+        if (events.hasListeners(ResponseSent.class)) {
+            events.dispatchLazy(ResponseSent.INSTANCE,
+                    () -> r,
+                    () -> new ResponseSent.Stats(started, finished, n));
+        }
         return n;
     }
     
-    private int writeHead(Response r, Version httpVer) throws IOException {
-        final String
-            phra = requireNonNullElse(r.reasonPhrase(), ""),
-            line = httpVer + SP + r.statusCode() + SP + phra + CRLF_STR,
-            vals = headersForWriting(r.headers()::forEach),
-            head = line + vals;
-        // TODO: For each component, including headers, we can cache the
-        //       ByteBuffers and feed the channel slices.
-        return doWrite(asciiBytes(head));
+    /**
+     * Coalesces a small response body.<p>
+     * 
+     * If the entire body could be coalesced, it is returned as one bytebuffer
+     * (possibly empty), and the caller must write the head, the returned
+     * bytebuffer and the trailers, using one gathering write operation.<p>
+     * 
+     * Otherwise, the head and a part of the body will have been written, and
+     * {@code null} is returned; the caller must write the rest of the body.<p>
+     * 
+     * Only a body known to be small is coalesced; a lone bytebuffer, or a
+     * body with a content-length not exceeding
+     * {@link Config#maxCoalescedBodySize()}. Other bodies may be streaming,
+     * and so are never read ahead of the first bytebuffer, which is written
+     * together with the head. Coalescing also stops at {@link
+     * alpha.nomagichttp.util.ByteBufferIterables#FLUSH FLUSH}.<p>
+     * 
+     * A previously returned bytebuffer is never retained when pulling the next
+     * one from the iterator, as the iterator may reuse its storage. That is
+     * why all but a lone body bytebuffer is copied. For the same reason, the
+     * returned bytebuffer must be written before the iterator is closed.
+     * 
+     * @param head of response
+     * @param body of response
+     * @param r the response
+     * 
+     * @return the entire body, or {@code null} if head was written
+     * 
+     * @throws IOException if an I/O error occurs
+     */
+    private ByteBuffer tryCoalesceBody(
+            ByteBuffer head, ByteBufferIterator body, Response r)
+            throws IOException {
+        if (body instanceof TransferableByteBufferIterator) {
+            doWrite(head);
+            return null;
+        }
+        if (!body.hasNext()) {
+            return NOTHING;
+        }
+        final ByteBuffer first = body.next();
+        if (first == FLUSH) {
+            doWrite(head);
+            return null;
+        }
+        // A streaming body may block, so look ahead only if the length is known
+        final long len = r.headers().contentLength().orElse(-1),
+                   max = httpServer().getConfig().maxCoalescedBodySize();
+        if (len < 0 || (len > max && len != first.remaining())) {
+            doGather(head, first);
+            return null;
+        }
+        if (!body.hasNext()) {
+            return first;
+        }
+        if (len <= first.remaining() || len > max) {
+            doGather(head, first);
+            return null;
+        }
+        final ByteBuffer dst = allocate((int) len).put(first);
+        while (body.hasNext()) {
+            final ByteBuffer buf = body.next();
+            if (buf == FLUSH || buf.remaining() > dst.remaining()) {
+                doGather(head, dst.flip(), buf);
+                return null;
+            }
+            dst.put(buf);
+        }
+        return dst.flip();
     }
     
     private long tryWriteBody(ByteBufferIterator it) throws IOException {
+        if (it instanceof TransferableByteBufferIterator t) {
+            return tryTransferBody(t);
+        }
+        if (it instanceof ChunkedEncoder.Impl c) {
+            return tryWriteChunks(c);
+        }
         long n = 0;
         while (it.hasNext()) {
             var buf = it.next();
             if (buf.hasRemaining()) {
                 n = addExactOrCap(n, doWrite(buf));
             } else {
-                assert !it.hasNext() :
+                assert buf == FLUSH || !it.hasNext() :
                     "This was a streaming body turned end-of-stream";
             }
         }
         return n;
     }
     
-    private int tryWriteTrailers(Response r) throws IOException {
+    private long tryWriteChunks(ChunkedEncoder.Impl it) throws IOException {
+        long n = 0;
+        while (it.hasNext()) {
+            // Size-line, payload and CRLF
+            n = addExactOrCap(n, doGather(it.nextChunk()));
+        }
+        return n;
+    }
+    
+    private long tryTransferBody(TransferableByteBufferIterator it)
+            throws IOException {
+        long n = 0;
+        while (it.hasNext()) {
+            n = addExactOrCap(n, doTransfer(it));
+        }
+        return n;
+    }
+    
+    private static ByteBuffer trailers(Response r) {
         if (!r.headers().contains(TRAILER)) {
             return r.headers().hasTransferEncodingChunked() ?
-                    doWrite(asciiBytes(CRLF_STR)) :
-                    0;
+                    asciiBytes(CRLF_STR) :
+                    NOTHING;
         }
         var tr = r.trailers();
         if (tr.isEmpty()) {
@@ -300,7 +419,7 @@ final class DefaultChannelWriter implements ChannelWriter
         }
         // TODO: Log warning if client did not indicate acceptance?
         //       (boolean accepted = request.headers().contains("TE", "trailers"))
-        return doWrite(asciiBytes(headersForWriting(tr::forEach)));
+        return asciiBytes(headersForWriting(tr::forEach));
     }
     
     private int doWrite(ByteBuffer buf) throws IOException {
@@ -316,16 +435,25 @@ final class DefaultChannelWriter implements ChannelWriter
               assert n > 0 : CHANNEL_BLOCKING;
               tot += n;
           } catch (Throwable t) {
-              dismiss();
-              assert t instanceof IOException;
-              timeout.abort((IOException) t);
-              // Likely already shut down, this is more for updating our state
-              var ch = channel();
-              if (ch.isOutputOpen()) {
-                  LOG.log(DEBUG,
-                      "Write operation failed, shutting down output stream.");
-                  channel().shutdownOutput();
-              }
+              writeFailed(t);
+              throw t;
+          }
+          timeout.abort(this::dismiss);
+        }
+        byteCount = addExactOrCap(byteCount, tot);
+        return tot;
+    }
+    
+    private long doGather(ByteBuffer... bufs) throws IOException {
+        long tot = 0;
+        while (anyRemaining(bufs)) {
+          timeout.scheduleWrite();
+          try {
+              long n = out.write(bufs);
+              assert n > 0 : CHANNEL_BLOCKING;
+              tot += n;
+          } catch (Throwable t) {
+              writeFailed(t);
               throw t;
           }
           timeout.abort(this::dismiss);
@@ -334,6 +462,44 @@ final class DefaultChannelWriter implements ChannelWriter
         return tot;
     }
     
+    private static boolean anyRemaining(ByteBuffer[] bufs) {
+        for (var b : bufs) {
+            if (b.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private long doTransfer(TransferableByteBufferIterator it)
+            throws IOException {
+        final long n;
+        timeout.scheduleWrite();
+        try {
+            n = it.transferTo(out, TRANSFER_SIZE);
+            assert n > 0 : CHANNEL_BLOCKING;
+        } catch (Throwable t) {
+            writeFailed(t);
+            throw t;
+        }
+        timeout.abort(this::dismiss);
+        byteCount = addExactOrCap(byteCount, n);
+        return n;
+    }
+    
+    private void writeFailed(Throwable t) throws IOException {
+        dismiss();
+        assert t instanceof IOException;
+        timeout.abort((IOException) t);
+        // Likely already shut down, this is more for updating our state
+        var ch = channel();
+        if (ch.isOutputOpen()) {
+            LOG.log(DEBUG,
+                "Write operation failed, shutting down output stream.");
+            channel().shutdownOutput();
+        }
+    }
+    
     /**
      * Will finish with 1 {@code CRLF}, if empty, otherwise 2 {@code CRLF}.
      * 
@@ -0,0 +1,62 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.route.Route;
+import alpha.nomagichttp.util.Histogram;
+import alpha.nomagichttp.util.RouteMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toUnmodifiableMap;
+
+/**
+ * Default implementation of {@code RouteMetrics}.<p>
+ * 
+ * The instance has two {@link Histogram}s for each HTTP method supported by
+ * the route; and so, the memory footprint is fixed (about 8 KiB per method).
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class DefaultRouteMetrics implements RouteMetrics
+{
+    private final Route route;
+    private final Map<String, Histogram[]> methods;
+    
+    DefaultRouteMetrics(Route route) {
+        this.route = route;
+        this.methods = route.supportedMethods().collect(toUnmodifiableMap(
+                m -> m, _ -> new Histogram[]{new Histogram(), new Histogram()}));
+    }
+    
+    @Override
+    public Route route() {
+        return route;
+    }
+    
+    /**
+     * Records an exchange.<p>
+     * 
+     * An HTTP method not supported by the route is ignored.
+     * 
+     * @param method of the request handler
+     * @param nanos latency of the exchange
+     * @param bytes size of the response
+     */
+    void record(String method, long nanos, long bytes) {
+        final Histogram[] h = methods.get(method);
+        if (h != null) {
+            h[0].record(nanos);
+            h[1].record(bytes);
+        }
+    }
+    
+    @Override
+    public List<Snapshot> snapshot() {
+        final String r = route.toString();
+        var list = new ArrayList<Snapshot>(methods.size());
+        methods.forEach((m, h) -> list.add(
+                new Snapshot(r, m, h[0].snapshot(), h[1].snapshot())));
+        return list;
+    }
+}
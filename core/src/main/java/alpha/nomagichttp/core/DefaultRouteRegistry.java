@@ -8,6 +8,7 @@ import alpha.nomagichttp.route.RouteRegistry;
 import alpha.nomagichttp.route.SegmentsBuilder;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
@@ -18,6 +19,7 @@ import static alpha.nomagichttp.core.Segments.COLON_CH;
 import static alpha.nomagichttp.core.Segments.COLON_STR;
 import static alpha.nomagichttp.core.Segments.noParamNames;
 import static java.text.MessageFormat.format;
+import static java.util.function.Function.identity;
 
 /**
  * Default implementation of {@link RouteRegistry}.
@@ -27,9 +29,11 @@ import static java.text.MessageFormat.format;
 final class DefaultRouteRegistry implements RouteRegistry
 {
     private final HttpServer server;
+    private final DefaultServerMetrics metrics;
     
-    DefaultRouteRegistry(HttpServer server) {
+    DefaultRouteRegistry(HttpServer server, DefaultServerMetrics metrics) {
         this.server = server;
+        this.metrics = metrics;
     }
     
     /*
@@ -49,12 +53,30 @@ final class DefaultRouteRegistry implements RouteRegistry
      * When looking up a route given a request path, it's only a matter of
      * reading the hierarchy using the path segments until we've reached our
      * position. If that position has a route stored, then it's a match.
+     * 
+     * The tree is only used for adding and removing routes. After each
+     * modification, a frozen copy of the tree is published, and it is the
+     * frozen copy which is used for lookups (no locks, no allocation). Routes
+     * are expected to be added at startup and rarely change, so the cost of a
+     * copy is paid once per modification, not once per request.
      */
     
     private final Tree<Route> tree = new Tree<>();
+    private volatile Tree.Frozen<Route> snapshot = tree.freeze(identity());
     
     @Override
     public HttpServer add(Route r) {
+        try {
+            add0(r);
+            // Before the route is published, so that no request is missed
+            metrics.routeAdded(r);
+        } finally {
+            publish();
+        }
+        return server;
+    }
+    
+    private void add0(Route r) {
         Iterator<String> it = r.segments().iterator();
         tree.write(n -> {
             if (!it.hasNext()) {
@@ -91,7 +113,11 @@ final class DefaultRouteRegistry implements RouteRegistry
                 };
             }
         });
-        return server;
+    }
+    
+    // Synchronized, so that the last copy made is also the last one published
+    private synchronized void publish() {
+        snapshot = tree.freeze(identity());
     }
     
     private static void setRouteIfAbsentGiven(
@@ -184,13 +210,23 @@ final class DefaultRouteRegistry implements RouteRegistry
     public Route remove(String pattern) {
         Iterable<String>  seg = new SegmentsBuilder(true).append(pattern).asIterableNoCopy(),
                           pos = noParamNames(seg);
-        return tree.clear(pos);
+        Route r = tree.clear(pos);
+        if (r != null) {
+            publish();
+            metrics.routeRemoved(r);
+        }
+        return r;
     }
     
     @Override
     public boolean remove(Route r) {
         Iterable<String> pos = noParamNames(r.segments());
-        return tree.clearIf(pos, v -> Objects.equals(v, r)) != null;
+        if (tree.clearIf(pos, v -> Objects.equals(v, r)) == null) {
+            return false;
+        }
+        publish();
+        metrics.routeRemoved(r);
+        return true;
     }
     
     /**
@@ -206,8 +242,8 @@ final class DefaultRouteRegistry implements RouteRegistry
      *             if a route can not be found
      */
     Route lookup(SkeletonRequestTarget rt) {
-        Iterable<String> dec = rt.segments();
-        Tree.ReadNode<Route> n = findNodeFromSegments(dec);
+        List<String> dec = rt.segments();
+        Tree.Frozen<Route> n = findNodeFromSegments(dec);
         if (n == null) {
             throw new NoRouteFoundException(dec);
         }
@@ -231,10 +267,21 @@ final class DefaultRouteRegistry implements RouteRegistry
         throw new NoRouteFoundException(dec);
     }
     
-    private Tree.ReadNode<Route> findNodeFromSegments(Iterable<String> decoded) {
-        Tree.ReadNode<Route> n = tree.read();
-        for (String s : decoded) {
-            Tree.ReadNode<Route> c = n.next(s);
+    /**
+     * {@return the metrics of the given route, or {@code null} if removed}
+     * 
+     * @param r the route
+     */
+    DefaultRouteMetrics metrics(Route r) {
+        return metrics.route(r);
+    }
+    
+    private Tree.Frozen<Route> findNodeFromSegments(List<String> decoded) {
+        Tree.Frozen<Route> n = snapshot;
+        // Indexed loop; no iterator
+        for (int i = 0, len = decoded.size(); i < len; ++i) {
+            final String s = decoded.get(i);
+            Tree.Frozen<Route> c = n.next(s);
             if (c != null) {
                 // Static segment found, on to next
                 n = c;
@@ -10,7 +10,10 @@ import alpha.nomagichttp.event.HttpServerStarted;
 import alpha.nomagichttp.event.HttpServerStopped;
 import alpha.nomagichttp.handler.ClientChannel;
 import alpha.nomagichttp.handler.ExceptionHandler;
+import alpha.nomagichttp.message.MediaTypeCache;
 import alpha.nomagichttp.route.Route;
+import alpha.nomagichttp.util.ByteBufferPool;
+import alpha.nomagichttp.util.ServerMetrics;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -66,6 +69,9 @@ public final class DefaultServer implements HttpServer
     private final DefaultRouteRegistry routes;
     private final List<ExceptionHandler> eh;
     private final EventHub events;
+    private final ByteBufferPool pool;
+    private final MediaTypeCache mediaTypes;
+    private final DefaultServerMetrics metrics;
     // Would prefer ServerSocket > Socket > Input/OutputStream,
     //     using channel for direct transfer operations and bytebuffers
     private final Confined<ServerSocketChannel> parent;
@@ -84,15 +90,18 @@ public final class DefaultServer implements HttpServer
      */
     public DefaultServer(Config config, ExceptionHandler... eh) {
         this.config  = requireNonNull(config);
+        this.children = new ConcurrentHashMap<>(INITIAL_CAPACITY);
+        this.metrics = new DefaultServerMetrics(children::size);
         this.actions = new DefaultActionRegistry(this);
-        this.routes  = new DefaultRouteRegistry(this);
+        this.routes  = new DefaultRouteRegistry(this, metrics);
         this.eh      = List.of(eh);
         this.events  = new DefaultEventHub(
                 () -> !HTTP_SERVER.isBound(),
                 r -> where(HTTP_SERVER, this).run(r));
+        this.pool    = new ByteBufferPool(config.bufferPoolCapacity());
+        this.mediaTypes = new MediaTypeCache(config.mediaTypeCacheSize());
         this.parent  = new Confined<>();
         this.terminated = new CountDownLatch(1);
-        this.children = new ConcurrentHashMap<>(INITIAL_CAPACITY);
         this.started = null;
         this.waitForChildren = null;
     }
@@ -247,23 +256,29 @@ public final class DefaultServer implements HttpServer
     
     private void runHttpExchanges(SocketChannel ch) {
         final var api = new DefaultClientChannel(ch);
-        var x = new IdleConnTimeout(config, api);
-        var r = new ChannelReader(ch, x);
+        var x = new IdleConnTimeout(config, metrics, api);
+        // With pipelining, a read may run concurrently with a write
+        final var pipe = config.pipelineRequests() ?
+                new Pipeline(this, api, x) : null;
+        final var xw = pipe != null ? new IdleConnTimeout(config, metrics, api) : x;
+        var r = new ChannelReader(ch, x, pool, config.maxReadBufferSize());
         children.put(api, r);
         try {
             LOG.log(DEBUG, () -> "Accepted child: " + ch);
             // Exchange loop; breaks when a new exchange should not begin
             for (;;) {
-                var w = new DefaultChannelWriter(ch, actions, x);
+                var w = new DefaultChannelWriter(ch, actions, xw);
                 api.use(w);
                 var exch = new HttpExchange(
-                        this, actions, routes, eh, api, r, w);
+                        this, actions, routes, eh, api, r, w, pipe);
                 where(CHANNEL, api).run(exch::begin);
                 r.dismiss();
                 w.dismiss();
                 // ResponseProcessor will set "Connection: close" if !isRunning()
                 if (api.areBothStreamsOpen()) {
-                    r = r.newReader();
+                    // The successor may already be parsing the next head
+                    r = pipe != null && pipe.isAhead() ?
+                            pipe.nextReader() : r.newReader();
                     children.put(api, r);
                 } else {
                     break;
@@ -275,6 +290,10 @@ public final class DefaultServer implements HttpServer
                 LOG.log(DEBUG, () -> "Closing child: " + ch);
                 api.close();
             }
+            if (pipe != null) {
+                r = pipe.close(r);
+            }
+            r.release();
         }
     }
     
@@ -409,6 +428,21 @@ public final class DefaultServer implements HttpServer
         return config;
     }
     
+    @Override
+    public ByteBufferPool bufferPool() {
+        return pool;
+    }
+    
+    @Override
+    public MediaTypeCache mediaTypeCache() {
+        return mediaTypes;
+    }
+    
+    @Override
+    public ServerMetrics metrics() {
+        return metrics;
+    }
+    
     @Override
     public SocketAddress getLocalAddress() throws IOException {
         var channel = parent.peek()
@@ -0,0 +1,150 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.route.Route;
+import alpha.nomagichttp.util.Histogram;
+import alpha.nomagichttp.util.RouteMetrics;
+import alpha.nomagichttp.util.ServerMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Default implementation of {@code ServerMetrics}.<p>
+ * 
+ * The recording methods are only reachable from the server implementation. A
+ * component that only has access to the {@code HttpServer}, should record the
+ * metrics only if {@code metrics()} returns an instance of this class (the
+ * server may be a mock).
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class DefaultServerMetrics implements ServerMetrics
+{
+    private final Histogram headParse, handler, write;
+    private final LongAdder bytesIn, bytesOut, idleTimeouts, errorResponses;
+    private final IntSupplier activeConnections;
+    private final Map<Route, DefaultRouteMetrics> routes;
+    
+    /**
+     * Constructs this object.
+     * 
+     * @param activeConnections queried for the number of active connections
+     * 
+     * @throws NullPointerException
+     *             if {@code activeConnections} is {@code null}
+     */
+    DefaultServerMetrics(IntSupplier activeConnections) {
+        this.activeConnections = requireNonNull(activeConnections);
+        this.headParse = new Histogram();
+        this.handler = new Histogram();
+        this.write = new Histogram();
+        this.bytesIn = new LongAdder();
+        this.bytesOut = new LongAdder();
+        this.idleTimeouts = new LongAdder();
+        this.errorResponses = new LongAdder();
+        this.routes = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Creates the metrics of a route.<p>
+     * 
+     * Called when the route is added to the server.
+     * 
+     * @param route the route
+     */
+    void routeAdded(Route route) {
+        routes.put(route, new DefaultRouteMetrics(route));
+    }
+    
+    /**
+     * Discards the metrics of a route.<p>
+     * 
+     * Called when the route is removed from the server.
+     * 
+     * @param route the route
+     */
+    void routeRemoved(Route route) {
+        routes.remove(route);
+    }
+    
+    @Override
+    public DefaultRouteMetrics route(Route route) {
+        return routes.get(route);
+    }
+    
+    @Override
+    public Collection<RouteMetrics> routes() {
+        return List.copyOf(routes.values());
+    }
+    
+    /**
+     * Records a parsed request head.
+     * 
+     * @param nanos time it took to parse the head
+     */
+    void headParsed(long nanos) {
+        headParse.record(nanos);
+    }
+    
+    /**
+     * Records an executed request processing chain.
+     * 
+     * @param nanos time it took to execute the chain
+     */
+    void handled(long nanos) {
+        handler.record(nanos);
+    }
+    
+    /**
+     * Records a written response.
+     * 
+     * @param nanos time it took to write the response
+     * @param bytes number of bytes written
+     */
+    void written(long nanos, long bytes) {
+        write.record(nanos);
+        bytesOut.add(bytes);
+    }
+    
+    /**
+     * Records bytes received.
+     * 
+     * @param bytes number of bytes received
+     */
+    void received(long bytes) {
+        bytesIn.add(bytes);
+    }
+    
+    /**
+     * Records a connection that timed out due to being idle.
+     */
+    void idleTimeout() {
+        idleTimeouts.increment();
+    }
+    
+    /**
+     * Records an error response (4XX or 5XX).
+     */
+    void errorResponse() {
+        errorResponses.increment();
+    }
+    
+    @Override
+    public Snapshot snapshot() {
+        var r = new ArrayList<RouteMetrics.Snapshot>();
+        routes.values().forEach(m -> r.addAll(m.snapshot()));
+        return new Snapshot(
+                headParse.snapshot(), handler.snapshot(), write.snapshot(),
+                bytesIn.sum(), bytesOut.sum(),
+                activeConnections.getAsInt(),
+                idleTimeouts.sum(), errorResponses.sum(),
+                List.copyOf(r));
+    }
+}
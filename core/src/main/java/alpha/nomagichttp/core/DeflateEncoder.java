@@ -0,0 +1,255 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.Config;
+import alpha.nomagichttp.message.ByteBufferIterator;
+import alpha.nomagichttp.message.ResourceByteBufferIterable;
+import alpha.nomagichttp.util.ByteBufferIterables;
+import alpha.nomagichttp.util.ByteBufferPool;
+import alpha.nomagichttp.util.ContentCodings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static alpha.nomagichttp.util.ByteBufferIterables.FLUSH;
+import static alpha.nomagichttp.util.ScopedValues.HTTP_SERVER;
+import static alpha.nomagichttp.util.ScopedValues.httpServer;
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.util.Objects.requireNonNull;
+import static java.util.zip.Deflater.DEFAULT_COMPRESSION;
+import static java.util.zip.Deflater.NO_FLUSH;
+import static java.util.zip.Deflater.SYNC_FLUSH;
+
+/**
+ * Compresses upstream bytebuffers using the gzip or deflate content-coding.<p>
+ * 
+ * Is used by {@link ResponseProcessor} to decorate the response body, if the
+ * response is to be compressed (see {@link Config#compressionLevel()}). The
+ * compressed length is not known in advance, and so the processor will also
+ * apply chunked encoding.<p>
+ * 
+ * Both codings use the deflate format. The "gzip" coding wraps it in a gzip
+ * header and trailer (RFC 1952), and the "deflate" coding wraps it in the zlib
+ * format (RFC 1950). A {@link Deflater} holds a substantial amount of native
+ * memory, and so the deflaters are pooled. A deflater is acquired when this
+ * class is constructed, and released when this class is closed.<p>
+ * 
+ * If the upstream yields {@link ByteBufferIterables#FLUSH FLUSH}, all input
+ * so far is compressed and sent downstream (using {@link Deflater#SYNC_FLUSH
+ * SYNC_FLUSH}), followed by {@code FLUSH}, which makes the chunked encoder
+ * send its chunk as well.<p>
+ * 
+ * The bytebuffer sent downstream is reused, and so it must be consumed before
+ * the next one is pulled.<p>
+ * 
+ * The life cycle is the same as that of {@link ChunkedEncoder}; single-use
+ * only, and closing propagates to the upstream.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ * 
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc9110#section-8.4.1">RFC 9110 §8.4.1</a>
+ */
+final class DeflateEncoder implements ResourceByteBufferIterable
+{
+    /** The "gzip" content-coding. */
+    static final String GZIP = "gzip";
+    
+    /** The "deflate" content-coding. */
+    static final String DEFLATE = "deflate";
+    
+    // Each idle deflater holds on to ~256 KiB of native memory. Worst case is
+    // 1 per stripe x up to 16 stripes x 2 pools = 32 idle deflaters, ~8 MiB.
+    // A deflater not retained by the pool is ended.
+    private static final int MAX_IDLE = 1;
+    
+    private static final ObjectPool<Deflater>
+            RAW  = new ObjectPool<>(() -> new Deflater(DEFAULT_COMPRESSION, true),
+                                    Deflater::reset, MAX_IDLE),
+            ZLIB = new ObjectPool<>(() -> new Deflater(DEFAULT_COMPRESSION, false),
+                                    Deflater::reset, MAX_IDLE);
+    
+    private final ByteBufferIterator it;
+    
+    /**
+     * Constructs this object.
+     * 
+     * @param upstream the body to compress
+     * @param coding {@link #GZIP} or {@link #DEFLATE}
+     * @param level compression level (1-9)
+     * 
+     * @throws IllegalArgumentException
+     *             if {@code coding} is not recognized
+     */
+    DeflateEncoder(ByteBufferIterator upstream, String coding, int level) {
+        it = switch (coding) {
+            case GZIP    -> new Impl(upstream, RAW,  level, true);
+            case DEFLATE -> new Impl(upstream, ZLIB, level, false);
+            default -> throw new IllegalArgumentException(coding);
+        };
+    }
+    
+    /**
+     * Selects a content-coding to use for the response.<p>
+     * 
+     * The coding is selected using the quality values of the tokens (see
+     * {@link ContentCodings#qualities(Stream, String...)}), with gzip preferred
+     * over deflate on a tie.
+     * 
+     * @param acceptEncoding tokens of the request's "Accept-Encoding" header
+     * 
+     * @return {@link #GZIP}, {@link #DEFLATE}, or {@code null} if neither is
+     *         acceptable
+     * 
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc9110#section-12.5.3">RFC 9110 §12.5.3</a>
+     */
+    static String negotiate(Stream<String> acceptEncoding) {
+        final double[] q = ContentCodings.qualities(
+                acceptEncoding, GZIP, DEFLATE);
+        final double gzip = q[0], deflate = q[1];
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+    
+    @Override
+    public long length() {
+        return it.hasNext() ? -1 : 0;
+    }
+    
+    @Override
+    public ByteBufferIterator iterator() {
+        return it;
+    }
+    
+    private static final class Impl implements ByteBufferIterator {
+        // ID1, ID2, CM (deflate), FLG, MTIME (4 bytes), XFL, OS (unknown)
+        private static final byte[] GZIP_HEADER
+                = {31, (byte) 139, 8, 0, 0, 0, 0, 0, 0, (byte) 255};
+        
+        // CRC32 + ISIZE
+        private static final int GZIP_TRAILER = 8;
+        
+        private static final int BUF_SIZE = 16_384;
+        
+        private ByteBufferIterator input;
+        private final ObjectPool<Deflater> deflaters;
+        private final Deflater def;
+        // Only for gzip
+        private final CRC32 crc;
+        private final ByteBufferPool bufs;
+        private final ByteBuffer out;
+        private boolean started, eos, flushing, sendFlush, done;
+        
+        Impl(ByteBufferIterator upstream,
+             ObjectPool<Deflater> deflaters, int level, boolean gzip) {
+            assert level >= 1 && level <= 9;
+            input = requireNonNull(upstream);
+            this.deflaters = deflaters;
+            def = deflaters.acquire();
+            def.setLevel(level);
+            crc = gzip ? new CRC32() : null;
+            bufs = HTTP_SERVER.isBound() ? httpServer().bufferPool() : null;
+            out = bufs == null ?
+                    allocateDirect(BUF_SIZE) :
+                    bufs.acquire(BUF_SIZE).limit(BUF_SIZE);
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return !done;
+        }
+        
+        @Override
+        public ByteBuffer next() throws IOException {
+            if (input == null || done) {
+                throw new NoSuchElementException();
+            }
+            if (sendFlush) {
+                sendFlush = false;
+                return FLUSH;
+            }
+            out.clear();
+            if (!started) {
+                started = true;
+                if (crc != null) {
+                    out.put(GZIP_HEADER);
+                }
+            }
+            while (out.hasRemaining() && !def.finished()) {
+                if (flushing) {
+                    def.deflate(out, SYNC_FLUSH);
+                    if (out.hasRemaining()) {
+                        // Deflater's output drained
+                        flushing = false;
+                        sendFlush = true;
+                        break;
+                    }
+                    continue;
+                }
+                if (eos || !def.needsInput()) {
+                    def.deflate(out, NO_FLUSH);
+                    continue;
+                }
+                final ByteBuffer buf = input.hasNext() ? input.next() : null;
+                if (buf == null) {
+                    eos = true;
+                    def.finish();
+                } else if (buf == FLUSH) {
+                    flushing = true;
+                } else if (buf.hasRemaining()) {
+                    if (crc != null) {
+                        final int pos = buf.position();
+                        crc.update(buf);
+                        buf.position(pos);
+                    }
+                    // Consumed (position advanced) by the deflater
+                    def.setInput(buf);
+                }
+            }
+            if (def.finished()) {
+                if (crc == null) {
+                    done = true;
+                } else if (out.remaining() >= GZIP_TRAILER) {
+                    out.order(LITTLE_ENDIAN)
+                       .putInt((int) crc.getValue())
+                       .putInt((int) def.getBytesRead())
+                       .order(BIG_ENDIAN);
+                    done = true;
+                }
+                // Else, trailer goes in the next bytebuffer
+            }
+            out.flip();
+            if (!out.hasRemaining()) {
+                // Nothing was pending when flushed
+                assert sendFlush;
+                sendFlush = false;
+                return FLUSH;
+            }
+            return out;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (input == null) {
+                return;
+            }
+            try {
+                input.close();
+            } finally {
+                input = null;
+                if (!deflaters.release(def)) {
+                    def.end();
+                }
+                if (bufs != null) {
+                    bufs.release(out);
+                }
+            }
+        }
+    }
+}
@@ -4,10 +4,10 @@ import java.time.Duration;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.BooleanSupplier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static java.lang.System.nanoTime;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
@@ -23,19 +23,25 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
  * 
  * The second flavor is creating an instance of this class (encapsulates the
  * delay and task), which offers methods to explicitly {@link #schedule()} and
- * {@link #tryAbort()} the task.<p>
+ * {@link #tryAbort()} the task. This flavor is designed to be scheduled and
+ * aborted at a very high rate (e.g. before and after each channel operation),
+ * and is executed by a {@link TimerWheel}. Scheduling and aborting the task is
+ * lock-free, O(1), and does generally not allocate.<p>
  * 
- * This class is thread-safe and offers strong guarantees using an exclusive,
- * blocking write-lock shared by the background thread executing the task and
- * whichever thread calls {@code schedule} and {@code abort}. That is to say,
- * if the task is executing, the API in this class blocks until the task
- * completes, and the other way around.<p>
+ * This class is thread-safe, and the task instance offers strong guarantees.
+ * If the task is executing, {@code tryAbort} waits until the task completes.
+ * If {@code tryAbort} returns {@code true}, the task will not execute.<p>
+ * 
+ * The instance methods {@code schedule} and {@code tryAbort} should not be
+ * called concurrently. Only the background thread may call them concurrently
+ * with the thread scheduling the task.<p>
  * 
  * This class does not implement {@code hashCode} nor {@code equals}.
  * 
  * @apiNote
  * This class should be used for all background tasks in the default server and
- * uses one background daemon thread to do the work.
+ * uses one background daemon thread to do the work. This thread also drives the
+ * timer wheel, which has a precision of 10 milliseconds.
  * 
  * @author Martin Andersson (webmaster at martinandersson.com)
  */
@@ -56,10 +62,14 @@ final class DelayedTask
     }
     
     private static final ScheduledThreadPoolExecutor SCHEDULER;
+    private static final TimerWheel WHEEL;
     static {
         (SCHEDULER = new ScheduledThreadPoolExecutor(1,
                 new DaemonThreadFactory())).
                 setRemoveOnCancelPolicy(true);
+        WHEEL = new TimerWheel();
+        SCHEDULER.scheduleWithFixedDelay(() -> WHEEL.advance(nanoTime()),
+                TimerWheel.TICK, TimerWheel.TICK, NANOSECONDS);
     }
     
     private static final class DaemonThreadFactory implements ThreadFactory {
@@ -71,16 +81,27 @@ final class DelayedTask
         }
     }
     
-    private static final Object
-            NEVER_SCHEDULED = null,
-            ABORTED = new Object(),
-            EXECUTED = new Object();
+    // All other state values are deadlines (System.nanoTime)
+    private static final long
+            NOT_SCHEDULED = Long.MIN_VALUE, // never scheduled, or aborted
+            RUNNING       = Long.MIN_VALUE + 1,
+            EXECUTED      = Long.MIN_VALUE + 2;
+    
+    /**
+     * {@return {@code true} if the given state is a deadline}
+     * 
+     * @param state of task
+     */
+    static boolean isDeadline(long state) {
+        return state > EXECUTED;
+    }
     
-    private final Lock lock;
+    private final TimerWheel wheel;
     private final long nanos;
     private final Runnable action;
-    private Object task;
-    private int nextTaskId;
+    private final AtomicLong state;
+    // Whether the wheel has a reference to this task
+    private final AtomicBoolean enrolled;
     
     /**
      * Constructs this object.
@@ -91,10 +112,24 @@ final class DelayedTask
      * @throws NullPointerException if any argument is {@code null}
      */
     DelayedTask(Duration delay, Runnable task) {
-        this.lock   = new ReentrantLock();
-        this.nanos  = delay.toNanos();
-        this.action = requireNonNull(task);
-        this.task   = NEVER_SCHEDULED;
+        this(delay, task, WHEEL);
+    }
+    
+    /**
+     * Constructs this object.
+     * 
+     * @param delay value
+     * @param task to execute
+     * @param wheel executing the task
+     * 
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    DelayedTask(Duration delay, Runnable task, TimerWheel wheel) {
+        this.wheel    = requireNonNull(wheel);
+        this.nanos    = delay.toNanos();
+        this.action   = requireNonNull(task);
+        this.state    = new AtomicLong(NOT_SCHEDULED);
+        this.enrolled = new AtomicBoolean();
     }
     
     /**
@@ -120,7 +155,8 @@ final class DelayedTask
      * that was aborted.<p>
      * 
      * The callback is designed for passing state from the thread scheduling the
-     * task to the thread executing the task.
+     * task to the thread executing the task. It executes before the task is
+     * scheduled, and so happens-before the execution of the task.
      * 
      * @param onSuccess
      *          optional callback invoked if the operation is successful
@@ -130,35 +166,26 @@ final class DelayedTask
      *           if a task is already scheduled
      */
     void schedule(Runnable onSuccess) {
-        withLock(() -> {
-            if (task == NEVER_SCHEDULED || task == ABORTED || task == EXECUTED) {
-                int taskId = nextTaskId++;
-                task = schedule(nanos, () -> runAction(taskId));
-                if (onSuccess != null) {
-                    onSuccess.run();
-                }
-            } else {
-                throw new IllegalStateException();
-            }
-        });
+        final long s = awaitNotRunning();
+        if (s != NOT_SCHEDULED && s != EXECUTED) {
+            throw new IllegalStateException();
+        }
+        if (onSuccess != null) {
+            onSuccess.run();
+        }
+        if (!state.compareAndSet(s, deadline())) {
+            throw new IllegalStateException();
+        }
+        // The wheel resets the flag before checking the state (see leave)
+        if (!enrolled.get() && enrolled.compareAndSet(false, true)) {
+            wheel.enroll(this);
+        }
     }
     
-    private void runAction(int taskId) {
-        withLock(() -> {
-            assert task != NEVER_SCHEDULED :
-                "Obviously, the task was scheduled";
-            if (task == ABORTED || taskId != (nextTaskId - 1)) {
-                // Aborted or not this task
-                return;
-            }
-            assert task != EXECUTED :
-                "It's doubtful the same task would ever execute twice!";
-            try {
-                action.run();
-            } finally {
-                task = EXECUTED;
-            }
-        });
+    private long deadline() {
+        final long d = nanoTime() + nanos;
+        // Practically never, but would have been a disaster (off by 3 ns is fine)
+        return isDeadline(d) ? d : d + 3;
     }
     
     /**
@@ -170,38 +197,69 @@ final class DelayedTask
      * @return {@code false} if the task already executed, otherwise {@code true}
      */
     boolean tryAbort() {
-        return withLockGet(() -> {
-            if (task == EXECUTED) {
+        for (;;) {
+            final long s = awaitNotRunning();
+            if (s == EXECUTED) {
                 return false;
             }
-            if (task == NEVER_SCHEDULED || task == ABORTED) {
+            if (s == NOT_SCHEDULED || state.compareAndSet(s, NOT_SCHEDULED)) {
                 return true;
             }
-            // A real task is referenced
-            try {
-                ((ScheduledFuture<?>) task).cancel(false);
-            } finally {
-                task = ABORTED;
-            }
-            return true;
-        });
+            // Lost the race against the wheel, about to run the task
+        }
     }
     
-    private void withLock(Runnable impl) {
-        lock.lock();
-        try {
-            impl.run();
-        } finally {
-            lock.unlock();
+    private long awaitNotRunning() {
+        long s;
+        while ((s = state.get()) == RUNNING) {
+            // Task is expected to be short
+            Thread.onSpinWait();
         }
+        return s;
     }
     
-    private boolean withLockGet(BooleanSupplier impl) {
-        lock.lock();
+    /**
+     * {@return the current state}<p>
+     * 
+     * Used by the wheel. The state is a deadline if
+     * {@link #isDeadline(long)} returns {@code true}.
+     */
+    long state() {
+        return state.get();
+    }
+    
+    /**
+     * Runs the task, if still scheduled with the given deadline.<p>
+     * 
+     * Used by the wheel.
+     * 
+     * @param deadline as observed by the wheel
+     */
+    void run(long deadline) {
+        if (!state.compareAndSet(deadline, RUNNING)) {
+            // Aborted, or rescheduled
+            return;
+        }
         try {
-            return impl.getAsBoolean();
+            action.run();
         } finally {
-            lock.unlock();
+            state.set(EXECUTED);
         }
     }
+    
+    /**
+     * Lets go of the wheel's reference to this task.<p>
+     * 
+     * Used by the wheel for a task that is not scheduled.<p>
+     * 
+     * If the task is concurrently being scheduled, the wheel may need to keep
+     * the reference, which is signalled by returning {@code false}.
+     * 
+     * @return {@code true} if the wheel must drop the task
+     */
+    boolean leave() {
+        enrolled.set(false);
+        // The scheduling thread sets the state before checking the flag
+        return !(isDeadline(state.get()) && enrolled.compareAndSet(false, true));
+    }
 }
@@ -0,0 +1,581 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.HttpConstants;
+import alpha.nomagichttp.message.ByteBufferIterable;
+import alpha.nomagichttp.message.ByteBufferIterator;
+import alpha.nomagichttp.message.HeaderParseException;
+import alpha.nomagichttp.message.MaxRequestHeadSizeException;
+import alpha.nomagichttp.message.RawRequest;
+import alpha.nomagichttp.message.Request;
+import alpha.nomagichttp.message.RequestLineParseException;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCEPT;
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCEPT_CHARSET;
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCEPT_DATETIME;
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCEPT_ENCODING;
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCEPT_LANGUAGE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCESS_CONTROL_REQUEST_HEADERS;
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCESS_CONTROL_REQUEST_METHOD;
+import static alpha.nomagichttp.HttpConstants.HeaderName.AUTHORIZATION;
+import static alpha.nomagichttp.HttpConstants.HeaderName.A_IM;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CACHE_CONTROL;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONNECTION;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_ENCODING;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_LENGTH;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_MD5;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_TYPE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.COOKIE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.DATE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.DNT;
+import static alpha.nomagichttp.HttpConstants.HeaderName.EXPECT;
+import static alpha.nomagichttp.HttpConstants.HeaderName.FORWARDED;
+import static alpha.nomagichttp.HttpConstants.HeaderName.FROM;
+import static alpha.nomagichttp.HttpConstants.HeaderName.HOST;
+import static alpha.nomagichttp.HttpConstants.HeaderName.HTTP2_SETTINGS;
+import static alpha.nomagichttp.HttpConstants.HeaderName.IF_MATCH;
+import static alpha.nomagichttp.HttpConstants.HeaderName.IF_MODIFIED_SINCE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.IF_NONE_MATCH;
+import static alpha.nomagichttp.HttpConstants.HeaderName.IF_RANGE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.IF_UNMODIFIED_SINCE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.MAX_FORWARDS;
+import static alpha.nomagichttp.HttpConstants.HeaderName.ORIGIN;
+import static alpha.nomagichttp.HttpConstants.HeaderName.PRAGMA;
+import static alpha.nomagichttp.HttpConstants.HeaderName.PREFER;
+import static alpha.nomagichttp.HttpConstants.HeaderName.PROXY_AUTHORIZATION;
+import static alpha.nomagichttp.HttpConstants.HeaderName.RANGE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.REFERER;
+import static alpha.nomagichttp.HttpConstants.HeaderName.TE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.TRAILER;
+import static alpha.nomagichttp.HttpConstants.HeaderName.TRANSFER_ENCODING;
+import static alpha.nomagichttp.HttpConstants.HeaderName.UPGRADE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.USER_AGENT;
+import static alpha.nomagichttp.HttpConstants.HeaderName.VIA;
+import static alpha.nomagichttp.HttpConstants.HeaderName.WARNING;
+import static alpha.nomagichttp.HttpConstants.HeaderName.X_CORRELATION_ID;
+import static alpha.nomagichttp.HttpConstants.HeaderName.X_HTTP_METHOD_OVERRIDE;
+import static alpha.nomagichttp.HttpConstants.HeaderName.X_REQUESTED_WITH;
+import static alpha.nomagichttp.HttpConstants.HeaderName.X_REQUEST_ID;
+import static alpha.nomagichttp.HttpConstants.Method.CONNECT;
+import static alpha.nomagichttp.HttpConstants.Method.DELETE;
+import static alpha.nomagichttp.HttpConstants.Method.GET;
+import static alpha.nomagichttp.HttpConstants.Method.HEAD;
+import static alpha.nomagichttp.HttpConstants.Method.OPTIONS;
+import static alpha.nomagichttp.HttpConstants.Method.PATCH;
+import static alpha.nomagichttp.HttpConstants.Method.POST;
+import static alpha.nomagichttp.HttpConstants.Method.PUT;
+import static alpha.nomagichttp.HttpConstants.Method.QUERY;
+import static alpha.nomagichttp.HttpConstants.Method.TRACE;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.System.nanoTime;
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.util.Locale.ROOT;
+
+/**
+ * A parser of the request head; the request-line and the headers.<p>
+ * 
+ * The head is copied from the upstream into a byte array, one line at a time,
+ * and each line is tokenized using index arithmetic. There is no intermediate
+ * string builder. Well-known methods, HTTP versions and header names are
+ * interned; the returned string is the constant declared in
+ * {@link HttpConstants} (or its lower case variant). Only the request-target
+ * and the header values are decoded into new strings (ISO-8859-1).<p>
+ * 
+ * Line feeds are located eight bytes at a time (SWAR), both in the upstream's
+ * bytebuffer and in the byte array. The same goes for the search of the colon
+ * in a header line, and the search of whitespace and control characters.<p>
+ * 
+ * This parser only accepts the common form of a head; request-line tokens
+ * separated by one SP, CRLF or LF line terminators, no line folding, and no
+ * whitespace in header names. As soon as anything else is observed, the
+ * parser delegates to {@link ParserOfRequestLine} and {@link ParserOf}, which
+ * implement the lenient rules, and throw the parse exceptions. These parsers
+ * are then given the bytes already copied, followed by the upstream. So, the
+ * result, and the exception thrown, is the same regardless of which path is
+ * taken.<p>
+ * 
+ * The parser never consumes a byte from the upstream beyond the head.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class HeadParser
+{
+    private static final byte CR = '\r', LF = '\n', SP = ' ';
+    
+    private static final Interned METHODS = new Interned(
+            GET, HEAD, POST, PUT, PATCH, DELETE,
+            CONNECT, OPTIONS, TRACE, QUERY);
+    
+    private static final Interned VERSIONS = new Interned(
+            "HTTP/1.1", "HTTP/1.0");
+    
+    private static final Interned NAMES = new Interned(Stream.of(
+            A_IM, ACCEPT, ACCEPT_CHARSET, ACCEPT_DATETIME, ACCEPT_ENCODING,
+            ACCEPT_LANGUAGE, ACCESS_CONTROL_REQUEST_METHOD,
+            ACCESS_CONTROL_REQUEST_HEADERS, AUTHORIZATION, CACHE_CONTROL,
+            CONNECTION, CONTENT_ENCODING, CONTENT_LENGTH, CONTENT_MD5,
+            CONTENT_TYPE, COOKIE, DATE, DNT, EXPECT, FORWARDED, FROM, HOST,
+            HTTP2_SETTINGS, IF_MATCH, IF_MODIFIED_SINCE, IF_NONE_MATCH,
+            IF_RANGE, IF_UNMODIFIED_SINCE, MAX_FORWARDS, ORIGIN, PRAGMA,
+            PREFER, PROXY_AUTHORIZATION, RANGE, REFERER, TE, TRAILER,
+            TRANSFER_ENCODING, UPGRADE, USER_AGENT, VIA, WARNING,
+            X_CORRELATION_ID, X_HTTP_METHOD_OVERRIDE, X_REQUEST_ID,
+            X_REQUESTED_WITH)
+        // HTTP/2 clients and many HTTP/1.1 clients use lower case
+        .flatMap(n -> Stream.of(n, n.toLowerCase(ROOT)))
+        .distinct()
+        .toArray(String[]::new));
+    
+    // Returned by readLine
+    private static final int IRREGULAR = -1, EOS = -2;
+    
+    private final ByteBufferIterable in;
+    private final int maxBytes;
+    private ByteBufferIterator it;
+    // Current upstream buffer
+    private ByteBuffer chunk;
+    // The head, or what remains of it if the request-line was delegated
+    private byte[] buf;
+    private int len;
+    // Bytes consumed before buf[0]
+    private int base;
+    // Separators of the request-line
+    private int sp1, sp2;
+    private long started;
+    private int count;
+    
+    /**
+     * Constructs this object.
+     * 
+     * @param in byte source
+     * @param maxRequestHeadSize max bytes to parse
+     */
+    HeadParser(ByteBufferIterable in, int maxRequestHeadSize) {
+        this.in = in;
+        this.maxBytes = maxRequestHeadSize;
+        this.buf = new byte[min(512, max(maxRequestHeadSize, 1))];
+    }
+    
+    /**
+     * {@return the number of bytes read from the upstream}
+     */
+    int byteCount() {
+        return count;
+    }
+    
+    /**
+     * Parses the head.
+     * 
+     * @return the head (never {@code null})
+     * 
+     * @throws IOException
+     *             from upstream's {@code next} method
+     * @throws ClientAbortedException
+     *             if the upstream finished before the first byte
+     * @throws RequestLineParseException
+     *             if the request-line is malformed
+     * @throws HeaderParseException
+     *             if a header is malformed
+     * @throws MaxRequestHeadSizeException
+     *             if the head exceeds the configured max size
+     */
+    RawRequest.Head parse() throws IOException {
+        // ChannelReader has no close impl, this we do out of principle
+        try (var src = in.iterator()) {
+            it = src;
+            var line = parseLine();
+            var headers = parseHeaders(line.length());
+            return new RawRequest.Head(line, headers);
+        } finally {
+            it = null;
+            chunk = null;
+        }
+    }
+    
+    private RawRequest.Line parseLine() throws IOException {
+        final int lf = readLine(0, true);
+        if (lf < 0) {
+            var p = new ParserOfRequestLine(new Remaining(0), maxBytes);
+            var l = p.parse();
+            // Headers start afresh
+            base = count = p.byteCount();
+            len = 0;
+            return new RawRequest.Line(l.method(), l.target(), l.httpVersion(),
+                    started != 0 ? started : l.nanoTimeOnStart(), l.length());
+        }
+        final int e = endOf(0, lf);
+        count = lf + 1;
+        return new RawRequest.Line(
+                METHODS.get(buf, 0, sp1),
+                latin1(sp1 + 1, sp2),
+                VERSIONS.get(buf, sp2 + 1, e),
+                started, count);
+    }
+    
+    private Request.Headers parseHeaders(int lineLen) throws IOException {
+        final int from = len;
+        ArrayList<String> pairs = null;
+        for (int s = from;;) {
+            final int lf = readLine(s, false);
+            if (lf < 0) {
+                var p = ParserOf.headers(new Remaining(from), lineLen, maxBytes);
+                var h = p.parse();
+                count = lineLen + p.byteCount();
+                return h;
+            }
+            final int e = endOf(s, lf);
+            if (e == s) {
+                count = base + lf + 1;
+                return pairs == null ? RequestHeaders.EMPTY :
+                        finish(pairs, count - lineLen);
+            }
+            final int c = indexOf(buf, s, e, (byte) ':');
+            int v = c + 1, w = e;
+            while (v < w && Character.isWhitespace(buf[v])) {
+                ++v;
+            }
+            while (w > v && Character.isWhitespace(buf[w - 1])) {
+                --w;
+            }
+            if (pairs == null) {
+                pairs = new ArrayList<>();
+            }
+            pairs.add(NAMES.get(buf, s, c));
+            pairs.add(latin1(v, w));
+            s = lf + 1;
+        }
+    }
+    
+    private static Request.Headers finish(
+            List<String> namesAndValues, int byteCount) {
+        try {
+            return new RequestHeaders(namesAndValues);
+        } catch (IllegalArgumentException cause) {
+            var t = new HeaderParseException(
+                    null, (byte) -1, (byte) -1, -1, byteCount);
+            t.initCause(cause);
+            throw t;
+        }
+    }
+    
+    /**
+     * Reads the line starting at the given index.<p>
+     * 
+     * The line is validated as bytes arrive, so that a line needing the
+     * lenient parser is delegated as soon as possible.
+     * 
+     * @return index of LF, or {@code IRREGULAR}, or {@code EOS}
+     */
+    private int readLine(int s, boolean requestLine) throws IOException {
+        for (;;) {
+            if (chunk == null || !chunk.hasRemaining()) {
+                if (!it.hasNext()) {
+                    return EOS;
+                }
+                chunk = it.next();
+                continue;
+            }
+            if (started == 0 && base + len == 0) {
+                started = nanoTime();
+            }
+            final int lf = copyLine();
+            final int to = lf >= 0 ? endOf(s, lf) : endOf(s, len);
+            final boolean irregular = requestLine ?
+                    irregularRequestLine(to, lf >= 0) :
+                    irregularHeaderLine(s, to, lf >= 0);
+            if (irregular) {
+                return IRREGULAR;
+            }
+            if (lf >= 0) {
+                return lf;
+            }
+            if (chunk.hasRemaining()) {
+                // Byte number maxBytes was needed
+                throw new MaxRequestHeadSizeException(maxBytes);
+            }
+        }
+    }
+    
+    /**
+     * Copies bytes from the current chunk up until and including LF.
+     * 
+     * @return index of LF, or -1 if not found
+     */
+    private int copyLine() {
+        final int pos = chunk.position(),
+                  room = max(maxBytes - 1 - base - len, 0);
+        int n = min(chunk.remaining(), room);
+        final int lf = indexOf(chunk, pos, pos + n, LF);
+        if (lf >= 0) {
+            n = lf - pos + 1;
+        }
+        if (len + n > buf.length) {
+            buf = Arrays.copyOf(buf, max(len + n, 2 * buf.length));
+        }
+        chunk.get(buf, len, n);
+        len += n;
+        return lf >= 0 ? len - 1 : -1;
+    }
+    
+    /**
+     * {@return the exclusive end of a line, ignoring CR before LF}<p>
+     * 
+     * For an incomplete line, the given index is {@code len}, and a trailing
+     * CR is ignored because LF may follow.
+     */
+    private int endOf(int s, int i) {
+        return i > s && buf[i - 1] == CR ? i - 1 : i;
+    }
+    
+    private boolean irregularRequestLine(int to, boolean complete) {
+        if (to == 0) {
+            // Bare LF or CRLF (leading whitespace)
+            return complete;
+        }
+        sp1 = indexOfCtl(buf, 0, to);
+        if (sp1 == -1) {
+            return complete;
+        }
+        if (sp1 == 0 || buf[sp1] != SP) {
+            return true;
+        }
+        sp2 = indexOfCtl(buf, sp1 + 1, to);
+        if (sp2 == -1) {
+            return complete;
+        }
+        if (sp2 == sp1 + 1 || buf[sp2] != SP) {
+            return true;
+        }
+        final int v = sp2 + 1;
+        if (v == to) {
+            return complete;
+        }
+        return indexOfCtl(buf, v, to) != -1;
+    }
+    
+    private boolean irregularHeaderLine(int s, int to, boolean complete) {
+        if (to == s) {
+            // Empty line ends the head, or, CR only so far
+            return false;
+        }
+        final byte b = buf[s];
+        if (b >= 0 && b <= SP) {
+            // Leading whitespace, folding, control char
+            return true;
+        }
+        final int c = indexOf(buf, s, to, (byte) ':');
+        if (c == -1) {
+            return complete || indexOfCtl(buf, s, to) != -1;
+        }
+        return indexOfCtl(buf, s, c) != -1 ||
+               indexOf(buf, c + 1, to, CR) != -1;
+    }
+    
+    private String latin1(int from, int to) {
+        return from == to ? "" : new String(buf, from, to - from, ISO_8859_1);
+    }
+    
+    private static final VarHandle LONG
+            = MethodHandles.byteArrayViewVarHandle(long[].class, BIG_ENDIAN);
+    
+    private static final long
+            ONES  = 0x0101_0101_0101_0101L,
+            LOWS  = 0x7F7F_7F7F_7F7F_7F7FL,
+            // Added to the low seven bits, sets the high bit if >= SP + 1
+            ABOVE = 0x5F5F_5F5F_5F5F_5F5FL;
+    
+    /**
+     * {@return index of the first occurrence of {@code b}, or -1}
+     */
+    static int indexOf(byte[] a, int from, int to, byte b) {
+        final long pattern = ONES * (b & 0xFF);
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            final long t = zeroes((long) LONG.get(a, i) ^ pattern);
+            if (t != 0) {
+                return i + (Long.numberOfLeadingZeros(t) >>> 3);
+            }
+        }
+        for (; i < to; ++i) {
+            if (a[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * {@return absolute index of the first occurrence of {@code b}, or -1}
+     */
+    static int indexOf(ByteBuffer buf, int from, int to, byte b) {
+        final long pattern = ONES * (b & 0xFF);
+        final boolean big = buf.order() == BIG_ENDIAN;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            final long t = zeroes(buf.getLong(i) ^ pattern);
+            if (t != 0) {
+                return i + ((big ?
+                        Long.numberOfLeadingZeros(t) :
+                        Long.numberOfTrailingZeros(t)) >>> 3);
+            }
+        }
+        for (; i < to; ++i) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * {@return index of the first byte in the range 0x00 to 0x20, or -1}<p>
+     * 
+     * This includes all whitespace (as defined by
+     * {@link Character#isWhitespace(int)}) of a byte, and control
+     * characters.
+     */
+    static int indexOfCtl(byte[] a, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            final long x = (long) LONG.get(a, i);
+            final long t = ~(((x & LOWS) + ABOVE) | x | LOWS);
+            if (t != 0) {
+                return i + (Long.numberOfLeadingZeros(t) >>> 3);
+            }
+        }
+        for (; i < to; ++i) {
+            final byte b = a[i];
+            if (b >= 0 && b <= SP) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Sets the high bit of each zero byte, and clears all other bits.<p>
+     * 
+     * Unlike the more common {@code (x - ONES) & ~x & HIGHS}, there is no
+     * borrow across bytes, so this works for both byte orders.
+     */
+    private static long zeroes(long x) {
+        return ~(((x & LOWS) + LOWS) | x | LOWS);
+    }
+    
+    /**
+     * Remaining bytes of the head; bytes copied, then the upstream.<p>
+     * 
+     * Given to the lenient parsers.
+     */
+    private final class Remaining
+            implements ByteBufferIterable, ByteBufferIterator
+    {
+        private final ByteBuffer copied;
+        
+        Remaining(int from) {
+            copied = ByteBuffer.wrap(buf, from, len - from);
+        }
+        
+        @Override
+        public ByteBufferIterator iterator() {
+            return this;
+        }
+        
+        @Override
+        public long length() {
+            return -1;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return copied.hasRemaining() ||
+                   (chunk != null && chunk.hasRemaining()) ||
+                   it.hasNext();
+        }
+        
+        @Override
+        public ByteBuffer next() throws IOException {
+            if (copied.hasRemaining()) {
+                return copied;
+            }
+            if (chunk != null && chunk.hasRemaining()) {
+                return chunk;
+            }
+            return it.next();
+        }
+    }
+    
+    /**
+     * A small open-addressing hash set of strings, looked up by bytes.
+     */
+    private static final class Interned {
+        private final String[] table;
+        private final int mask;
+        
+        Interned(String... strings) {
+            final int n = Integer.highestOneBit(strings.length * 4);
+            table = new String[n];
+            mask = n - 1;
+            for (var s : strings) {
+                int i = hash(s) & mask;
+                while (table[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = s;
+            }
+        }
+        
+        /**
+         * {@return the interned string, or a new string if not interned}
+         */
+        String get(byte[] a, int from, int to) {
+            for (int i = hash(a, from, to) & mask;; i = (i + 1) & mask) {
+                final String s = table[i];
+                if (s == null) {
+                    return new String(a, from, to - from, ISO_8859_1);
+                }
+                if (equals(s, a, from, to)) {
+                    return s;
+                }
+            }
+        }
+        
+        private static int hash(String s) {
+            int h = 0;
+            for (int i = 0; i < s.length(); ++i) {
+                h = 31 * h + s.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+        
+        private static int hash(byte[] a, int from, int to) {
+            int h = 0;
+            for (int i = from; i < to; ++i) {
+                h = 31 * h + (a[i] & 0xFF);
+            }
+            return h ^ (h >>> 16);
+        }
+        
+        private static boolean equals(String s, byte[] a, int from, int to) {
+            if (s.length() != to - from) {
+                return false;
+            }
+            for (int i = 0; i < s.length(); ++i) {
+                if (s.charAt(i) != (a[from + i] & 0xFF)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -32,7 +32,6 @@ import static alpha.nomagichttp.handler.ExceptionHandler.BASE;
 import static alpha.nomagichttp.message.Responses.continue_;
 import static alpha.nomagichttp.util.Blah.throwsNoChecked;
 import static java.lang.Integer.parseInt;
-import static java.lang.Math.addExact;
 import static java.lang.ScopedValue.newInstance;
 import static java.lang.ScopedValue.where;
 import static java.lang.System.Logger.Level;
@@ -108,6 +107,7 @@ final class HttpExchange
     private final ChannelReader reader;
     private final ChannelWriter writer;
     private final RequestProcessor reqProc;
+    private final Pipeline pipe;
     
     HttpExchange(
             HttpServer server,
@@ -116,7 +116,8 @@ final class HttpExchange
             Collection<ExceptionHandler> handlers,
             ClientChannel child,
             ChannelReader reader,
-            ChannelWriter writer)
+            ChannelWriter writer,
+            Pipeline pipe)
     {
         this.server   = server;
         this.conf     = server.getConfig();
@@ -125,6 +126,7 @@ final class HttpExchange
         this.reader   = reader;
         this.writer   = writer;
         this.reqProc  = new RequestProcessor(actions, routes);
+        this.pipe     = pipe;
     }
     
     /**
@@ -164,32 +166,66 @@ final class HttpExchange
         final SkeletonRequest req;
         try {
             LOG.log(DEBUG, "Parsing request");
-            req = validate(createRequest(parseHead()));
+            final var head = pipe == null ?
+                    parseHead(server, reader) : pipe.takeHead(reader);
+            // No bytebuffer of the reader is in use anymore
+            reader.tryShrink();
+            req = validate(createRequest(head));
         } catch (Exception e) {
             handleException(e);
             return;
         }
-        handleRequest(req);
-        if (child.areBothStreamsOpen()) {
-            assert writer.wroteFinal();
-            tryDiscardRequest(req, false)
-                .ifPresent(this::closeChannel);
+        if (pipe != null) {
+            pipe.tryParseAhead(req, reader);
+        }
+        try {
+            handleRequest(req);
+            if (writer.wroteFinal()) {
+                reqProc.tryRecord(
+                        nanoTime() - req.head().line().nanoTimeOnStart(),
+                        writer.byteCount());
+            }
+            if (child.areBothStreamsOpen()) {
+                assert writer.wroteFinal();
+                tryDiscardRequest(req, false)
+                    .ifPresent(this::closeChannel);
+            }
+        } finally {
+            closeBody(req);
         }
     }
     
-    private RawRequest.Head parseHead() throws IOException {
-        var line = new ParserOfRequestLine(
-                reader, conf.maxRequestHeadSize()).parse();
-        var parser = ParserOf.headers(
-                reader, line.length(), conf.maxRequestHeadSize());
-        var headers = parser.parse();
-        var head = new RawRequest.Head(line, headers);
-        server.events().dispatchLazy(RequestHeadReceived.INSTANCE,
-                () -> head,
-                () -> new RequestHeadReceived.Stats(
-                        line.nanoTimeOnStart(),
-                        nanoTime(),
-                        addExact(line.length(), parser.byteCount())));
+    /**
+     * Parses a request head.<p>
+     * 
+     * This method is also used by {@link Pipeline}.
+     * 
+     * @param server the server
+     * @param reader of the exchange
+     * 
+     * @return the request head
+     * 
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    static RawRequest.Head parseHead(HttpServer server, ChannelReader reader)
+            throws IOException {
+        final Config conf = server.getConfig();
+        var parser = new HeadParser(reader, conf.maxRequestHeadSize());
+        var head = parser.parse();
+        final long finished = nanoTime();
+        if (server.metrics() instanceof DefaultServerMetrics m) {
+            m.headParsed(finished - head.line().nanoTimeOnStart());
+        }
+        final var events = server.events();
+        if (events.hasListeners(RequestHeadReceived.class)) {
+            events.dispatchLazy(RequestHeadReceived.INSTANCE,
+                    () -> head,
+                    () -> new RequestHeadReceived.Stats(
+                            head.line().nanoTimeOnStart(),
+                            finished,
+                            parser.byteCount()));
+        }
         return head;
     }
     
@@ -252,7 +288,15 @@ final class HttpExchange
         where(SKELETON_REQUEST, of(req)).call(() -> {
           try {
               LOG.log(DEBUG, "Executing the request processing chain");
-              var rsp = processRequest(req);
+              final long started = nanoTime();
+              final Optional<Response> rsp;
+              try {
+                  rsp = processRequest(req);
+              } finally {
+                  if (server.metrics() instanceof DefaultServerMetrics m) {
+                      m.handled(nanoTime() - started);
+                  }
+              }
               if (rsp.isPresent()) {
                   // If the request isn't discarded later, add "Connection: close" now
                   var r = tryDiscardRequest(req, true).map(whyNot ->
@@ -497,7 +541,7 @@ final class HttpExchange
     private Optional<String> tryDiscardRequest(
             SkeletonRequest r, boolean dryRun) throws IOException {
         // Note: ChunkedDecoder returns -1 until empty, then it returns 0...
-        final long remaining = r.body().length();
+        final long remaining = r.body().encodedLength();
         if (remaining == -1) {
             return of("unknown length of request data is remaining");
         }
@@ -541,7 +585,7 @@ final class HttpExchange
     private void discardBody(SkeletonRequest req) throws IOException {
         LOG.log(DEBUG, "Discarding request body before new exchange");
         try {
-            req.body().iterator().forEachRemaining(buf ->
+            req.body().encodedIterator().forEachRemaining(buf ->
                     buf.position(buf.limit()));
         } catch (IOException e) {
             // DEBUG because the app was obviously not interested in the request
@@ -549,7 +593,20 @@ final class HttpExchange
             assert !child.isInputOpen();
             throw e;
         }
-        assert req.body().isEmpty();
+        assert req.body().encodedLength() == 0;
+    }
+    
+    // Releases the resources of a content decoder (discardBody bypasses it).
+    // Must not throw, or begin() would mistake it for an unhandled exception.
+    static void closeBody(SkeletonRequest req) {
+        try {
+            req.body().iterator().close();
+        } catch (IOException e) {
+            LOG.log(DEBUG, "I/O error while closing request body.", e);
+        } catch (RuntimeException e) {
+            LOG.log(WARNING,
+                    "Unexpected exception while closing request body.", e);
+        }
     }
     
     private void closeChannel(String why) {
@@ -5,6 +5,7 @@ import alpha.nomagichttp.IdleConnectionException;
 import alpha.nomagichttp.handler.ClientChannel;
 
 import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static java.lang.System.Logger.Level.DEBUG;
 import static java.util.Objects.requireNonNull;
@@ -38,7 +39,12 @@ import static java.util.Objects.requireNonNull;
  * throw some kind of exception. But whatever happens there, it has zero
  * significance. As explained in the Javadoc of {@link IdleConnectionException},
  * a <i>second</i> attempt at writing a response on a channel that just timed
- * out would be quite a dumb thing to do.
+ * out would be quite a dumb thing to do.<p>
+ * 
+ * The timer of a read operation can be paused. {@link Pipeline} does so while
+ * the head of the next request is parsed ahead of time, because the client
+ * is not idle while it waits for the current response. A read scheduled while
+ * paused is scheduled for real when resumed.
  * 
  * @author Martin Andersson (webmaster at martinandersson.com)
  */
@@ -51,27 +57,36 @@ final class IdleConnTimeout {
     
     private static final int READ = 1, WRITE = 2;
     private int op;
+    // Guards schedule/abort of a read against pause/resume by another thread
+    private final ReentrantLock lock;
+    private boolean paused, pending;
     
     /**
      * Constructs this object.
      * 
      * @param cfg for reaching the idle connection timeout configuration
+     * @param metrics for recording a timeout
      * @param api for shutting down a stream on timeout
      * 
      * @throws NullPointerException
      *           if any argument is {@code null}
      */
-    IdleConnTimeout(Config cfg, ClientChannel api) {
+    IdleConnTimeout(
+            Config cfg, DefaultServerMetrics metrics, ClientChannel api) {
+        requireNonNull(metrics);
         requireNonNull(api);
         delegate = new DelayedTask(cfg.timeoutIdleConnection(), () -> {
             if (op == READ && api.isInputOpen()) {
                 LOG.log(DEBUG, "Idle connection; shutting down read stream");
+                metrics.idleTimeout();
                 api.shutdownInput();
             } else if (op == WRITE && api.isOutputOpen()) {
                 LOG.log(DEBUG, "Idle connection; shutting down write stream");
+                metrics.idleTimeout();
                 api.shutdownOutput();
             } // else nop
         });
+        lock = new ReentrantLock();
     }
     
     /**
@@ -80,7 +95,16 @@ final class IdleConnTimeout {
      * @see DelayedTask#schedule()
      */
     void scheduleRead() {
-        delegate.schedule(() -> op = READ);
+        lock.lock();
+        try {
+            if (paused) {
+                pending = true;
+            } else {
+                delegate.schedule(() -> op = READ);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
     
     /**
@@ -108,7 +132,19 @@ final class IdleConnTimeout {
      *           if {@code tryAbort()} returns {@code false}
      */
     void abort(Runnable beforeThrowing) {
-        if (!delegate.tryAbort()) {
+        final boolean aborted;
+        lock.lock();
+        try {
+            if (pending) {
+                // Never scheduled
+                pending = false;
+                return;
+            }
+            aborted = delegate.tryAbort();
+        } finally {
+            lock.unlock();
+        }
+        if (!aborted) {
             if (beforeThrowing != null) {
                 beforeThrowing.run();
             }
@@ -116,6 +152,41 @@ final class IdleConnTimeout {
         }
     }
     
+    /**
+     * Pauses the timer of read operations.<p>
+     * 
+     * A read operation scheduled while paused does not start the timer until
+     * {@link #resume()} is called. This method must not be called while a
+     * read operation is in progress.
+     */
+    void pause() {
+        lock.lock();
+        try {
+            assert !pending;
+            paused = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Resumes the timer of read operations.<p>
+     * 
+     * If a read operation is in progress, its timer starts now.
+     */
+    void resume() {
+        lock.lock();
+        try {
+            paused = false;
+            if (pending) {
+                pending = false;
+                delegate.schedule(() -> op = READ);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
     /**
      * Calls {@link #abort(Runnable)}.<p>
      * 
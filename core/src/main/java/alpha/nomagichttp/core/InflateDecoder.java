@@ -0,0 +1,277 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.Config;
+import alpha.nomagichttp.message.ByteBufferIterable;
+import alpha.nomagichttp.message.ByteBufferIterator;
+import alpha.nomagichttp.message.DecoderException;
+import alpha.nomagichttp.message.MaxRequestBodyBufferSizeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.nio.ByteBuffer.allocate;
+
+/**
+ * Decompresses gzip- or deflate-encoded bytes.<p>
+ * 
+ * Is used by {@link RequestBody} to decode a request body with the header
+ * "Content-Encoding: gzip" (or "deflate"). The upstream is the framed body;
+ * the {@link ChannelReader} limited to the content length, or a
+ * {@link ChunkedDecoder}. Bytes are decompressed as they are pulled, and so
+ * the compressed payload is never buffered as a whole.<p>
+ * 
+ * A small compressed payload can decompress into an enormous one (a "zip
+ * bomb"), and so, the decompressed size is limited to
+ * {@link Config#maxRequestBodyBufferSize()}. If the limit is exceeded, a
+ * {@link MaxRequestBodyBufferSizeException} is thrown. Corrupt data causes a
+ * {@link DecoderException}.<p>
+ * 
+ * The gzip coding may consist of many members, which are decompressed in
+ * sequence (RFC 1952 §2.2). The deflate coding is the zlib format (RFC 1950),
+ * which has one stream only; data trailing the stream is an error. Either way,
+ * when this decoder is done, so is the upstream, and the channel reader can
+ * then be used to parse request trailers.<p>
+ * 
+ * The life cycle is the same as that of {@link ChunkedDecoder}; single-use
+ * only, and the length switches to 0 as soon as decoding is done. Similarly,
+ * the bytebuffer returned is a read-only view of one and the same buffer, and
+ * the last bytebuffer may be empty.<p>
+ * 
+ * The {@link Inflater} holds native memory, which is released when decoding is
+ * done, fails, or the iterator is closed. Closing also closes the upstream
+ * iterator. The server closes the iterator at the end of the exchange, and so
+ * the memory is released even if the application abandons the body.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ * 
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc9110#section-8.4.1">RFC 9110 §8.4.1</a>
+ */
+final class InflateDecoder implements ByteBufferIterable
+{
+    private static final int BUFFER_SIZE = 8_192;
+    
+    private final ByteBufferIterator it;
+    
+    /**
+     * Constructs this object.
+     * 
+     * @param upstream the bytes to decode
+     * @param gzip {@code true} for gzip, {@code false} for deflate
+     * @param max max number of decompressed bytes
+     */
+    InflateDecoder(ByteBufferIterable upstream, boolean gzip, int max) {
+        it = new Impl(upstream, gzip, max);
+    }
+    
+    @Override
+    public long length() {
+        return it.hasNext() ? -1 : 0;
+    }
+    
+    @Override
+    public ByteBufferIterator iterator() {
+        return it;
+    }
+    
+    private static final class Impl implements ByteBufferIterator {
+        // Gzip header flags (FTEXT is irrelevant)
+        private static final int
+                FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+        
+        private final ByteBufferIterable upstream;
+        private final boolean gzip;
+        private final int max;
+        private final Inflater inf;
+        // Only for gzip
+        private final CRC32 crc;
+        private final ByteBuffer buf;
+        private final ByteBuffer view;
+        private ByteBufferIterator raw;
+        // Current upstream bytebuffer
+        private ByteBuffer in;
+        // Within a gzip member (header parsed), or the zlib stream
+        private boolean member;
+        private boolean done;
+        private long total;
+        
+        Impl(ByteBufferIterable upstream, boolean gzip, int max) {
+            this.upstream = upstream;
+            this.gzip = gzip;
+            this.max = max;
+            this.inf = new Inflater(gzip);
+            this.crc = gzip ? new CRC32() : null;
+            this.buf = allocate(BUFFER_SIZE).position(BUFFER_SIZE);
+            this.view = buf.asReadOnlyBuffer();
+            this.raw = null;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return view.hasRemaining() || !done;
+        }
+        
+        @Override
+        public ByteBuffer next() throws IOException {
+            if (raw == null) {
+                raw = upstream.iterator();
+            } else if (view.hasRemaining()) {
+                return view;
+            }
+            if (done) {
+                throw new NoSuchElementException();
+            }
+            buf.clear();
+            view.clear();
+            try {
+                inflate();
+            } catch (DataFormatException e) {
+                end();
+                throw new DecoderException(e);
+            } catch (RuntimeException e) {
+                end();
+                throw e;
+            }
+            view.limit(buf.position());
+            return view;
+        }
+        
+        private void inflate() throws IOException, DataFormatException {
+            while (buf.hasRemaining() && !done) {
+                if (!member) {
+                    if (!fill()) {
+                        // Upstream is done, and so are we
+                        end();
+                        return;
+                    }
+                    if (gzip) {
+                        readHeader();
+                    }
+                    member = true;
+                    continue;
+                }
+                if (inf.needsInput()) {
+                    requireFill();
+                    // Consumed (position advanced) by the inflater
+                    inf.setInput(in);
+                }
+                final int pos = buf.position();
+                final int n = inf.inflate(buf);
+                if (n > 0) {
+                    if (crc != null) {
+                        crc.update(buf.array(), buf.arrayOffset() + pos, n);
+                    }
+                    total += n;
+                    if (total > max) {
+                        end();
+                        throw new MaxRequestBodyBufferSizeException(max);
+                    }
+                }
+                if (inf.finished()) {
+                    finishMember();
+                } else if (n == 0 && inf.needsDictionary()) {
+                    throw new DecoderException("Preset dictionary not supported.");
+                }
+            }
+        }
+        
+        private void finishMember() throws IOException {
+            if (gzip) {
+                final long v = readInt(), size = readInt();
+                if (v != crc.getValue() ||
+                    size != (inf.getBytesWritten() & 0xFFFF_FFFFL)) {
+                    throw new DecoderException("Corrupt gzip trailer.");
+                }
+                crc.reset();
+            } else if (fill()) {
+                throw new DecoderException(
+                        "Data trailing the compressed stream.");
+            }
+            inf.reset();
+            member = false;
+        }
+        
+        private void readHeader() throws IOException {
+            if (readByte() != 31 || readByte() != 139) {
+                throw new DecoderException("Not in gzip format.");
+            }
+            if (readByte() != 8) {
+                throw new DecoderException("Unsupported compression method.");
+            }
+            final int flg = readByte();
+            // MTIME, XFL, OS
+            skip(6);
+            if ((flg & FEXTRA) != 0) {
+                skip(readByte() | readByte() << 8);
+            }
+            if ((flg & FNAME) != 0) {
+                while (readByte() != 0);
+            }
+            if ((flg & FCOMMENT) != 0) {
+                while (readByte() != 0);
+            }
+            if ((flg & FHCRC) != 0) {
+                skip(2);
+            }
+        }
+        
+        private long readInt() throws IOException {
+            // Little-endian
+            return readByte()
+                 | readByte() << 8
+                 | readByte() << 16
+                 | (long) readByte() << 24;
+        }
+        
+        private void skip(int n) throws IOException {
+            for (int i = 0; i < n; ++i) {
+                readByte();
+            }
+        }
+        
+        private int readByte() throws IOException {
+            requireFill();
+            return in.get() & 0xFF;
+        }
+        
+        private void requireFill() throws IOException {
+            if (!fill()) {
+                throw new DecoderException(
+                        "Upstream is empty but decoding is not done.");
+            }
+        }
+        
+        /**
+         * Ensures {@code in} has bytes remaining, if possible.
+         * 
+         * @return {@code false} if the upstream is done
+         * 
+         * @throws IOException from upstream
+         */
+        private boolean fill() throws IOException {
+            while (in == null || !in.hasRemaining()) {
+                if (!raw.hasNext()) {
+                    return false;
+                }
+                in = raw.next();
+            }
+            return true;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            view.position(view.limit());
+            end();
+            (raw == null ? upstream.iterator() : raw).close();
+        }
+        
+        private void end() {
+            done = true;
+            // Is idempotent
+            inf.end();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.util.ByteBufferPool;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A pool of reusable objects.<p>
+ * 
+ * This class is a replacement for {@code ThreadLocal} scratch objects. A
+ * thread-local object is only reused if the same thread uses it again, but
+ * the server runs each connection on a new virtual thread, which dies
+ * together with its thread-local objects, and the thread-local map.<p>
+ * 
+ * Idle objects are kept in a number of free lists ("stripes"), each guarded by
+ * its own lock, the same way {@link ByteBufferPool} stripes its buffers. A
+ * thread starts looking for an idle object in the stripe derived from its
+ * thread id, and moves on to other stripes only if its own stripe is empty. If
+ * no idle object is found, a new one is created.<p>
+ * 
+ * An object acquired should be released when no longer used, and must not be
+ * used after having been released. An object that is not released is left for
+ * the garbage collector. A released object is reset, and then retained only if
+ * the stripe has room for it.<p>
+ * 
+ * This class is thread-safe.
+ * 
+ * @param <T> type of pooled object
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class ObjectPool<T>
+{
+    private static final int N_STRIPES = stripes();
+    
+    private static int stripes() {
+        // Power of two; for masking the thread id
+        int n = Integer.highestOneBit(Runtime.getRuntime().availableProcessors());
+        return Math.min(n, 16);
+    }
+    
+    private final Supplier<? extends T> factory;
+    private final Consumer<? super T> reset;
+    private final int max;
+    private final ArrayDeque<T>[] free;
+    private final ReentrantLock[] locks;
+    
+    /**
+     * Constructs this object.
+     * 
+     * @param factory creates new objects
+     * @param reset called with an object being released
+     * @param maxPerStripe max number of idle objects retained per stripe
+     * 
+     * @throws NullPointerException
+     *             if {@code factory} or {@code reset} is {@code null}
+     * @throws IllegalArgumentException
+     *             if {@code maxPerStripe} is negative
+     */
+    ObjectPool(Supplier<? extends T> factory, Consumer<? super T> reset, int maxPerStripe) {
+        if (maxPerStripe < 0) {
+            throw new IllegalArgumentException("Negative max: " + maxPerStripe);
+        }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArrayDeque<T>[] f = new ArrayDeque[N_STRIPES];
+        var l = new ReentrantLock[N_STRIPES];
+        for (int i = 0; i < N_STRIPES; ++i) {
+            f[i] = new ArrayDeque<>();
+            l[i] = new ReentrantLock();
+        }
+        this.factory = requireNonNull(factory);
+        this.reset = requireNonNull(reset);
+        this.max = maxPerStripe;
+        this.free = f;
+        this.locks = l;
+    }
+    
+    /**
+     * Acquires an idle object, or creates a new one.
+     * 
+     * @return an object (never {@code null})
+     */
+    T acquire() {
+        if (max > 0) {
+            final int home = stripe();
+            for (int i = 0; i < N_STRIPES; ++i) {
+                final int s = (home + i) & (N_STRIPES - 1);
+                final var l = locks[s];
+                l.lock();
+                try {
+                    var obj = free[s].pollLast();
+                    if (obj != null) {
+                        return obj;
+                    }
+                } finally {
+                    l.unlock();
+                }
+            }
+        }
+        return requireNonNull(factory.get());
+    }
+    
+    /**
+     * Resets the given object, and releases it back to the pool.<p>
+     * 
+     * The object is not retained if the stripe is full. The caller may then
+     * have to dispose of it (e.g. free native resources).
+     * 
+     * @param obj to release
+     * 
+     * @return {@code true} if the object was retained, otherwise {@code false}
+     * 
+     * @throws NullPointerException
+     *             if {@code obj} is {@code null}
+     */
+    boolean release(T obj) {
+        reset.accept(requireNonNull(obj));
+        if (max == 0) {
+            return false;
+        }
+        final int s = stripe();
+        final var l = locks[s];
+        l.lock();
+        try {
+            if (free[s].size() < max) {
+                free[s].addLast(obj);
+                return true;
+            }
+            return false;
+        } finally {
+            l.unlock();
+        }
+    }
+    
+    private static int stripe() {
+        return (int) Thread.currentThread().threadId() & (N_STRIPES - 1);
+    }
+}
@@ -0,0 +1,194 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.Config;
+import alpha.nomagichttp.HttpServer;
+import alpha.nomagichttp.handler.ClientChannel;
+import alpha.nomagichttp.message.RawRequest;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONNECTION;
+import static alpha.nomagichttp.HttpConstants.Version.HTTP_1_1;
+import static alpha.nomagichttp.util.ScopedValues.CHANNEL;
+import static alpha.nomagichttp.util.ScopedValues.HTTP_SERVER;
+import static java.lang.ScopedValue.where;
+import static java.lang.System.Logger.Level.DEBUG;
+
+/**
+ * Parses the next request head of a connection ahead of time.<p>
+ * 
+ * One instance is used for all exchanges of a connection, if
+ * {@link Config#pipelineRequests()} is enabled.<p>
+ * 
+ * When the exchange has received the request in full, it calls
+ * {@link #tryParseAhead(SkeletonRequest, ChannelReader)}, which dismisses the
+ * exchange's reader, and starts parsing the next request head on a new
+ * virtual thread, using a successor reader. The exchange then carries on with
+ * handling the request and writing the response.<p>
+ * 
+ * The server derives the next exchange's reader from this class (instead of
+ * from the dismissed reader), and the next exchange takes the head from this
+ * class, which awaits the parse operation to complete.<p>
+ * 
+ * The parse operation reads from the channel while a response may be written,
+ * so the reader and the writer must not share the same
+ * {@link IdleConnTimeout}. The timer of the reader is paused until the next
+ * exchange takes the head; the client is not idle while the current request
+ * is handled, however long that takes.<p>
+ * 
+ * This class is not thread-safe. It is used only by the thread running the
+ * exchanges.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class Pipeline
+{
+    private static final System.Logger
+            LOG = System.getLogger(Pipeline.class.getPackageName());
+    
+    private final HttpServer server;
+    private final ClientChannel child;
+    private final IdleConnTimeout timeout;
+    // The reader of the next exchange, and its head
+    private ChannelReader next;
+    private FutureTask<RawRequest.Head> head;
+    
+    /**
+     * Constructs this object.
+     * 
+     * @param server the server
+     * @param child the channel
+     * @param timeout of the readers
+     */
+    Pipeline(HttpServer server, ClientChannel child, IdleConnTimeout timeout) {
+        this.server  = server;
+        this.child   = child;
+        this.timeout = timeout;
+    }
+    
+    /**
+     * Starts parsing the next request head, if the given request allows it.<p>
+     * 
+     * The request must not have a body, and it must be an HTTP/1.1 request
+     * without the header "Connection: close". The client channel must also
+     * be fully open.<p>
+     * 
+     * If the parse operation starts, the given reader is dismissed.
+     * 
+     * @param req the current request
+     * @param reader the current reader
+     */
+    void tryParseAhead(SkeletonRequest req, ChannelReader reader) {
+        assert next == null;
+        if (!req.body().isEmpty() ||
+            req.httpVersion().isLessThan(HTTP_1_1) ||
+            req.head().headers().contains(CONNECTION, "close") ||
+            !child.areBothStreamsOpen()) {
+            return;
+        }
+        reader.dismiss();
+        timeout.pause();
+        final var r = next = reader.newReader();
+        head = new FutureTask<>(() -> where(HTTP_SERVER, server)
+                .where(CHANNEL, child)
+                .call(() -> HttpExchange.parseHead(server, r)));
+        LOG.log(DEBUG, "Parsing next request head ahead of time");
+        Thread.ofVirtual().start(head);
+    }
+    
+    /**
+     * {@return {@code true} if the next request head is being parsed}<p>
+     * 
+     * If so, the current reader has been dismissed, and the next exchange must
+     * use the reader returned from {@link #nextReader()}.
+     */
+    boolean isAhead() {
+        return next != null;
+    }
+    
+    /**
+     * {@return the reader of the next exchange}
+     * 
+     * @throws IllegalStateException
+     *             if the next request head is not being parsed
+     */
+    ChannelReader nextReader() {
+        if (next == null) {
+            throw new IllegalStateException();
+        }
+        return next;
+    }
+    
+    /**
+     * Returns the request head for the given reader.<p>
+     * 
+     * If the head was parsed ahead of time using the given reader, this method
+     * awaits the parse operation, and this object is reset. Otherwise, the head
+     * is parsed by the calling thread.
+     * 
+     * @param reader of the exchange
+     * 
+     * @return the request head (never {@code null})
+     * 
+     * @throws Exception
+     *             from the parse operation, or
+     *             {@code InterruptedException} if interrupted while waiting
+     */
+    RawRequest.Head takeHead(ChannelReader reader) throws Exception {
+        if (next != reader) {
+            return HttpExchange.parseHead(server, reader);
+        }
+        final var task = head;
+        next = null;
+        head = null;
+        // The current exchange is done; from now on, the client may be idle
+        timeout.resume();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof Exception ex) {
+                throw ex;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Awaits a parse operation in progress, if any.<p>
+     * 
+     * This method is called when the connection is done. The channel must be
+     * closed first, or the parse operation may block until it times out.
+     * 
+     * @param reader the current reader
+     * 
+     * @return the reader owning the buffer (must be released)
+     */
+    ChannelReader close(ChannelReader reader) {
+        final var task = head;
+        if (task == null) {
+            return reader;
+        }
+        timeout.resume();
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                task.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                // Channel closed, most likely
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return next;
+    }
+}
@@ -22,9 +22,11 @@ import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileAttribute;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_ENCODING;
 import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_LENGTH;
 import static alpha.nomagichttp.HttpConstants.HeaderName.TRANSFER_ENCODING;
 import static alpha.nomagichttp.core.VThreads.requireVirtualThread;
@@ -32,11 +34,13 @@ import static alpha.nomagichttp.util.Blah.EMPTY_BYTEARRAY;
 import static alpha.nomagichttp.util.Blah.addExactOrCap;
 import static alpha.nomagichttp.util.Blah.toNanosOrMaxValue;
 import static alpha.nomagichttp.util.ScopedValues.httpServer;
+import static java.lang.System.Logger.Level.DEBUG;
 import static java.nio.ByteBuffer.wrap;
 import static java.nio.charset.CodingErrorAction.REPORT;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.StandardOpenOption.CREATE_NEW;
 import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Locale.ROOT;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -48,6 +52,9 @@ import static java.util.concurrent.TimeUnit.SECONDS;
  */
 final class RequestBody implements Request.Body
 {
+    private static final System.Logger
+            LOG = System.getLogger(RequestBody.class.getPackageName());
+    
     private static final int BUFFER_SIZE = 512;
     
     /**
@@ -90,15 +97,59 @@ final class RequestBody implements Request.Body
             }
             content = new ChunkedDecoder(reader);
         }
-        return new RequestBody(headers, content);
+        return new RequestBody(headers, content, decode(headers, content));
+    }
+    
+    /**
+     * Decodes the content, if the request has a supported content coding.<p>
+     * 
+     * The decoders are layered in the reverse order of the header values; the
+     * last coding applied by the client is the first to be decoded. If any
+     * coding is unsupported, the content is returned as-is, for the
+     * application to deal with.
+     * 
+     * @param headers of request
+     * @param content the framed body
+     * 
+     * @return the decoded content (may be the same instance)
+     */
+    private static ByteBufferIterable decode(
+            ContentHeaders headers, ByteBufferIterable content) {
+        final List<String> codings = headers.allTokens(CONTENT_ENCODING)
+                .map(s -> s.toLowerCase(ROOT))
+                .filter(v -> !v.equals("identity"))
+                .toList();
+        if (codings.isEmpty() || content.length() == 0) {
+            return content;
+        }
+        for (var c : codings) {
+            if (!c.equals("gzip") && !c.equals("x-gzip") && !c.equals("deflate")) {
+                LOG.log(DEBUG, () ->
+                    "Unsupported content coding, not decoding request body: " + c);
+                return content;
+            }
+        }
+        final int max = httpServer().getConfig().maxRequestBodyBufferSize();
+        var decoded = content;
+        for (int i = codings.size() - 1; i >= 0; --i) {
+            decoded = new InflateDecoder(
+                    decoded, !codings.get(i).equals("deflate"), max);
+        }
+        return decoded;
     }
     
     private final ContentHeaders headers;
+    // Framed, and possibly content-encoded
+    private final ByteBufferIterable encoded;
+    // Framed, and decoded
     private final ByteBufferIterable content;
     private Throwing.Runnable<IOException> onConsumption;
     
-    private RequestBody(ContentHeaders headers, ByteBufferIterable content) {
+    private RequestBody(
+            ContentHeaders headers,
+            ByteBufferIterable encoded, ByteBufferIterable content) {
         this.headers  = headers;
+        this.encoded = encoded;
         this.content = content;
         this.onConsumption = null;
     }
@@ -115,10 +166,39 @@ final class RequestBody implements Request.Body
     
     @Override
     public ByteBufferIterator iterator() {
-        if (onConsumption != null && !isEmpty()) {
-            return new FirstRespond100Continue(content.iterator());
+        return iterator(content);
+    }
+    
+    /**
+     * Returns an iterator of the body bytes, as they were received.<p>
+     * 
+     * Unlike {@link #iterator()}, this method does not decode a content coding.
+     * The server uses it to discard the body, which then costs no
+     * decompression.
+     * 
+     * @return an iterator of the encoded bytes
+     */
+    ByteBufferIterator encodedIterator() {
+        return iterator(encoded);
+    }
+    
+    /**
+     * {@return the length of the body, as it was received}<p>
+     * 
+     * Unlike {@link #length()}, this method does not consider a content
+     * coding. The length is still unknown ({@code -1}) if the body is chunked.
+     * 
+     * @see #encodedIterator()
+     */
+    long encodedLength() {
+        return encoded.length();
+    }
+    
+    private ByteBufferIterator iterator(ByteBufferIterable src) {
+        if (onConsumption != null && !src.isEmpty()) {
+            return new FirstRespond100Continue(src.iterator());
         }
-        return content.iterator();
+        return src.iterator();
     }
     
     @Override
@@ -197,6 +277,10 @@ final class RequestBody implements Request.Body
             while (src.hasNext()) {
                 // On different lines for traceability
                 var buf = src.next();
+                if (!buf.hasRemaining()) {
+                    assert !src.hasNext() : "End-Of-Stream";
+                    break;
+                }
                 int r = dst.write(buf);
                 assert r > 0;
                 c = addExactOrCap(c, r);
@@ -10,17 +10,30 @@ import java.util.LinkedHashMap;
 import java.util.List;
 
 import static alpha.nomagichttp.HttpConstants.HeaderName.ACCEPT;
+import static alpha.nomagichttp.util.ScopedValues.HTTP_SERVER;
+import static alpha.nomagichttp.util.ScopedValues.httpServer;
 
 final class RequestHeaders
         extends DefaultContentHeaders implements Request.Headers
 {
     static final Request.Headers EMPTY
-            = new RequestHeaders(new LinkedHashMap<>());
+            = new RequestHeaders(List.of());
     
     RequestHeaders(LinkedHashMap<String, List<String>> headers) {
         super(headers, true);
     }
     
+    /**
+     * Constructs this object.
+     * 
+     * @param namesAndValues header names and values, alternately
+     * 
+     * @see DefaultContentHeaders#DefaultContentHeaders(List, boolean)
+     */
+    RequestHeaders(List<String> namesAndValues) {
+        super(namesAndValues, true);
+    }
+    
     private List<MediaType> ac;
     
     @Override
@@ -31,6 +44,11 @@ final class RequestHeaders
     
     private List<MediaType> mkAccept() {
         try {
+            // Almost always one header line; cached as a whole
+            final var lines = allValues(ACCEPT);
+            if (lines.size() == 1 && HTTP_SERVER.isBound()) {
+                return httpServer().mediaTypeCache().parseAll(lines.get(0));
+            }
             return allTokensKeepQuotes(ACCEPT)
                     .map(MediaType::parse)
                     .toList();
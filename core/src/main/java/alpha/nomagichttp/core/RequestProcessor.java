@@ -27,6 +27,9 @@ final class RequestProcessor
     
     private final DefaultActionRegistry actions;
     private final DefaultRouteRegistry routes;
+    // Set when a request handler is invoked
+    private DefaultRouteMetrics metrics;
+    private String method;
     
     RequestProcessor(
             DefaultActionRegistry actions,
@@ -87,7 +90,23 @@ final class RequestProcessor
     private Response invokeRequestHandler(SkeletonRequest r) throws Exception {
         var route = routes.lookup(r.target());
         Request app = requestWithParams(r, route.segments());
-        return findRequestHandler(r.head(), route).apply(app);
+        var handler = findRequestHandler(r.head(), route);
+        metrics = routes.metrics(route);
+        method = handler.method();
+        return handler.apply(app);
+    }
+    
+    /**
+     * Records the exchange in the metrics of the route, if a request handler
+     * was invoked.
+     * 
+     * @param nanos latency of the exchange
+     * @param bytes size of the response
+     */
+    void tryRecord(long nanos, long bytes) {
+        if (metrics != null) {
+            metrics.record(method, nanos, bytes);
+        }
     }
     
     private static RequestHandler
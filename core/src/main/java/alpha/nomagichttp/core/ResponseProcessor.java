@@ -2,9 +2,11 @@ package alpha.nomagichttp.core;
 
 import alpha.nomagichttp.Config;
 import alpha.nomagichttp.HttpConstants.Version;
+import alpha.nomagichttp.message.BadHeaderException;
 import alpha.nomagichttp.message.ByteBufferIterator;
 import alpha.nomagichttp.message.HttpVersionTooOldException;
 import alpha.nomagichttp.message.IllegalResponseBodyException;
+import alpha.nomagichttp.message.MediaType;
 import alpha.nomagichttp.message.ResourceByteBufferIterable;
 import alpha.nomagichttp.message.Response;
 import alpha.nomagichttp.util.FileLockTimeoutException;
@@ -13,20 +15,28 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Optional;
 
+import static alpha.nomagichttp.HttpConstants.HeaderName.ACCEPT_ENCODING;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CACHE_CONTROL;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_ENCODING;
 import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_LENGTH;
+import static alpha.nomagichttp.HttpConstants.HeaderName.ETAG;
 import static alpha.nomagichttp.HttpConstants.HeaderName.TRAILER;
 import static alpha.nomagichttp.HttpConstants.HeaderName.TRANSFER_ENCODING;
+import static alpha.nomagichttp.HttpConstants.HeaderName.VARY;
 import static alpha.nomagichttp.HttpConstants.Method.CONNECT;
 import static alpha.nomagichttp.HttpConstants.Method.HEAD;
 import static alpha.nomagichttp.HttpConstants.StatusCode.THREE_HUNDRED_FOUR;
 import static alpha.nomagichttp.HttpConstants.StatusCode.TWO_HUNDRED_FOUR;
+import static alpha.nomagichttp.HttpConstants.StatusCode.TWO_HUNDRED_SIX;
 import static alpha.nomagichttp.HttpConstants.StatusCode.isClientError;
 import static alpha.nomagichttp.HttpConstants.StatusCode.isServerError;
 import static alpha.nomagichttp.HttpConstants.Version.HTTP_1_1;
 import static alpha.nomagichttp.core.HttpExchange.skeletonRequest;
 import static alpha.nomagichttp.handler.ClientChannel.tryAddConnectionClose;
+import static alpha.nomagichttp.internal.ResponseHeads.hasImplicitLength;
 import static alpha.nomagichttp.util.Blah.getOrClose;
 import static alpha.nomagichttp.util.Blah.throwsNoChecked;
+import static alpha.nomagichttp.util.ContentCodings.isCompressible;
 import static alpha.nomagichttp.util.ScopedValues.channel;
 import static alpha.nomagichttp.util.ScopedValues.httpServer;
 import static java.lang.String.valueOf;
@@ -60,9 +70,9 @@ final class ResponseProcessor
      * Ensures the given response is ready for transmission.<p>
      * 
      * This method semantically performs a set of privileged after-actions.
-     * Specifically, the method will — if needed — apply chunked encoding, set
-     * the "Connection: close" header for non-persistent connections, and ensure
-     * that the response is properly delimited
+     * Specifically, the method will — if needed — compress the body, apply
+     * chunked encoding, set the "Connection: close" header for non-persistent
+     * connections, and ensure that the response is properly delimited
      * (Transfer-Encoding/Content-Length).<p>
      * 
      * This method will call {@code Response.Body.iterator()}, and return the
@@ -103,19 +113,25 @@ final class ResponseProcessor
         final var it = upstream.iterator();
         return getOrClose(() -> {
             long len = upstream.length();
-            final Response mod2 = tryChunkedEncoding(mod1, reqVer, len, it);
+            final Response mod2 = tryCompress(mod1, req, reqVer, len, it);
             ByteBufferIterator bodyToWrite = it;
             if (mod2.body() != upstream) {
                 len = mod2.body().length();
-                assert len == -1 : "Decorated by single-use de-/inflating codec";
+                assert len == -1 : "Decorated by single-use deflating codec";
                 bodyToWrite = throwsNoChecked(() -> mod2.body().iterator());
             }
-            final Response mod3 = ensureCorrectFraming(mod2, len);
+            final Response mod3 = tryChunkedEncoding(mod2, reqVer, len, bodyToWrite);
+            if (mod3.body() != mod2.body()) {
+                len = mod3.body().length();
+                assert len == -1 : "Decorated by single-use chunked codec";
+                bodyToWrite = throwsNoChecked(() -> mod3.body().iterator());
+            }
+            final Response mod4 = ensureCorrectFraming(mod3, len);
             return new Result(
                     // Content
-                    mod3, bodyToWrite,
+                    mod4, bodyToWrite,
                     // closeChannel
-                    trackErrorResponses(mod2));
+                    trackErrorResponses(mod3));
         }, it);
     }
     
@@ -192,6 +208,67 @@ final class ResponseProcessor
                 tryAddConnectionClose(rsp, LOG, DEBUG, why);
     }
     
+    /**
+     * Compresses the response body, if the configuration, the request and the
+     * response allows it.<p>
+     * 
+     * The conditions are documented in {@link Config#compressionLevel()}.
+     * 
+     * @param r response
+     * @param req request (may be {@code null})
+     * @param reqVer request version (may be {@code null})
+     * @param len response body length
+     * @param body response body
+     * 
+     * @return possibly a modified response
+     */
+    private static Response tryCompress(
+            Response r, SkeletonRequest req, Version reqVer,
+            long len, ByteBufferIterator body) {
+        final Config c = httpServer().getConfig();
+        if (c.compressionLevel() == 0 || req == null ||
+            reqVer.isLessThan(HTTP_1_1) || len == 0 ||
+            r.statusCode() == TWO_HUNDRED_SIX ||
+            r.headers().contains(CONTENT_ENCODING) ||
+            r.headers().contains(TRANSFER_ENCODING) ||
+            r.headers().contains(CACHE_CONTROL, "no-transform") ||
+            (len > 0 && len < c.minCompressionSize()) ||
+            !isCompressible(contentType(r), c)) {
+            return r;
+        }
+        // The representation varies, whether we compress or not
+        // (RFC 9110 §12.5.5)
+        final var b = r.headers().contains(VARY, ACCEPT_ENCODING) ?
+                r.toBuilder() :
+                r.toBuilder().addHeader(VARY, ACCEPT_ENCODING);
+        final String coding = DeflateEncoder.negotiate(
+                req.head().headers().allTokens(ACCEPT_ENCODING));
+        if (coding == null) {
+            return b.build();
+        }
+        if (CpuLoad.isAbove(c.maxCompressionCpuLoad())) {
+            LOG.log(DEBUG, "CPU load is too high; not compressing");
+            return b.build();
+        }
+        LOG.log(DEBUG, () -> "Compressing response body using " + coding);
+        var etag = r.headers().firstValue(ETAG);
+        return (etag.isPresent() && !etag.get().startsWith("W/") ?
+                    b.setHeader(ETAG, "W/" + etag.get()) : b)
+                .setHeader(CONTENT_ENCODING, coding)
+                .removeHeader(CONTENT_LENGTH)
+                .body(new DeflateEncoder(body, coding, c.compressionLevel()))
+                .build();
+    }
+    
+    private static MediaType contentType(Response r) {
+        try {
+            return r.headers().contentType().orElse(null);
+        } catch (BadHeaderException e) {
+            LOG.log(DEBUG, "Malformed Content-Type; not compressing", e);
+            return null;
+        }
+    }
+    
     private static Response tryChunkedEncoding(
             Response r, Version reqVer, long len, ByteBufferIterator body) {
         final boolean trPresent = r.headers().contains(TRAILER);
@@ -224,7 +301,8 @@ final class ResponseProcessor
         }
         return r.toBuilder()
                   .setHeader(TRANSFER_ENCODING, "chunked")
-                  .body(new ChunkedEncoder(body))
+                  .body(new ChunkedEncoder(body,
+                          httpServer().getConfig().chunkSize()))
                   .build();
     }
     
@@ -232,6 +310,9 @@ final class ResponseProcessor
         final var key = "alpha.nomagichttp.dcw.nUnsuccessful";
         if (isClientError(r.statusCode()) || isServerError(r.statusCode())) {
             // Bump error counter
+            if (httpServer().metrics() instanceof DefaultServerMetrics m) {
+                m.errorResponse();
+            }
             int n = channel().attributes().<Integer>asMapAny().merge(key, 1, Integer::sum);
             return n >= httpServer().getConfig().maxErrorResponses();
         } else {
@@ -296,7 +377,11 @@ final class ResponseProcessor
         // 
         // "the response terminates at the end of the header section"
         // (RFC 7231 §4.3.2)
-        return r;
+        // 
+        // But the builder's "Content-Length: 0" is not the length of the
+        // representation
+        return hasImplicitLength(r) ?
+                r.toBuilder().removeHeader(CONTENT_LENGTH).build() : r;
     }
     
     private static Response dealWith304(Response r, long actualLen) {
@@ -345,6 +430,9 @@ final class ResponseProcessor
                 // "A server MUST NOT send a Content-Length header field in
                 //  any 2xx (Successful) response to a CONNECT request"
                 if (CONNECT.equals(reqMethod.orElse(""))) {
+                    if (hasImplicitLength(r)) {
+                        return r.toBuilder().removeHeader(CONTENT_LENGTH).build();
+                    }
                     throw new IllegalArgumentException(
                             "$1 header in response to a $2 request"
                             .replace("$1", CONTENT_LENGTH)
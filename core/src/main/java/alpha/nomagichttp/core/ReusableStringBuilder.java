@@ -11,10 +11,10 @@ final class ReusableStringBuilder {
     /**
      * Append a char to the builder.
      * 
-     * @param c to append (byte cast to char) 
+     * @param c to append (decoded as ISO-8859-1)
      */
     void append(byte c) {
-        str.append((char) c);
+        str.append((char) (c & 0xFF));
     }
     
     /**
@@ -75,7 +75,7 @@ final class SkeletonRequest
     }
     
     private BetterHeaders trailers0() throws IOException {
-        if (!body().isEmpty()) {
+        if (body().encodedLength() != 0) {
             throw new IllegalStateException("Consume the body first");
         }
         var maxLen = httpServer().getConfig().maxRequestTrailersSize();
@@ -1,25 +1,29 @@
 package alpha.nomagichttp.core;
 
 import alpha.nomagichttp.route.Route;
-import alpha.nomagichttp.util.PercentDecoder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.RandomAccess;
 
 import static alpha.nomagichttp.util.PercentDecoder.decode;
 import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableMap;
-import static java.util.stream.Collectors.toMap;
 
 /**
  * A parsed result of a request-target.<p>
  * 
  * This class has all components related to a request-target; the segments, the
  * query map, and the fragment. The complete {@link RequestTarget} adds the
- * missing path parameters.
+ * missing path parameters.<p>
+ * 
+ * The parse operation only records the bounds of each path segment, and the
+ * position of the query and fragment. Each component is extracted (and
+ * percent-decoded) when first asked for. Routing needs the segments, but a
+ * segment without a percent-encoded character is not copied when decoded.
+ * The query map is only built if the application asks for it.
  * 
  * @author Martin Andersson (webmaster at martinandersson.com)
  */
@@ -56,79 +60,66 @@ final class SkeletonRequestTarget
         int q = parse.indexOf('?', skip),
             f = parse.indexOf('#', q == -1 ? skip : q + 1);
         
-        // Extract path component..
-        final String path;
-        if (q == -1 && f == -1) {
-            path = parse.substring(skip);
-        } else if (q != -1) {
-            path = parse.substring(skip, q);
-        } else {
-            assert f != -1;
-            path = parse.substring(skip, f);
-        }
-        
-        // ..into tokens that we normalize, using .split(). E.g.
-        //     "a/b"  => ["a", "b"]
-        //     "a/"   => ["a"]         (here '/' is removed)
-        //     "/a"   => ["", "a"]     (not symmetric lol, here a magical empty token appears)
-        //     "a"    => ["a"]
-        //     ""     => [""]          (yikes! empty input produces array.length == 1)
-        //     "/"    => []            (...by themselves no magic tokens lol)
-        //     "//"   => []
-        //     "///"  => []
-        String[] segments = path.split("/");
-        ArrayList<String> keep = new ArrayList<>();
+        // End of path component
+        final int end = q != -1 ? q : f != -1 ? f : parse.length();
         
-        for (String t : segments) {
-            // Drop "" and "."
-            if (t.isEmpty() || t.equals(".")) {
-                continue;
+        // Record the bounds of each segment, normalized. E.g.
+        //     "a/b"    => [a, b]
+        //     "a//b/"  => [a, b]     (empty segments are dropped)
+        //     "a/./b"  => [a, b]     (so are ".")
+        //     "a/../b" => [b]        (".." removes the previous one...)
+        //     "../a"   => [.., a]    (...if there is one, and it is not "..")
+        int[] bounds = new int[INITIAL_CAPACITY * 2];
+        int n = 0;
+        for (int s = skip; s < end; ) {
+            int e = parse.indexOf('/', s);
+            if (e == -1 || e > end) {
+                e = end;
             }
-            // ".." removes the previous one if and only if previous is not ".."
-            if (t.equals("..")  &&
-                    !keep.isEmpty() &&
-                    !keep.get(keep.size() - 1).equals(".."))
-            {
-                keep.remove(keep.size() - 1);
-                // Keep legit values and ineffective ".."
+            final int len = e - s;
+            if (len == 0 || (len == 1 && parse.charAt(s) == '.')) {
+                // Drop "" and "."
+            } else if (len == 2 && parse.startsWith("..", s) &&
+                       n > 0 && !isDotDot(parse, bounds, n - 1)) {
+                --n;
             } else {
-                keep.add(t);
+                if (2 * n == bounds.length) {
+                    bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                }
+                bounds[2 * n] = s;
+                bounds[2 * n + 1] = e;
+                ++n;
             }
+            s = e + 1;
         }
         
-        final String query;
-        if (q == -1) {
-            query = "";
-        } else if (f != -1) {
-            query = parse.substring(q + 1, f);
-        } else {
-            query = parse.substring(q + 1);
-        }
-        
-        final String fragment;
-        if (f == -1) {
-            fragment = "";
-        } else {
-            fragment = parse.substring(f + 1);
-        }
-        
-        return new SkeletonRequestTarget(rt, keep, query, fragment);
+        return new SkeletonRequestTarget(rt, parse, bounds, n, q, f);
+    }
+    
+    private static boolean isDotDot(String str, int[] bounds, int seg) {
+        final int s = bounds[2 * seg];
+        return bounds[2 * seg + 1] - s == 2 && str.startsWith("..", s);
     }
     
-    private final String raw;
-    private final List<String> segmentsNotPercentDecoded;
-    private final String query;
-    private final String fragment;
+    /** Initial capacity of the segment bounds (number of segments). */
+    private static final int INITIAL_CAPACITY = 8;
+    
+    private final String raw, parse;
+    // Start (inclusive) and end (exclusive) of each segment in parse
+    private final int[] bounds;
+    private final int nSegments;
+    // Index of '?' and '#' in parse, or -1
+    private final int q, f;
     
-    private <L extends List<String> & RandomAccess> SkeletonRequestTarget(
-            String raw, L segmentsNotPercentDecoded, String query, String fragment)
+    private SkeletonRequestTarget(
+            String raw, String parse, int[] bounds, int nSegments, int q, int f)
     {
         this.raw = raw;
-        this.segmentsNotPercentDecoded = unmodifiableList(segmentsNotPercentDecoded);
-        this.query = query;
-        assert !query.startsWith("?");
-        this.fragment = fragment;
-        assert !fragment.startsWith("#");
+        this.parse = parse;
+        this.bounds = bounds;
+        this.nSegments = nSegments;
+        this.q = q;
+        this.f = f;
     }
     
     /**
@@ -149,14 +140,38 @@ final class SkeletonRequestTarget
     }
     
     private List<String> mkSegments() {
-        return segmentsRaw().stream().map(PercentDecoder::decode).toList();
+        final List<String> enc = segmentsRaw();
+        String[] dec = null;
+        for (int i = 0; i < enc.size(); ++i) {
+            final String r = enc.get(i);
+            // Most segments have nothing to decode
+            if (r.indexOf('%') == -1) {
+                continue;
+            }
+            if (dec == null) {
+                dec = enc.toArray(String[]::new);
+            }
+            dec[i] = decode(r);
+        }
+        return dec == null ? enc : List.of(dec);
     }
     
+    private List<String> segmentsNotPercentDecoded;
+    
     /**
      * {@return {@link RequestTarget#segmentsRaw()}}
      */
     List<String> segmentsRaw() {
-        return segmentsNotPercentDecoded;
+        var s = segmentsNotPercentDecoded;
+        return s != null ? s : (segmentsNotPercentDecoded = mkSegmentsRaw());
+    }
+    
+    private List<String> mkSegmentsRaw() {
+        final var s = new String[nSegments];
+        for (int i = 0; i < s.length; ++i) {
+            s[i] = parse.substring(bounds[2 * i], bounds[2 * i + 1]);
+        }
+        return List.of(s);
     }
     
     private Map<String, List<String>> queryMapPercentDecoded;
@@ -170,11 +185,16 @@ final class SkeletonRequestTarget
     }
     
     private Map<String, List<String>> decodeMap() {
-        var decoded = queryMapRaw().entrySet().stream().collect(toMap(
-                e -> decode(e.getKey()),
-                e -> decode(e.getValue()),
-                (ign,ored) -> { throw new AssertionError("Insufficient JDK API"); },
-                LinkedHashMap::new));
+        final var enc = queryMapRaw();
+        if (enc.isEmpty()) {
+            return enc;
+        }
+        final var decoded = new LinkedHashMap<String, List<String>>();
+        enc.forEach((k, v) -> {
+            if (decoded.put(decode(k), decode(v)) != null) {
+                throw new AssertionError("Insufficient JDK API");
+            }
+        });
         return unmodifiableMap(decoded);
     }
     
@@ -189,6 +209,7 @@ final class SkeletonRequestTarget
     }
     
     private Map<String, List<String>> parseQuery() {
+        final String query = query();
         if (query.isEmpty()) {
             return Map.of();
         }
@@ -208,10 +229,17 @@ final class SkeletonRequestTarget
         return unmodifiableMap(m);
     }
     
+    private String query() {
+        if (q == -1) {
+            return "";
+        }
+        return f == -1 ? parse.substring(q + 1) : parse.substring(q + 1, f);
+    }
+    
     /**
      * {@return {@link RequestTarget#fragment()}}
      */
     String fragment() {
-        return fragment;
+        return f == -1 ? "" : parse.substring(f + 1);
     }
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+package alpha.nomagichttp.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static alpha.nomagichttp.core.DelayedTask.isDeadline;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A hashed timer wheel executing {@link DelayedTask}s.<p>
+ * 
+ * The wheel is an array of buckets, each bucket representing one tick of
+ * time. The wheel is driven by one thread calling {@link #advance(long)}, and
+ * this thread is the only one ever touching the buckets; no locks needed.<p>
+ * 
+ * Other threads hand over tasks using {@link #enroll(DelayedTask)}, which adds
+ * the task to a lock-free queue, drained by the next call to
+ * {@code advance}.<p>
+ * 
+ * A task stays in the wheel after being aborted and rescheduled. The deadline
+ * is simply read again when the task's bucket is visited, and the task is then
+ * moved to the bucket of the new deadline, or dropped if it's not scheduled
+ * (see {@link DelayedTask#leave()}). That is what makes scheduling and
+ * aborting a task an O(1) operation without allocation; it is only a matter
+ * of updating the task's state.<p>
+ * 
+ * The wheel is small enough for each bucket to be visited at least once every
+ * few seconds, so that an aborted task is not retained for long.<p>
+ * 
+ * The precision of the timer is one tick (10 milliseconds).
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class TimerWheel
+{
+    private static final System.Logger LOG
+            = System.getLogger(TimerWheel.class.getPackageName());
+    
+    /** Duration of one tick, in nanoseconds. */
+    static final long TICK = MILLISECONDS.toNanos(10);
+    
+    // Must be a power of two; a lap is 2.56 seconds
+    private static final int N_BUCKETS = 256, MASK = N_BUCKETS - 1;
+    
+    private final Queue<DelayedTask> inbound;
+    private final List<DelayedTask>[] buckets;
+    private final long origin;
+    // The next tick to visit
+    private long next;
+    
+    /**
+     * Constructs this object.
+     */
+    TimerWheel() {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<DelayedTask>[] b = new List[N_BUCKETS];
+        for (int i = 0; i < N_BUCKETS; ++i) {
+            b[i] = new ArrayList<>();
+        }
+        this.inbound = new ConcurrentLinkedQueue<>();
+        this.buckets = b;
+        this.origin  = nanoTime();
+        this.next    = 0;
+    }
+    
+    /**
+     * Hands over a task to the wheel.<p>
+     * 
+     * This method is called by the task, when scheduled, and only if the task
+     * is not already enrolled.
+     * 
+     * @param task to enroll
+     */
+    void enroll(DelayedTask task) {
+        inbound.add(task);
+    }
+    
+    /**
+     * Advances the wheel up until the given point in time.<p>
+     * 
+     * All tasks with a deadline that has passed will be executed by the calling
+     * thread.<p>
+     * 
+     * This method must not be called concurrently.
+     * 
+     * @param now the current value of {@link System#nanoTime()}
+     */
+    void advance(long now) {
+        for (DelayedTask t; (t = inbound.poll()) != null; ) {
+            place(t, t.state());
+        }
+        final long last = ticks(now);
+        // If we fell behind, still no need to visit a bucket twice
+        for (long tick = Math.max(next, last - MASK); tick <= last; ++tick) {
+            next = tick + 1;
+            visit(tick, now);
+        }
+    }
+    
+    private void visit(long tick, long now) {
+        final List<DelayedTask> b = buckets[(int) (tick & MASK)];
+        int keep = 0;
+        for (int i = 0, n = b.size(); i < n; ++i) {
+            final DelayedTask t = b.get(i);
+            if (stays(t, tick, now)) {
+                b.set(keep++, t);
+            }
+        }
+        b.subList(keep, b.size()).clear();
+    }
+    
+    /**
+     * Runs or moves the given task, or drops it from the wheel.
+     * 
+     * @return {@code true} if the task stays in the current bucket
+     */
+    private boolean stays(DelayedTask t, long tick, long now) {
+        long s = t.state();
+        if (isDeadline(s) && s - now <= 0) {
+            run(t, s);
+            s = t.state();
+        }
+        if (!isDeadline(s)) {
+            if (t.leave()) {
+                return false;
+            }
+            // Was concurrently scheduled again
+            s = t.state();
+            if (!isDeadline(s)) {
+                // And aborted again, will check next lap
+                return true;
+            }
+        }
+        final long tk = Math.max(ticks(s), tick + 1);
+        if ((tk & MASK) == (tick & MASK)) {
+            // A lap or more away
+            return true;
+        }
+        buckets[(int) (tk & MASK)].add(t);
+        return false;
+    }
+    
+    private void place(DelayedTask t, long state) {
+        final long tk = isDeadline(state) ?
+                Math.max(ticks(state), next) :
+                // Already aborted; dropped when visited
+                next;
+        buckets[(int) (tk & MASK)].add(t);
+    }
+    
+    private static void run(DelayedTask t, long deadline) {
+        try {
+            t.run(deadline);
+        } catch (Throwable e) {
+            // Must not kill the thread driving the wheel
+            LOG.log(WARNING, "Delayed task failed.", e);
+        }
+    }
+    
+    private long ticks(long nanoTime) {
+        return Math.floorDiv(nanoTime - origin, TICK);
+    }
+}
@@ -4,6 +4,7 @@ import java.io.Serial;
 import java.util.AbstractMap;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -16,6 +17,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -24,6 +26,8 @@ import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
+import static java.lang.ScopedValue.newInstance;
+import static java.lang.ScopedValue.where;
 import static java.util.Collections.unmodifiableMap;
 import static java.util.Objects.requireNonNull;
 import static java.util.function.Function.identity;
@@ -64,8 +68,8 @@ final class Tree<V>
     // Implementation design; see javadoc of Tree.NodeImpl
     
     /**
-     * Initial capacity of the deque of reserved nodes (one deque per observed
-     * writer thread).
+     * Initial capacity of the deque of reserved nodes (one deque per concurrent
+     * write operation, pooled).
      */
     private static final int INITIAL_CAPACITY = 5;
     
@@ -273,20 +277,25 @@ final class Tree<V>
     
     private final NodeImpl root;
     
-    /** Is {@code true} if current writing thread needs to prune the tree. */
-    private final ThreadLocal<Boolean> clean;
+    /** Is {@code true} if a value has been removed, and the tree needs to be pruned. */
+    private final AtomicBoolean dirty;
     
     /** Is {@code true} while tree is being pruned (any other thread asking to start need not bother). */
     private final AtomicBoolean cleaning;
     
     /** Writer thread walking the tree reserves its path, unreleasing before return. */
-    private final ThreadLocal<Deque<NodeImpl>> release;
+    private final ScopedValue<Deque<NodeImpl>> reserved;
+    
+    /** Path deques, reused across write operations (and threads). */
+    private final ObjectPool<Deque<NodeImpl>> paths;
     
     Tree() {
         root     = new NodeImpl(null);
-        clean    = ThreadLocal.withInitial(() -> false);
+        dirty    = new AtomicBoolean(false);
         cleaning = new AtomicBoolean(false);
-        release  = ThreadLocal.withInitial(() -> new ArrayDeque<>(INITIAL_CAPACITY));
+        reserved = newInstance();
+        paths    = new ObjectPool<>(
+                       () -> new ArrayDeque<>(INITIAL_CAPACITY), Deque::clear, 4);
     }
     
     /**
@@ -321,14 +330,17 @@ final class Tree<V>
      * @param digger function which returns the next node to traverse
      */
     void write(UnaryOperator<WriteNode<V>> digger) {
+        final Deque<NodeImpl> visited = paths.acquire();
         try {
-            for (WriteNode<V> n = root; n != null; n = digger.apply(n))
-                ; // Empty
+            where(reserved, visited).run(() -> {
+                for (WriteNode<V> n = root; n != null; n = digger.apply(n))
+                    ; // Empty
+            });
         } finally {
-            Deque<NodeImpl> visited = release.get();
             while (!visited.isEmpty()) {
                 visited.pollLast().unreserve();
             }
+            paths.release(visited);
         }
     }
     
@@ -380,10 +392,9 @@ final class Tree<V>
     
     private void tryPruningTree() {
         // Clean tree only if branch was flagged dirty and no cleanup job is already running
-        if (!clean.get()) {
+        if (!dirty.getAndSet(false)) {
             return;
         }
-        clean.set(false);
         if (cleaning.compareAndSet(false, true)) {
             try {
                 root.prune();
@@ -433,6 +444,137 @@ final class Tree<V>
         return unmodifiableMap(m);
     }
     
+    /**
+     * Creates an immutable copy of the tree.<p>
+     * 
+     * Each node value is mapped using the given function. A node without a
+     * value (or a value mapped to {@code null}) is copied nonetheless; the
+     * copy's hierarchy is the same as the tree's.<p>
+     * 
+     * The copy is not atomic. If the tree is concurrently modified, the copy
+     * may or may not reflect the modification. Therefore, a client that
+     * publishes copies should also make a new copy after each modification,
+     * in a way such that the last copy made is also the last one published.
+     * 
+     * @param mapper of node value (is never passed {@code null})
+     * @param <T> type of mapped value
+     * 
+     * @return an immutable copy of the tree (never {@code null})
+     */
+    <T> Frozen<T> freeze(Function<? super V, ? extends T> mapper) {
+        return root.freeze(mapper);
+    }
+    
+    /**
+     * An immutable node of a tree.<p>
+     * 
+     * The children of a node are stored in an open-addressing hash table,
+     * sized such that every segment key is found on the first probe, if
+     * possible. Traversing a frozen tree is lock-free, and does not allocate.
+     * 
+     * @param <T> type of the node's associated value
+     */
+    static final class Frozen<T> {
+        // Max table size is this many times the number of children
+        private static final int MAX_SPREAD = 16;
+        
+        private final T v;
+        private final String[] keys;
+        private final Frozen<T>[] kids;
+        private final int mask;
+        
+        private Frozen(T v, String[] keys, Frozen<T>[] kids) {
+            this.v    = v;
+            this.keys = keys;
+            this.kids = kids;
+            this.mask = keys.length - 1;
+        }
+        
+        /**
+         * {@return this node's value, or {@code null} if not present}
+         */
+        T get() {
+            return v;
+        }
+        
+        /**
+         * Traverse to the next node.
+         * 
+         * @param segment sub-key
+         * @return the next node (or {@code null} if branch doesn't extend further)
+         * @throws NullPointerException if {@code segment} is {@code null}
+         */
+        Frozen<T> next(String segment) {
+            final String[] k = keys;
+            if (k.length == 0) {
+                return null;
+            }
+            for (int i = segment.hashCode() & mask;; i = (i + 1) & mask) {
+                final String s = k[i];
+                if (s == null) {
+                    return null;
+                }
+                if (s.equals(segment)) {
+                    return kids[i];
+                }
+            }
+        }
+        
+        /**
+         * Performs the given action for each child.
+         * 
+         * @param action receives the segment key and the child node
+         */
+        void forEach(BiConsumer<String, Frozen<T>> action) {
+            for (int i = 0; i < keys.length; ++i) {
+                if (keys[i] != null) {
+                    action.accept(keys[i], kids[i]);
+                }
+            }
+        }
+        
+        private static <T> Frozen<T> of(T v, Map<String, Frozen<T>> children) {
+            final int n = children.size();
+            if (n == 0) {
+                return new Frozen<>(v, new String[0], newArray(0));
+            }
+            // At most half full, and grow until there are no collisions
+            int size = Integer.highestOneBit(n) << 2;
+            while (size < n * MAX_SPREAD && collides(children.keySet(), size)) {
+                size <<= 1;
+            }
+            final int mask = size - 1;
+            final var keys = new String[size];
+            final Frozen<T>[] kids = newArray(size);
+            children.forEach((s, c) -> {
+                int i = s.hashCode() & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = s;
+                kids[i] = c;
+            });
+            return new Frozen<>(v, keys, kids);
+        }
+        
+        private static boolean collides(Iterable<String> keys, int size) {
+            final var taken = new boolean[size];
+            for (String s : keys) {
+                final int i = s.hashCode() & (size - 1);
+                if (taken[i]) {
+                    return true;
+                }
+                taken[i] = true;
+            }
+            return false;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private static <T> Frozen<T>[] newArray(int size) {
+            return (Frozen<T>[]) new Frozen<?>[size];
+        }
+    }
+    
     /**
      * A node is associated with an arbitrary value and may have descendant
      * children nodes keyed by a string. Each child may in turn contain
@@ -532,7 +674,7 @@ final class Tree<V>
         public V set(V v) {
             V o = ref.getAndSet(v);
             if (o != null && v == null) {
-                clean.set(true);
+                dirty.set(true);
             }
             return o;
         }
@@ -546,7 +688,7 @@ final class Tree<V>
         public V getAndSetIf(V newV, Predicate<? super V> test) {
             V oldV = ref.getAndUpdate(currV -> test.test(currV) ? newV : currV);
             if (oldV != null && newV == null) {
-                clean.set(true);
+                dirty.set(true);
             }
             return oldV;
         }
@@ -584,7 +726,7 @@ final class Tree<V>
                 
                 try {
                     c.reserve();
-                    release.get().add(c);
+                    reserved.get().add(c);
                     break;
                 } catch (StaleBranchException _) {
                     // Retry
@@ -658,6 +800,13 @@ final class Tree<V>
             }
         }
         
+        <T> Frozen<T> freeze(Function<? super V, ? extends T> mapper) {
+            final var children = new HashMap<String, Frozen<T>>();
+            kids.forEach((s, c) -> children.put(s, c.freeze(mapper)));
+            final V v = get();
+            return Frozen.of(v == null ? null : mapper.apply(v), children);
+        }
+        
         Stream<NodeImpl> entryStreamFlat(String segment, String... moreSegments) {
             var b = nextAccept(segment, Stream::builder, null);
             for (String s : moreSegments) {
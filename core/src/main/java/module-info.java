@@ -6,6 +6,7 @@ import alpha.nomagichttp.core.DefaultServerFactory;
  */
 module alpha.nomagichttp.core {
     requires alpha.nomagichttp;
+    requires jdk.management;
     
     provides HttpServerFactory with DefaultServerFactory;
 }
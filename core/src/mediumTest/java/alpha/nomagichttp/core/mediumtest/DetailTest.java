@@ -16,6 +16,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static alpha.nomagichttp.core.mediumtest.util.TestRequestHandlers.respondIsBodyEmpty;
 import static alpha.nomagichttp.core.mediumtest.util.TestRequests.get;
@@ -34,6 +35,7 @@ import static alpha.nomagichttp.util.ScopedValues.channel;
 import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.WARNING;
 import static java.lang.System.nanoTime;
+import static java.time.Duration.ofMillis;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -125,6 +127,61 @@ final class DetailTest extends AbstractRealTest
                     Hello""");
             }
         }
+        
+        @Test
+        void pipelined() throws IOException {
+            usingConfiguration()
+                .pipelineRequests(true);
+            var n = new AtomicInteger();
+            server().add("/", GET().apply(req ->
+                text(Integer.toString(n.incrementAndGet()))));
+            // Both requests in one write
+            var rsp = client().writeReadTextUntilEOS(
+                get() + get("Connection: close"));
+            assertThat(rsp).isEqualTo("""
+                HTTP/1.1 200 OK\r
+                Content-Type: text/plain; charset=utf-8\r
+                Content-Length: 1\r
+                \r
+                1HTTP/1.1 200 OK\r
+                Content-Type: text/plain; charset=utf-8\r
+                Connection: close\r
+                Content-Length: 1\r
+                \r
+                2""");
+        }
+        
+        @Test
+        void pipelined_slowHandler() throws IOException {
+            // The read-ahead must not time out while the handler runs
+            usingConfiguration()
+                .pipelineRequests(true)
+                .timeoutIdleConnection(ofMillis(100));
+            var n = new AtomicInteger();
+            server().add("/", GET().apply(req -> {
+                Thread.sleep(300);
+                return text(Integer.toString(n.incrementAndGet()));
+            }));
+            try (var _ = client().openConnection()) {
+                // The read-ahead blocks on the channel while the handler runs
+                var rsp1 = client().writeReadTextUntil(get(), "1");
+                assertThat(rsp1).isEqualTo("""
+                    HTTP/1.1 200 OK\r
+                    Content-Type: text/plain; charset=utf-8\r
+                    Content-Length: 1\r
+                    \r
+                    1""");
+                var rsp2 = client().writeReadTextUntilEOS(
+                    get("Connection: close"));
+                assertThat(rsp2).isEqualTo("""
+                    HTTP/1.1 200 OK\r
+                    Content-Type: text/plain; charset=utf-8\r
+                    Connection: close\r
+                    Content-Length: 1\r
+                    \r
+                    2""");
+            }
+        }
     }
     
     @Nested
@@ -2,6 +2,7 @@ package alpha.nomagichttp.core;
 
 import alpha.nomagichttp.handler.ClientChannel;
 import alpha.nomagichttp.handler.EndOfStreamException;
+import alpha.nomagichttp.util.ByteBufferPool;
 import alpha.nomagichttp.util.ScopedValues;
 import alpha.nomagichttp.util.Throwing;
 import org.junit.jupiter.api.BeforeEach;
@@ -34,7 +35,7 @@ final class ChannelReaderTest
     
     @BeforeEach
     void beforeEach() throws Exception {
-        testee = new ChannelReader(ofString("abc"), mock(IdleConnTimeout.class));
+        testee = newTestee("abc", 512);
         // Does not throw Exc
         assertTesteeLengthIs(-1);
     }
@@ -104,6 +105,45 @@ final class ChannelReaderTest
         assertNextCharIs('c');
     }
     
+    @Test
+    void limitGrowsBuffer() throws InterruptedException, TimeoutException {
+        final var body = "x".repeat(1_000);
+        testee = newTestee(body, 4_096);
+        testee.limit(1_000);
+        // One read operation
+        assertThat(getItemsVThread(testee)).hasSize(1);
+        // Growing disabled
+        testee = newTestee(body, 512);
+        testee.limit(1_000);
+        assertThat(getItemsVThread(testee)).hasSize(2);
+    }
+    
+    @Test
+    void shrink_notByNewReader() throws Exception {
+        var pool = new ByteBufferPool(0);
+        testee = new ChannelReader(ofString("x".repeat(1_000) + "abc"),
+                mock(IdleConnTimeout.class), pool, 4_096);
+        testee.limit(1_000);
+        assertThat(getItemsVThread(testee)).hasSize(1);
+        testee.dismiss();
+        testee = testee.newReader();
+        // The large buffer may still be in use
+        assertThat(pool.stats().misses()).isEqualTo(2);
+        testee.tryShrink();
+        assertThat(pool.stats().misses()).isEqualTo(3);
+        assertNextCharIs('a');
+    }
+    
+    @Test
+    void release_idempotent() {
+        var pool = new ByteBufferPool(0);
+        testee = new ChannelReader(ofString("abc"),
+                mock(IdleConnTimeout.class), pool, 512);
+        testee.release();
+        testee.release();
+        assertThat(pool.stats().outstanding()).isZero();
+    }
+    
     @Test
     void EndOfStreamExc() throws Exception {
         // Exc is thrown only if we had a limit residue when observing EOS
@@ -145,6 +185,11 @@ final class ChannelReaderTest
             .hasNoCause();
     }
     
+    private static ChannelReader newTestee(String data, int maxBufferSize) {
+        return new ChannelReader(ofString(data),
+                mock(IdleConnTimeout.class), new ByteBufferPool(0), maxBufferSize);
+    }
+    
     private void assertTesteeLengthIs(long expected)
             throws InterruptedException, TimeoutException {
         assertThat(testee.length()).isEqualTo(expected);
@@ -5,11 +5,17 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 
 import static alpha.nomagichttp.testutil.Assertions.assertIterable;
+import static alpha.nomagichttp.util.ByteBufferIterables.FLUSH;
 import static alpha.nomagichttp.util.ByteBufferIterables.just;
+import static alpha.nomagichttp.util.ByteBufferIterables.ofSupplier;
 import static alpha.nomagichttp.util.ByteBuffers.asciiBytes;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.assertj.core.api.Assertions.assertThat;
 
 /**
  * Small tests for {@link ChunkedEncoder}.
@@ -25,10 +31,10 @@ final class ChunkedEncoderTest
             asciiBytes("hello"),
             asciiBytes("world!"));
         assertIterable(testee,
-            asciiBytes("00000005\r\n"),
+            asciiBytes("5\r\n"),
             asciiBytes("hello"),
             asciiBytes("\r\n"),
-            asciiBytes("00000006\r\n"),
+            asciiBytes("6\r\n"),
             asciiBytes("world!"),
             asciiBytes("\r\n"),
             asciiBytes("0\r\n"));
@@ -40,7 +46,77 @@ final class ChunkedEncoderTest
         assertIterable(encode(), asciiBytes("0\r\n"));
     }
     
+    @Test
+    void coalesced() throws IOException {
+        var testee = new ChunkedEncoder(just(List.of(
+                asciiBytes("ab"),
+                asciiBytes("cd"),
+                // Does not fit, goes in the next chunk
+                asciiBytes("efg"),
+                asciiBytes("h"),
+                // Not copied
+                asciiBytes("ijklmn"),
+                asciiBytes("o"))).iterator(), 6);
+        assertThat(drain(testee)).containsExactly(
+                "4\r\nabcd\r\n",
+                "4\r\nefgh\r\n",
+                "6\r\n", "ijklmn", "\r\n",
+                "1\r\no\r\n",
+                "0\r\n");
+    }
+    
+    @Test
+    void largeSize() throws IOException {
+        var testee = new ChunkedEncoder(just(List.of(
+                ByteBuffer.allocate(0x1_0000))).iterator(), 0);
+        assertThat(drain(testee).getFirst()).isEqualTo("10000\r\n");
+    }
+    
+    @Test
+    void flushed() throws IOException {
+        var data = new ArrayDeque<>(List.of(
+                asciiBytes("a"), FLUSH, FLUSH, asciiBytes("b"), ByteBuffer.allocate(0)));
+        var testee = new ChunkedEncoder(
+                ofSupplier(data::poll).iterator(), 8_192);
+        // FLUSH is passed through
+        assertThat(drain(testee)).containsExactly(
+                "1\r\na\r\n", "",
+                "",
+                "1\r\nb\r\n",
+                "0\r\n");
+    }
+    
+    @Test
+    void nextChunk() throws IOException {
+        var testee = (ChunkedEncoder.Impl) encode(
+            asciiBytes("hello"), asciiBytes("world!")).iterator();
+        var chunks = new ArrayList<String>();
+        while (testee.hasNext()) {
+            var sb = new StringBuilder();
+            for (var buf : testee.nextChunk()) {
+                sb.append(US_ASCII.decode(buf));
+            }
+            chunks.add(sb.toString());
+        }
+        assertThat(chunks).containsExactly(
+            "5\r\nhello\r\n",
+            "6\r\nworld!\r\n",
+            "0\r\n");
+    }
+    
     private static ChunkedEncoder encode(ByteBuffer... contents) {
-        return new ChunkedEncoder(just(List.of(contents)).iterator());
+        // Coalescing disabled
+        return new ChunkedEncoder(just(List.of(contents)).iterator(), 0);
+    }
+    
+    private static List<String> drain(ChunkedEncoder testee)
+            throws IOException {
+        var chunks = new ArrayList<String>();
+        var it = testee.iterator();
+        while (it.hasNext()) {
+            // Bytebuffers are reused, must be consumed right away
+            chunks.add(US_ASCII.decode(it.next()).toString());
+        }
+        return chunks;
     }
 }
\ No newline at end of file
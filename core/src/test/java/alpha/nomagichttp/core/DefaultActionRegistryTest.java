@@ -224,6 +224,29 @@ final class DefaultActionRegistryTest
                 .run();
     }
     
+    @Test
+    void memoizedByShape() {
+        var all = beforeDummy("all"),
+            one = beforeDummy("one");
+        testee.before("/user/*", all);
+        testee.before("/user/:id", one);
+        // Matches from two nodes
+        var first = testee.lookupBefore(parse("/user/abc"));
+        assertThat(first).extracting(Match::action).containsExactly(all, one);
+        // Same shape, same list
+        assertThat(testee.lookupBefore(parse("/user/xyz"))).isSameAs(first);
+        // Modification invalidates
+        var xyz = beforeDummy("xyz");
+        testee.before("/user/xyz", xyz);
+        assertThat(testee.lookupBefore(parse("/user/xyz")))
+                .extracting(Match::action)
+                .containsExactly(all, one, xyz);
+        assertThat(testee.lookupBefore(parse("/user/abc")))
+                .isNotSameAs(first)
+                .extracting(Match::action)
+                .containsExactly(all, one);
+    }
+    
     @Test
     void ActionNonUniqueException() {
         var dup = beforeDummy("dup");
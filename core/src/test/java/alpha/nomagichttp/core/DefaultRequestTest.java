@@ -3,6 +3,7 @@ package alpha.nomagichttp.core;
 import alpha.nomagichttp.message.BadHeaderException;
 import alpha.nomagichttp.message.RawRequest;
 import alpha.nomagichttp.message.Request;
+import alpha.nomagichttp.util.ByteBufferPool;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -109,7 +110,8 @@ final class DefaultRequestTest
         var body = RequestBody.of(
                        head.headers(),
                        new ChannelReader(
-                             ofString(reqBody), mock(IdleConnTimeout.class)));
+                             ofString(reqBody), mock(IdleConnTimeout.class),
+                             new ByteBufferPool(0), 512));
         var skel = new SkeletonRequest(
                        head,
                        HTTP_1_1,
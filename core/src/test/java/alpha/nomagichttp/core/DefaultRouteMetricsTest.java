@@ -0,0 +1,58 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.route.Route;
+import org.junit.jupiter.api.Test;
+
+import static alpha.nomagichttp.handler.RequestHandler.GET;
+import static alpha.nomagichttp.handler.RequestHandler.POST;
+import static alpha.nomagichttp.message.Responses.noContent;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Small tests of {@link DefaultRouteMetrics}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class DefaultRouteMetricsTest
+{
+    private final DefaultServerMetrics server
+            = new DefaultServerMetrics(() -> 0);
+    private final Route route = Route.builder("/hello")
+            .handler(GET().apply(_ -> noContent()),
+                     POST().apply(_ -> noContent()))
+            .build();
+    
+    @Test
+    void lifecycle() {
+        assertThat(server.route(route)).isNull();
+        server.routeAdded(route);
+        var testee = server.route(route);
+        assertThat(testee.route()).isSameAs(route);
+        assertThat(server.routes()).containsExactly(testee);
+        server.routeRemoved(route);
+        assertThat(server.route(route)).isNull();
+        assertThat(server.routes()).isEmpty();
+    }
+    
+    @Test
+    void record() {
+        server.routeAdded(route);
+        var testee = server.route(route);
+        testee.record("GET", 1_000, 100);
+        testee.record("GET", 3_000, 100);
+        // Not supported by the route
+        testee.record("PUT", 1, 1);
+        var snapshot = server.snapshot().routes();
+        assertThat(snapshot).hasSize(2);
+        var get = snapshot.stream()
+                .filter(s -> s.method().equals("GET"))
+                .findFirst().orElseThrow();
+        assertThat(get.route()).isEqualTo("/hello");
+        assertThat(get.latency().count()).isEqualTo(2);
+        assertThat(get.latency().max()).isEqualTo(3_000);
+        assertThat(get.size().sum()).isEqualTo(200);
+        assertThat(server.snapshot().toPrometheus()).contains("""
+                nomagichttp_route_latency_seconds_count{route="/hello",method="GET"} 2
+                """);
+    }
+}
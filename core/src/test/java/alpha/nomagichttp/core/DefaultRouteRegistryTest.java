@@ -31,7 +31,7 @@ final class DefaultRouteRegistryTest
 {
     private static final Route ROOT_NOOP = dummyRoute("/");
     
-    private final DefaultRouteRegistry testee = new DefaultRouteRegistry(null);
+    private final DefaultRouteRegistry testee = new DefaultRouteRegistry(null, new DefaultServerMetrics(() -> 0));
     
     // Simple match cases
     // ----
@@ -110,7 +110,7 @@ final class DefaultRouteRegistryTest
             e("/xxx",  "/*p1",  "Hierarchical position of \"*p1\" is occupied with non-compatible type."),
             e("/*p1",  "/*p2",  "Route \"/*p2\" is equivalent to an already added route \"/*p1\".")
         ).forEach(e -> {
-            RouteRegistry reg = new DefaultRouteRegistry(null);
+            RouteRegistry reg = new DefaultRouteRegistry(null, new DefaultServerMetrics(() -> 0));
             reg.add(dummyRoute(e[0]));
             assertThatThrownBy(() -> reg.add(dummyRoute(e[1])))
                     .isExactlyInstanceOf(RouteCollisionException.class)
@@ -0,0 +1,50 @@
+package alpha.nomagichttp.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Small tests of {@link DefaultServerMetrics}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class DefaultServerMetricsTest
+{
+    @Test
+    void snapshot() {
+        var testee = new DefaultServerMetrics(() -> 3);
+        testee.headParsed(1_000);
+        testee.written(2_000, 100);
+        testee.received(50);
+        testee.errorResponse();
+        var s = testee.snapshot();
+        assertThat(s.headParse().count()).isOne();
+        assertThat(s.handler().count()).isZero();
+        assertThat(s.write().max()).isEqualTo(2_000);
+        assertThat(s.bytesIn()).isEqualTo(50);
+        assertThat(s.bytesOut()).isEqualTo(100);
+        assertThat(s.activeConnections()).isEqualTo(3);
+        assertThat(s.idleTimeouts()).isZero();
+        assertThat(s.errorResponses()).isOne();
+    }
+    
+    @Test
+    void toPrometheus() {
+        var testee = new DefaultServerMetrics(() -> 1);
+        testee.headParsed(1_000_000);
+        assertThat(testee.snapshot().toPrometheus())
+            .contains("""
+                # TYPE nomagichttp_head_parse_seconds summary
+                nomagichttp_head_parse_seconds{quantile="0.5"} 0.001
+                """)
+            .contains("""
+                nomagichttp_head_parse_seconds_sum 0.001
+                nomagichttp_head_parse_seconds_count 1
+                """)
+            .contains("""
+                # TYPE nomagichttp_active_connections gauge
+                nomagichttp_active_connections 1
+                """);
+    }
+}
@@ -0,0 +1,118 @@
+package alpha.nomagichttp.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static alpha.nomagichttp.core.DeflateEncoder.DEFLATE;
+import static alpha.nomagichttp.core.DeflateEncoder.GZIP;
+import static alpha.nomagichttp.core.DeflateEncoder.negotiate;
+import static alpha.nomagichttp.util.ByteBufferIterables.FLUSH;
+import static alpha.nomagichttp.util.ByteBufferIterables.just;
+import static alpha.nomagichttp.util.ByteBufferIterables.ofSupplier;
+import static alpha.nomagichttp.util.ByteBuffers.asciiBytes;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Small tests of {@link DeflateEncoder}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class DeflateEncoderTest
+{
+    @Test
+    void gzip() throws IOException {
+        var text = "hello ".repeat(10_000);
+        var testee = new DeflateEncoder(just(List.of(
+                asciiBytes(text), asciiBytes("world"))).iterator(), GZIP, 6);
+        var bytes = drain(testee);
+        assertThat(bytes.length).isLessThan(text.length() / 10);
+        assertThat(inflate(new GZIPInputStream(
+                new ByteArrayInputStream(bytes)))).isEqualTo(text + "world");
+    }
+    
+    @Test
+    void deflate() throws IOException {
+        var testee = new DeflateEncoder(just(List.of(
+                asciiBytes("abc"))).iterator(), DEFLATE, 1);
+        assertThat(inflate(new InflaterInputStream(
+                new ByteArrayInputStream(drain(testee))))).isEqualTo("abc");
+    }
+    
+    @Test
+    void empty() throws IOException {
+        var testee = new DeflateEncoder(just(List.of()).iterator(), GZIP, 6);
+        assertThat(inflate(new GZIPInputStream(
+                new ByteArrayInputStream(drain(testee))))).isEmpty();
+    }
+    
+    @Test
+    void flushed() throws IOException {
+        var data = new ArrayDeque<>(List.of(
+                asciiBytes("a"), FLUSH, FLUSH, asciiBytes("b"),
+                ByteBuffer.allocate(0)));
+        var it = new DeflateEncoder(
+                ofSupplier(data::poll).iterator(), GZIP, 6).iterator();
+        // Header and a sync-flushed "a"
+        assertThat(it.next().remaining()).isGreaterThan(10);
+        assertThat(it.next()).isSameAs(FLUSH);
+        // Nothing pending for the second flush
+        assertThat(it.next()).isSameAs(FLUSH);
+        assertThat(it.next().hasRemaining()).isTrue();
+        assertThat(it.hasNext()).isFalse();
+        it.close();
+    }
+    
+    @Test
+    void negotiate_preferGzip() {
+        assertThat(negotiate(Stream.of("deflate", "gzip"))).isEqualTo(GZIP);
+        assertThat(negotiate(Stream.of("x-gzip"))).isEqualTo(GZIP);
+        assertThat(negotiate(Stream.of("*"))).isEqualTo(GZIP);
+    }
+    
+    @Test
+    void negotiate_quality() {
+        assertThat(negotiate(Stream.of("gzip;q=0.5", "deflate"))).isEqualTo(DEFLATE);
+        assertThat(negotiate(Stream.of("gzip; Q=0", "*"))).isEqualTo(DEFLATE);
+        assertThat(negotiate(Stream.of("gzip;q=0", "deflate;q=0"))).isNull();
+        assertThat(negotiate(Stream.of("*;q=0"))).isNull();
+        assertThat(negotiate(Stream.of("gzip;q=oops"))).isNull();
+    }
+    
+    @Test
+    void negotiate_identity() {
+        assertThat(negotiate(Stream.of())).isNull();
+        assertThat(negotiate(Stream.of("identity", "br"))).isNull();
+    }
+    
+    private static byte[] drain(DeflateEncoder testee)
+            throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var it = testee.iterator()) {
+            while (it.hasNext()) {
+                var buf = it.next();
+                // Bytebuffer is reused, must be consumed right away
+                var bytes = new byte[buf.remaining()];
+                buf.get(bytes);
+                out.write(bytes);
+            }
+        }
+        return out.toByteArray();
+    }
+    
+    private static String inflate(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), US_ASCII);
+        }
+    }
+}
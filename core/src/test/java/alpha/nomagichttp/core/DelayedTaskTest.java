@@ -1,49 +1,80 @@
 package alpha.nomagichttp.core;
 
 import org.junit.jupiter.api.Test;
-import org.mockito.ArgumentCaptor;
-
-import java.util.concurrent.ScheduledFuture;
 
+import static java.lang.System.nanoTime;
 import static java.time.Duration.ofDays;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.anyLong;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.mockStatic;
-import static org.mockito.Mockito.when;
 
 /**
  * Unit tests for {@link DelayedTask}.
  */
 final class DelayedTaskTest {
+    // This doesn't matter...
+    private static final long DELAY = 123;
+    // ...because we're going to fast-forward the wheel
+    private static final long LATER = nanoTime() + ofDays(DELAY + 1).toNanos();
+    
+    private final TimerWheel wheel = new TimerWheel();
+    private int nRuns;
+    
     @Test
     void everything() {
-        // This doesn't matter...
-        final long DELAY = 123;
-        // ...because we're not actually going to do anything
-        final Runnable NOP = () -> {};
-        // The static method Timeout.schedule() needs to return
-        final ScheduledFuture<?> NON_NULL = mock(ScheduledFuture.class);
-        // And we need to capture the lambda inside instance method schedule(),
-        // because we'll "fake run" the task ourselves
-        final var callRunAction = ArgumentCaptor.forClass(Runnable.class);
-        
-        try (var _ = mockStatic(DelayedTask.class)) {
-             when(DelayedTask.schedule(anyLong(), callRunAction.capture()))
-               .thenAnswer(warningsIfUseThenReturn -> NON_NULL);
-             
-             var testee = new DelayedTask(ofDays(DELAY), NOP);
-             // Can "abort" before scheduling
-             assertTrue(testee.tryAbort());
-             testee.schedule();
-             // Can abort several times
-             assertTrue(testee.tryAbort());
-             assertTrue(testee.tryAbort());
-             // Cannot abort after execution
-             testee.schedule();
-             callRunAction.getValue().run();
-             assertFalse(testee.tryAbort());
-        }
+        var testee = newTestee();
+        // Can "abort" before scheduling
+        assertTrue(testee.tryAbort());
+        testee.schedule();
+        // Can abort several times
+        assertTrue(testee.tryAbort());
+        assertTrue(testee.tryAbort());
+        // Cannot abort after execution
+        testee.schedule();
+        wheel.advance(LATER);
+        assertThat(nRuns).isOne();
+        assertFalse(testee.tryAbort());
+        assertFalse(testee.tryAbort());
+    }
+    
+    @Test
+    void alreadyScheduled() {
+        var testee = newTestee();
+        testee.schedule();
+        assertThrows(IllegalStateException.class, testee::schedule);
+    }
+    
+    @Test
+    void abortedDoesNotRun() {
+        var testee = newTestee();
+        testee.schedule();
+        // Task enrolls in the wheel
+        wheel.advance(nanoTime());
+        assertTrue(testee.tryAbort());
+        wheel.advance(LATER);
+        assertThat(nRuns).isZero();
+    }
+    
+    @Test
+    void rescheduleWhileEnrolled() {
+        var testee = newTestee();
+        testee.schedule();
+        wheel.advance(nanoTime());
+        assertTrue(testee.tryAbort());
+        // Still enrolled, only the deadline is updated
+        testee.schedule();
+        wheel.advance(nanoTime());
+        assertThat(nRuns).isZero();
+        wheel.advance(LATER);
+        assertThat(nRuns).isOne();
+        // And can be rescheduled after execution
+        testee.schedule();
+        wheel.advance(LATER + ofDays(DELAY + 1).toNanos());
+        assertThat(nRuns).isEqualTo(2);
+    }
+    
+    private DelayedTask newTestee() {
+        return new DelayedTask(ofDays(DELAY), () -> ++nRuns, wheel);
     }
 }
@@ -0,0 +1,130 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.message.HeaderParseException;
+import alpha.nomagichttp.message.MaxRequestHeadSizeException;
+import alpha.nomagichttp.message.RawRequest;
+import alpha.nomagichttp.message.RequestLineParseException;
+import alpha.nomagichttp.util.ByteBufferIterables;
+import org.junit.jupiter.api.Test;
+
+import static alpha.nomagichttp.HttpConstants.HeaderName.HOST;
+import static alpha.nomagichttp.HttpConstants.Method.GET;
+import static alpha.nomagichttp.testutil.Assertions.assertHeaders;
+import static alpha.nomagichttp.testutil.ByteBufferIterables.just;
+import static alpha.nomagichttp.util.Blah.throwsNoChecked;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.util.List.of;
+import static java.util.Map.entry;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Small tests of {@link HeadParser}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class HeadParserTest
+{
+    @Test
+    void happyPath() {
+        var line = "GET /hello.txt HTTP/1.1\r\n";
+        var headers = """
+            Host: www.example.com\r
+            user-agent: curl/7.16.3\r
+            Foo:   bar baz \t\r
+            Empty:\r
+            \r
+            """;
+        var p = new HeadParser(just(line + headers), 9_999);
+        var h = throwsNoChecked(p::parse);
+        assertThat(h.line().method()).isSameAs(GET);
+        assertThat(h.line().target()).isEqualTo("/hello.txt");
+        assertThat(h.line().httpVersion()).isEqualTo("HTTP/1.1");
+        assertThat(h.line().length()).isEqualTo(line.length());
+        assertHeaders(h.headers()).containsExactly(
+            entry(HOST,         of("www.example.com")),
+            entry("user-agent", of("curl/7.16.3")),
+            entry("Foo",        of("bar baz")),
+            entry("Empty",      of("")));
+        assertThat(h.headers().iterator().next().getKey())
+            .isSameAs(HOST);
+        assertThat(p.byteCount()).isEqualTo(line.length() + headers.length());
+    }
+    
+    @Test
+    void splitAcrossBuffers() {
+        var h = parse("GE", "T / HTT", "P/1.1\r", "\nHost", ": x\r\n", "\r", "\n");
+        assertThat(h.line().method()).isSameAs(GET);
+        assertHeaders(h.headers()).containsExactly(entry(HOST, of("x")));
+    }
+    
+    @Test
+    void lenient_requestLine() {
+        // Delegated to ParserOfRequestLine
+        var h = parse("\r\n GET\t/  HTTP/1.1\nHost: x\n\n");
+        assertThat(h.line().method()).isEqualTo(GET);
+        assertThat(h.line().target()).isEqualTo("/");
+        assertThat(h.line().length()).isEqualTo(19);
+        assertHeaders(h.headers()).containsExactly(entry(HOST, of("x")));
+    }
+    
+    @Test
+    void lenient_folding() {
+        // Delegated to ParserOf
+        var h = parse("GET / HTTP/1.1\nHost: x\nFoo: bar\n  baz\n\n");
+        assertHeaders(h.headers()).containsExactly(
+            entry(HOST,  of("x")),
+            entry("Foo", of("bar baz")));
+    }
+    
+    @Test
+    void nonAscii() {
+        var bytes = "GET /å HTTP/1.1\nFoo: ä\n\n".getBytes(ISO_8859_1);
+        var h = throwsNoChecked(new HeadParser(
+                ByteBufferIterables.just(bytes), 9_999)::parse);
+        assertThat(h.line().target()).isEqualTo("/å");
+        assertHeaders(h.headers()).containsExactly(entry("Foo", of("ä")));
+    }
+    
+    @Test
+    void requestLineParseExc_noLF() {
+        // Same as ErrorTest.RequestLineParseExc, throws before LF
+        assertThatThrownBy(() -> parse("GET / H T T P ...."))
+            .isExactlyInstanceOf(RequestLineParseException.class)
+            .hasMessage("Whitespace in HTTP-version not accepted.");
+    }
+    
+    @Test
+    void headerParseExc_noTerminator() {
+        // Same as ErrorTest.HeaderParseExc, throws before the end of the head
+        assertThatThrownBy(() -> parse(
+                "GET / HTTP/1.1\r\nH e a d e r: Oops!\r\n"))
+            .isExactlyInstanceOf(HeaderParseException.class)
+            .hasToString("""
+                HeaderParseException{\
+                prev=(hex:0x48, decimal:72, char:"H"), \
+                curr=(hex:0x20, decimal:32, char:" "), pos=17, \
+                msg=Whitespace in header name or before colon is not accepted.}""");
+    }
+    
+    @Test
+    void headerParseExc_casing() {
+        assertThatThrownBy(() -> parse("GET / HTTP/1.1\nHost: a\nhost: b\n\n"))
+            .isExactlyInstanceOf(HeaderParseException.class)
+            .hasRootCauseMessage("Header name repeated with different casing: host");
+    }
+    
+    @Test
+    void maxRequestHeadSizeExc() {
+        var p = new HeadParser(just("GET / HTTP/1.1\n\n"), 16);
+        assertThatThrownBy(p::parse)
+            .isExactlyInstanceOf(MaxRequestHeadSizeException.class);
+        // The head is 16 bytes, the max is exclusive
+        var ok = new HeadParser(just("GET / HTTP/1.1\n\n"), 17);
+        assertThat(throwsNoChecked(ok::parse).line().method()).isSameAs(GET);
+    }
+    
+    private static RawRequest.Head parse(String... items) {
+        return throwsNoChecked(new HeadParser(just(items), 9_999)::parse);
+    }
+}
@@ -0,0 +1,31 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.message.ByteBufferIterable;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Small tests of {@link HttpExchange}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class HttpExchangeTest
+{
+    @Test
+    void closeBody_decoderThrows() {
+        // The decoder was never iterated, so close() asks the upstream
+        var upstream = mock(ByteBufferIterable.class);
+        when(upstream.iterator()).thenThrow(
+                new IllegalStateException("Already consumed"));
+        var decoder = new InflateDecoder(upstream, true, 99);
+        var body = mock(RequestBody.class);
+        when(body.iterator()).thenReturn(decoder.iterator());
+        var req = mock(SkeletonRequest.class);
+        when(req.body()).thenReturn(body);
+        assertThatCode(() -> HttpExchange.closeBody(req))
+                .doesNotThrowAnyException();
+    }
+}
@@ -0,0 +1,193 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.message.ByteBufferIterable;
+import alpha.nomagichttp.message.ByteBufferIterator;
+import alpha.nomagichttp.message.DecoderException;
+import alpha.nomagichttp.message.MaxRequestBodyBufferSizeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static alpha.nomagichttp.util.ByteBufferIterables.just;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Small tests of {@link InflateDecoder}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class InflateDecoderTest
+{
+    @Test
+    void gzip() throws IOException {
+        var text = "hello ".repeat(10_000);
+        var testee = new InflateDecoder(
+                split(gzip(text), 100), true, 100_000);
+        assertThat(testee.length()).isEqualTo(-1);
+        assertThat(drain(testee)).isEqualTo(text);
+        assertThat(testee.length()).isZero();
+    }
+    
+    @Test
+    void deflate() throws IOException {
+        var testee = new InflateDecoder(split(zlib("abc"), 1), false, 3);
+        assertThat(drain(testee)).isEqualTo("abc");
+    }
+    
+    @Test
+    void gzip_multipleMembers() throws IOException {
+        var a = gzip("foo");
+        var b = gzip("bar");
+        var both = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        var testee = new InflateDecoder(split(both, 7), true, 99);
+        assertThat(drain(testee)).isEqualTo("foobar");
+    }
+    
+    @Test
+    void emptyUpstream() throws IOException {
+        var testee = new InflateDecoder(just(new byte[0]), true, 99);
+        assertThat(drain(testee)).isEmpty();
+    }
+    
+    @Test
+    void gzip_abandonedHalfway() throws IOException {
+        var text = "hello ".repeat(10_000);
+        var closed = new AtomicBoolean();
+        var upstream = split(gzip(text), 100);
+        var testee = new InflateDecoder(new ByteBufferIterable() {
+            @Override
+            public ByteBufferIterator iterator() {
+                var d = upstream.iterator();
+                return new ByteBufferIterator() {
+                    @Override
+                    public boolean hasNext() {
+                        return d.hasNext();
+                    }
+                    
+                    @Override
+                    public ByteBuffer next() throws IOException {
+                        return d.next();
+                    }
+                    
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                };
+            }
+            
+            @Override
+            public long length() {
+                return upstream.length();
+            }
+        }, true, 100_000);
+        var it = testee.iterator();
+        var half = new StringBuilder();
+        while (half.length() < text.length() / 2) {
+            half.append(US_ASCII.decode(it.next()));
+        }
+        assertThat(text).startsWith(half);
+        it.close();
+        assertThat(closed).isTrue();
+        assertThat(it.hasNext()).isFalse();
+        assertThat(testee.length()).isZero();
+        assertThatThrownBy(it::next)
+            .isExactlyInstanceOf(NoSuchElementException.class);
+    }
+    
+    @Test
+    void maxRequestBodyBufferSizeExc() throws IOException {
+        // Zip bomb, 1 MB zeroes compresses to about 1 KB
+        var bomb = gzip("\0".repeat(1_000_000));
+        assertThat(bomb.length).isLessThan(2_000);
+        var testee = new InflateDecoder(just(bomb), true, 100_000);
+        assertThatThrownBy(() -> drain(testee))
+            .isExactlyInstanceOf(MaxRequestBodyBufferSizeException.class);
+    }
+    
+    @Test
+    void decoderExc_notGzip() {
+        var testee = new InflateDecoder(just("hello".getBytes(US_ASCII)), true, 99);
+        assertThatThrownBy(() -> drain(testee))
+            .isExactlyInstanceOf(DecoderException.class)
+            .hasMessage("Not in gzip format.");
+    }
+    
+    @Test
+    void decoderExc_corruptTrailer() throws IOException {
+        var bytes = gzip("hello");
+        // CRC32
+        bytes[bytes.length - 8] ^= 1;
+        var testee = new InflateDecoder(just(bytes), true, 99);
+        assertThatThrownBy(() -> drain(testee))
+            .isExactlyInstanceOf(DecoderException.class)
+            .hasMessage("Corrupt gzip trailer.");
+    }
+    
+    @Test
+    void decoderExc_truncated() throws IOException {
+        var bytes = gzip("hello");
+        var testee = new InflateDecoder(
+                just(Arrays.copyOf(bytes, bytes.length - 3)), true, 99);
+        assertThatThrownBy(() -> drain(testee))
+            .isExactlyInstanceOf(DecoderException.class)
+            .hasMessage("Upstream is empty but decoding is not done.");
+    }
+    
+    @Test
+    void decoderExc_trailingData() throws IOException {
+        var bytes = zlib("hello");
+        var testee = new InflateDecoder(
+                just(Arrays.copyOf(bytes, bytes.length + 1)), false, 99);
+        assertThatThrownBy(() -> drain(testee))
+            .isExactlyInstanceOf(DecoderException.class)
+            .hasMessage("Data trailing the compressed stream.");
+    }
+    
+    private static byte[] gzip(String text) throws IOException {
+        var os = new ByteArrayOutputStream();
+        try (var gz = new GZIPOutputStream(os)) {
+            gz.write(text.getBytes(US_ASCII));
+        }
+        return os.toByteArray();
+    }
+    
+    private static byte[] zlib(String text) throws IOException {
+        var os = new ByteArrayOutputStream();
+        try (var z = new DeflaterOutputStream(os)) {
+            z.write(text.getBytes(US_ASCII));
+        }
+        return os.toByteArray();
+    }
+    
+    private static ByteBufferIterable split(byte[] bytes, int size) {
+        var bufs = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < bytes.length; i += size) {
+            bufs.add(ByteBuffer.wrap(bytes, i, Math.min(size, bytes.length - i)));
+        }
+        return just(bufs);
+    }
+    
+    private static String drain(ByteBufferIterable testee) throws IOException {
+        var os = new ByteArrayOutputStream();
+        var it = testee.iterator();
+        while (it.hasNext()) {
+            var buf = it.next();
+            while (buf.hasRemaining()) {
+                os.write(buf.get());
+            }
+        }
+        return os.toString(US_ASCII);
+    }
+}
@@ -0,0 +1,52 @@
+package alpha.nomagichttp.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Small tests of {@link ObjectPool}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class ObjectPoolTest
+{
+    @Test
+    void reuse() {
+        var pool = new ObjectPool<List<String>>(ArrayList::new, List::clear, 1);
+        var list = pool.acquire();
+        list.add("x");
+        assertThat(pool.release(list)).isTrue();
+        var again = pool.acquire();
+        assertThat(again).isSameAs(list).isEmpty();
+        assertThat(pool.acquire()).isNotSameAs(list);
+    }
+    
+    @Test
+    void full_notRetained() {
+        var pool = new ObjectPool<List<String>>(ArrayList::new, List::clear, 1);
+        var first = pool.acquire();
+        var second = pool.acquire();
+        assertThat(pool.release(first)).isTrue();
+        assertThat(pool.release(second)).isFalse();
+    }
+    
+    @Test
+    void maxZero_noReuse() {
+        var pool = new ObjectPool<List<String>>(ArrayList::new, List::clear, 0);
+        var list = pool.acquire();
+        assertThat(pool.release(list)).isFalse();
+        assertThat(pool.acquire()).isNotSameAs(list);
+    }
+    
+    @Test
+    void negativeMax() {
+        assertThatThrownBy(() -> new ObjectPool<>(Object::new, _ -> {}, -1))
+            .isExactlyInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Negative max: -1");
+    }
+}
@@ -40,6 +40,21 @@ final class RequestTargetTest
         expFragment();
     }
     
+    @Test
+    void decoded_lazily() {
+        var rt = SkeletonRequestTarget.parse("/a/b%20c/d");
+        var raw = rt.segmentsRaw();
+        var dec = rt.segments();
+        assertThat(dec).containsExactly("a", "b c", "d");
+        // Segments without a percent-encoded character are not copied
+        assertThat(dec.get(0)).isSameAs(raw.get(0));
+        assertThat(dec.get(2)).isSameAs(raw.get(2));
+        // Nothing to decode, same list
+        var plain = SkeletonRequestTarget.parse("/a/../b/./c");
+        assertThat(plain.segments()).isSameAs(plain.segmentsRaw())
+                                    .containsExactly("b", "c");
+    }
+    
     // Remaining of all these test cases are basically just to bump code coverage
     // (and I seriously don't trust my impl. because I wrote it while being drunk)
     
@@ -0,0 +1,115 @@
+package alpha.nomagichttp.core;
+
+import alpha.nomagichttp.Config;
+import alpha.nomagichttp.HttpServer;
+import alpha.nomagichttp.handler.ClientChannel;
+import alpha.nomagichttp.message.MediaTypeCache;
+import alpha.nomagichttp.message.RawRequest;
+import alpha.nomagichttp.message.Response;
+import alpha.nomagichttp.util.ByteBufferPool;
+import org.junit.jupiter.api.Test;
+
+import static alpha.nomagichttp.Config.DEFAULT;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONNECTION;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_LENGTH;
+import static alpha.nomagichttp.HttpConstants.HeaderName.CONTENT_TYPE;
+import static alpha.nomagichttp.HttpConstants.Version.HTTP_1_1;
+import static alpha.nomagichttp.core.SkeletonRequestTarget.parse;
+import static alpha.nomagichttp.internal.ResponseHeads.encode;
+import static alpha.nomagichttp.message.Response.builder;
+import static alpha.nomagichttp.message.Responses.notFound;
+import static alpha.nomagichttp.message.Responses.text;
+import static alpha.nomagichttp.testutil.Assertions.assertHeaders;
+import static alpha.nomagichttp.testutil.Headers.linkedHashMap;
+import static alpha.nomagichttp.testutil.ReadableByteChannels.ofString;
+import static alpha.nomagichttp.util.ByteBufferIterables.ofStringUnsafe;
+import static alpha.nomagichttp.util.ScopedValues.CHANNEL;
+import static alpha.nomagichttp.util.ScopedValues.HTTP_SERVER;
+import static java.lang.ScopedValue.where;
+import static java.util.List.of;
+import static java.util.Map.entry;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Small tests of {@link ResponseProcessor}.
+ * 
+ * @author Martin Andersson (webmaster at martinandersson.com)
+ */
+final class ResponseProcessorTest
+{
+    @Test
+    void cachedResponse_isNotRebuilt() throws Exception {
+        var rsp = notFound();
+        var first = process(rsp);
+        var second = process(rsp);
+        // Same instance, so the memoized head is shared
+        assertThat(first).isSameAs(rsp);
+        assertThat(second).isSameAs(rsp);
+        assertThat(encode(second, HTTP_1_1))
+                .isEqualTo(encode(first, HTTP_1_1));
+        assertHeaders(second).containsExactly(entry(CONTENT_LENGTH, of("0")));
+    }
+    
+    @Test
+    void knownLength_isNotRebuilt() throws Exception {
+        var rsp = text("Hello");
+        assertThat(process(rsp)).isSameAs(rsp);
+    }
+    
+    @Test
+    void connectionClose_keepsLength() throws Exception {
+        var rsp = process(notFound(), "Connection", "close");
+        assertHeaders(rsp).containsExactly(
+                entry(CONNECTION, of("close")),
+                entry(CONTENT_LENGTH, of("0")));
+    }
+    
+    @Test
+    void malformedContentType_notCompressed() throws Exception {
+        var rsp = builder(200)
+                .setHeader(CONTENT_TYPE, "garbage")
+                .body(ofStringUnsafe("x".repeat(2_000)))
+                .build();
+        var conf = DEFAULT.toBuilder().compressionLevel(6).build();
+        assertThat(process(rsp, conf, "Accept-Encoding", "gzip"))
+                .isSameAs(rsp);
+    }
+    
+    private static Response process(Response rsp, String... reqHeaders)
+            throws Exception {
+        return process(rsp, DEFAULT, reqHeaders);
+    }
+    
+    private static Response process(
+            Response rsp, Config conf, String... reqHeaders)
+            throws Exception {
+        var server = mock(HttpServer.class);
+        when(server.getConfig()).thenReturn(conf);
+        when(server.isRunning()).thenReturn(true);
+        when(server.mediaTypeCache()).thenReturn(new MediaTypeCache(16));
+        var ch = mock(ClientChannel.class);
+        when(ch.isInputOpen()).thenReturn(true);
+        when(ch.attributes()).thenReturn(new DefaultAttributes());
+        var req = createRequest(reqHeaders);
+        return where(HTTP_SERVER, server).where(CHANNEL, ch).call(() -> {
+            try (var res = ResponseProcessor.process(rsp, req, HTTP_1_1)) {
+                return res.response();
+            }
+        });
+    }
+    
+    private static SkeletonRequest createRequest(String... headers) {
+        var line = new RawRequest.Line("GET", "/", "HTTP/1.1", -1, -1);
+        var head = new RawRequest.Head(
+                       line,
+                       new RequestHeaders(linkedHashMap(headers)));
+        var body = RequestBody.of(
+                       head.headers(),
+                       new ChannelReader(
+                             ofString(""), mock(IdleConnTimeout.class),
+                             new ByteBufferPool(0), 512));
+        return new SkeletonRequest(head, HTTP_1_1, parse("/"), body, null);
+    }
+}
@@ -94,4 +94,19 @@ final class TreeTest
         
         assertThat(testee.read().next("a").next("b").get()).isEqualTo("value");
     }
+    
+    @Test
+    void freeze() {
+        testee.setIfAbsent(of("a", "b"), "ab");
+        testee.setIfAbsent(of("a", "c"), "ac");
+        var f = testee.freeze(String::toUpperCase);
+        // Modifications are not reflected
+        testee.setIfAbsent(of("a", "d"), "ad");
+        assertThat(f.get()).isNull();
+        assertThat(f.next("a").get()).isNull();
+        assertThat(f.next("a").next("b").get()).isEqualTo("AB");
+        assertThat(f.next("a").next("c").get()).isEqualTo("AC");
+        assertThat(f.next("a").next("d")).isNull();
+        assertThat(f.next("b")).isNull();
+    }
 }
\ No newline at end of file